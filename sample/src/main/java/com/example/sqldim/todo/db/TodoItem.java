@@ -22,6 +22,7 @@ import android.os.Parcelable;
 import androidx.annotation.NonNull;
 
 import com.google.auto.value.AutoValue;
+import com.stealthmountain.sqldim.RowMapperFactory;
 
 import java.util.Objects;
 
@@ -41,13 +42,21 @@ public abstract class TodoItem implements Parcelable {
   @NonNull public abstract String description();
   public abstract boolean complete();
 
-  public static final Function<Cursor, TodoItem> MAPPER = new Function<Cursor, TodoItem>() {
-    @NonNull @Override public TodoItem apply(@NonNull Cursor cursor) {
-      long id = Db.getLong(cursor, ID);
-      long listId = Db.getLong(cursor, LIST_ID);
-      @NonNull String description = Objects.requireNonNull(Db.getString(cursor, DESCRIPTION));
-      boolean complete = Db.getBoolean(cursor, COMPLETE);
-      return new AutoValue_TodoItem(id, listId, description, complete);
+  public static final RowMapperFactory<TodoItem> MAPPER = new RowMapperFactory<TodoItem>() {
+    @NonNull @Override public Function<Cursor, TodoItem> create(@NonNull Cursor cursor) {
+      final int id = cursor.getColumnIndexOrThrow(ID);
+      final int listId = cursor.getColumnIndexOrThrow(LIST_ID);
+      final int description = cursor.getColumnIndexOrThrow(DESCRIPTION);
+      final int complete = cursor.getColumnIndexOrThrow(COMPLETE);
+      return new Function<Cursor, TodoItem>() {
+        @NonNull @Override public TodoItem apply(@NonNull Cursor cursor) {
+          return new AutoValue_TodoItem(
+              cursor.getLong(id),
+              cursor.getLong(listId),
+              Objects.requireNonNull(cursor.getString(description)),
+              cursor.getInt(complete) == Db.BOOLEAN_TRUE);
+        }
+      };
     }
   };
 
@@ -20,10 +20,10 @@ import android.os.Parcelable;
 
 import androidx.annotation.NonNull;
 
-import com.example.sqldim.todo.db.Db;
 import com.example.sqldim.todo.db.TodoItem;
 import com.example.sqldim.todo.db.TodoList;
 import com.google.auto.value.AutoValue;
+import com.stealthmountain.sqldim.RowMapperFactory;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -52,12 +52,17 @@ abstract class ListsItem implements Parcelable {
   abstract String name();
   abstract int itemCount();
 
-  static Function<Cursor, ListsItem> MAPPER = new Function<Cursor, ListsItem>() {
-    @NonNull @Override public ListsItem apply(@NonNull Cursor cursor) {
-      long id = Db.getLong(cursor, TodoList.ID);
-      String name = Db.getString(cursor, TodoList.NAME);
-      int itemCount = Db.getInt(cursor, ITEM_COUNT);
-      return new AutoValue_ListsItem(id, name, itemCount);
+  static RowMapperFactory<ListsItem> MAPPER = new RowMapperFactory<ListsItem>() {
+    @NonNull @Override public Function<Cursor, ListsItem> create(@NonNull Cursor cursor) {
+      final int id = cursor.getColumnIndexOrThrow(TodoList.ID);
+      final int name = cursor.getColumnIndexOrThrow(TodoList.NAME);
+      final int itemCount = cursor.getColumnIndexOrThrow(ITEM_COUNT);
+      return new Function<Cursor, ListsItem>() {
+        @NonNull @Override public ListsItem apply(@NonNull Cursor cursor) {
+          return new AutoValue_ListsItem(
+              cursor.getLong(id), cursor.getString(name), cursor.getInt(itemCount));
+        }
+      };
     }
   };
 }
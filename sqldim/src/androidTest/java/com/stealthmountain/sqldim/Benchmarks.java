@@ -0,0 +1,22 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Helpers shared by the benchmarks in this suite. The benchmarks only log what they measure,
+ * under the tag of their class, and assert nothing about it: timings on a shared or emulated
+ * device vary too much from run to run to fail a build on.
+ */
+final class Benchmarks {
+  /** The median of {@code runs}, which are sorted in place. */
+  static long median(@NonNull long[] runs) {
+    Arrays.sort(runs);
+    return runs[runs.length / 2];
+  }
+
+  private Benchmarks() {
+    throw new AssertionError("No instances.");
+  }
+}
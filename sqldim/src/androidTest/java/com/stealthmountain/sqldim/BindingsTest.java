@@ -0,0 +1,90 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public final class BindingsTest {
+  @Test public void bindsTypedArguments() {
+    @NonNull final Bindings args = new Bindings();
+    args.bindLong(1, 42L);
+    args.bindDouble(2, 1.5);
+    args.bindString(3, "alice");
+    args.bindBlob(4, new byte[] { 1, 2 });
+    args.bindNull(5);
+
+    @NonNull final SupportSQLiteQuery query = args.toQuery("SELECT ?, ?, ?, ?, ?");
+    assertThat(query.getSql()).isEqualTo("SELECT ?, ?, ?, ?, ?");
+    assertThat(query.getArgCount()).isEqualTo(5);
+    @NonNull final List<Object> bound = QueryWatchdog.argsOf(query);
+    assertThat(bound.subList(0, 3)).containsExactly(42L, 1.5, "alice").inOrder();
+    assertThat((byte[]) bound.get(3)).isEqualTo(new byte[] { 1, 2 });
+    assertThat(bound.get(4)).isNull();
+  }
+
+  @Test public void skippedIndicesAreNull() {
+    @NonNull final Bindings args = new Bindings(1);
+    args.bindLong(3, 7L);
+    assertThat(args.getArgCount()).isEqualTo(3);
+    assertThat(QueryWatchdog.argsOf(args.toQuery("SELECT ?, ?, ?")))
+        .containsExactly(null, null, 7L)
+        .inOrder();
+  }
+
+  @Test public void rebindingReplacesArgument() {
+    @NonNull final Bindings args = new Bindings();
+    args.bindString(1, "alice");
+    args.bindLong(1, 1L);
+    assertThat(QueryWatchdog.argsOf(args.toQuery("SELECT ?"))).containsExactly(1L);
+  }
+
+  @Test public void growsPastCapacity() {
+    @NonNull final Bindings args = new Bindings(2);
+    for (int i = 1; i <= 20; i++) {
+      args.bindLong(i, i);
+    }
+    assertThat(args.getArgCount()).isEqualTo(20);
+    @NonNull final Object[] expected = new Object[20];
+    for (int i = 0; i < 20; i++) {
+      expected[i] = (long) (i + 1);
+    }
+    assertThat(QueryWatchdog.argsOf(args.toQuery("SELECT 1")))
+        .containsExactlyElementsIn(Arrays.asList(expected))
+        .inOrder();
+  }
+
+  @Test public void clearBindingsForReuse() {
+    @NonNull final Bindings args = new Bindings();
+    args.bindString(1, "alice");
+    args.bindString(2, "bob");
+    args.clearBindings();
+    assertThat(args.getArgCount()).isEqualTo(0);
+    args.bindLong(1, 1L);
+    assertThat(QueryWatchdog.argsOf(args.toQuery("SELECT ?"))).containsExactly(1L);
+  }
+
+  @Test public void toQueryCopiesArguments() {
+    @NonNull final Bindings args = new Bindings();
+    args.bindString(1, "alice");
+    @NonNull final SupportSQLiteQuery query = args.toQuery("SELECT ?");
+    args.clearBindings();
+    args.bindString(1, "bob");
+    assertThat(QueryWatchdog.argsOf(query)).containsExactly("alice");
+  }
+
+  @Test public void indexStartsAtOne() {
+    try {
+      new Bindings().bindLong(0, 1L);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageThat().isEqualTo("index < 1: 0");
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.stealthmountain.sqldim;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static android.database.sqlite.SQLiteDatabase.CONFLICT_IGNORE;
+import static android.database.sqlite.SQLiteDatabase.CONFLICT_NONE;
+import static com.google.common.truth.Truth.assertThat;
+
+public final class BulkStatementsTest {
+  @Test public void insertSql() {
+    assertThat(BulkStatements.insertSql("employee", CONFLICT_NONE, new String[] { "a", "b" }))
+        .isEqualTo("INSERT INTO employee (a, b) VALUES (?, ?)");
+    assertThat(BulkStatements.insertSql("employee", CONFLICT_IGNORE, new String[] { "a" }))
+        .isEqualTo("INSERT OR IGNORE INTO employee (a) VALUES (?)");
+  }
+
+  @Test public void insertSqlWithoutColumnsUsesDefaults() {
+    assertThat(BulkStatements.insertSql("employee", CONFLICT_NONE, new String[0]))
+        .isEqualTo("INSERT INTO employee DEFAULT VALUES");
+  }
+
+  @Test public void updateSqlBindsKeyLast() {
+    assertThat(BulkStatements.updateSql("employee", "username", Arrays.asList("name", "age")))
+        .isEqualTo("UPDATE employee SET name = ?, age = ? WHERE username = ?");
+  }
+
+  @Test public void updateSqlWithOnlyKey() {
+    assertThat(BulkStatements.updateSql("employee", "username", Collections.<String>emptyList()))
+        .isEqualTo("UPDATE employee SET username = username WHERE username = ?");
+  }
+
+  @Test public void deleteSql() {
+    assertThat(BulkStatements.deleteSql("employee", 3))
+        .isEqualTo("DELETE FROM employee WHERE rowid IN (?, ?, ?)");
+  }
+}
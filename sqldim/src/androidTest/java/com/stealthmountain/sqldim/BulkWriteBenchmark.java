@@ -0,0 +1,96 @@
+package com.stealthmountain.sqldim;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteOpenHelper.Configuration;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import static android.database.sqlite.SQLiteDatabase.CONFLICT_NONE;
+import static com.stealthmountain.sqldim.TestDb.TABLE_EMPLOYEE;
+import static com.stealthmountain.sqldim.TestDb.employee;
+
+/**
+ * Compares {@link DimDatabase#insertAll} with a call to {@link DimDatabase#insert} per row, both in
+ * one transaction so the comparison leaves out the commit of each row outside of a transaction.
+ * See {@link Benchmarks}.
+ */
+public final class BulkWriteBenchmark {
+  @NonNull private static final String TAG = BulkWriteBenchmark.class.getSimpleName();
+  private static final int ROWS = 10000;
+  private static final int RUNS = 3;
+
+  @NonNull @Rule public final TemporaryFolder dbFolder = new TemporaryFolder();
+
+  @Test public void insertThroughput() throws IOException {
+    @NonNull final long[] perRow = new long[RUNS];
+    @NonNull final long[] bulk = new long[RUNS];
+    for (int run = 0; run < RUNS; run++) {
+      perRow[run] = measurePerRow(newDatabase(), rows(run));
+      bulk[run] = measureBulk(newDatabase(), rows(run));
+    }
+    final long perRowPerSecond = ROWS * 1000L / Math.max(Benchmarks.median(perRow), 1);
+    final long bulkPerSecond = ROWS * 1000L / Math.max(Benchmarks.median(bulk), 1);
+    Log.i(TAG, "rows/s: per row " + perRowPerSecond + ", insertAll " + bulkPerSecond);
+  }
+
+  @NonNull private DimDatabase<Object> newDatabase() throws IOException {
+    return new SqlDim.Builder<Object>().build().wrapDatabaseHelper(
+        new FrameworkSQLiteOpenHelperFactory().create(Configuration.builder(
+                InstrumentationRegistry.getInstrumentation().getTargetContext())
+            .callback(new TestDb())
+            .name(dbFolder.newFile().getPath())
+            .build()),
+        Schedulers.trampoline());
+  }
+
+  @NonNull private static List<ContentValues> rows(int run) {
+    @NonNull final List<ContentValues> rows = new ArrayList<>(ROWS);
+    for (int i = 0; i < ROWS; i++) {
+      rows.add(employee("user" + run + "_" + i, "User " + i));
+    }
+    return rows;
+  }
+
+  private static long measurePerRow(@NonNull DimDatabase<Object> db,
+                                    @NonNull List<ContentValues> rows) {
+    try {
+      final long start = System.nanoTime();
+      @NonNull final DimDatabase.Transaction<Object> transaction = db.newTransaction();
+      try {
+        for (ContentValues values : rows) {
+          db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, values);
+        }
+        transaction.markSuccessful();
+      } finally {
+        transaction.end();
+      }
+      return (System.nanoTime() - start) / 1000000;
+    } finally {
+      db.close();
+    }
+  }
+
+  private static long measureBulk(@NonNull DimDatabase<Object> db,
+                                  @NonNull List<ContentValues> rows) {
+    try {
+      final long start = System.nanoTime();
+      db.insertAll(TABLE_EMPLOYEE, CONFLICT_NONE, rows);
+      return (System.nanoTime() - start) / 1000000;
+    } finally {
+      db.close();
+    }
+  }
+}
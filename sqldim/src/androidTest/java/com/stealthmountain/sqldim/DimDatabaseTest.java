@@ -18,6 +18,7 @@ package com.stealthmountain.sqldim;
 import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteException;
 import android.os.Build;
@@ -46,29 +47,43 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableSource;
 import io.reactivex.rxjava3.core.ObservableTransformer;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.functions.Consumer;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.observers.TestObserver;
 import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
 
 import static android.database.sqlite.SQLiteDatabase.CONFLICT_IGNORE;
 import static android.database.sqlite.SQLiteDatabase.CONFLICT_NONE;
+import static android.database.sqlite.SQLiteDatabase.CONFLICT_REPLACE;
+import static android.database.sqlite.SQLiteDatabase.CONFLICT_ROLLBACK;
 import static com.google.common.truth.Truth.assertThat;
 import static com.stealthmountain.sqldim.SqlDim.MarkedQuery;
 import static com.stealthmountain.sqldim.SqlDim.Query;
 import static com.stealthmountain.sqldim.TestDb.BOTH_TABLES;
+import static com.stealthmountain.sqldim.TestDb.EmployeeTable.ID;
 import static com.stealthmountain.sqldim.TestDb.EmployeeTable.NAME;
 import static com.stealthmountain.sqldim.TestDb.EmployeeTable.USERNAME;
 import static com.stealthmountain.sqldim.TestDb.SELECT_EMPLOYEES;
@@ -78,6 +93,7 @@ import static com.stealthmountain.sqldim.TestDb.TABLE_MANAGER;
 import static com.stealthmountain.sqldim.TestDb.employee;
 import static com.stealthmountain.sqldim.TestDb.manager;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.fail;
 
@@ -90,6 +106,7 @@ public final class DimDatabaseTest {
 
   @NonNull @Rule public final TemporaryFolder dbFolder = new TemporaryFolder();
 
+  @Nullable private SupportSQLiteOpenHelper helper;
   @Nullable private SupportSQLiteDatabase real;
   @Nullable private DimDatabase<Object> db;
 
@@ -103,6 +120,7 @@ public final class DimDatabaseTest {
 
     @NonNull final Factory factory = new FrameworkSQLiteOpenHelperFactory();
     @NonNull final SupportSQLiteOpenHelper helper = factory.create(configuration);
+    this.helper = helper;
     real = helper.getWritableDatabase();
 
     @NonNull final SqlDim.Logger logger = new SqlDim.Logger() {
@@ -240,6 +258,34 @@ public final class DimDatabaseTest {
         new Employee("eve", "Eve Evenson"));
   }
 
+  @Test public void queryMapToListDiff() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    @NonNull final List<String> diffs = new ArrayList<>();
+    @NonNull final Disposable disposable = db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES)
+        .mapToListDiff(Employee.MAPPER, new Function<Employee, String>() {
+          @Override public String apply(Employee employee) {
+            return employee.username;
+          }
+        })
+        .subscribe(new Consumer<ListDiff<Employee>>() {
+          @Override public void accept(ListDiff<Employee> diff) {
+            diffs.add(diff.toString());
+          }
+        });
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "Johnny Johnson"));
+    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, employee("bob", "Robert Bobberson"),
+        USERNAME + " = ?", "bob");
+    db.delete(TABLE_EMPLOYEE, USERNAME + " = ?", "alice");
+    disposable.dispose();
+
+    assertThat(diffs).containsExactly(
+        "ListDiff[size=3, insert 0+3]",
+        "ListDiff[size=4, insert 3+1]",
+        "ListDiff[size=4, change 1+1]",
+        "ListDiff[size=3, remove 0+1]").inOrder();
+  }
+
   @Test public void queryMapToSpecificList() {
     @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
 
@@ -279,20 +325,811 @@ public final class DimDatabaseTest {
     o.assertErrorContains("no such table: missing");
   }
 
-  @Test public void queryWithArgs() {
+  @Test public void queryWithArgs() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(
+        TABLE_EMPLOYEE, SELECT_EMPLOYEES + " WHERE " + USERNAME + " = ?", "bob")
+        .subscribe(o);
+    o.assertCursor()
+        .hasRow("bob", "Bob Bobberson")
+        .isExhausted();
+  }
+
+  @Test public void queryObservesInsert() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+  }
+
+  @Test public void queryInitialValueAndTriggerUsesScheduler() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    scheduler.runTasksImmediately(false);
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertNoMoreEvents();
+    scheduler.triggerActions();
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    o.assertNoMoreEvents();
+    scheduler.triggerActions();
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+  }
+
+  @Test public void conflatedQueryRunsOnceForTriggersWaitingOnScheduler() {
+    @NonNull final SupportSQLiteOpenHelper helper = Objects.requireNonNull(this.helper);
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .conflateQueries(true)
+        .build()
+        .wrapDatabaseHelper(helper, scheduler);
+
+    scheduler.runTasksImmediately(false);
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertNoMoreEvents();
+    scheduler.triggerActions();
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("nick", "Nick Nickers"));
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("adam", "Adam Adamson"));
+    o.assertNoMoreEvents();
+    scheduler.triggerActions();
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .hasRow("nick", "Nick Nickers")
+        .hasRow("adam", "Adam Adamson")
+        .isExhausted();
+    o.assertNoMoreEvents();
+  }
+
+  @Test public void sharedQueryRunsOncePerTriggerForAllSubscribers() {
+    @NonNull final DimDatabase<Object> db = sharingDatabase();
+
+    @NonNull final RecordingObserver other = new RecordingObserver();
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(other);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+    other.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+    assertThat(queryLogCount()).isEqualTo(1);
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+    other.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+    assertThat(queryLogCount()).isEqualTo(2);
+    other.dispose();
+  }
+
+  @Test public void sharedQueryNotSharedAcrossDifferentArgs() {
+    @NonNull final DimDatabase<Object> db = sharingDatabase();
+
+    @NonNull final RecordingObserver other = new RecordingObserver();
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES + " WHERE " + USERNAME + " = ?", "alice")
+        .subscribe(o);
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES + " WHERE " + USERNAME + " = ?", "bob")
+        .subscribe(other);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .isExhausted();
+    other.assertCursor()
+        .hasRow("bob", "Bob Bobberson")
+        .isExhausted();
+    assertThat(queryLogCount()).isEqualTo(2);
+    other.dispose();
+  }
+
+  @Test public void sharedQueryRunsAgainAfterLastSubscriberDisposes() {
+    @NonNull final DimDatabase<Object> db = sharingDatabase();
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+    o.dispose();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    assertThat(queryLogCount()).isEqualTo(1);
+
+    @NonNull final RecordingObserver other = new RecordingObserver();
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(other);
+    other.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+    assertThat(queryLogCount()).isEqualTo(2);
+    other.dispose();
+  }
+
+  @Test public void cachedQueryAnsweredFromMemoryUntilTrigger() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .resultCache(1024 * 1024)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    @NonNull final QueryCache cache = Objects.requireNonNull(db.getQueryCache());
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+    @NonNull final RecordingObserver other = new RecordingObserver();
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(other);
+    other.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+    // The second subscriber's initial result is answered from the first one's.
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.putCount()).isEqualTo(1);
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+    other.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+    assertThat(cache.missCount()).isEqualTo(2);
+    assertThat(cache.hitCount()).isEqualTo(2);
+    assertThat(cache.invalidationCount()).isEqualTo(1);
+    other.dispose();
+  }
+
+  @Test public void cachedQueryDroppedByExecute() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .resultCache(1024 * 1024)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    @NonNull final QueryCache cache = Objects.requireNonNull(db.getQueryCache());
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    db.execute("INSERT INTO " + TABLE_EMPLOYEE + " (" + USERNAME + ", " + NAME + ")"
+        + " VALUES ('john', 'John Johnson')");
+    @NonNull final RecordingObserver other = new RecordingObserver();
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(other);
+    other.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+    assertThat(cache.hitCount()).isEqualTo(0);
+    o.assertNoMoreEvents();
+    other.dispose();
+  }
+
+  @Test public void cachedQueryBypassedInTransaction() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .resultCache(1024 * 1024)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    @NonNull final QueryCache cache = Objects.requireNonNull(db.getQueryCache());
+
+    db.query(SELECT_EMPLOYEES).close();
+    @NonNull final Transaction<Object> transaction = db.newTransaction();
+    try {
+      db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+      @NonNull final Cursor cursor = db.query(SELECT_EMPLOYEES);
+      assertThat(cursor.getCount()).isEqualTo(4);
+      cursor.close();
+    } finally {
+      transaction.end();
+    }
+    assertThat(cache.hitCount()).isEqualTo(0);
+
+    // The rolled back insert is not visible, and nothing from inside the transaction was cached.
+    @NonNull final Cursor cursor = db.query(SELECT_EMPLOYEES);
+    assertThat(cursor.getCount()).isEqualTo(3);
+    cursor.close();
+  }
+
+  @Test public void oneShotQueryBypassesResultCache() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .resultCache(1024 * 1024)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    @NonNull final QueryCache cache = Objects.requireNonNull(db.getQueryCache());
+
+    db.query(SELECT_EMPLOYEES).close();
+    // A write sending no trigger is still visible to the next query.
+    db.execute("INSERT INTO " + TABLE_EMPLOYEE + " (" + USERNAME + ", " + NAME + ") "
+        + "VALUES ('john', 'John Johnson')");
+    @NonNull final Cursor cursor = db.query(SELECT_EMPLOYEES);
+    assertThat(cursor.getCount()).isEqualTo(4);
+    cursor.close();
+    assertThat(cache.missCount()).isEqualTo(0);
+    assertThat(cache.putCount()).isEqualTo(0);
+  }
+
+  @Test public void cachedQueryTooLargeToCacheIsReadFromDatabase() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .resultCache(1)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    @NonNull final QueryCache cache = Objects.requireNonNull(db.getQueryCache());
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+    assertThat(cache.putCount()).isEqualTo(0);
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @NonNull private DimDatabase<Object> sharingDatabase() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .logger(new SqlDim.Logger() {
+          @Override public void log(@NonNull String message) {
+            logs.add(message);
+          }
+        })
+        .shareQueries(true)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    db.setLoggingEnabled(true);
+    return db;
+  }
+
+  private int queryLogCount() {
+    int count = 0;
+    for (String log : logs) {
+      if (log.startsWith("QUERY")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test public void queryNotNotifiedWhenInsertFails() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_IGNORE, employee("bob", "Bob Bobberson"));
+    o.assertNoMoreEvents();
+  }
+
+  @Test public void queryNotNotifiedWhenQueryTransformerUnsubscribes() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    killSwitch.onNext("kill");
+    o.assertIsCompleted();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    o.assertNoMoreEvents();
+  }
+
+  @Test public void queryObservesUpdate() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    @NonNull final ContentValues values = new ContentValues();
+    values.put(NAME, "Robert Bobberson");
+    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, values, USERNAME + " = 'bob'");
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Robert Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+  }
+
+  @Test public void queryNotNotifiedWhenUpdateAffectsZeroRows() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    @NonNull final ContentValues values = new ContentValues();
+    values.put(NAME, "John Johnson");
+    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, values, USERNAME + " = 'john'");
+    o.assertNoMoreEvents();
+  }
+
+  @Test public void queryObservesDelete() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    db.delete(TABLE_EMPLOYEE, USERNAME + " = 'bob'");
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+  }
+
+  @Test public void queryNotNotifiedWhenDeleteAffectsZeroRows() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    db.delete(TABLE_EMPLOYEE, USERNAME + " = 'john'");
+    o.assertNoMoreEvents();
+  }
+
+  @Test public void keyedQueryOnlyNotifiedForItsRows() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    final long aliceId = employeeId(db, "alice");
+    final long bobId = employeeId(db, "bob");
+
+    db.createQuery(TABLE_EMPLOYEE, Collections.singleton(aliceId),
+        SELECT_EMPLOYEES + " WHERE " + ID + " = ?", aliceId).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .isExhausted();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    db.update(TABLE_EMPLOYEE, Collections.singleton(bobId), CONFLICT_NONE,
+        employee("bob", "Robert Bobberson"), ID + " = ?", String.valueOf(bobId));
+    db.delete(TABLE_EMPLOYEE, Collections.singleton(bobId), ID + " = ?", String.valueOf(bobId));
+    o.assertNoMoreEvents();
+
+    db.update(TABLE_EMPLOYEE, Collections.singleton(aliceId), CONFLICT_NONE,
+        employee("alice", "Alice Jones"), ID + " = ?", String.valueOf(aliceId));
+    o.assertCursor()
+        .hasRow("alice", "Alice Jones")
+        .isExhausted();
+  }
+
+  @Test public void keyedQueryNotifiedByUnkeyedWrites() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    final long aliceId = employeeId(db, "alice");
+
+    db.createQuery(TABLE_EMPLOYEE, Collections.singleton(aliceId),
+        SELECT_EMPLOYEES + " WHERE " + ID + " = ?", aliceId).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .isExhausted();
+
+    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, employee("bob", "Robert Bobberson"),
+        USERNAME + " = 'bob'");
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .isExhausted();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_REPLACE, employee("john", "John Johnson"));
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .isExhausted();
+  }
+
+  @Test public void keyedQueryNotifiedOnceForTransactionTouchingItsRow() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    final long aliceId = employeeId(db, "alice");
+    final long bobId = employeeId(db, "bob");
+
+    db.createQuery(TABLE_EMPLOYEE, Collections.singleton(aliceId),
+        SELECT_EMPLOYEES + " WHERE " + ID + " = ?", aliceId).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .isExhausted();
+
+    try (Transaction<Object> transaction = db.newTransaction()) {
+      db.update(TABLE_EMPLOYEE, Collections.singleton(bobId), CONFLICT_NONE,
+          employee("bob", "Robert Bobberson"), ID + " = ?", String.valueOf(bobId));
+      transaction.markSuccessful();
+    }
+    o.assertNoMoreEvents();
+
+    try (Transaction<Object> transaction = db.newTransaction()) {
+      db.update(TABLE_EMPLOYEE, Collections.singleton(bobId), CONFLICT_NONE,
+          employee("bob", "Bob Bobberson"), ID + " = ?", String.valueOf(bobId));
+      db.update(TABLE_EMPLOYEE, Collections.singleton(aliceId), CONFLICT_NONE,
+          employee("alice", "Alice Jones"), ID + " = ?", String.valueOf(aliceId));
+      transaction.markSuccessful();
+    }
+    o.assertCursor()
+        .hasRow("alice", "Alice Jones")
+        .isExhausted();
+    o.assertNoMoreEvents();
+  }
+
+  @Test public void queryWithColumnsOnlyNotifiedForThoseColumns() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(TABLE_EMPLOYEE, new String[] { USERNAME },
+        "SELECT " + USERNAME + " FROM " + TABLE_EMPLOYEE + " ORDER BY " + ID).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice")
+        .hasRow("bob")
+        .hasRow("eve")
+        .isExhausted();
+
+    @NonNull final ContentValues name = new ContentValues();
+    name.put(NAME, "Robert Bobberson");
+    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, name, USERNAME + " = 'bob'");
+    o.assertNoMoreEvents();
+
+    @NonNull final ContentValues username = new ContentValues();
+    username.put(USERNAME.toUpperCase(Locale.US), "robert");
+    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, username, USERNAME + " = 'bob'");
+    o.assertCursor()
+        .hasRow("alice")
+        .hasRow("robert")
+        .hasRow("eve")
+        .isExhausted();
+
+    db.delete(TABLE_EMPLOYEE, USERNAME + " = 'robert'");
+    o.assertCursor()
+        .hasRow("alice")
+        .hasRow("eve")
+        .isExhausted();
+  }
+
+  @Test public void inferredColumnsOnlyNotifiedForNamedColumns() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .inferQueryColumns(true)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+
+    db.createQuery(TABLE_EMPLOYEE,
+        "SELECT " + USERNAME + " FROM " + TABLE_EMPLOYEE + " ORDER BY " + NAME).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice")
+        .hasRow("bob")
+        .hasRow("eve")
+        .isExhausted();
+    @NonNull final RecordingObserver count = new RecordingObserver();
+    db.createQuery(TABLE_EMPLOYEE, "SELECT COUNT(*) FROM " + TABLE_EMPLOYEE).subscribe(count);
+    count.assertCursor()
+        .hasRow("3")
+        .isExhausted();
+
+    @NonNull final ContentValues id = new ContentValues();
+    id.put(ID, 10);
+    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, id, USERNAME + " = 'bob'");
+    o.assertNoMoreEvents();
+    count.assertCursor()
+        .hasRow("3")
+        .isExhausted();
+
+    @NonNull final ContentValues name = new ContentValues();
+    name.put(NAME, "Zach Bobberson");
+    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, name, USERNAME + " = 'bob'");
+    o.assertCursor()
+        .hasRow("alice")
+        .hasRow("eve")
+        .hasRow("bob")
+        .isExhausted();
+    count.assertCursor()
+        .hasRow("3")
+        .isExhausted();
+    count.dispose();
+  }
+
+  @SdkSuppress(minSdkVersion = Build.VERSION_CODES.JELLY_BEAN)
+  @Test public void queryTimeoutCancelsLongQuery() {
+    @NonNull final String endless = "WITH RECURSIVE c(x) AS"
+        + " (SELECT 1 UNION ALL SELECT x + 1 FROM c) SELECT count(*) FROM c WHERE x > ?";
+    @NonNull final List<String> timedOut = new ArrayList<>();
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .queryTimeout(1, MINUTES)
+        .queryTimeout(endless, 100, MILLISECONDS)
+        .queryTimeoutListener(new SqlDim.QueryTimeoutListener() {
+          @Override public void onQueryTimeout(@NonNull String sql, @NonNull List<Object> args,
+                                               long elapsedMillis) {
+            assertThat(elapsedMillis).isAtLeast(100L);
+            timedOut.add(sql + " " + args);
+          }
+        })
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+
+    try {
+      db.query(endless, 0).close();
+      fail();
+    } catch (QueryTimeoutException e) {
+      assertThat(e.getMessage()).contains(endless);
+    }
+    assertThat(timedOut).containsExactly(endless + " [0]");
+
+    // Queries within their timeout are unaffected.
+    try (Cursor cursor = db.query(SELECT_EMPLOYEES)) {
+      assertThat(cursor.getCount()).isEqualTo(3);
+    }
+  }
+
+  @SdkSuppress(minSdkVersion = Build.VERSION_CODES.JELLY_BEAN)
+  @Test public void queryTimeoutElapsingAsFirstWindowFillsFailsQuery() {
+    @NonNull final io.reactivex.rxjava3.schedulers.TestScheduler watchdogScheduler =
+        new io.reactivex.rxjava3.schedulers.TestScheduler();
+    @NonNull final QueryWatchdog watchdog = new QueryWatchdog(MINUTES.toNanos(1),
+        Collections.<String, Long>emptyMap(), null, watchdogScheduler);
+    @NonNull final SupportSQLiteDatabase real =
+        Objects.requireNonNull(helper).getReadableDatabase();
+    @NonNull final SupportSQLiteDatabase db = (SupportSQLiteDatabase) Proxy.newProxyInstance(
+        SupportSQLiteDatabase.class.getClassLoader(),
+        new Class<?>[] { SupportSQLiteDatabase.class },
+        new InvocationHandler() {
+          @Override public Object invoke(Object proxy, Method method, Object[] args)
+              throws Throwable {
+            @Nullable final Object result;
+            try {
+              result = method.invoke(real, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+            if (!(result instanceof Cursor)) {
+              return result;
+            }
+            return new CursorWrapper((Cursor) result) {
+              @Override public int getCount() {
+                final int count = super.getCount();
+                // The timeout elapses just as the first window is filled.
+                watchdogScheduler.advanceTimeBy(1, MINUTES);
+                return count;
+              }
+            };
+          }
+        });
+
+    try {
+      watchdog.query(db, new SimpleSQLiteQuery(SELECT_EMPLOYEES), null).close();
+      fail();
+    } catch (QueryTimeoutException e) {
+      assertThat(e.getMessage()).contains(SELECT_EMPLOYEES);
+    }
+  }
+
+  @Test public void asyncWritesCommitInGroups() throws InterruptedException {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .groupCommit(3, 1, MINUTES)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    @NonNull final TestObserver<Long> john =
+        db.insertAsync(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson")).test();
+    @NonNull final TestObserver<Void> missing =
+        db.executeAndTriggerAsync("missing", "INSERT INTO missing VALUES (1)").test();
+    john.assertEmpty(); // Waiting for its group to fill.
+
+    // The third write fills the group, which commits without waiting for the window.
+    @NonNull final TestObserver<Long> jane =
+        db.insertAsync(TABLE_EMPLOYEE, CONFLICT_NONE, employee("jane", "Jane Janeson")).test();
+    assertThat(jane.await(10, SECONDS)).isTrue();
+    jane.assertValueCount(1);
+    john.assertValueCount(1);
+    missing.assertError(SQLiteException.class); // Fails alone.
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .hasRow("jane", "Jane Janeson")
+        .isExhausted();
+  }
+
+  @Test public void closeShutsDownTheWriterOnceItsWritesHaveRun() throws InterruptedException {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    @NonNull final Scheduler writer = db.getWriteScheduler();
+    @NonNull final CountDownLatch ran = new CountDownLatch(1);
+    writer.scheduleDirect(new Runnable() {
+      @Override public void run() {
+        ran.countDown();
+      }
+    }, 10, MILLISECONDS);
+
+    db.close();
+    assertThat(ran.await(10, SECONDS)).isTrue();
+
+    // A new writer thread is started for writes after close.
+    @NonNull final CountDownLatch ranAfterClose = new CountDownLatch(1);
+    writer.scheduleDirect(new Runnable() {
+      @Override public void run() {
+        ranAfterClose.countDown();
+      }
+    });
+    assertThat(ranAfterClose.await(10, SECONDS)).isTrue();
+  }
+
+  @Test public void writerRunsOneTaskAtATimeAcrossClose() throws InterruptedException {
     @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    @NonNull final Scheduler.Worker worker = db.getWriteScheduler().createWorker();
+    @NonNull final AtomicInteger running = new AtomicInteger();
+    @NonNull final AtomicInteger overlaps = new AtomicInteger();
+    @NonNull final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    @NonNull final CountDownLatch ran = new CountDownLatch(3);
+    @NonNull final CountDownLatch firstStarted = new CountDownLatch(1);
+    @NonNull final Scheduler writer = db.getWriteScheduler();
+    worker.schedule(new Runnable() {
+      @Override public void run() {
+        firstStarted.countDown();
+        if (running.getAndIncrement() != 0) overlaps.incrementAndGet();
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        order.add(1);
+        running.decrementAndGet();
+        ran.countDown();
+      }
+    });
+    assertThat(firstStarted.await(10, SECONDS)).isTrue();
 
-    db.createQuery(
-        TABLE_EMPLOYEE, SELECT_EMPLOYEES + " WHERE " + USERNAME + " = ?", "bob")
-        .subscribe(o);
-    o.assertCursor()
-        .hasRow("bob", "Bob Bobberson")
-        .isExhausted();
+    db.close();
+    // Scheduled on the writer while the old thread is still running the first task.
+    writer.scheduleDirect(new Runnable() {
+      @Override public void run() {
+        if (running.getAndIncrement() != 0) overlaps.incrementAndGet();
+        running.decrementAndGet();
+        ran.countDown();
+      }
+    });
+    worker.schedule(new Runnable() {
+      @Override public void run() {
+        if (running.getAndIncrement() != 0) overlaps.incrementAndGet();
+        order.add(2);
+        running.decrementAndGet();
+        ran.countDown();
+      }
+    });
+
+    assertThat(ran.await(10, SECONDS)).isTrue();
+    assertThat(order).containsExactly(1, 2).inOrder();
+    assertThat(overlaps.get()).isEqualTo(0);
+    worker.dispose();
+  }
+
+  @Test public void closeShutsDownTheReadersOfAPool() throws InterruptedException {
+    @NonNull final SupportSQLiteOpenHelper helper = Objects.requireNonNull(this.helper);
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .build()
+        .wrapDatabaseHelper(helper, 2);
+    @NonNull final Thread reader = db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES)
+        .map(new Function<Query, Thread>() {
+          @Override public Thread apply(Query query) {
+            return Thread.currentThread();
+          }
+        })
+        .blockingFirst();
+    assertThat(reader.getName()).startsWith("SqlDim reader");
+
+    db.close();
+    reader.join(SECONDS.toMillis(10));
+    assertThat(reader.isAlive()).isFalse();
+  }
+
+  @Test public void subscribeAfterCloseStartsNewReaders() {
+    @NonNull final SupportSQLiteOpenHelper helper = Objects.requireNonNull(this.helper);
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .build()
+        .wrapDatabaseHelper(helper, 2);
+    @NonNull final Function<Query, String> readerName = new Function<Query, String>() {
+      @Override public String apply(Query query) {
+        return Thread.currentThread().getName();
+      }
+    };
+    @NonNull final TestObserver<String> before =
+        db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).map(readerName).test();
+    before.awaitCount(1);
+
+    db.close();
+    @NonNull final TestObserver<String> after =
+        db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).map(readerName).test();
+    after.awaitCount(1);
+    after.assertNoErrors();
+    assertThat(after.values().get(0)).startsWith("SqlDim reader");
+
+    // Subscriptions made before close are re-queried on the new readers too.
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    before.awaitCount(2);
+    before.assertNoErrors();
+    assertThat(before.values().get(1)).startsWith("SqlDim reader");
+    before.dispose();
+    after.dispose();
+    db.close();
   }
 
-  @Test public void queryObservesInsert() {
+  @Test public void insertAllInsertsRowsWithOneTrigger() {
     @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
-
     db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
     o.assertCursor()
         .hasRow("alice", "Alice Allison")
@@ -300,42 +1137,84 @@ public final class DimDatabaseTest {
         .hasRow("eve", "Eve Evenson")
         .isExhausted();
 
-    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    final int inserted = db.insertAll(TABLE_EMPLOYEE, CONFLICT_IGNORE, Arrays.asList(
+        employee("john", "John Johnson"),
+        employee("alice", "Alice Again"),
+        employee("nick", "Nick Nickers")));
+    assertThat(inserted).isEqualTo(2);
     o.assertCursor()
         .hasRow("alice", "Alice Allison")
         .hasRow("bob", "Bob Bobberson")
         .hasRow("eve", "Eve Evenson")
         .hasRow("john", "John Johnson")
+        .hasRow("nick", "Nick Nickers")
         .isExhausted();
   }
 
-  @Test public void queryInitialValueAndTriggerUsesScheduler() {
+  @Test public void insertAllCountsReplacedRowsOfTheSameKey() {
     @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    @NonNull final ContentValues john = employee("john", "John Johnson");
+    john.put(ID, 10);
+    @NonNull final ContentValues jon = employee("jon", "Jon Johnson");
+    jon.put(ID, 10);
 
-    scheduler.runTasksImmediately(false);
+    assertThat(db.insertAll(TABLE_EMPLOYEE, CONFLICT_REPLACE, Arrays.asList(john, jon)))
+        .isEqualTo(2);
+    assertThat(db.queryForString("SELECT " + USERNAME + " FROM " + TABLE_EMPLOYEE
+        + " WHERE " + ID + " = 10")).isEqualTo("jon");
+  }
+
+  @Test public void insertAllRejectsConflictRollback() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    try (Transaction<Object> transaction = db.newTransaction()) {
+      db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+      try {
+        db.insertAll(TABLE_EMPLOYEE, CONFLICT_ROLLBACK,
+            Collections.singletonList(employee("jon", "Jon Johnson")));
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertThat(e).hasMessageThat().contains("CONFLICT_ROLLBACK");
+      }
+      transaction.markSuccessful();
+    }
+
+    // The enclosing transaction was left to commit the row inserted before.
+    assertThat(db.queryForLong("SELECT COUNT(*) FROM " + TABLE_EMPLOYEE)).isEqualTo(4);
+  }
 
+  @Test public void upsertAllUpdatesExistingRowsAndInsertsOthers() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
     db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
-    o.assertNoMoreEvents();
-    scheduler.triggerActions();
     o.assertCursor()
         .hasRow("alice", "Alice Allison")
         .hasRow("bob", "Bob Bobberson")
         .hasRow("eve", "Eve Evenson")
         .isExhausted();
 
-    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
-    o.assertNoMoreEvents();
-    scheduler.triggerActions();
+    final int written = db.upsertAll(TABLE_EMPLOYEE, USERNAME, Arrays.asList(
+        employee("bob", "Robert Bobberson"),
+        employee("john", "John Johnson")));
+    assertThat(written).isEqualTo(2);
     o.assertCursor()
         .hasRow("alice", "Alice Allison")
-        .hasRow("bob", "Bob Bobberson")
+        .hasRow("bob", "Robert Bobberson")
         .hasRow("eve", "Eve Evenson")
         .hasRow("john", "John Johnson")
         .isExhausted();
   }
 
-  @Test public void queryNotNotifiedWhenInsertFails() {
+  @Test public void upsertAllRejectsNullKeys() {
     @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    @NonNull final ContentValues nullKey = employee("john", "John Johnson");
+    nullKey.putNull(USERNAME);
+    try {
+      db.upsertAll(TABLE_EMPLOYEE, USERNAME, Arrays.asList(
+          employee("bob", "Robert Bobberson"),
+          nullKey));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageThat().startsWith("Row has a null " + USERNAME);
+    }
 
     db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
     o.assertCursor()
@@ -343,13 +1222,43 @@ public final class DimDatabaseTest {
         .hasRow("bob", "Bob Bobberson")
         .hasRow("eve", "Eve Evenson")
         .isExhausted();
+  }
 
-    db.insert(TABLE_EMPLOYEE, CONFLICT_IGNORE, employee("bob", "Bob Bobberson"));
-    o.assertNoMoreEvents();
+  @Test public void deleteByIdsChunksIdsWithOneTrigger() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    @NonNull final List<ContentValues> rows = new ArrayList<>();
+    for (int i = 0; i < 1500; i++) {
+      rows.add(employee("user" + i, "User " + i));
+    }
+    assertThat(db.insertAll(TABLE_EMPLOYEE, CONFLICT_NONE, rows)).isEqualTo(1500);
+    @NonNull final List<Long> ids = new ArrayList<>();
+    try (Cursor cursor = db.query(
+        "SELECT " + ID + " FROM " + TABLE_EMPLOYEE + " WHERE " + USERNAME + " LIKE 'user%'")) {
+      while (cursor.moveToNext()) {
+        ids.add(cursor.getLong(0));
+      }
+    }
+    assertThat(ids).hasSize(1500);
+
+    db.createQuery(TABLE_EMPLOYEE, "SELECT COUNT(*) FROM " + TABLE_EMPLOYEE).subscribe(o);
+    o.assertCursor()
+        .hasRow("1503")
+        .isExhausted();
+    assertThat(db.deleteByIds(TABLE_EMPLOYEE, ids)).isEqualTo(1500);
+    o.assertCursor()
+        .hasRow("3")
+        .isExhausted();
   }
 
-  @Test public void queryNotNotifiedWhenQueryTransformerUnsubscribes() {
+  @Test public void deleteByIdsRejectsNullIds() {
     @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    final long aliceId = employeeId(db, "alice");
+    try {
+      db.deleteByIds(TABLE_EMPLOYEE, Arrays.asList(aliceId, null));
+      fail();
+    } catch (NullPointerException e) {
+      assertThat(e).hasMessageThat().isEqualTo("ids[1] == null");
+    }
 
     db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
     o.assertCursor()
@@ -357,17 +1266,14 @@ public final class DimDatabaseTest {
         .hasRow("bob", "Bob Bobberson")
         .hasRow("eve", "Eve Evenson")
         .isExhausted();
-
-    killSwitch.onNext("kill");
-    o.assertIsCompleted();
-
-    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
-    o.assertNoMoreEvents();
   }
 
-  @Test public void queryObservesUpdate() {
-    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
-
+  @Test public void statementCacheReusesStatementsUntilSchemaChanges() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .statementCache(8)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    @NonNull final StatementCache cache = Objects.requireNonNull(db.getStatementCache());
     db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
     o.assertCursor()
         .hasRow("alice", "Alice Allison")
@@ -375,34 +1281,280 @@ public final class DimDatabaseTest {
         .hasRow("eve", "Eve Evenson")
         .isExhausted();
 
-    @NonNull final ContentValues values = new ContentValues();
-    values.put(NAME, "Robert Bobberson");
-    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, values, USERNAME + " = 'bob'");
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("jane", "Jane Janeson"));
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.hitCount()).isEqualTo(1);
     o.assertCursor()
         .hasRow("alice", "Alice Allison")
-        .hasRow("bob", "Robert Bobberson")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
         .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .hasRow("jane", "Jane Janeson")
         .isExhausted();
+
+    @NonNull final String count =
+        "SELECT COUNT(*) FROM " + TABLE_EMPLOYEE + " WHERE " + USERNAME + " LIKE ?";
+    assertThat(db.queryForLong(count, "j%")).isEqualTo(2);
+    assertThat(db.queryForLong(count, "%")).isEqualTo(5);
+    assertThat(cache.hitCount()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(2);
+
+    db.execute("CREATE TABLE other (value TEXT)");
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(db.queryForLong(count, "%")).isEqualTo(5);
+    assertThat(cache.missCount()).isEqualTo(3);
   }
 
-  @Test public void queryNotNotifiedWhenUpdateAffectsZeroRows() {
+  @Test public void statementCacheKeepsStatementsAcrossSchemaChangeMadeDirectly() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .statementCache(8)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    @NonNull final StatementCache cache = Objects.requireNonNull(db.getStatementCache());
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    assertThat(cache.size()).isEqualTo(1);
+
+    // SQLite compiles the cached insert again for the altered table.
+    db.getWritableDatabase().execSQL("ALTER TABLE " + TABLE_EMPLOYEE + " ADD COLUMN extra TEXT");
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("jane", "Jane Janeson"));
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(db.queryForLong("SELECT COUNT(*) FROM " + TABLE_EMPLOYEE)).isEqualTo(5);
+  }
+
+  @Test public void statementInUseWhileCacheEmptiedIsNotCachedAgain() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .statementCache(8)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    @NonNull final StatementCache cache = Objects.requireNonNull(db.getStatementCache());
+    @NonNull final SupportSQLiteDatabase sqlite = db.getWritableDatabase();
+    @NonNull final String sql = "SELECT COUNT(*) FROM " + TABLE_EMPLOYEE;
+    @NonNull final SupportSQLiteStatement statement = cache.acquire(sqlite, sql);
+
+    cache.evictAll();
+    cache.release(sqlite, sql, statement);
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(db.queryForLong(sql)).isEqualTo(3);
+    assertThat(cache.missCount()).isEqualTo(2);
+  }
+
+  @Test public void statementCacheInsertThrowsOnConstraintViolation() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .statementCache(8)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    try {
+      db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("alice", "Alice Again"));
+      fail();
+    } catch (SQLException ignored) {
+    }
+    assertThat(db.insert(TABLE_EMPLOYEE, CONFLICT_IGNORE, employee("alice", "Alice Again")))
+        .isEqualTo(-1);
+  }
+
+  @Test public void bindingsBindTypedArgumentsForQueriesAndWrites() {
     @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+    @NonNull final Bindings args = new Bindings();
+    args.bindString(1, "j%");
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES + " WHERE " + USERNAME + " LIKE ?", args)
+        .subscribe(o);
+    o.assertCursor()
+        .isExhausted();
 
-    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    @NonNull final String insert =
+        "INSERT INTO " + TABLE_EMPLOYEE + " (" + USERNAME + ", " + NAME + ") VALUES (?, ?)";
+    args.clearBindings(); // The observable query keeps its own copy.
+    args.bindString(1, "john");
+    args.bindString(2, "John Johnson");
+    assertThat(db.executeInsert(TABLE_EMPLOYEE, insert, args)).isNotEqualTo(-1);
+    o.assertCursor()
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+
+    args.clearBindings();
+    args.bindString(1, "Johnny Johnson");
+    args.bindString(2, "john");
+    assertThat(db.executeUpdateDelete(TABLE_EMPLOYEE,
+        "UPDATE " + TABLE_EMPLOYEE + " SET " + NAME + " = ? WHERE " + USERNAME + " = ?", args))
+        .isEqualTo(1);
+    o.assertCursor()
+        .hasRow("john", "Johnny Johnson")
+        .isExhausted();
+
+    args.clearBindings();
+    args.bindString(1, "john");
+    @NonNull final String selectId =
+        "SELECT " + ID + " FROM " + TABLE_EMPLOYEE + " WHERE " + USERNAME + " = ?";
+    final long id = db.queryForLong(selectId, args);
+    args.clearBindings();
+    args.bindLong(1, id);
+    assertThat(db.queryForString(
+        "SELECT " + NAME + " FROM " + TABLE_EMPLOYEE + " WHERE " + ID + " = ?", args))
+        .isEqualTo("Johnny Johnson");
+    try (Cursor cursor = db.query(
+        "SELECT " + USERNAME + " FROM " + TABLE_EMPLOYEE + " WHERE " + ID + " = ?", args)) {
+      assertThat(cursor.moveToNext()).isTrue();
+      assertThat(cursor.getString(0)).isEqualTo("john");
+    }
+  }
+
+  @Test public void cascadedTriggersNotifyDependentViewsAndTables() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .cascadeTriggers(true)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    db.execute("PRAGMA foreign_keys = ON");
+    db.execute("CREATE VIEW employee_name AS SELECT " + NAME + " FROM " + TABLE_EMPLOYEE);
+    db.execute("CREATE TABLE audit (" + NAME + " TEXT NOT NULL)");
+    db.execute("CREATE TRIGGER audit_delete AFTER DELETE ON " + TABLE_EMPLOYEE
+        + " BEGIN INSERT INTO audit VALUES (old." + NAME + "); END");
+    db.execute("CREATE TABLE badge (employee_id INTEGER NOT NULL"
+        + " REFERENCES " + TABLE_EMPLOYEE + "(" + ID + ") ON DELETE CASCADE)");
+    db.execute("INSERT INTO badge SELECT " + ID + " FROM " + TABLE_EMPLOYEE);
+
+    db.createQuery("employee_name", "SELECT " + NAME + " FROM employee_name").subscribe(o);
+    o.assertCursor()
+        .hasRow("Alice Allison")
+        .hasRow("Bob Bobberson")
+        .hasRow("Eve Evenson")
+        .isExhausted();
+    @NonNull final RecordingObserver audit = new RecordingObserver();
+    db.createQuery("audit", "SELECT " + NAME + " FROM audit").subscribe(audit);
+    audit.assertCursor()
+        .isExhausted();
+    @NonNull final RecordingObserver badges = new RecordingObserver();
+    db.createQuery("badge", "SELECT COUNT(*) FROM badge").subscribe(badges);
+    badges.assertCursor()
+        .hasRow("3")
+        .isExhausted();
+
+    db.delete(TABLE_EMPLOYEE, USERNAME + " = ?", "bob");
+    o.assertCursor()
+        .hasRow("Alice Allison")
+        .hasRow("Eve Evenson")
+        .isExhausted();
+    audit.assertCursor()
+        .hasRow("Bob Bobberson")
+        .isExhausted();
+    badges.assertCursor()
+        .hasRow("2")
+        .isExhausted();
+    audit.dispose();
+    badges.dispose();
+  }
+
+  @Test public void cascadedTriggersSeeViewsCreatedAfterTheFirstTrigger() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .cascadeTriggers(true)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    db.delete(TABLE_EMPLOYEE, USERNAME + " = ?", "eve");
+    db.execute("CREATE VIEW employee_name AS SELECT " + NAME + " FROM " + TABLE_EMPLOYEE);
+
+    db.createQuery("employee_name", "SELECT " + NAME + " FROM employee_name").subscribe(o);
+    o.assertCursor()
+        .hasRow("Alice Allison")
+        .hasRow("Bob Bobberson")
+        .isExhausted();
+
+    db.delete(TABLE_EMPLOYEE, USERNAME + " = ?", "bob");
+    o.assertCursor()
+        .hasRow("Alice Allison")
+        .isExhausted();
+  }
+
+  @Test public void cascadedTriggersSeeViewsCreatedAroundTheDatabase() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .cascadeTriggers(true)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    db.delete(TABLE_EMPLOYEE, USERNAME + " = ?", "eve");
+    db.getWritableDatabase()
+        .execSQL("CREATE VIEW employee_name AS SELECT " + NAME + " FROM " + TABLE_EMPLOYEE);
+
+    db.createQuery("employee_name", "SELECT " + NAME + " FROM employee_name").subscribe(o);
+    o.assertCursor()
+        .hasRow("Alice Allison")
+        .hasRow("Bob Bobberson")
+        .isExhausted();
+
+    db.delete(TABLE_EMPLOYEE, USERNAME + " = ?", "bob");
+    o.assertCursor()
+        .hasRow("Alice Allison")
+        .isExhausted();
+  }
+
+  @Test public void queryFlowableKeepsLatestQueryUntilRequested() {
+    @NonNull final TestSubscriber<Query> s =
+        db.createQueryFlowable(TABLE_EMPLOYEE, SELECT_EMPLOYEES).test(1);
+    s.assertValueCount(1);
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("nick", "Nick Nickers"));
+    s.assertValueCount(1);
+
+    s.request(2);
+    s.assertValueCount(2);
+    @NonNull final Cursor cursor = Objects.requireNonNull(s.values().get(1).run());
+    try {
+      assertThat(cursor.getCount()).isEqualTo(5);
+    } finally {
+      cursor.close();
+    }
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("jane", "Jane Janeson"));
+    s.assertValueCount(3);
+    s.cancel();
+  }
+
+  @Test public void capturedChangesNotifyQueriesForTheirRows() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .captureChanges(true)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    db.installChangeCapture(db.getWritableDatabase());
+    final long aliceId = employeeId(db, "alice");
+
+    db.createQuery(TABLE_EMPLOYEE, Collections.singleton(aliceId),
+        SELECT_EMPLOYEES + " WHERE " + ID + " = ?", aliceId).subscribe(o);
     o.assertCursor()
         .hasRow("alice", "Alice Allison")
-        .hasRow("bob", "Bob Bobberson")
-        .hasRow("eve", "Eve Evenson")
         .isExhausted();
 
-    @NonNull final ContentValues values = new ContentValues();
-    values.put(NAME, "John Johnson");
-    db.update(TABLE_EMPLOYEE, CONFLICT_NONE, values, USERNAME + " = 'john'");
+    db.execute("UPDATE " + TABLE_EMPLOYEE + " SET " + NAME + " = 'Bob' WHERE "
+        + USERNAME + " = 'bob'");
+    o.assertNoMoreEvents();
+
+    db.execute("UPDATE " + TABLE_EMPLOYEE + " SET " + NAME + " = 'Alice' WHERE "
+        + USERNAME + " = 'alice'");
+    o.assertCursor()
+        .hasRow("alice", "Alice")
+        .isExhausted();
+
+    db.getWritableDatabase().execSQL("UPDATE " + TABLE_EMPLOYEE + " SET " + NAME
+        + " = 'Alice Jones' WHERE " + USERNAME + " = 'alice'");
     o.assertNoMoreEvents();
+    db.triggerCapturedChanges();
+    o.assertCursor()
+        .hasRow("alice", "Alice Jones")
+        .isExhausted();
   }
 
-  @Test public void queryObservesDelete() {
-    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+  @Test public void capturedChangesOfTransactionSentOnCommit() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .captureChanges(true)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    db.installChangeCapture(db.getWritableDatabase());
 
     db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
     o.assertCursor()
@@ -411,15 +1563,37 @@ public final class DimDatabaseTest {
         .hasRow("eve", "Eve Evenson")
         .isExhausted();
 
-    db.delete(TABLE_EMPLOYEE, USERNAME + " = 'bob'");
+    @NonNull final Transaction rollback = db.newTransaction();
+    try {
+      db.execute("DELETE FROM " + TABLE_EMPLOYEE + " WHERE " + USERNAME + " = 'bob'");
+    } finally {
+      rollback.end();
+    }
+    db.triggerCapturedChanges();
+    o.assertNoMoreEvents();
+
+    @NonNull final Transaction transaction = db.newTransaction();
+    try {
+      db.execute("DELETE FROM " + TABLE_EMPLOYEE + " WHERE " + USERNAME + " = 'bob'");
+      db.execute("UPDATE " + TABLE_EMPLOYEE + " SET " + NAME + " = 'Alice' WHERE "
+          + USERNAME + " = 'alice'");
+      o.assertNoMoreEvents();
+      transaction.markSuccessful();
+    } finally {
+      transaction.end();
+    }
     o.assertCursor()
-        .hasRow("alice", "Alice Allison")
+        .hasRow("alice", "Alice")
         .hasRow("eve", "Eve Evenson")
         .isExhausted();
   }
 
-  @Test public void queryNotNotifiedWhenDeleteAffectsZeroRows() {
-    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+  @Test public void capturedChangesOfWriteSentWithItsOwnTrigger() {
+    @NonNull final DimDatabase<Object> db = new SqlDim.Builder<Object>()
+        .captureChanges(true)
+        .build()
+        .wrapDatabaseHelper(Objects.requireNonNull(helper), scheduler);
+    db.installChangeCapture(db.getWritableDatabase());
 
     db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
     o.assertCursor()
@@ -428,7 +1602,15 @@ public final class DimDatabaseTest {
         .hasRow("eve", "Eve Evenson")
         .isExhausted();
 
-    db.delete(TABLE_EMPLOYEE, USERNAME + " = 'john'");
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+
+    db.execute("DELETE FROM " + TABLE_MANAGER);
     o.assertNoMoreEvents();
   }
 
@@ -523,6 +1705,47 @@ public final class DimDatabaseTest {
         .isExhausted();
   }
 
+  @Test public void queryNotNotifiedForUnrelatedTable() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(TABLE_MANAGER, SELECT_MANAGER_LIST).subscribe(o);
+    o.assertCursor()
+        .hasRow("Eve Evenson", "Alice Allison")
+        .isExhausted();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    o.assertNoMoreEvents();
+  }
+
+  @Test public void queryNotifiedAfterOtherQueryOnSameTableDisposed() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    @NonNull final RecordingObserver other = new RecordingObserver();
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(other);
+    other.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+
+    db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .isExhausted();
+    other.dispose();
+
+    db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    o.assertCursor()
+        .hasRow("alice", "Alice Allison")
+        .hasRow("bob", "Bob Bobberson")
+        .hasRow("eve", "Eve Evenson")
+        .hasRow("john", "John Johnson")
+        .isExhausted();
+    other.assertNoMoreEvents();
+  }
+
   @Test public void executeSqlNoTrigger() {
     @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
 
@@ -642,6 +1865,49 @@ public final class DimDatabaseTest {
         .isExhausted();
   }
 
+  @Test public void queryObservesTablesItReads() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    db.createQuery(new SimpleSQLiteQuery(SELECT_MANAGER_LIST)).subscribe(o);
+    o.assertCursor()
+        .hasRow("Eve Evenson", "Alice Allison")
+        .isExhausted();
+
+    db.executeAndTrigger(new SimpleSQLiteQuery(
+        "UPDATE " + TABLE_EMPLOYEE + " SET " + NAME + " = ?", new Object[] { "Zach" }));
+    o.assertCursor()
+        .hasRow("Zach", "Zach")
+        .isExhausted();
+
+    db.executeAndTrigger("DELETE FROM " + TABLE_MANAGER);
+    o.assertCursor()
+        .isExhausted();
+  }
+
+  @Test public void queryReadingNoTablesThrows() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    try {
+      db.createQuery(new SimpleSQLiteQuery("SELECT 1"));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageThat().isEqualTo("No tables read by: SELECT 1");
+    }
+  }
+
+  @Test public void executeSqlWritingNoTablesThrowsAndDoesNotExecute() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    try {
+      db.executeAndTrigger("CREATE TABLE other (_id INTEGER PRIMARY KEY)");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageThat()
+          .isEqualTo("No tables written by: CREATE TABLE other (_id INTEGER PRIMARY KEY)");
+    }
+    db.execute("CREATE TABLE other (_id INTEGER PRIMARY KEY)");
+  }
+
   @Test public void executeSqlWithArgsThrowsAndDoesNotTrigger() {
     @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
 
@@ -1523,4 +2789,12 @@ public final class DimDatabaseTest {
   private static CursorAssert assertCursor(@NonNull Cursor cursor) {
     return new CursorAssert(cursor);
   }
+
+  private static long employeeId(@NonNull DimDatabase<Object> db, @NonNull String username) {
+    try (Cursor cursor = db.query("SELECT " + ID + " FROM " + TABLE_EMPLOYEE
+        + " WHERE " + USERNAME + " = ?", username)) {
+      assertThat(cursor.moveToFirst()).isTrue();
+      return cursor.getLong(0);
+    }
+  }
 }
@@ -0,0 +1,114 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.SqlDim.MarkedQuery;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class LatestFlowableTest {
+  @NonNull private final TestScheduler scheduler = new TestScheduler();
+  @NonNull private final FusedQueryObservable.Merger<String> concat =
+      new FusedQueryObservable.Merger<String>() {
+        @NonNull @Override public String merge(@NonNull String pending, @NonNull String next) {
+          return pending + next;
+        }
+      };
+
+  @Test public void requestedItemsPassThrough() {
+    @NonNull final PublishSubject<String> upstream = PublishSubject.create();
+    @NonNull final TestSubscriber<String> s =
+        new LatestFlowable<>(upstream, scheduler, concat).test();
+
+    upstream.onNext("a");
+    upstream.onNext("b");
+    s.assertValuesOnly("a", "b");
+  }
+
+  @Test public void itemsArrivingBeforeRequestAreMergedIntoOne() {
+    scheduler.runTasksImmediately(false);
+    @NonNull final PublishSubject<String> upstream = PublishSubject.create();
+    @NonNull final TestSubscriber<String> s =
+        new LatestFlowable<>(upstream, scheduler, concat).test(0);
+
+    upstream.onNext("a");
+    upstream.onNext("b");
+    upstream.onNext("c");
+    s.request(1);
+    s.assertNoValues(); // Delivered on the scheduler, not the requesting thread.
+
+    scheduler.triggerActions();
+    s.assertValuesOnly("abc");
+
+    upstream.onNext("d");
+    upstream.onNext("e");
+    s.assertValuesOnly("abc");
+    s.request(5);
+    scheduler.triggerActions();
+    s.assertValuesOnly("abc", "de");
+  }
+
+  @Test public void completesAfterDeliveringPendingItem() {
+    @NonNull final PublishSubject<String> upstream = PublishSubject.create();
+    @NonNull final TestSubscriber<String> s =
+        new LatestFlowable<>(upstream, scheduler, concat).test(0);
+
+    upstream.onNext("a");
+    upstream.onComplete();
+    s.assertNotComplete();
+
+    s.request(1);
+    s.assertResult("a");
+  }
+
+  @Test public void cancelDisposesUpstream() {
+    @NonNull final PublishSubject<String> upstream = PublishSubject.create();
+    @NonNull final TestSubscriber<String> s =
+        new LatestFlowable<>(upstream, scheduler, concat).test(0);
+    assertThat(upstream.hasObservers()).isTrue();
+
+    s.cancel();
+    assertThat(upstream.hasObservers()).isFalse();
+  }
+
+  @Test public void latestMarkedQueryAccumulatesMarkers() {
+    @NonNull final FusedQueryObservable.Merger<MarkedQuery<String>> merger =
+        LatestFlowable.latestMarkedQuery();
+    @NonNull final MarkedQuery<String> first = new TestMarkedQuery(Collections.singleton("a"));
+    @NonNull final MarkedQuery<String> second =
+        new TestMarkedQuery(new LinkedHashSet<>(Arrays.asList("b", "a")));
+    @NonNull final MarkedQuery<String> third = new TestMarkedQuery(Collections.singleton("c"));
+
+    assertThat(merger.merge(first, second)).isSameInstanceAs(second);
+    @NonNull final MarkedQuery<String> merged = merger.merge(second, third);
+    assertThat(merged.markers).containsExactly("b", "a", "c").inOrder();
+    assertThat(merged.toString()).isEqualTo(third.toString());
+  }
+
+  static final class TestMarkedQuery extends MarkedQuery<String> {
+    TestMarkedQuery(@NonNull Set<String> markers) {
+      super(markers);
+    }
+
+    @Nullable @Override public Cursor run() {
+      return null;
+    }
+
+    @NonNull @Override public String toString() {
+      return "query " + markers;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.stealthmountain.sqldim;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the cost of diffing lists of 1000 and 10000 rows for the common cases of appending a
+ * row and updating a row, which should grow linearly with the size of the list rather than
+ * quadratically. See {@link Benchmarks}.
+ */
+public final class ListDiffBenchmark {
+  @NonNull private static final String TAG = ListDiffBenchmark.class.getSimpleName();
+  @NonNull private static final int[] SIZES = { 1000, 10000 };
+  private static final int WARMUP_DIFFS = 50;
+  private static final int MEASURED_DIFFS = 200;
+  private static final int RUNS = 5;
+
+  @Test public void appendCost() {
+    measure("append", new Edit() {
+      @Override public void apply(@NonNull List<String> items, @NonNull List<Long> ids) {
+        items.add("row " + items.size());
+        ids.add((long) ids.size());
+      }
+    });
+  }
+
+  @Test public void updateCost() {
+    measure("update", new Edit() {
+      @Override public void apply(@NonNull List<String> items, @NonNull List<Long> ids) {
+        final int middle = items.size() / 2;
+        items.set(middle, items.get(middle) + " updated");
+      }
+    });
+  }
+
+  private static void measure(@NonNull String name, @NonNull Edit edit) {
+    for (int size : SIZES) {
+      Log.i(TAG, name + " of " + size + " rows: " + measure(size, edit) + "ns per diff");
+    }
+  }
+
+  private static long measure(int size, @NonNull Edit edit) {
+    @NonNull final List<String> oldItems = new ArrayList<>(size);
+    @NonNull final List<Long> oldIds = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      oldItems.add("row " + i);
+      oldIds.add((long) i);
+    }
+    @NonNull final List<String> newItems = new ArrayList<>(oldItems);
+    @NonNull final List<Long> newIds = new ArrayList<>(oldIds);
+    edit.apply(newItems, newIds);
+
+    for (int i = 0; i < WARMUP_DIFFS; i++) {
+      ListDiff.calculate(oldItems, oldIds, newItems, newIds);
+    }
+    @NonNull final long[] runs = new long[RUNS];
+    for (int run = 0; run < RUNS; run++) {
+      final long start = System.nanoTime();
+      for (int i = 0; i < MEASURED_DIFFS; i++) {
+        ListDiff.calculate(oldItems, oldIds, newItems, newIds);
+      }
+      runs[run] = (System.nanoTime() - start) / MEASURED_DIFFS;
+    }
+    return Benchmarks.median(runs);
+  }
+
+  interface Edit {
+    void apply(@NonNull List<String> items, @NonNull List<Long> ids);
+  }
+}
@@ -0,0 +1,191 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+public final class ListDiffTest {
+  @Test public void firstListIsOneInsertion() {
+    assertThat(diff(rows(), rows("a", "b", "c")).toString())
+        .isEqualTo("ListDiff[size=3, insert 0+3]");
+  }
+
+  @Test public void appendIsOneInsertion() {
+    assertThat(diff(rows("a", "b"), rows("a", "b", "c", "d")).toString())
+        .isEqualTo("ListDiff[size=4, insert 2+2]");
+  }
+
+  @Test public void removalIsOneRemoval() {
+    assertThat(diff(rows("a", "b", "c", "d"), rows("a", "d")).toString())
+        .isEqualTo("ListDiff[size=2, remove 1+2]");
+  }
+
+  @Test public void updatesAreChangedRanges() {
+    assertThat(diff(rows("a", "b", "c", "d"), rows("a", "b*", "c*", "d")).toString())
+        .isEqualTo("ListDiff[size=4, change 1+2]");
+  }
+
+  @Test public void sameRowsAreEmpty() {
+    @NonNull final ListDiff<Row> diff = diff(rows("a", "b"), rows("a", "b"));
+    assertThat(diff.isEmpty()).isTrue();
+    assertThat(diff.toString()).isEqualTo("ListDiff[size=2]");
+  }
+
+  @Test public void listIsUnmodifiable() {
+    @NonNull final ListDiff<Row> diff = diff(rows("a"), rows("a", "b"));
+    try {
+      diff.list.clear();
+      throw new AssertionError();
+    } catch (UnsupportedOperationException expected) {
+    }
+    assertThat(diff.list).hasSize(2);
+  }
+
+  @Test public void movingFirstRowToTheEndIsOneMove() {
+    assertThat(diff(rows("a", "b", "c", "d"), rows("b", "c", "d", "a")).toString())
+        .isEqualTo("ListDiff[size=4, move 0->3]");
+  }
+
+  @Test public void movedAndUpdatedRowIsMovedThenChanged() {
+    assertThat(diff(rows("a", "b", "c", "d"), rows("d*", "a", "b", "c")).toString())
+        .isEqualTo("ListDiff[size=4, move 3->0, change 0+1]");
+  }
+
+  @Test public void duplicateIdsAreRejected() {
+    try {
+      diff(rows("a", "b"), rows("b", "a", "a"));
+      throw new AssertionError();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageThat().isEqualTo("Duplicate id: a");
+    }
+  }
+
+  @Test public void longestIncreasingSubsequence() {
+    assertThat(ListDiff.longestIncreasingSubsequence(new int[] { 3, 0, 1, 2 }))
+        .asList().containsExactly(0, 1, 2).inOrder();
+    assertThat(ListDiff.longestIncreasingSubsequence(new int[] { 2, 5, 3, 7, 11, 8, 10, 13, 6 }))
+        .asList().containsExactly(2, 3, 7, 8, 10, 13).inOrder();
+    assertThat(ListDiff.longestIncreasingSubsequence(new int[0])).isEmpty();
+  }
+
+  @Test public void applyingChangesToOldListGivesNewList() {
+    @NonNull final Random random = new Random(42);
+    for (int round = 0; round < 2000; round++) {
+      @NonNull final List<Row> oldRows = randomRows(random);
+      @NonNull final List<Row> newRows = randomRows(random);
+      @NonNull final List<Row> applied = apply(oldRows, newRows, diff(oldRows, newRows));
+      assertWithMessage(oldRows + " -> " + newRows).that(applied).isEqualTo(newRows);
+    }
+  }
+
+  @NonNull private static ListDiff<Row> diff(@NonNull List<Row> oldRows, @NonNull List<Row> newRows) {
+    return ListDiff.calculate(oldRows, ids(oldRows), newRows, ids(newRows));
+  }
+
+  /**
+   * Replays {@code diff} on a copy of {@code oldRows}. Inserted rows can only be told apart by
+   * their final position, so they are filled in from {@code newRows} at the end, as are rows
+   * reported as changed.
+   */
+  @NonNull private static List<Row> apply(@NonNull List<Row> oldRows, @NonNull List<Row> newRows,
+                                          @NonNull ListDiff<Row> diff) {
+    @NonNull final List<Row> rows = new ArrayList<>(oldRows);
+    @NonNull final Set<Integer> changed = new HashSet<>();
+    diff.dispatchUpdatesTo(new ListDiff.Callback() {
+      @Override public void onInserted(int position, int count) {
+        rows.addAll(position, Collections.<Row>nCopies(count, null));
+      }
+
+      @Override public void onRemoved(int position, int count) {
+        rows.subList(position, position + count).clear();
+      }
+
+      @Override public void onMoved(int fromPosition, int toPosition) {
+        rows.add(toPosition, rows.remove(fromPosition));
+      }
+
+      @Override public void onChanged(int position, int count) {
+        for (int i = position; i < position + count; i++) {
+          assertThat(changed.add(i)).isTrue();
+        }
+      }
+    });
+    assertThat(rows).hasSize(newRows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      @Nullable final Row row = rows.get(i);
+      if (row == null) {
+        assertThat(ids(oldRows)).doesNotContain(newRows.get(i).id);
+        assertThat(changed).doesNotContain(i);
+        rows.set(i, newRows.get(i));
+      } else if (changed.contains(i)) {
+        assertThat(row.id).isEqualTo(newRows.get(i).id);
+        assertThat(row).isNotEqualTo(newRows.get(i));
+        rows.set(i, newRows.get(i));
+      }
+    }
+    return rows;
+  }
+
+  @NonNull private static List<Row> randomRows(@NonNull Random random) {
+    @NonNull final List<String> ids = new ArrayList<>(Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h"));
+    Collections.shuffle(ids, random);
+    @NonNull final List<Row> rows = new ArrayList<>();
+    for (String id : ids.subList(0, random.nextInt(ids.size() + 1))) {
+      rows.add(new Row(id, random.nextInt(2)));
+    }
+    return rows;
+  }
+
+  @NonNull private static List<Row> rows(@NonNull String... values) {
+    @NonNull final List<Row> rows = new ArrayList<>();
+    for (String value : values) {
+      // A trailing '*' marks an updated version of the row.
+      rows.add(value.endsWith("*")
+          ? new Row(value.substring(0, value.length() - 1), 1)
+          : new Row(value, 0));
+    }
+    return rows;
+  }
+
+  @NonNull private static List<String> ids(@NonNull List<Row> rows) {
+    @NonNull final List<String> ids = new ArrayList<>();
+    for (Row row : rows) {
+      ids.add(row.id);
+    }
+    return ids;
+  }
+
+  static final class Row {
+    @NonNull final String id;
+    final int version;
+
+    Row(@NonNull String id, int version) {
+      this.id = id;
+      this.version = version;
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof Row && ((Row) o).id.equals(id) && ((Row) o).version == version;
+    }
+
+    @Override public int hashCode() {
+      return 31 * id.hashCode() + version;
+    }
+
+    @NonNull @Override public String toString() {
+      return id + (version == 0 ? "" : "*");
+    }
+  }
+}
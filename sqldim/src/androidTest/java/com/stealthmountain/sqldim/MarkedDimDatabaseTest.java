@@ -71,6 +71,7 @@ import static com.stealthmountain.sqldim.SqlDim.MarkedQuery;
 import static com.stealthmountain.sqldim.SqlDim.MarkedQuery.MarkedValue;
 import static com.stealthmountain.sqldim.SqlDim.Query;
 import static com.stealthmountain.sqldim.TestDb.BOTH_TABLES;
+import static com.stealthmountain.sqldim.TestDb.EmployeeTable.ID;
 import static com.stealthmountain.sqldim.TestDb.EmployeeTable.NAME;
 import static com.stealthmountain.sqldim.TestDb.EmployeeTable.USERNAME;
 import static com.stealthmountain.sqldim.TestDb.SELECT_EMPLOYEES;
@@ -92,6 +93,7 @@ public final class MarkedDimDatabaseTest {
 
   @NonNull @Rule public final TemporaryFolder dbFolder = new TemporaryFolder();
 
+  @Nullable private SupportSQLiteOpenHelper helper;
   @Nullable private SupportSQLiteDatabase real;
   @Nullable private DimDatabase<String> db;
 
@@ -105,6 +107,7 @@ public final class MarkedDimDatabaseTest {
 
     @NonNull final Factory factory = new FrameworkSQLiteOpenHelperFactory();
     @NonNull final SupportSQLiteOpenHelper helper = factory.create(configuration);
+    this.helper = helper;
     real = helper.getWritableDatabase();
 
     @NonNull final SqlDim.Logger logger = new SqlDim.Logger() {
@@ -377,6 +380,201 @@ public final class MarkedDimDatabaseTest {
         .isExhausted();
   }
 
+  @Test public void coalescedTriggersWithinWindowNotifyOnceWithAllMarkers() {
+    @NonNull final SupportSQLiteOpenHelper helper = Objects.requireNonNull(this.helper);
+    @NonNull final DimDatabase<String> db = new SqlDim.Builder<String>()
+        .coalesceTriggers(100, MILLISECONDS)
+        .build()
+        .wrapDatabaseHelper(helper, scheduler);
+
+    db.createMarkedQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    o.assertEmptyMarkers();
+    o.assertCursor()
+            .hasRow("alice", "Alice Allison")
+            .hasRow("bob", "Bob Bobberson")
+            .hasRow("eve", "Eve Evenson")
+            .isExhausted();
+
+    db.insertMarked("john marker", TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    db.insertMarked("nick marker", TABLE_EMPLOYEE, CONFLICT_NONE, employee("nick", "Nick Nickers"));
+    o.assertNoMoreEvents();
+
+    scheduler.advanceTimeBy(99, MILLISECONDS);
+    o.assertNoMoreEvents();
+
+    scheduler.advanceTimeBy(1, MILLISECONDS);
+    o.assertMarkersEquals("john marker", "nick marker");
+    o.assertCursor()
+            .hasRow("alice", "Alice Allison")
+            .hasRow("bob", "Bob Bobberson")
+            .hasRow("eve", "Eve Evenson")
+            .hasRow("john", "John Johnson")
+            .hasRow("nick", "Nick Nickers")
+            .isExhausted();
+
+    db.insertMarked("adam marker", TABLE_EMPLOYEE, CONFLICT_NONE, employee("adam", "Adam Adamson"));
+    o.assertNoMoreEvents();
+
+    scheduler.advanceTimeBy(100, MILLISECONDS);
+    o.assertMarkersEquals("adam marker");
+    o.assertCursor()
+            .hasRow("alice", "Alice Allison")
+            .hasRow("bob", "Bob Bobberson")
+            .hasRow("eve", "Eve Evenson")
+            .hasRow("john", "John Johnson")
+            .hasRow("nick", "Nick Nickers")
+            .hasRow("adam", "Adam Adamson")
+            .isExhausted();
+  }
+
+  @Test public void coalescedTriggersNotifyQueriesOnAnyMergedTable() {
+    @NonNull final SupportSQLiteOpenHelper helper = Objects.requireNonNull(this.helper);
+    @NonNull final DimDatabase<String> db = new SqlDim.Builder<String>()
+        .coalesceTriggers(100, MILLISECONDS)
+        .build()
+        .wrapDatabaseHelper(helper, scheduler);
+
+    db.createMarkedQuery(TABLE_MANAGER, SELECT_MANAGER_LIST).subscribe(o);
+    o.assertEmptyMarkers();
+    o.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+
+    db.triggerMarked("employee marker", TABLE_EMPLOYEE);
+    db.triggerMarked("manager marker", TABLE_MANAGER);
+    o.assertNoMoreEvents();
+
+    scheduler.advanceTimeBy(100, MILLISECONDS);
+    o.assertMarkersEquals("employee marker", "manager marker");
+    o.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+  }
+
+  @Test public void keyedMarkedQueryOnlyNotifiedForItsRows() {
+    @NonNull final DimDatabase<String> db = Objects.requireNonNull(this.db);
+    final long johnId =
+        db.insertMarked("insert marker", TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+
+    db.createMarkedQuery(TABLE_EMPLOYEE, Collections.singleton(johnId),
+        SELECT_EMPLOYEES + " WHERE " + ID + " = ?", johnId).subscribe(o);
+    o.assertEmptyMarkers();
+    o.assertCursor()
+            .hasRow("john", "John Johnson")
+            .isExhausted();
+
+    db.triggerMarked("other marker", TABLE_EMPLOYEE, Collections.singleton(johnId + 1));
+    o.assertNoMoreEvents();
+
+    db.triggerMarked("john marker", TABLE_EMPLOYEE, Arrays.asList(johnId, johnId + 1));
+    o.assertMarkersEquals("john marker");
+    o.assertCursor()
+            .hasRow("john", "John Johnson")
+            .isExhausted();
+  }
+
+  @Test public void conflatedMarkedQueryCarriesMarkersOfAllWaitingTriggers() {
+    @NonNull final SupportSQLiteOpenHelper helper = Objects.requireNonNull(this.helper);
+    @NonNull final DimDatabase<String> db = new SqlDim.Builder<String>()
+        .conflateQueries(true)
+        .build()
+        .wrapDatabaseHelper(helper, scheduler);
+
+    scheduler.runTasksImmediately(false);
+
+    db.createMarkedQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(o);
+    scheduler.triggerActions();
+    o.assertEmptyMarkers();
+    o.assertCursor()
+            .hasRow("alice", "Alice Allison")
+            .hasRow("bob", "Bob Bobberson")
+            .hasRow("eve", "Eve Evenson")
+            .isExhausted();
+
+    db.insertMarked("john marker", TABLE_EMPLOYEE, CONFLICT_NONE, employee("john", "John Johnson"));
+    db.triggerMarked("trigger marker", TABLE_EMPLOYEE);
+    db.insertMarked("nick marker", TABLE_EMPLOYEE, CONFLICT_NONE, employee("nick", "Nick Nickers"));
+    o.assertNoMoreEvents();
+    scheduler.triggerActions();
+    o.assertMarkersEquals("john marker", "trigger marker", "nick marker");
+    o.assertCursor()
+            .hasRow("alice", "Alice Allison")
+            .hasRow("bob", "Bob Bobberson")
+            .hasRow("eve", "Eve Evenson")
+            .hasRow("john", "John Johnson")
+            .hasRow("nick", "Nick Nickers")
+            .isExhausted();
+    o.assertNoMoreEvents();
+  }
+
+  @Test public void sharedMarkedQueryDeliversMarkersToEverySubscriber() {
+    @NonNull final SupportSQLiteOpenHelper helper = Objects.requireNonNull(this.helper);
+    @NonNull final DimDatabase<String> db = new SqlDim.Builder<String>()
+        .shareQueries(true)
+        .build()
+        .wrapDatabaseHelper(helper, scheduler);
+
+    @NonNull final MarkedRecordingObserver other = new MarkedRecordingObserver();
+    db.createMarkedQuery(TABLE_MANAGER, SELECT_MANAGER_LIST).subscribe(o);
+    db.createMarkedQuery(TABLE_MANAGER, SELECT_MANAGER_LIST).subscribe(other);
+    o.assertEmptyMarkers();
+    o.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+    other.assertEmptyMarkers();
+    other.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+
+    db.triggerMarked("marker", TABLE_MANAGER);
+    o.assertMarkersEquals("marker");
+    o.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+    other.assertMarkersEquals("marker");
+    other.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+    other.dispose();
+  }
+
+  @Test public void sharedMarkedQueryReplaysNoMarkersToLateSubscribers() {
+    @NonNull final SupportSQLiteOpenHelper helper = Objects.requireNonNull(this.helper);
+    @NonNull final DimDatabase<String> db = new SqlDim.Builder<String>()
+        .shareQueries(true)
+        .build()
+        .wrapDatabaseHelper(helper, scheduler);
+
+    db.createMarkedQuery(TABLE_MANAGER, SELECT_MANAGER_LIST).subscribe(o);
+    o.assertEmptyMarkers();
+    o.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+    db.triggerMarked("marker", TABLE_MANAGER);
+    o.assertMarkersEquals("marker");
+    o.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+
+    @NonNull final MarkedRecordingObserver late = new MarkedRecordingObserver();
+    db.createMarkedQuery(TABLE_MANAGER, SELECT_MANAGER_LIST).subscribe(late);
+    late.assertEmptyMarkers();
+    late.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+
+    db.triggerMarked("other marker", TABLE_MANAGER);
+    o.assertMarkersEquals("other marker");
+    o.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+    late.assertMarkersEquals("other marker");
+    late.assertCursor()
+            .hasRow("Eve Evenson", "Alice Allison")
+            .isExhausted();
+    late.dispose();
+  }
+
   @Test public void markedQueryObservesInsertMarked() {
     @NonNull final DimDatabase<String> db = Objects.requireNonNull(this.db);
 
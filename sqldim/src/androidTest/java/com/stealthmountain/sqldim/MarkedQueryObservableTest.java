@@ -25,11 +25,16 @@ import com.stealthmountain.sqldim.SqlDim.MarkedQuery;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.functions.BiFunction;
+import io.reactivex.rxjava3.functions.Function;
+
+import static com.google.common.truth.Truth.assertThat;
 
 public final class MarkedQueryObservableTest {
   @Test public void mapToListThrowsFromQueryRun() {
@@ -109,4 +114,63 @@ public final class MarkedQueryObservableTest {
         .assertNoValues() //
         .assertError(error);
   }
+
+  @Test public void skipUnchangedMergesMarkersOfSuppressedResultsIntoTheNext() {
+    @NonNull final String[] names = { "alice", "alice", "bob" };
+    @NonNull final int[] index = new int[1];
+    @NonNull final UnchangedResultCounter counter = new UnchangedResultCounter();
+    new MarkedQueryObservable<>(Observable.just("first", "second", "third")
+        .map(new Function<String, MarkedQuery<String>>() {
+          @NonNull @Override public MarkedQuery<String> apply(@NonNull String marker) {
+            return new MarkedQuery<String>(Collections.singleton(marker)) {
+              @Override public Cursor run() {
+                @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "col1" });
+                cursor.addRow(new Object[] { names[index[0]++] });
+                return cursor;
+              }
+            };
+          }
+        }))
+        .skipUnchanged(counter)
+        .mapToOne(new BiFunction<Cursor, Set<String>, String>() {
+          @NonNull @Override public String apply(@NonNull Cursor cursor, @NonNull Set<String> markers) {
+            return cursor.getString(0);
+          }
+        })
+        .test()
+        .assertResult(
+            new MarkedQuery.MarkedValue<>("first", "alice"),
+            new MarkedQuery.MarkedValue<>(
+                new LinkedHashSet<>(Arrays.asList("second", "third")), "bob"));
+    assertThat(counter.suppressedCount()).isEqualTo(1);
+  }
+
+  @Test public void mapToListWithFactoryLooksUpColumnsOncePerCursor() {
+    @NonNull final MarkedQuery<String> markedQuery =
+        new MarkedQuery<String>(Collections.singleton("marker")) {
+          @Override public Cursor run() {
+            @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "id", "name" });
+            cursor.addRow(new Object[] { 1, "alice" });
+            cursor.addRow(new Object[] { 2, "bob" });
+            return cursor;
+          }
+        };
+    @NonNull final int[] creates = new int[1];
+    new MarkedQueryObservable<String>(Observable.just(markedQuery))
+        .mapToList(new RowMapperFactory<String>() {
+          @NonNull @Override public Function<Cursor, String> create(@NonNull Cursor cursor) {
+            creates[0]++;
+            final int name = cursor.getColumnIndexOrThrow("name");
+            return new Function<Cursor, String>() {
+              @NonNull @Override public String apply(@NonNull Cursor cursor) {
+                return cursor.getString(name);
+              }
+            };
+          }
+        })
+        .test()
+        .assertValue(new MarkedQuery.MarkedValue<>(Collections.singleton("marker"),
+            Arrays.asList("alice", "bob")));
+    assertThat(creates[0]).isEqualTo(1);
+  }
 }
@@ -0,0 +1,143 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.stealthmountain.sqldim.TestDb.SELECT_EMPLOYEES;
+import static com.stealthmountain.sqldim.TestDb.SELECT_MANAGER_LIST;
+import static com.stealthmountain.sqldim.TestDb.TABLE_EMPLOYEE;
+import static com.stealthmountain.sqldim.TestDb.TABLE_MANAGER;
+
+public final class QueryCacheTest {
+  @NonNull private final QueryKey employees = new QueryKey(
+      new SimpleSQLiteQuery(SELECT_EMPLOYEES), Collections.singleton(TABLE_EMPLOYEE));
+  @NonNull private final QueryKey managers = new QueryKey(
+      new SimpleSQLiteQuery(SELECT_MANAGER_LIST),
+      Arrays.asList(TABLE_EMPLOYEE, TABLE_MANAGER));
+  @NonNull private final QueryKey anyTable = new QueryKey(
+      new SimpleSQLiteQuery(SELECT_EMPLOYEES), Collections.<String>emptySet());
+
+  @Test public void countsHitsAndMisses() {
+    @NonNull final QueryCache cache = new QueryCache(1024 * 1024);
+    assertThat(cache.get(employees)).isNull();
+    @NonNull final CursorSnapshot snapshot = snapshot("alice", "bob");
+    cache.put(employees, snapshot, cache.version());
+
+    assertThat(cache.get(employees)).isSameInstanceAs(snapshot);
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.putCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(snapshot.estimatedBytes());
+  }
+
+  @Test public void triggerInvalidatesOnlyQueriesOnItsTables() {
+    @NonNull final QueryCache cache = new QueryCache(1024 * 1024);
+    cache.put(employees, snapshot("alice"), cache.version());
+    cache.put(managers, snapshot("eve"), cache.version());
+
+    cache.invalidate(Collections.singleton(TABLE_MANAGER));
+    assertThat(cache.get(employees)).isNotNull();
+    assertThat(cache.get(managers)).isNull();
+
+    cache.invalidate(Collections.singleton(TABLE_EMPLOYEE));
+    assertThat(cache.get(employees)).isNull();
+    assertThat(cache.invalidationCount()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test public void anyTriggerInvalidatesQueriesWithoutTables() {
+    @NonNull final QueryCache cache = new QueryCache(1024 * 1024);
+    cache.put(anyTable, snapshot("alice"), cache.version());
+
+    cache.invalidate(Collections.singleton("unrelated"));
+    assertThat(cache.get(anyTable)).isNull();
+  }
+
+  @Test public void resultOfQueryRacingATriggerIsNotCached() {
+    @NonNull final QueryCache cache = new QueryCache(1024 * 1024);
+    final long version = cache.version();
+    cache.invalidate(Collections.singleton(TABLE_EMPLOYEE));
+    cache.put(employees, snapshot("alice"), version);
+    assertThat(cache.get(employees)).isNull();
+
+    // A trigger on another table doesn't make the result stale.
+    final long managerVersion = cache.version();
+    cache.invalidate(Collections.singleton("unrelated"));
+    cache.put(employees, snapshot("alice"), managerVersion);
+    assertThat(cache.get(employees)).isNotNull();
+  }
+
+  @Test public void evictsLeastRecentlyUsedToStayWithinMaxSize() {
+    @NonNull final CursorSnapshot snapshot = snapshot("alice");
+    @NonNull final QueryCache cache = new QueryCache(2 * snapshot.estimatedBytes());
+    cache.put(employees, snapshot, cache.version());
+    cache.put(managers, snapshot("alice"), cache.version());
+    assertThat(cache.get(employees)).isNotNull(); // Managers is now least recently used.
+
+    cache.put(anyTable, snapshot("alice"), cache.version());
+    assertThat(cache.get(managers)).isNull();
+    assertThat(cache.get(employees)).isNotNull();
+    assertThat(cache.get(anyTable)).isNotNull();
+    assertThat(cache.evictionCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(2 * snapshot.estimatedBytes());
+  }
+
+  @Test public void resultLargerThanMaxSizeIsNotCached() {
+    @NonNull final QueryCache cache = new QueryCache(1);
+    cache.put(employees, snapshot("alice"), cache.version());
+    assertThat(cache.get(employees)).isNull();
+    assertThat(cache.putCount()).isEqualTo(0);
+  }
+
+  @Test public void trimToSizeEvictsOnDemand() {
+    @NonNull final CursorSnapshot snapshot = snapshot("alice");
+    @NonNull final QueryCache cache = new QueryCache(1024 * 1024);
+    cache.put(employees, snapshot, cache.version());
+    cache.put(managers, snapshot("alice"), cache.version());
+
+    cache.trimToSize(snapshot.estimatedBytes());
+    assertThat(cache.get(employees)).isNull();
+    assertThat(cache.get(managers)).isNotNull();
+
+    cache.evictAll();
+    assertThat(cache.get(managers)).isNull();
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.evictionCount()).isEqualTo(2);
+  }
+
+  @Test public void snapshotCursorReadsCopiedRows() {
+    @NonNull final Cursor cursor = snapshot("alice", "bob").newCursor();
+    assertThat(cursor.getCount()).isEqualTo(2);
+    assertThat(cursor.moveToNext()).isTrue();
+    assertThat(cursor.getString(cursor.getColumnIndexOrThrow("name"))).isEqualTo("alice");
+    assertThat(cursor.getLong(cursor.getColumnIndexOrThrow("id"))).isEqualTo(0L);
+    assertThat(cursor.getType(cursor.getColumnIndexOrThrow("id"))).isEqualTo(Cursor.FIELD_TYPE_INTEGER);
+    assertThat(cursor.isNull(cursor.getColumnIndexOrThrow("nothing"))).isTrue();
+    assertThat(cursor.moveToNext()).isTrue();
+    assertThat(cursor.getString(cursor.getColumnIndexOrThrow("name"))).isEqualTo("bob");
+    assertThat(cursor.getInt(cursor.getColumnIndexOrThrow("id"))).isEqualTo(1);
+    assertThat(cursor.moveToNext()).isFalse();
+    cursor.close();
+  }
+
+  @NonNull private static CursorSnapshot snapshot(@NonNull String... names) {
+    @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "id", "name", "nothing" });
+    for (int i = 0; i < names.length; i++) {
+      cursor.addRow(new Object[] { (long) i, names[i], null });
+    }
+    try {
+      return CursorSnapshot.copyOf(cursor);
+    } finally {
+      cursor.close();
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.stealthmountain.sqldim;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class QueryColumnsTest {
+  @Test public void readsEveryIdentifier() {
+    assertThat(QueryColumns.read("SELECT name, \"User\"\"Name\" FROM employee WHERE `_ID` = ?"
+        + " ORDER BY [Rank] DESC"))
+        .containsExactly("select", "name", "user\"name", "from", "employee", "where", "_id",
+            "order", "by", "rank", "desc");
+  }
+
+  @Test public void skipsLiteralsAndComments() {
+    assertThat(QueryColumns.read("SELECT name -- complete\n"
+        + "FROM employee /* complete */ WHERE name = 'complete''s' AND rank = 1"))
+        .containsExactly("select", "name", "from", "employee", "where", "and", "rank");
+  }
+
+  @Test public void wildcardReadsEveryColumn() {
+    assertThat(QueryColumns.read("SELECT * FROM employee")).isNull();
+    assertThat(QueryColumns.read("SELECT e.* FROM employee AS e")).isNull();
+    assertThat(QueryColumns.read("SELECT COUNT(*) FROM employee")).isNull();
+  }
+
+  @Test public void naturalJoinReadsEveryColumn() {
+    assertThat(QueryColumns.read("SELECT name FROM employee NATURAL JOIN manager")).isNull();
+  }
+
+  @Test public void wildcardInLiteralOrCommentIsIgnored() {
+    assertThat(QueryColumns.read("SELECT name FROM employee WHERE name GLOB 'a*' /* * */"))
+        .containsExactly("select", "name", "from", "employee", "where", "glob");
+  }
+}
@@ -0,0 +1,56 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.stealthmountain.sqldim.TestDb.EmployeeTable.NAME;
+import static com.stealthmountain.sqldim.TestDb.SELECT_EMPLOYEES;
+import static com.stealthmountain.sqldim.TestDb.TABLE_EMPLOYEE;
+import static com.stealthmountain.sqldim.TestDb.TABLE_MANAGER;
+
+public final class QueryKeyTest {
+  @Test public void keysMatchOnSqlArgsAndTables() {
+    assertThat(key(SELECT_EMPLOYEES, new Object[] { "alice", 1, null }, TABLE_EMPLOYEE))
+        .isEqualTo(key(SELECT_EMPLOYEES + "  ", new Object[] { "alice", 1L, null }, TABLE_EMPLOYEE));
+    assertThat(key(SELECT_EMPLOYEES, new Object[] { new byte[] { 1, 2 } }, TABLE_EMPLOYEE))
+        .isEqualTo(key(SELECT_EMPLOYEES, new Object[] { new byte[] { 1, 2 } }, TABLE_EMPLOYEE));
+    assertThat(new QueryKey(new SimpleSQLiteQuery(SELECT_EMPLOYEES),
+        Arrays.asList(TABLE_EMPLOYEE, TABLE_MANAGER)))
+        .isEqualTo(new QueryKey(new SimpleSQLiteQuery(SELECT_EMPLOYEES),
+            Arrays.asList(TABLE_MANAGER, TABLE_EMPLOYEE, TABLE_MANAGER)));
+
+    assertThat(key(SELECT_EMPLOYEES, new Object[] { "alice" }, TABLE_EMPLOYEE))
+        .isNotEqualTo(key(SELECT_EMPLOYEES, new Object[] { "bob" }, TABLE_EMPLOYEE));
+    assertThat(key(SELECT_EMPLOYEES, new Object[] { "alice" }, TABLE_EMPLOYEE))
+        .isNotEqualTo(key(SELECT_EMPLOYEES, new Object[] { "alice" }, TABLE_MANAGER));
+  }
+
+  @Test public void keysMatchOnObservedRowsAndColumns() {
+    @NonNull final SimpleSQLiteQuery query = new SimpleSQLiteQuery(SELECT_EMPLOYEES);
+    @NonNull final Set<String> tables = Collections.singleton(TABLE_EMPLOYEE);
+    assertThat(new QueryKey(query, tables, new HashSet<>(Arrays.asList(1L, 2L)), null))
+        .isEqualTo(new QueryKey(query, tables, new HashSet<>(Arrays.asList(2L, 1L)), null));
+    assertThat(new QueryKey(query, tables, null, Collections.singleton(NAME)))
+        .isEqualTo(new QueryKey(query, tables, null, Collections.singleton(NAME)));
+
+    assertThat(new QueryKey(query, tables, Collections.singleton(1L), null))
+        .isNotEqualTo(new QueryKey(query, tables, Collections.singleton(2L), null));
+    assertThat(new QueryKey(query, tables, Collections.singleton(1L), null))
+        .isNotEqualTo(new QueryKey(query, tables));
+    assertThat(new QueryKey(query, tables, null, Collections.singleton(NAME)))
+        .isNotEqualTo(new QueryKey(query, tables));
+  }
+
+  @NonNull private static QueryKey key(@NonNull String sql, @NonNull Object[] args,
+                                       @NonNull String table) {
+    return new QueryKey(new SimpleSQLiteQuery(sql, args), Collections.singleton(table));
+  }
+}
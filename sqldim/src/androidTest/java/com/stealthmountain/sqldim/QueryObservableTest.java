@@ -17,16 +17,25 @@ package com.stealthmountain.sqldim;
 
 import android.database.Cursor;
 import android.database.MatrixCursor;
+import android.os.Build;
+import android.os.CancellationSignal;
 
 import androidx.annotation.NonNull;
+import androidx.test.filters.SdkSuppress;
 
 import com.stealthmountain.sqldim.SqlDim.Query;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subjects.PublishSubject;
 
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
 
 public final class QueryObservableTest {
   @Test public void mapToListThrowsFromQueryRun() {
@@ -106,4 +115,224 @@ public final class QueryObservableTest {
         .assertNoValues() //
         .assertError(error);
   }
+
+  @Test public void skipUnchangedSuppressesIdenticalResults() {
+    @NonNull final List<String> rows = new ArrayList<>(Arrays.asList("a", "b"));
+    @NonNull final int[] runs = new int[1];
+    @NonNull final Query query = new Query() {
+      @Override public Cursor run() {
+        runs[0]++;
+        @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "col1" });
+        for (String row : rows) {
+          cursor.addRow(new Object[] { row });
+        }
+        return cursor;
+      }
+    };
+    @NonNull final PublishSubject<Query> queries = PublishSubject.create();
+    @NonNull final UnchangedResultCounter counter = new UnchangedResultCounter();
+    @NonNull final TestObserver<List<String>> o = new QueryObservable(queries)
+        .skipUnchanged(counter)
+        .mapToList(new Function<Cursor, String>() {
+          @NonNull @Override public String apply(@NonNull Cursor cursor) {
+            return cursor.getString(0);
+          }
+        })
+        .test();
+
+    queries.onNext(query);
+    queries.onNext(query);
+    rows.add("c");
+    queries.onNext(query);
+    queries.onNext(query);
+
+    o.assertValuesOnly(Arrays.asList("a", "b"), Arrays.asList("a", "b", "c"));
+    // The query is run once per trigger, mapping reads the copy of its rows.
+    assertThat(runs[0]).isEqualTo(4);
+    assertThat(counter.checkedCount()).isEqualTo(4);
+    assertThat(counter.suppressedCount()).isEqualTo(2);
+  }
+
+  @Test public void skipUnchangedDistinguishesTypesAndNulls() {
+    @NonNull final Object[][] values = { { 1L }, { "1" }, { null }, { 1.0d }, { new byte[] { 1 } } };
+    @NonNull final int[] index = new int[1];
+    @NonNull final Query query = new Query() {
+      @Override public Cursor run() {
+        @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "col1" });
+        cursor.addRow(values[index[0]++]);
+        return cursor;
+      }
+    };
+    @NonNull final UnchangedResultCounter counter = new UnchangedResultCounter();
+    new QueryObservable(Observable.just(query, query, query, query, query))
+        .skipUnchanged(counter)
+        .test()
+        .assertValueCount(5);
+    assertThat(counter.suppressedCount()).isEqualTo(0);
+  }
+
+  @Test public void mapToListOnResultSchedulerRunsAndMapsOnQueryScheduler() {
+    @NonNull final TestScheduler queryScheduler = new TestScheduler();
+    queryScheduler.runTasksImmediately(false);
+    @NonNull final TestScheduler resultScheduler = new TestScheduler();
+    resultScheduler.runTasksImmediately(false);
+    @NonNull final int[] runs = new int[1];
+    @NonNull final Query query = new Query() {
+      @Override public Cursor run() {
+        runs[0]++;
+        @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "col1" });
+        cursor.addRow(new Object[] { "value1" });
+        return cursor;
+      }
+    };
+    @NonNull final TestObserver<List<String>> o =
+        new QueryObservable(Observable.just(query), queryScheduler, false)
+            .mapToList(new Function<Cursor, String>() {
+              @NonNull @Override public String apply(@NonNull Cursor cursor) {
+                return cursor.getString(0);
+              }
+            }, resultScheduler)
+            .test();
+    assertThat(runs[0]).isEqualTo(0);
+
+    queryScheduler.triggerActions();
+    assertThat(runs[0]).isEqualTo(1);
+    o.assertNoValues();
+
+    resultScheduler.triggerActions();
+    o.assertValues(Arrays.asList("value1"));
+    try {
+      o.values().get(0).add("value2");
+      throw new AssertionError();
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  @Test public void mapToOneOnResultSchedulerDoesNotHopWhenOnQueryScheduler() {
+    @NonNull final TestScheduler queryScheduler = new TestScheduler();
+    queryScheduler.runTasksImmediately(false);
+    @NonNull final TestScheduler resultScheduler = new TestScheduler();
+    resultScheduler.runTasksImmediately(false);
+    @NonNull final Query query = new Query() {
+      @Override public Cursor run() {
+        @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "col1" });
+        cursor.addRow(new Object[] { "value1" });
+        return cursor;
+      }
+    };
+    @NonNull final TestObserver<String> o =
+        new QueryObservable(Observable.just(query), queryScheduler, true)
+            .mapToOne(new Function<Cursor, String>() {
+              @NonNull @Override public String apply(@NonNull Cursor cursor) {
+                return cursor.getString(0);
+              }
+            }, resultScheduler)
+            .test();
+
+    resultScheduler.triggerActions();
+    o.assertValues("value1");
+  }
+
+  @Test public void mapToListStopsMappingRowsWhenDisposed() {
+    @NonNull final Query query = new Query() {
+      @Override public Cursor run() {
+        @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "col1" });
+        for (int i = 0; i < 100; i++) {
+          cursor.addRow(new Object[] { "value" + i });
+        }
+        return cursor;
+      }
+    };
+    @NonNull final int[] mapped = new int[1];
+    @NonNull final TestObserver<List<String>> o = new TestObserver<>();
+    new QueryObservable(Observable.just(query))
+        .mapToList(new Function<Cursor, String>() {
+          @NonNull @Override public String apply(@NonNull Cursor cursor) {
+            if (++mapped[0] == 2) {
+              o.dispose();
+            }
+            return cursor.getString(0);
+          }
+        })
+        .subscribe(o);
+
+    o.assertNoValues();
+    assertThat(mapped[0]).isEqualTo(2);
+  }
+
+  @SdkSuppress(minSdkVersion = Build.VERSION_CODES.JELLY_BEAN)
+  @Test public void disposingCancelsRunningQuery() {
+    @NonNull final TestObserver<List<String>> o = new TestObserver<>();
+    @NonNull final CancellationSignal[] signals = new CancellationSignal[1];
+    @NonNull final Query query = new Query() {
+      @Override public Cursor run() {
+        throw new AssertionError("Must run with a cancellation signal");
+      }
+
+      @Override public Cursor run(@NonNull CancellationSignal cancellationSignal) {
+        signals[0] = cancellationSignal;
+        o.dispose(); // As if the subscriber went away while the statement was being stepped.
+        cancellationSignal.throwIfCanceled();
+        throw new AssertionError("Must be cancelled");
+      }
+    };
+    new QueryObservable(Observable.just(query))
+        .mapToList(new Function<Cursor, String>() {
+          @NonNull @Override public String apply(@NonNull Cursor cursor) {
+            throw new AssertionError("Must not be called");
+          }
+        })
+        .subscribe(o);
+
+    o.assertEmpty();
+    assertThat(signals[0].isCanceled()).isTrue();
+  }
+
+  @Test public void mapToListWithFactoryLooksUpColumnsOncePerCursor() {
+    @NonNull final Query query = new Query() {
+      @Override public Cursor run() {
+        @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "id", "name" });
+        cursor.addRow(new Object[] { 1, "alice" });
+        cursor.addRow(new Object[] { 2, "bob" });
+        return cursor;
+      }
+    };
+    @NonNull final int[] creates = new int[1];
+    new QueryObservable(Observable.just(query, query))
+        .mapToList(new RowMapperFactory<String>() {
+          @NonNull @Override public Function<Cursor, String> create(@NonNull Cursor cursor) {
+            creates[0]++;
+            final int name = cursor.getColumnIndexOrThrow("name");
+            return new Function<Cursor, String>() {
+              @NonNull @Override public String apply(@NonNull Cursor cursor) {
+                return cursor.getString(name);
+              }
+            };
+          }
+        })
+        .test()
+        .assertValues(Arrays.asList("alice", "bob"), Arrays.asList("alice", "bob"));
+    assertThat(creates[0]).isEqualTo(2);
+  }
+
+  @Test public void mapToOneWithFactoryThrowsFromCreate() {
+    @NonNull final Query query = new Query() {
+      @Override public Cursor run() {
+        @NonNull final MatrixCursor cursor = new MatrixCursor(new String[] { "col1" });
+        cursor.addRow(new Object[] { "value1" });
+        return cursor;
+      }
+    };
+
+    @NonNull final IllegalArgumentException error = new IllegalArgumentException("no column");
+    new QueryObservable(Observable.just(query))
+        .mapToOne(new RowMapperFactory<Object>() {
+          @NonNull @Override public Function<Cursor, Object> create(@NonNull Cursor cursor) {
+            throw error;
+          }
+        })
+        .test()
+        .assertNoValues()
+        .assertError(error);
+  }
 }
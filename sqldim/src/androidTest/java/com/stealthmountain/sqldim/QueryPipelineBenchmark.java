@@ -0,0 +1,200 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.DimDatabase.Trigger;
+import com.stealthmountain.sqldim.SqlDim.MarkedQuery;
+import com.stealthmountain.sqldim.SqlDim.Query;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.ObservableEmitter;
+import io.reactivex.rxjava3.core.ObservableOnSubscribe;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Cancellable;
+import io.reactivex.rxjava3.functions.Consumer;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Compares the fused observable query with the chain of operators it replaces (triggers created
+ * from a listener, mapped to the query, started with it, observed on the scheduler and checked on
+ * subscription) for subscribing and disposing, and for delivering triggers to a subscriber, for
+ * queries and for marked queries. See {@link Benchmarks}.
+ */
+public final class QueryPipelineBenchmark {
+  @NonNull private static final String TAG = QueryPipelineBenchmark.class.getSimpleName();
+  @NonNull private static final String TABLE = "employee";
+  private static final int WARMUP_ITERATIONS = 20000;
+  private static final int MEASURED_ITERATIONS = 100000;
+  private static final int RUNS = 5;
+
+  // Runs scheduled work on the calling thread, without skipping observeOn as trampoline() does.
+  @NonNull private final Scheduler scheduler = Schedulers.from(new Executor() {
+    @Override public void execute(@NonNull Runnable command) {
+      command.run();
+    }
+  });
+  @NonNull private final TriggerDispatcher<Object> dispatcher = new TriggerDispatcher<>();
+  @NonNull private final Set<String> tables = Collections.singleton(TABLE);
+  @NonNull private final Trigger<Object> trigger =
+      new Trigger<>(Collections.<Object>singleton("marker"), Collections.singleton(TABLE));
+  @NonNull private final Query query = new Query() {
+    @Nullable @Override public Cursor run() {
+      return null;
+    }
+  };
+  @NonNull private final FusedQueryObservable.Items<Object, MarkedQuery<Object>> markedQueries =
+      new FusedQueryObservable.Items<Object, MarkedQuery<Object>>() {
+        @NonNull @Override public MarkedQuery<Object> of(@NonNull Trigger<Object> trigger) {
+          return markedQuery(trigger.markers);
+        }
+
+        @NonNull @Override public MarkedQuery<Object> merge(@NonNull MarkedQuery<Object> pending,
+                                                            @NonNull MarkedQuery<Object> next) {
+          return next;
+        }
+      };
+  @NonNull private final Consumer<Object> subscribeCheck = new Consumer<Object>() {
+    @Override public void accept(@NonNull Object ignored) {
+    }
+  };
+  @NonNull private final Consumer<Object> ignore = new Consumer<Object>() {
+    @Override public void accept(@NonNull Object ignored) {
+    }
+  };
+
+  @Test public void subscriptionChurn() {
+    @NonNull final long[] fused = new long[RUNS];
+    @NonNull final long[] chained = new long[RUNS];
+    @NonNull final long[] fusedMarked = new long[RUNS];
+    @NonNull final long[] chainedMarked = new long[RUNS];
+    for (int run = 0; run < RUNS; run++) {
+      fused[run] = measureChurn(fused());
+      chained[run] = measureChurn(chained());
+      fusedMarked[run] = measureChurn(fusedMarked());
+      chainedMarked[run] = measureChurn(chainedMarked());
+    }
+    log("query subscribe and dispose", fused, chained);
+    log("marked query subscribe and dispose", fusedMarked, chainedMarked);
+  }
+
+  @Test public void triggerThroughput() {
+    @NonNull final long[] fused = new long[RUNS];
+    @NonNull final long[] chained = new long[RUNS];
+    @NonNull final long[] fusedMarked = new long[RUNS];
+    @NonNull final long[] chainedMarked = new long[RUNS];
+    for (int run = 0; run < RUNS; run++) {
+      fused[run] = measureTriggers(fused());
+      chained[run] = measureTriggers(chained());
+      fusedMarked[run] = measureTriggers(fusedMarked());
+      chainedMarked[run] = measureTriggers(chainedMarked());
+    }
+    log("query trigger", fused, chained);
+    log("marked query trigger", fusedMarked, chainedMarked);
+  }
+
+  private static void log(@NonNull String name, @NonNull long[] fused, @NonNull long[] chained) {
+    Log.i(TAG, name + ": fused " + Benchmarks.median(fused) + "ns, chained "
+        + Benchmarks.median(chained) + "ns");
+  }
+
+  private long measureChurn(@NonNull Observable<?> queries) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      queries.subscribe(ignore).dispose();
+    }
+    final long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      queries.subscribe(ignore).dispose();
+    }
+    return (System.nanoTime() - start) / MEASURED_ITERATIONS;
+  }
+
+  private long measureTriggers(@NonNull Observable<?> queries) {
+    @NonNull final Disposable disposable = queries.subscribe(ignore);
+    try {
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        dispatcher.post(trigger);
+      }
+      final long start = System.nanoTime();
+      for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+        dispatcher.post(trigger);
+      }
+      return (System.nanoTime() - start) / MEASURED_ITERATIONS;
+    } finally {
+      disposable.dispose();
+    }
+  }
+
+  @NonNull private static MarkedQuery<Object> markedQuery(@NonNull Set<Object> markers) {
+    return new MarkedQuery<Object>(markers) {
+      @Nullable @Override public Cursor run() {
+        return null;
+      }
+    };
+  }
+
+  @NonNull private Observable<Query> fused() {
+    return new FusedQueryObservable<Object, Query>(dispatcher, tables, null, query, query,
+        scheduler, false, subscribeCheck);
+  }
+
+  @NonNull private Observable<MarkedQuery<Object>> fusedMarked() {
+    return new FusedQueryObservable<>(dispatcher, tables, null,
+        markedQuery(Collections.emptySet()), markedQueries, scheduler, false, subscribeCheck);
+  }
+
+  @NonNull private Observable<Query> chained() {
+    return triggers()
+        .map(new Function<Trigger<Object>, Query>() {
+          @NonNull @Override public Query apply(@NonNull Trigger<Object> ignored) {
+            return query;
+          }
+        })
+        .startWith(Single.just(query))
+        .observeOn(scheduler)
+        .doOnSubscribe(subscribeCheck);
+  }
+
+  @NonNull private Observable<MarkedQuery<Object>> chainedMarked() {
+    return triggers()
+        .map(new Function<Trigger<Object>, MarkedQuery<Object>>() {
+          @NonNull @Override public MarkedQuery<Object> apply(@NonNull Trigger<Object> trigger) {
+            return markedQueries.of(trigger);
+          }
+        })
+        .startWith(Single.just(markedQuery(Collections.emptySet())))
+        .observeOn(scheduler)
+        .doOnSubscribe(subscribeCheck);
+  }
+
+  @NonNull private Observable<Trigger<Object>> triggers() {
+    return Observable.create(new ObservableOnSubscribe<Trigger<Object>>() {
+      @Override public void subscribe(@NonNull final ObservableEmitter<Trigger<Object>> e) {
+        @NonNull final TriggerDispatcher.Listener<Object> listener =
+            new TriggerDispatcher.Listener<Object>() {
+              @Override public void onTrigger(@NonNull Trigger<Object> trigger) {
+                e.onNext(trigger);
+              }
+            };
+        dispatcher.register(tables, listener);
+        e.setCancellable(new Cancellable() {
+          @Override public void cancel() {
+            dispatcher.unregister(tables, listener);
+          }
+        });
+      }
+    });
+  }
+}
@@ -0,0 +1,132 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.SupportSQLiteOpenHelper.Configuration;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Consumer;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import static android.database.sqlite.SQLiteDatabase.CONFLICT_NONE;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static com.stealthmountain.sqldim.TestDb.EmployeeTable.NAME;
+import static com.stealthmountain.sqldim.TestDb.TABLE_EMPLOYEE;
+import static com.stealthmountain.sqldim.TestDb.employee;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares observable queries on a single query thread with queries on a pool of readers over a
+ * write-ahead log, for {@link #QUERIES} subscriptions re-querying through a burst of writes made on
+ * the writer thread. Each configuration is timed from the first write until every subscription has
+ * seen the last one. See {@link Benchmarks}.
+ */
+public final class ReaderPoolBenchmark {
+  @NonNull private static final String TAG = ReaderPoolBenchmark.class.getSimpleName();
+  // Scans the whole table, so each re-query does enough work for the readers to overlap.
+  @NonNull private static final String COUNT_EMPLOYEES =
+      "SELECT COUNT(*) FROM " + TABLE_EMPLOYEE + " WHERE " + NAME + " LIKE '%'";
+  private static final int QUERIES = 4;
+  private static final int SEED_ROWS = 5000;
+  private static final int WRITES = 200;
+  private static final int RUNS = 3;
+
+  @NonNull @Rule public final TemporaryFolder dbFolder = new TemporaryFolder();
+
+  @Test public void requeriesDuringWriteBurst() throws Exception {
+    @NonNull final long[] serial = new long[RUNS];
+    @NonNull final long[] pooled = new long[RUNS];
+    @NonNull final ExecutorService queryThread = Executors.newSingleThreadExecutor();
+    try {
+      for (int run = 0; run < RUNS; run++) {
+        serial[run] = measure(new SqlDim.Builder<Object>().build()
+            .wrapDatabaseHelper(newHelper(), Schedulers.from(queryThread)));
+        pooled[run] = measure(new SqlDim.Builder<Object>().build()
+            .wrapDatabaseHelper(newHelper(), QUERIES));
+      }
+    } finally {
+      queryThread.shutdown();
+    }
+    Log.i(TAG, QUERIES + " queries through " + WRITES + " writes: single thread "
+        + Benchmarks.median(serial) + "ms, " + QUERIES + " readers " + Benchmarks.median(pooled)
+        + "ms");
+  }
+
+  @NonNull private SupportSQLiteOpenHelper newHelper() throws IOException {
+    return new FrameworkSQLiteOpenHelperFactory().create(Configuration.builder(
+            InstrumentationRegistry.getInstrumentation().getTargetContext())
+        .callback(new TestDb())
+        .name(dbFolder.newFile().getPath())
+        .build());
+  }
+
+  private static long measure(@NonNull final DimDatabase<Object> db) throws InterruptedException {
+    try {
+      try (DimDatabase.Transaction<Object> transaction = db.newTransaction()) {
+        for (int i = 0; i < SEED_ROWS; i++) {
+          db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("seed" + i, "Seed " + i));
+        }
+        transaction.markSuccessful();
+      }
+      final long rows;
+      try (Cursor cursor = db.query(COUNT_EMPLOYEES)) {
+        cursor.moveToFirst();
+        rows = cursor.getLong(0);
+      }
+
+      final long expected = rows + WRITES;
+      @NonNull final CountDownLatch seen = new CountDownLatch(QUERIES);
+      @NonNull final List<Disposable> disposables = new ArrayList<>();
+      for (int i = 0; i < QUERIES; i++) {
+        disposables.add(db.createQuery(TABLE_EMPLOYEE, COUNT_EMPLOYEES)
+            .mapToOne(new Function<Cursor, Long>() {
+              @NonNull @Override public Long apply(@NonNull Cursor cursor) {
+                return cursor.getLong(0);
+              }
+            })
+            .subscribe(new Consumer<Long>() {
+              @Override public void accept(@NonNull Long count) {
+                if (count == expected) {
+                  seen.countDown();
+                }
+              }
+            }));
+      }
+
+      final long start = System.nanoTime();
+      db.getWriteScheduler().scheduleDirect(new Runnable() {
+        @Override public void run() {
+          for (int i = 0; i < WRITES; i++) {
+            db.insert(TABLE_EMPLOYEE, CONFLICT_NONE, employee("write" + i, "Write " + i));
+          }
+        }
+      });
+      assertWithMessage("all queries saw the last write").that(seen.await(60, SECONDS)).isTrue();
+      final long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+      for (Disposable disposable : disposables) {
+        disposable.dispose();
+      }
+      return elapsedMillis;
+    } finally {
+      db.close();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.stealthmountain.sqldim.TestDb.SELECT_EMPLOYEES;
+import static com.stealthmountain.sqldim.TestDb.TABLE_EMPLOYEE;
+
+public final class SharedQueriesTest {
+  @NonNull private final SharedQueries<String> sharedQueries = new SharedQueries<>();
+  @NonNull private final PublishSubject<String> source = PublishSubject.create();
+  private int created;
+  @NonNull private final SharedQueries.Factory<String> factory =
+      new SharedQueries.Factory<String>() {
+        @NonNull @Override public Observable<String> create() {
+          created++;
+          return source;
+        }
+
+        @NonNull @Override public String replayed(@NonNull String item) {
+          return item.toUpperCase(Locale.US);
+        }
+      };
+
+  @Test public void subscribersOfTheSameKeyShareOneSubscription() {
+    @NonNull final QueryKey key = key();
+    @NonNull final TestObserver<String> first = sharedQueries.get(key, factory).test();
+    source.onNext("a");
+    @NonNull final TestObserver<String> second = sharedQueries.get(key, factory).test();
+    source.onNext("b");
+
+    assertThat(created).isEqualTo(1);
+    first.assertValuesOnly("a", "b");
+    // Late subscribers start from the latest item, as replayed.
+    second.assertValuesOnly("A", "b");
+  }
+
+  @Test public void itemEmittedWhileSubscribingIsNotReplayed() {
+    @NonNull final QueryKey key = key();
+    @NonNull final TestObserver<String> first = sharedQueries.get(key, factory).test();
+    source.onNext("a");
+    @NonNull final TestObserver<String> second = new TestObserver<String>() {
+      @Override public void onSubscribe(@NonNull Disposable d) {
+        super.onSubscribe(d);
+        // A write racing with the subscription, emitted before it joins the replay.
+        source.onNext("b");
+      }
+    };
+    sharedQueries.get(key, factory).subscribe(second);
+
+    first.assertValuesOnly("a", "b");
+    // The first item seen was emitted after subscribing, so it isn't a replay.
+    second.assertValuesOnly("b");
+  }
+
+  @Test public void lastDisposeTearsDownAndRemovesTheEntry() {
+    @NonNull final QueryKey key = key();
+    @NonNull final TestObserver<String> first = sharedQueries.get(key, factory).test();
+    @NonNull final TestObserver<String> second = sharedQueries.get(key, factory).test();
+    assertThat(sharedQueries.size()).isEqualTo(1);
+
+    first.dispose();
+    assertThat(source.hasObservers()).isTrue();
+    second.dispose();
+    assertThat(source.hasObservers()).isFalse();
+    assertThat(sharedQueries.size()).isEqualTo(0);
+
+    sharedQueries.get(key, factory).test();
+    assertThat(created).isEqualTo(2);
+  }
+
+  @Test public void resubscribingAfterTheLastDisposeJoinsTheNewEntry() {
+    @NonNull final List<PublishSubject<String>> sources = new ArrayList<>();
+    @NonNull final SharedQueries.Factory<String> factory = new SharedQueries.Factory<String>() {
+      @NonNull @Override public Observable<String> create() {
+        @NonNull final PublishSubject<String> source = PublishSubject.create();
+        sources.add(source);
+        return source;
+      }
+
+      @NonNull @Override public String replayed(@NonNull String item) {
+        return item;
+      }
+    };
+    @NonNull final QueryKey key = key();
+    @NonNull final Observable<String> shared = sharedQueries.get(key, factory);
+    shared.test().dispose();
+    assertThat(sharedQueries.size()).isEqualTo(0);
+
+    @NonNull final TestObserver<String> first = shared.test();
+    @NonNull final TestObserver<String> second = sharedQueries.get(key, factory).test();
+    assertThat(sources).hasSize(2);
+    assertThat(sources.get(0).hasObservers()).isFalse();
+    sources.get(1).onNext("a");
+    first.assertValuesOnly("a");
+    second.assertValuesOnly("a");
+  }
+
+  @Test public void errorRemovesTheEntry() {
+    @NonNull final QueryKey key = key();
+    @NonNull final TestObserver<String> first = sharedQueries.get(key, factory).test();
+    source.onError(new RuntimeException("boom"));
+
+    first.assertError(RuntimeException.class);
+    assertThat(sharedQueries.size()).isEqualTo(0);
+  }
+
+  @NonNull private static QueryKey key() {
+    return new QueryKey(new SimpleSQLiteQuery(SELECT_EMPLOYEES), Collections.singleton(TABLE_EMPLOYEE));
+  }
+}
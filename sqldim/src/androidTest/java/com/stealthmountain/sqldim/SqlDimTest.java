@@ -17,6 +17,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
@@ -49,6 +50,33 @@ public final class SqlDimTest {
     } catch (NullPointerException e) {
       assertThat(e).hasMessageThat().isEqualTo("markedQueryTransformer == null");
     }
+    try {
+      //noinspection ConstantConditions
+      builder.coalesceTriggers(1, null);
+      fail();
+    } catch (NullPointerException e) {
+      assertThat(e).hasMessageThat().isEqualTo("unit == null");
+    }
+  }
+
+  @Test public void builderDisallowsNegativeCoalescingWindow() {
+    @NonNull final SqlDim.Builder<Object> builder = new SqlDim.Builder<>();
+    try {
+      builder.coalesceTriggers(-1, MILLISECONDS);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageThat().isEqualTo("window < 0");
+    }
+  }
+
+  @Test public void builderDisallowsNegativeResultCacheSize() {
+    @NonNull final SqlDim.Builder<Object> builder = new SqlDim.Builder<>();
+    try {
+      builder.resultCache(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageThat().isEqualTo("maxBytes < 0");
+    }
   }
 
   @Test public void asRowsEmpty() {
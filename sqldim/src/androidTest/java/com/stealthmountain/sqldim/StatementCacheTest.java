@@ -0,0 +1,25 @@
+package com.stealthmountain.sqldim;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class StatementCacheTest {
+  @Test public void schemaChanges() {
+    assertThat(StatementCache.changesSchema("CREATE TABLE a (b TEXT)")).isTrue();
+    assertThat(StatementCache.changesSchema("alter table a add column c")).isTrue();
+    assertThat(StatementCache.changesSchema("  DROP INDEX a_b")).isTrue();
+  }
+
+  @Test public void schemaChangeAfterComments() {
+    assertThat(StatementCache.changesSchema("-- Comment\nCREATE INDEX a_b ON a (b)")).isTrue();
+    assertThat(StatementCache.changesSchema("/* Comment */ DROP TABLE a")).isTrue();
+  }
+
+  @Test public void otherStatements() {
+    assertThat(StatementCache.changesSchema("INSERT INTO a VALUES ('CREATE')")).isFalse();
+    assertThat(StatementCache.changesSchema("UPDATE a SET b = 'DROP'")).isFalse();
+    assertThat(StatementCache.changesSchema("-- CREATE\nSELECT 1")).isFalse();
+    assertThat(StatementCache.changesSchema("")).isFalse();
+  }
+}
@@ -0,0 +1,73 @@
+package com.stealthmountain.sqldim;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class TableAnalyzerTest {
+  private final TableAnalyzer analyzer = new TableAnalyzer();
+
+  @Test public void readsJoinedTables() {
+    assertThat(analyzer.readTables("SELECT e.name, m.name FROM employee AS e"
+        + " LEFT OUTER JOIN manager m ON e._id = m.employee_id"
+        + " INNER JOIN department INDEXED BY department_name USING (department_id)"))
+        .containsExactly("employee", "manager", "department").inOrder();
+  }
+
+  @Test public void readsCommaSeparatedTables() {
+    assertThat(analyzer.readTables("SELECT * FROM employee e, manager, main.department d"
+        + " WHERE e._id = manager.employee_id"))
+        .containsExactly("employee", "manager", "department").inOrder();
+  }
+
+  @Test public void readsTablesOfSubqueries() {
+    assertThat(analyzer.readTables("SELECT name FROM (SELECT name FROM employee) AS e"
+        + " WHERE name IN (SELECT name FROM manager)"
+        + " AND EXISTS (SELECT 1 FROM \"Department\" JOIN [office] ON 1)"))
+        .containsExactly("employee", "manager", "Department", "office").inOrder();
+  }
+
+  @Test public void readsTablesOfParenthesizedJoins() {
+    assertThat(analyzer.readTables("SELECT * FROM (employee JOIN manager ON 1) JOIN department"))
+        .containsExactly("employee", "manager", "department").inOrder();
+  }
+
+  @Test public void commonTablesAndFunctionsAreNotTables() {
+    assertThat(analyzer.readTables("WITH RECURSIVE chain(id) AS (SELECT _id FROM employee"
+        + " UNION ALL SELECT manager_id FROM manager JOIN CHAIN ON employee_id = chain.id)"
+        + " SELECT value FROM chain, json_each(?)"))
+        .containsExactly("employee", "manager").inOrder();
+  }
+
+  @Test public void keywordsInLiteralsAndCommentsAreIgnored() {
+    assertThat(analyzer.readTables("SELECT 'FROM manager' FROM employee -- JOIN department"))
+        .containsExactly("employee");
+  }
+
+  @Test public void writesTargetsOfStatements() {
+    assertThat(analyzer.writtenTables("INSERT OR REPLACE INTO employee (name) VALUES (?)"))
+        .containsExactly("employee");
+    assertThat(analyzer.writtenTables("REPLACE INTO main.employee SELECT * FROM manager"))
+        .containsExactly("employee");
+    assertThat(analyzer.writtenTables("UPDATE OR IGNORE \"Employee\" SET name = ?"))
+        .containsExactly("Employee");
+    assertThat(analyzer.writtenTables("DELETE FROM employee WHERE _id IN"
+        + " (SELECT employee_id FROM manager)"))
+        .containsExactly("employee");
+  }
+
+  @Test public void upsertWritesTableOfInsert() {
+    assertThat(analyzer.writtenTables("INSERT INTO employee (username, name) VALUES (?, ?)"
+        + " ON CONFLICT (username) DO UPDATE SET name = excluded.name"))
+        .containsExactly("employee");
+  }
+
+  @Test public void queryWritesNothing() {
+    assertThat(analyzer.writtenTables("SELECT * FROM employee")).isEmpty();
+  }
+
+  @Test public void analysisIsCachedPerStatement() {
+    String sql = "SELECT * FROM employee";
+    assertThat(analyzer.readTables(sql)).isSameInstanceAs(analyzer.readTables(sql));
+  }
+}
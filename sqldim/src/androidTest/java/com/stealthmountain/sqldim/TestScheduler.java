@@ -36,6 +36,10 @@ final class TestScheduler extends Scheduler {
     delegate.triggerActions();
   }
 
+  public void advanceTimeBy(long delayTime, @NonNull TimeUnit unit) {
+    delegate.advanceTimeBy(delayTime, unit);
+  }
+
   @NonNull @Override public Worker createWorker() {
     return new TestWorker();
   }
@@ -0,0 +1,94 @@
+package com.stealthmountain.sqldim;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.SupportSQLiteOpenHelper.Configuration;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.functions.Consumer;
+
+import static com.stealthmountain.sqldim.SqlDim.Query;
+import static com.stealthmountain.sqldim.TestDb.SELECT_EMPLOYEES;
+import static com.stealthmountain.sqldim.TestDb.TABLE_EMPLOYEE;
+
+/**
+ * Measures the cost of dispatching a trigger to the one query watching the written table while
+ * an increasing number of queries watch unrelated tables. See {@link Benchmarks}.
+ */
+public final class TriggerDispatchBenchmark {
+  @NonNull private static final String TAG = TriggerDispatchBenchmark.class.getSimpleName();
+  @NonNull private static final int[] UNRELATED_SUBSCRIPTIONS = { 0, 100, 1000, 10000 };
+  private static final int WARMUP_TRIGGERS = 2000;
+  private static final int MEASURED_TRIGGERS = 20000;
+  private static final int RUNS = 5;
+
+  @NonNull @Rule public final TemporaryFolder dbFolder = new TemporaryFolder();
+
+  @NonNull private final CompositeDisposable disposables = new CompositeDisposable();
+  @NonNull private final Consumer<Query> ignore = new Consumer<Query>() {
+    @Override public void accept(@NonNull Query query) {
+    }
+  };
+  @Nullable private DimDatabase<Object> db;
+
+  @Before public void setUp() throws IOException {
+    @NonNull final Configuration configuration = Configuration.builder(
+            InstrumentationRegistry.getInstrumentation().getTargetContext()
+    )
+        .callback(new TestDb())
+        .name(dbFolder.newFile().getPath())
+        .build();
+    @NonNull final SupportSQLiteOpenHelper helper =
+        new FrameworkSQLiteOpenHelperFactory().create(configuration);
+    db = new SqlDim.Builder<Object>().build().wrapDatabaseHelper(helper, new TestScheduler());
+  }
+
+  @After public void tearDown() {
+    disposables.dispose();
+    Objects.requireNonNull(db).close();
+  }
+
+  @Test public void dispatchCostWithUnrelatedSubscriptions() {
+    @NonNull final DimDatabase<Object> db = Objects.requireNonNull(this.db);
+
+    disposables.add(db.createQuery(TABLE_EMPLOYEE, SELECT_EMPLOYEES).subscribe(ignore));
+
+    // Before the table index, 10000 unrelated subscriptions made every trigger run 10000 filters.
+    int subscribed = 0;
+    for (int unrelated : UNRELATED_SUBSCRIPTIONS) {
+      for (; subscribed < unrelated; subscribed++) {
+        disposables.add(db.createQuery("unrelated_" + subscribed, SELECT_EMPLOYEES).subscribe(ignore));
+      }
+      Log.i(TAG, unrelated + " unrelated subscriptions: " + measure(db) + "ns per trigger");
+    }
+  }
+
+  private static long measure(@NonNull DimDatabase<Object> db) {
+    for (int i = 0; i < WARMUP_TRIGGERS; i++) {
+      db.triggerMarked(i, TABLE_EMPLOYEE);
+    }
+    @NonNull final long[] runs = new long[RUNS];
+    for (int run = 0; run < RUNS; run++) {
+      final long start = System.nanoTime();
+      for (int i = 0; i < MEASURED_TRIGGERS; i++) {
+        db.triggerMarked(i, TABLE_EMPLOYEE);
+      }
+      runs[run] = (System.nanoTime() - start) / MEASURED_TRIGGERS;
+    }
+    return Benchmarks.median(runs);
+  }
+}
@@ -0,0 +1,214 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteProgram;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer of typed bind arguments, for the overloads of {@link DimDatabase} such as
+ * {@link DimDatabase#query(String, Bindings)} and {@link DimDatabase#executeInsert(String, String,
+ * Bindings)}. Unlike an {@code Object...} of arguments or {@link android.content.ContentValues},
+ * binding a {@code long} or {@code double} boxes nothing, and the buffer's arrays are kept across
+ * {@link #clearBindings()} for the next statement.
+ * <pre>{@code
+ * Bindings args = new Bindings();
+ * for (Employee employee : employees) {
+ *   args.clearBindings();
+ *   args.bindString(1, employee.username);
+ *   args.bindLong(2, employee.salary);
+ *   db.executeInsert("employee", "INSERT INTO employee (username, salary) VALUES (?, ?)", args);
+ * }
+ * }</pre>
+ * Bind indices start at 1, and an index skipped up to the highest one bound is bound to null.
+ * Instances are not thread-safe.
+ */
+public final class Bindings implements SupportSQLiteProgram {
+  private static final byte NULL = 0;
+  private static final byte LONG = 1;
+  private static final byte DOUBLE = 2;
+  private static final byte STRING = 3;
+  private static final byte BLOB = 4;
+
+  @NonNull private byte[] types;
+  @NonNull private long[] longs;
+  @NonNull private double[] doubles;
+  // Strings and blobs.
+  @NonNull private Object[] objects;
+  private int count;
+
+  public Bindings() {
+    this(8);
+  }
+
+  /** @param capacity The number of arguments to make room for up front. */
+  public Bindings(int capacity) {
+    if (capacity < 0) throw new IllegalArgumentException("capacity < 0");
+    types = new byte[capacity];
+    longs = new long[capacity];
+    doubles = new double[capacity];
+    objects = new Object[capacity];
+  }
+
+  @Override public void bindNull(int index) {
+    set(index, NULL);
+  }
+
+  @Override public void bindLong(int index, long value) {
+    final int position = set(index, LONG); // Before indexing longs, which set may grow.
+    longs[position] = value;
+  }
+
+  @Override public void bindDouble(int index, double value) {
+    final int position = set(index, DOUBLE);
+    doubles[position] = value;
+  }
+
+  @Override public void bindString(int index, @NonNull String value) {
+    if (value == null) throw new NullPointerException("value == null");
+    final int position = set(index, STRING);
+    objects[position] = value;
+  }
+
+  @Override public void bindBlob(int index, @NonNull byte[] value) {
+    if (value == null) throw new NullPointerException("value == null");
+    final int position = set(index, BLOB);
+    objects[position] = value;
+  }
+
+  /** Unbinds every argument, keeping the buffer's room for the next ones. */
+  @Override public void clearBindings() {
+    Arrays.fill(objects, 0, count, null);
+    count = 0;
+  }
+
+  @Override public void close() {
+  }
+
+  /** The highest index bound. */
+  public int getArgCount() {
+    return count;
+  }
+
+  /** Binds the arguments in this buffer to {@code program}, at the same indices. */
+  public void bindTo(@NonNull SupportSQLiteProgram program) {
+    for (int i = 0; i < count; i++) {
+      final int index = i + 1;
+      switch (types[i]) {
+        case LONG:
+          program.bindLong(index, longs[i]);
+          break;
+        case DOUBLE:
+          program.bindDouble(index, doubles[i]);
+          break;
+        case STRING:
+          program.bindString(index, (String) objects[i]);
+          break;
+        case BLOB:
+          program.bindBlob(index, (byte[]) objects[i]);
+          break;
+        default:
+          program.bindNull(index);
+          break;
+      }
+    }
+  }
+
+  /**
+   * Returns a query of {@code sql} with a copy of the arguments in this buffer, which keeps them
+   * as this buffer is cleared and reused. Suited to {@link DimDatabase#createQuery(String,
+   * SupportSQLiteQuery)}, whose query runs again on every trigger.
+   */
+  @NonNull public SupportSQLiteQuery toQuery(@NonNull String sql) {
+    if (sql == null) throw new NullPointerException("sql == null");
+    @NonNull final Bindings copy = new Bindings(count);
+    System.arraycopy(types, 0, copy.types, 0, count);
+    System.arraycopy(longs, 0, copy.longs, 0, count);
+    System.arraycopy(doubles, 0, copy.doubles, 0, count);
+    System.arraycopy(objects, 0, copy.objects, 0, count);
+    copy.count = count;
+    return new Query(sql, copy);
+  }
+
+  /** Returns a query of {@code sql} reading the arguments of this buffer as they are bound. */
+  @NonNull SupportSQLiteQuery asQuery(@NonNull String sql) {
+    return new Query(sql, this);
+  }
+
+  /** Marks {@code index} as bound to {@code type}, and returns its position in the arrays. */
+  private int set(int index, byte type) {
+    if (index < 1) throw new IllegalArgumentException("index < 1: " + index);
+    final int position = index - 1;
+    if (position >= types.length) {
+      grow(Math.max(index, types.length * 2));
+    }
+    if (position >= count) {
+      Arrays.fill(types, count, position, NULL); // Skipped indices are null.
+      count = index;
+    }
+    types[position] = type;
+    objects[position] = null;
+    return position;
+  }
+
+  private void grow(int capacity) {
+    types = Arrays.copyOf(types, capacity);
+    longs = Arrays.copyOf(longs, capacity);
+    doubles = Arrays.copyOf(doubles, capacity);
+    objects = Arrays.copyOf(objects, capacity);
+  }
+
+  @NonNull @Override public String toString() {
+    @NonNull final StringBuilder builder = new StringBuilder("Bindings[");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      switch (types[i]) {
+        case LONG:
+          builder.append(longs[i]);
+          break;
+        case DOUBLE:
+          builder.append(doubles[i]);
+          break;
+        case STRING:
+          builder.append(objects[i]);
+          break;
+        case BLOB:
+          builder.append(Arrays.toString((byte[]) objects[i]));
+          break;
+        default:
+          builder.append("null");
+          break;
+      }
+    }
+    return builder.append(']').toString();
+  }
+
+  private static final class Query implements SupportSQLiteQuery {
+    @NonNull private final String sql;
+    @NonNull private final Bindings bindings;
+
+    Query(@NonNull String sql, @NonNull Bindings bindings) {
+      this.sql = sql;
+      this.bindings = bindings;
+    }
+
+    @NonNull @Override public String getSql() {
+      return sql;
+    }
+
+    @Override public void bindTo(@NonNull SupportSQLiteProgram statement) {
+      bindings.bindTo(statement);
+    }
+
+    @Override public int getArgCount() {
+      return bindings.getArgCount();
+    }
+
+    @NonNull @Override public String toString() {
+      return sql + ' ' + bindings;
+    }
+  }
+}
@@ -0,0 +1,314 @@
+package com.stealthmountain.sqldim;
+
+import android.content.ContentValues;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteProgram;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static android.database.sqlite.SQLiteDatabase.CONFLICT_NONE;
+
+/**
+ * Compiled statements reused across the rows of {@link DimDatabase#insertAll},
+ * {@link DimDatabase#upsertAll} and {@link DimDatabase#deleteByIds}, so each statement is parsed
+ * once per call instead of once per row.
+ */
+final class BulkStatements {
+  /**
+   * The most variables a statement may bind, {@code SQLITE_MAX_VARIABLE_NUMBER}. Newer versions of
+   * SQLite allow more, but every version allows this many.
+   */
+  static final int MAX_VARIABLES = 999;
+
+  // Indexed by conflict algorithm, as in SQLiteDatabase.
+  @NonNull private static final String[] CONFLICT_CLAUSES =
+      { "", " OR ROLLBACK", " OR ABORT", " OR FAIL", " OR IGNORE", " OR REPLACE" };
+
+  /**
+   * Inserts rows with a statement compiled for the columns of the first row, and compiles another
+   * whenever a row has different columns.
+   */
+  static final class Inserter implements Closeable {
+    @NonNull private final SupportSQLiteDatabase db;
+    @NonNull private final String table;
+    private final int conflictAlgorithm;
+    @NonNull private String[] columns = new String[0];
+    @Nullable private SupportSQLiteStatement statement;
+
+    Inserter(@NonNull SupportSQLiteDatabase db, @NonNull String table, int conflictAlgorithm) {
+      this.db = db;
+      this.table = table;
+      this.conflictAlgorithm = conflictAlgorithm;
+    }
+
+    /** Returns the row ID of the inserted row, or -1 if it wasn't inserted. */
+    long insert(@NonNull ContentValues values) {
+      @Nullable SupportSQLiteStatement statement = this.statement;
+      if (statement == null || !hasColumns(values, columns)) {
+        closeQuietly(statement);
+        columns = values.keySet().toArray(new String[0]);
+        statement = db.compileStatement(insertSql(table, conflictAlgorithm, columns));
+        this.statement = statement;
+      }
+      bind(statement, values, columns, 1);
+      return statement.executeInsert();
+    }
+
+    @Override public void close() {
+      closeQuietly(statement);
+      statement = null;
+    }
+  }
+
+  /**
+   * Updates the row with the key of each row of values, or inserts the row if there is none, with
+   * statements compiled for the columns of the first row.
+   */
+  static final class Upserter implements Closeable {
+    @NonNull private final SupportSQLiteDatabase db;
+    @NonNull private final String table;
+    @NonNull private final String keyColumn;
+    @NonNull private final Inserter inserter;
+    @NonNull private String[] columns = new String[0];
+    @Nullable private SupportSQLiteStatement update;
+
+    Upserter(@NonNull SupportSQLiteDatabase db, @NonNull String table,
+             @NonNull String keyColumn) {
+      this.db = db;
+      this.table = table;
+      this.keyColumn = keyColumn;
+      this.inserter = new Inserter(db, table, CONFLICT_NONE);
+    }
+
+    /** Returns true if the row was updated, or false if it was inserted. */
+    boolean upsert(@NonNull ContentValues values) {
+      if (!values.containsKey(keyColumn)) {
+        throw new IllegalArgumentException("Row has no " + keyColumn + ": " + values);
+      }
+      if (values.get(keyColumn) == null) {
+        // 'WHERE key = NULL' never matches, so the row would always be inserted.
+        throw new IllegalArgumentException("Row has a null " + keyColumn + ": " + values);
+      }
+      @Nullable SupportSQLiteStatement update = this.update;
+      if (update == null || !hasColumns(values, columns)) {
+        closeQuietly(update);
+        @NonNull final List<String> setColumns = new ArrayList<>(values.keySet());
+        setColumns.remove(keyColumn);
+        columns = setColumns.toArray(new String[setColumns.size() + 1]);
+        columns[columns.length - 1] = keyColumn; // Bound last, in the WHERE clause.
+        update = db.compileStatement(updateSql(table, keyColumn, setColumns));
+        this.update = update;
+      }
+      bind(update, values, columns, 1);
+      if (update.executeUpdateDelete() > 0) {
+        return true;
+      }
+      inserter.insert(values);
+      return false;
+    }
+
+    @Override public void close() {
+      closeQuietly(update);
+      update = null;
+      inserter.close();
+    }
+  }
+
+  /**
+   * Deletes the rows with the given rowids, with one statement for every chunk of
+   * {@link #MAX_VARIABLES} and another for the remainder.
+   */
+  static int deleteByIds(@NonNull SupportSQLiteDatabase db, @NonNull String table,
+                         @NonNull Long[] ids) {
+    // Checked before deleting anything, rather than failing to bind part way through.
+    for (int i = 0; i < ids.length; i++) {
+      if (ids[i] == null) throw new NullPointerException("ids[" + i + "] == null");
+    }
+    int deleted = 0;
+    final int fullChunks = ids.length / MAX_VARIABLES;
+    if (fullChunks > 0) {
+      @NonNull final SupportSQLiteStatement statement =
+          db.compileStatement(deleteSql(table, MAX_VARIABLES));
+      try {
+        for (int chunk = 0; chunk < fullChunks; chunk++) {
+          deleted += deleteChunk(statement, ids, chunk * MAX_VARIABLES, MAX_VARIABLES);
+        }
+      } finally {
+        closeQuietly(statement);
+      }
+    }
+    final int remainder = ids.length - fullChunks * MAX_VARIABLES;
+    if (remainder > 0) {
+      @NonNull final SupportSQLiteStatement statement =
+          db.compileStatement(deleteSql(table, remainder));
+      try {
+        deleted += deleteChunk(statement, ids, fullChunks * MAX_VARIABLES, remainder);
+      } finally {
+        closeQuietly(statement);
+      }
+    }
+    return deleted;
+  }
+
+  private static int deleteChunk(@NonNull SupportSQLiteStatement statement, @NonNull Long[] ids,
+                                 int offset, int count) {
+    for (int i = 0; i < count; i++) {
+      statement.bindLong(i + 1, ids[offset + i]);
+    }
+    return statement.executeUpdateDelete();
+  }
+
+  @NonNull static String insertSql(@NonNull String table, int conflictAlgorithm,
+                                   @NonNull String[] columns) {
+    @NonNull final StringBuilder sql = new StringBuilder("INSERT")
+        .append(CONFLICT_CLAUSES[conflictAlgorithm])
+        .append(" INTO ")
+        .append(table);
+    if (columns.length == 0) {
+      return sql.append(" DEFAULT VALUES").toString();
+    }
+    sql.append(" (");
+    appendJoined(sql, Arrays.asList(columns), "");
+    sql.append(") VALUES (");
+    appendPlaceholders(sql, columns.length);
+    return sql.append(')').toString();
+  }
+
+  @NonNull static String updateSql(@NonNull String table, @NonNull String keyColumn,
+                                   @NonNull List<String> columns) {
+    @NonNull final StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+    if (columns.isEmpty()) {
+      sql.append(keyColumn).append(" = ").append(keyColumn); // Only checks the row exists.
+    } else {
+      appendJoined(sql, columns, " = ?");
+    }
+    return sql.append(" WHERE ").append(keyColumn).append(" = ?").toString();
+  }
+
+  /** The SQL of {@link SupportSQLiteDatabase#update}, with the columns bound first. */
+  @NonNull static String updateWhereSql(@NonNull String table, int conflictAlgorithm,
+                                        @NonNull String[] columns, @Nullable String whereClause) {
+    @NonNull final StringBuilder sql = new StringBuilder("UPDATE")
+        .append(CONFLICT_CLAUSES[conflictAlgorithm])
+        .append(' ')
+        .append(table)
+        .append(" SET ");
+    appendJoined(sql, Arrays.asList(columns), " = ?");
+    if (whereClause != null && !whereClause.isEmpty()) {
+      sql.append(" WHERE ").append(whereClause);
+    }
+    return sql.toString();
+  }
+
+  /** The SQL of {@link SupportSQLiteDatabase#delete}. */
+  @NonNull static String deleteWhereSql(@NonNull String table, @Nullable String whereClause) {
+    return whereClause != null && !whereClause.isEmpty()
+        ? "DELETE FROM " + table + " WHERE " + whereClause
+        : "DELETE FROM " + table;
+  }
+
+  @NonNull static String deleteSql(@NonNull String table, int count) {
+    @NonNull final StringBuilder sql =
+        new StringBuilder("DELETE FROM ").append(table).append(" WHERE rowid IN (");
+    appendPlaceholders(sql, count);
+    return sql.append(')').toString();
+  }
+
+  /**
+   * Binds the value of each of {@code columns} in {@code values}, from {@code index} on, with the
+   * type {@link ContentValues} stores it as.
+   */
+  static void bind(@NonNull SupportSQLiteProgram program, @NonNull ContentValues values,
+                   @NonNull String[] columns, int index) {
+    for (String column : columns) {
+      bind(program, index++, values.get(column));
+    }
+  }
+
+  /** Binds {@code args} from {@code index} on, as {@link SupportSQLiteDatabase#update} does. */
+  static void bindStrings(@NonNull SupportSQLiteProgram program, @Nullable String[] args,
+                          int index) {
+    if (args != null) {
+      for (String arg : args) {
+        if (arg == null) {
+          program.bindNull(index++);
+        } else {
+          program.bindString(index++, arg);
+        }
+      }
+    }
+  }
+
+  /** The names of the columns of {@code values}, in a fixed order so equal sets share SQL. */
+  @NonNull static String[] sortedColumns(@NonNull ContentValues values) {
+    @NonNull final String[] columns = values.keySet().toArray(new String[0]);
+    Arrays.sort(columns);
+    return columns;
+  }
+
+  static void bind(@NonNull SupportSQLiteProgram program, int index, @Nullable Object value) {
+    if (value == null) {
+      program.bindNull(index);
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+        || value instanceof Byte) {
+      program.bindLong(index, ((Number) value).longValue());
+    } else if (value instanceof Double || value instanceof Float) {
+      program.bindDouble(index, ((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      program.bindLong(index, (Boolean) value ? 1 : 0);
+    } else if (value instanceof byte[]) {
+      program.bindBlob(index, (byte[]) value);
+    } else {
+      program.bindString(index, value.toString());
+    }
+  }
+
+  private static boolean hasColumns(@NonNull ContentValues values, @NonNull String[] columns) {
+    if (values.size() != columns.length) {
+      return false;
+    }
+    for (String column : columns) {
+      if (!values.containsKey(column)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void appendJoined(@NonNull StringBuilder sql, @NonNull List<String> columns,
+                                   @NonNull String suffix) {
+    for (int i = 0; i < columns.size(); i++) {
+      if (i > 0) {
+        sql.append(", ");
+      }
+      sql.append(columns.get(i)).append(suffix);
+    }
+  }
+
+  private static void appendPlaceholders(@NonNull StringBuilder sql, int count) {
+    for (int i = 0; i < count; i++) {
+      sql.append(i > 0 ? ", ?" : "?");
+    }
+  }
+
+  static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private BulkStatements() {
+    throw new AssertionError("No instances.");
+  }
+}
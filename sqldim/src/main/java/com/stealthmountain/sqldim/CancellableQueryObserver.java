@@ -0,0 +1,152 @@
+package com.stealthmountain.sqldim;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.SqlDim.MarkedQuery;
+import com.stealthmountain.sqldim.SqlDim.Query;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.disposables.Disposable;
+
+/**
+ * Like {@link io.reactivex.rxjava3.observers.DisposableObserver}, for the operators which run the
+ * queries they receive. Disposing cancels the query being run through {@link #run(Query)} or
+ * {@link #run(MarkedQuery)}, so an abandoned query stops stepping its statement and frees its
+ * connection, and errors caused by the cancellation are dropped instead of reported.
+ * <p>
+ * Queries are cancelled with a {@link CancellationSignal}, which needs API 16. On older versions
+ * they run to completion, as before.
+ */
+abstract class CancellableQueryObserver<T> implements Observer<T>, Disposable {
+  @NonNull private final AtomicReference<Disposable> upstream = new AtomicReference<>();
+  // The signal of the query being run, or of the last one. Guarded by 'this'.
+  @Nullable private Object signal;
+  private volatile boolean disposed;
+
+  /** Called once the upstream {@link Disposable} is set. */
+  protected void onStart() {
+  }
+
+  @Override public final void onSubscribe(@NonNull Disposable d) {
+    if (upstream.compareAndSet(null, d)) {
+      onStart();
+    } else {
+      d.dispose();
+    }
+  }
+
+  @Override public final boolean isDisposed() {
+    return disposed;
+  }
+
+  @Override public final void dispose() {
+    if (disposed) {
+      return;
+    }
+    @Nullable final Object signal;
+    synchronized (this) {
+      disposed = true;
+      signal = this.signal;
+    }
+    @Nullable final Disposable upstream = this.upstream.getAndSet(null);
+    if (upstream != null) {
+      upstream.dispose();
+    }
+    if (signal != null) {
+      cancel(signal);
+    }
+  }
+
+  /**
+   * Runs {@code query} and executes it, so the statement is stepped while it can be cancelled.
+   * Returns null if the query was cancelled.
+   */
+  @Nullable final Cursor run(@NonNull Query query) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+      return query.run();
+    }
+    @Nullable final CancellationSignal signal = newSignal();
+    if (signal == null) {
+      return null;
+    }
+    @Nullable Cursor cursor = null;
+    try {
+      cursor = query.run(signal);
+      return execute(cursor);
+    } catch (RuntimeException e) {
+      return failed(e, cursor);
+    }
+  }
+
+  /** Like {@link #run(Query)}, for marked queries. */
+  @Nullable final Cursor run(@NonNull MarkedQuery<?> query) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+      return query.run();
+    }
+    @Nullable final CancellationSignal signal = newSignal();
+    if (signal == null) {
+      return null;
+    }
+    @Nullable Cursor cursor = null;
+    try {
+      cursor = query.run(signal);
+      return execute(cursor);
+    } catch (RuntimeException e) {
+      return failed(e, cursor);
+    }
+  }
+
+  /**
+   * Whether {@code e}, thrown while running or reading a query, was caused by disposing this
+   * observer. Such errors have nowhere to go and are dropped.
+   */
+  final boolean isCancellation(@NonNull Throwable e) {
+    return disposed && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+        && e instanceof OperationCanceledException;
+  }
+
+  /** Returns a new signal for the next query, or null if disposed. */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  @Nullable private CancellationSignal newSignal() {
+    @NonNull final CancellationSignal signal = new CancellationSignal();
+    synchronized (this) {
+      if (disposed) {
+        return null;
+      }
+      this.signal = signal;
+    }
+    return signal;
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  private static void cancel(@NonNull Object signal) {
+    ((CancellationSignal) signal).cancel();
+  }
+
+  @Nullable private static Cursor execute(@Nullable Cursor cursor) {
+    if (cursor != null) {
+      // A query only steps its statement when the cursor first fills its window.
+      cursor.getCount();
+    }
+    return cursor;
+  }
+
+  @Nullable private Cursor failed(@NonNull RuntimeException e, @Nullable Cursor cursor) {
+    if (cursor != null) {
+      cursor.close();
+    }
+    if (isCancellation(e)) {
+      return null;
+    }
+    throw e;
+  }
+}
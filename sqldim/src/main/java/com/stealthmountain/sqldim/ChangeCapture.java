@@ -0,0 +1,189 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import com.stealthmountain.sqldim.SqlTokens.Token;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the rows changed in every table, enabled with {@link SqlDim.Builder#captureChanges}.
+ * Temporary SQL triggers on each table insert the table name and rowid of every inserted, updated
+ * or deleted row into a temporary changelog table, which is drained into a DimDatabase trigger
+ * once per committed DimDatabase transaction, once per DimDatabase write outside of one, after
+ * {@link DimDatabase#execute}, and by {@link DimDatabase#triggerCapturedChanges()}. Rows of
+ * {@code WITHOUT ROWID} tables are recorded without a rowid, changing the table as a whole.
+ * <p>
+ * Temporary tables and triggers only exist on the connection which created them, which is the
+ * connection every write goes through. The changelog is only read within a transaction, which
+ * also always uses that connection. Changelog rows written by a transaction which rolls back are
+ * rolled back with it.
+ */
+final class ChangeCapture {
+  private static final String CHANGES = "sqldim_changes";
+
+  // The database the changelog was installed on, and the schema version last seen by a drain.
+  @Nullable private volatile SupportSQLiteDatabase installedOn;
+  private long installedSchemaVersion = -1;
+  // PRAGMA schema_version compiled on 'installedOn', run by drains while holding the lock.
+  @Nullable private SupportSQLiteStatement schemaVersion;
+
+  /** Installs the changelog and its triggers unless they were already installed on {@code db}. */
+  void install(@NonNull SupportSQLiteDatabase db) {
+    if (installedOn == db) {
+      return;
+    }
+    // The lock is only taken in a transaction, which holds the connection every write goes
+    // through, so no thread waits for the connection while holding the lock.
+    db.beginTransactionNonExclusive();
+    try {
+      synchronized (this) {
+        if (installedOn != db) {
+          db.execSQL("CREATE TEMP TABLE IF NOT EXISTS " + CHANGES
+              + " (table_name TEXT NOT NULL, row_id INTEGER)");
+          installTriggers(db);
+          BulkStatements.closeQuietly(schemaVersion);
+          schemaVersion = db.compileStatement("PRAGMA schema_version");
+          installedOn = db;
+          installedSchemaVersion = -1;
+        }
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  /**
+   * Adds the tables and the keys of the rows changed since the last drain to {@code tables} and
+   * {@code keys}, which must be empty, and forgets them. Tables changed as a whole have no keys.
+   *
+   * @return false if nothing changed.
+   */
+  boolean drain(@NonNull SupportSQLiteDatabase db, @NonNull Set<String> tables,
+                @NonNull Map<String, Set<Long>> keys) {
+    install(db);
+    @NonNull final Set<String> wholeTables = new HashSet<>();
+    db.beginTransactionNonExclusive();
+    try {
+      synchronized (this) {
+        final long version = schemaVersion(db);
+        if (version != installedSchemaVersion) {
+          // Capture tables created since the triggers were installed.
+          installTriggers(db);
+          installedSchemaVersion = version;
+        }
+        @NonNull final Cursor cursor = db.query("SELECT table_name, row_id FROM " + CHANGES);
+        try {
+          while (cursor.moveToNext()) {
+            @NonNull final String table = cursor.getString(0);
+            tables.add(table);
+            if (cursor.isNull(1)) {
+              wholeTables.add(table);
+            } else {
+              @Nullable Set<Long> tableKeys = keys.get(table);
+              if (tableKeys == null) {
+                tableKeys = new HashSet<>();
+                keys.put(table, tableKeys);
+              }
+              tableKeys.add(cursor.getLong(1));
+            }
+          }
+        } finally {
+          cursor.close();
+        }
+        if (!tables.isEmpty()) {
+          db.execSQL("DELETE FROM " + CHANGES);
+        }
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+    for (String table : wholeTables) {
+      keys.remove(table);
+    }
+    return !tables.isEmpty();
+  }
+
+  /** The schema version of {@code db}, with the statement compiled when installing on it. */
+  private long schemaVersion(@NonNull SupportSQLiteDatabase db) {
+    @Nullable final SupportSQLiteStatement schemaVersion = this.schemaVersion;
+    if (schemaVersion == null || installedOn != db) {
+      // Installed on another database since this drain began.
+      @NonNull final SupportSQLiteStatement statement =
+          db.compileStatement("PRAGMA schema_version");
+      try {
+        return statement.simpleQueryForLong();
+      } finally {
+        BulkStatements.closeQuietly(statement);
+      }
+    }
+    return schemaVersion.simpleQueryForLong();
+  }
+
+  private static void installTriggers(@NonNull SupportSQLiteDatabase db) {
+    @NonNull final Cursor cursor = db.query("SELECT name, sql FROM sqlite_master"
+        + " WHERE type = 'table' AND sql NOT NULL AND name NOT LIKE 'sqlite\\_%' ESCAPE '\\'");
+    try {
+      while (cursor.moveToNext()) {
+        @NonNull final String table = cursor.getString(0);
+        @NonNull final List<Token> tokens = SqlTokens.of(cursor.getString(1));
+        if (tokens.size() > 1 && tokens.get(1).isKeyword("virtual")) {
+          continue; // Virtual tables can't have triggers.
+        }
+        final boolean withoutRowId = isWithoutRowId(tokens);
+        @NonNull final String oldRow = withoutRowId ? "NULL" : "old.rowid";
+        @NonNull final String newRow = withoutRowId ? "NULL" : "new.rowid";
+        @NonNull final String target = "main." + quote(table);
+        @NonNull final String record =
+            "INSERT INTO " + CHANGES + " SELECT " + literal(table) + ", ";
+        db.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS " + triggerName("insert", table)
+            + " AFTER INSERT ON " + target
+            + " BEGIN " + record + newRow + "; END");
+        db.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS " + triggerName("update", table)
+            + " AFTER UPDATE ON " + target
+            + " BEGIN " + record + oldRow + "; "
+            + (withoutRowId ? "" : record + "new.rowid WHERE new.rowid IS NOT old.rowid; ")
+            + "END");
+        db.execSQL("CREATE TEMP TRIGGER IF NOT EXISTS " + triggerName("delete", table)
+            + " AFTER DELETE ON " + target
+            + " BEGIN " + record + oldRow + "; END");
+      }
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private static boolean isWithoutRowId(@NonNull List<Token> tokens) {
+    for (int i = tokens.size() - 1; i > 0; i--) {
+      if (tokens.get(i).is(')')) {
+        return false; // The table options follow the last parenthesis.
+      }
+      if (tokens.get(i).isKeyword("rowid") && tokens.get(i - 1).isKeyword("without")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @NonNull private static String triggerName(@NonNull String operation, @NonNull String table) {
+    return quote("sqldim_capture_" + operation + "_" + table);
+  }
+
+  @NonNull private static String quote(@NonNull String identifier) {
+    return '"' + identifier.replace("\"", "\"\"") + '"';
+  }
+
+  @NonNull private static String literal(@NonNull String value) {
+    return '\'' + value.replace("'", "''") + '\'';
+  }
+}
@@ -0,0 +1,221 @@
+package com.stealthmountain.sqldim;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable, in-memory copy of a result set which any number of subscribers can read through
+ * their own {@link #newCursor() cursor}, on any thread.
+ */
+final class CursorSnapshot {
+  // Rough heap costs on ART, used to keep caches of snapshots within a byte budget.
+  private static final int OBJECT_BYTES = 16;
+  private static final int REFERENCE_BYTES = 4;
+  private static final int STRING_BYTES = 40;
+
+  @NonNull private final String[] columnNames;
+  @NonNull private final List<Object[]> rows;
+  private final long estimatedBytes;
+  private final long checksum;
+
+  private CursorSnapshot(@NonNull String[] columnNames, @NonNull List<Object[]> rows,
+                         long estimatedBytes, long checksum) {
+    this.columnNames = columnNames;
+    this.rows = rows;
+    this.estimatedBytes = estimatedBytes;
+    this.checksum = checksum;
+  }
+
+  /**
+   * Copies every row of {@code cursor}, computing the {@link #checksum()} of the rows in the same
+   * pass. The caller remains responsible for closing it. A cursor over a snapshot is not copied
+   * again.
+   */
+  @NonNull static CursorSnapshot copyOf(@NonNull Cursor cursor) {
+    return Objects.requireNonNull(copyOf(cursor, Long.MAX_VALUE));
+  }
+
+  /**
+   * Like {@link #copyOf(Cursor)}, but gives up and returns null as soon as the estimated size of
+   * the copy exceeds {@code maxBytes}, leaving the cursor part way through its rows.
+   */
+  @Nullable static CursorSnapshot copyOf(@NonNull Cursor cursor, long maxBytes) {
+    if (cursor instanceof SnapshotCursor) {
+      @NonNull final CursorSnapshot snapshot = ((SnapshotCursor) cursor).snapshot();
+      return snapshot.estimatedBytes <= maxBytes ? snapshot : null;
+    }
+    @NonNull final String[] columnNames = cursor.getColumnNames();
+    final int columnCount = columnNames.length;
+    @NonNull final List<Object[]> rows = new ArrayList<>(Math.max(cursor.getCount(), 0));
+    long estimatedBytes = OBJECT_BYTES;
+    long checksum = ResultChecksum.start(columnCount);
+    cursor.moveToPosition(-1);
+    while (cursor.moveToNext()) {
+      @NonNull final Object[] row = new Object[columnCount];
+      estimatedBytes += OBJECT_BYTES + REFERENCE_BYTES * (columnCount + 1);
+      for (int i = 0; i < columnCount; i++) {
+        final int type = cursor.getType(i);
+        checksum = ResultChecksum.mixType(checksum, type);
+        switch (type) {
+          case Cursor.FIELD_TYPE_NULL:
+            break;
+          case Cursor.FIELD_TYPE_INTEGER:
+            final long value = cursor.getLong(i);
+            row[i] = value;
+            estimatedBytes += OBJECT_BYTES;
+            checksum = ResultChecksum.mixLong(checksum, value);
+            break;
+          case Cursor.FIELD_TYPE_FLOAT:
+            final double real = cursor.getDouble(i);
+            row[i] = real;
+            estimatedBytes += OBJECT_BYTES;
+            checksum = ResultChecksum.mixDouble(checksum, real);
+            break;
+          case Cursor.FIELD_TYPE_BLOB:
+            @NonNull final byte[] blob = cursor.getBlob(i);
+            row[i] = blob;
+            estimatedBytes += OBJECT_BYTES + blob.length;
+            checksum = ResultChecksum.mixBlob(checksum, blob);
+            break;
+          default:
+            @NonNull final String string = cursor.getString(i);
+            row[i] = string;
+            estimatedBytes += STRING_BYTES + 2L * string.length();
+            checksum = ResultChecksum.mixString(checksum, string);
+            break;
+        }
+      }
+      if (estimatedBytes > maxBytes) {
+        return null;
+      }
+      rows.add(row);
+    }
+    return new CursorSnapshot(columnNames, rows, estimatedBytes,
+        ResultChecksum.finish(checksum, rows.size()));
+  }
+
+  /** An estimate of the heap retained by this snapshot, in bytes. */
+  long estimatedBytes() {
+    return estimatedBytes;
+  }
+
+  /**
+   * The {@link ResultChecksum} of the copied rows, equal for two snapshots of the same values in
+   * the same order.
+   */
+  long checksum() {
+    return checksum;
+  }
+
+  @NonNull Cursor newCursor() {
+    return new SnapshotCursor();
+  }
+
+  private final class SnapshotCursor extends AbstractCursor {
+    @NonNull CursorSnapshot snapshot() {
+      return CursorSnapshot.this;
+    }
+
+    @Nullable private Object value(int column) {
+      checkPosition();
+      return rows.get(getPosition())[column];
+    }
+
+    @Override public int getCount() {
+      return rows.size();
+    }
+
+    @NonNull @Override public String[] getColumnNames() {
+      return columnNames;
+    }
+
+    @Override public int getType(int column) {
+      @Nullable final Object value = value(column);
+      if (value == null) return FIELD_TYPE_NULL;
+      if (value instanceof Long) return FIELD_TYPE_INTEGER;
+      if (value instanceof Double) return FIELD_TYPE_FLOAT;
+      if (value instanceof byte[]) return FIELD_TYPE_BLOB;
+      return FIELD_TYPE_STRING;
+    }
+
+    @Override public boolean isNull(int column) {
+      return value(column) == null;
+    }
+
+    @Nullable @Override public String getString(int column) {
+      @Nullable final Object value = value(column);
+      if (value instanceof byte[]) {
+        throw new SQLiteException("Unable to convert BLOB to string");
+      }
+      return value == null ? null : value.toString();
+    }
+
+    @Nullable @Override public byte[] getBlob(int column) {
+      @Nullable final Object value = value(column);
+      if (value == null || value instanceof byte[]) {
+        return (byte[]) value;
+      }
+      if (value instanceof String) {
+        return ((String) value).getBytes();
+      }
+      throw new SQLiteException("Unable to convert " + value.getClass().getSimpleName() + " to BLOB");
+    }
+
+    @Override public short getShort(int column) {
+      return (short) getLong(column);
+    }
+
+    @Override public int getInt(int column) {
+      return (int) getLong(column);
+    }
+
+    @Override public long getLong(int column) {
+      @Nullable final Object value = value(column);
+      if (value instanceof Number) {
+        return ((Number) value).longValue();
+      }
+      if (value instanceof String) {
+        try {
+          return Long.parseLong(((String) value).trim());
+        } catch (NumberFormatException e) {
+          return (long) getDouble(column);
+        }
+      }
+      if (value instanceof byte[]) {
+        throw new SQLiteException("Unable to convert BLOB to long");
+      }
+      return 0L;
+    }
+
+    @Override public float getFloat(int column) {
+      return (float) getDouble(column);
+    }
+
+    @Override public double getDouble(int column) {
+      @Nullable final Object value = value(column);
+      if (value instanceof Number) {
+        return ((Number) value).doubleValue();
+      }
+      if (value instanceof String) {
+        try {
+          return Double.parseDouble(((String) value).trim());
+        } catch (NumberFormatException e) {
+          // SQLite converts text with no numeric prefix to 0.
+          return 0d;
+        }
+      }
+      if (value instanceof byte[]) {
+        throw new SQLiteException("Unable to convert BLOB to double");
+      }
+      return 0d;
+    }
+  }
+}
@@ -0,0 +1,274 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Schedulers backed by threads dedicated to one database, as used for the reader pool of
+ * {@link SqlDim#wrapDatabaseHelper(androidx.sqlite.db.SupportSQLiteOpenHelper, int)} and the
+ * writer of {@link DimDatabase}. Their threads are started on demand and stop after a minute idle,
+ * so an unused scheduler holds no threads. Tasks scheduled with a delay still run after their
+ * executor is shut down.
+ */
+final class DatabaseSchedulers {
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  /**
+   * Returns an executor running tasks on up to {@code threads} threads named {@code name} and
+   * their index. Its threads run nothing until {@code previous}, if any, has terminated, so that
+   * the threads of an executor replacing a shut down one never run alongside the old ones.
+   */
+  @NonNull private static ScheduledThreadPoolExecutor newExecutor(
+      int threads, @NonNull final String name, @Nullable ExecutorService previous) {
+    // Cleared once terminated, so that executors replacing each other aren't kept in a chain.
+    @NonNull final AtomicReference<ExecutorService> awaited = new AtomicReference<>(previous);
+    @NonNull final ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+          @NonNull private final AtomicInteger count = new AtomicInteger();
+
+          @NonNull @Override public Thread newThread(@NonNull final Runnable runnable) {
+            @NonNull final Thread thread = new Thread(new Runnable() {
+              @Override public void run() {
+                awaitTermination(awaited);
+                runnable.run();
+              }
+            }, name + " " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static void awaitTermination(@NonNull AtomicReference<ExecutorService> awaited) {
+    @Nullable final ExecutorService executor = awaited.get();
+    if (executor == null) {
+      return;
+    }
+    try {
+      while (!executor.awaitTermination(1, MINUTES)) {
+        // Still running the tasks scheduled on it before it was shut down.
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    awaited.compareAndSet(executor, null);
+  }
+
+  /**
+   * A scheduler on an executor created on first use. {@link #shutdown()} shuts the executor down
+   * once the tasks already scheduled on it have run, and the next task creates another, so that a
+   * closed database can still be used. The new executor's threads start running once the old
+   * one's have finished, so a single thread pool never runs two threads at once.
+   * <p>
+   * Tasks are only handed to the executor under the scheduler's lock, which {@link #shutdown()}
+   * also holds, so none is ever rejected by an executor which was shut down.
+   */
+  static final class Pool extends Scheduler {
+    private final int threads;
+    @NonNull private final String name;
+    // The current executor, or null until the next use. Guarded by 'this'.
+    @Nullable private ScheduledThreadPoolExecutor executor;
+    // The executor last shut down, for the next one to wait for, or null. Guarded by 'this'.
+    @Nullable private ScheduledThreadPoolExecutor previous;
+    // Incremented by every shutdown. Guarded by 'this'.
+    private long generation;
+
+    Pool(int threads, @NonNull String name) {
+      this.threads = threads;
+      this.name = name;
+    }
+
+    @NonNull private ScheduledThreadPoolExecutor executor() {
+      if (executor == null) {
+        executor = newExecutor(threads, name, previous);
+        previous = null;
+      }
+      return executor;
+    }
+
+    /** Runs {@code task} after {@code delay} on the current executor. */
+    @NonNull synchronized Future<?> submit(@NonNull Runnable task, long delay,
+                                           @NonNull TimeUnit unit) {
+      return executor().schedule(task, delay, unit);
+    }
+
+    /** Runs the drain of {@code worker} on the current executor, recording its generation. */
+    synchronized void execute(@NonNull PoolWorker worker) {
+      worker.generation = generation;
+      executor().execute(worker);
+    }
+
+    /** Whether no shutdown happened since {@code generation}. */
+    synchronized boolean isGeneration(long generation) {
+      return this.generation == generation;
+    }
+
+    @NonNull @Override public Worker createWorker() {
+      return new PoolWorker(this);
+    }
+
+    @NonNull @Override
+    public Disposable scheduleDirect(@NonNull Runnable run, long delay, @NonNull TimeUnit unit) {
+      @NonNull final Task task = new Task(RxJavaPlugins.onSchedule(run));
+      task.setFuture(submit(task, delay, unit));
+      return task;
+    }
+
+    @Override public synchronized void shutdown() {
+      if (executor != null) {
+        executor.shutdown();
+        previous = executor;
+        executor = null;
+        generation++;
+      }
+    }
+  }
+
+  /**
+   * A worker of {@link Pool}, running its tasks one at a time and in order from a queue of its
+   * own, like the workers of {@link io.reactivex.rxjava3.schedulers.Schedulers#from}. Its drain
+   * moves to the pool's new executor between two tasks once the old one was shut down.
+   */
+  private static final class PoolWorker extends Scheduler.Worker implements Runnable {
+    @NonNull private final Pool pool;
+    @NonNull private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+    @NonNull private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean disposed;
+    // The pool's generation when the drain was handed to its executor. Written by the pool
+    // before handing it over, and read by the drain.
+    long generation;
+
+    PoolWorker(@NonNull Pool pool) {
+      this.pool = pool;
+    }
+
+    @NonNull @Override
+    public Disposable schedule(@NonNull Runnable run, long delay, @NonNull TimeUnit unit) {
+      if (disposed) {
+        return Disposable.disposed();
+      }
+      @NonNull final Task task = new Task(RxJavaPlugins.onSchedule(run));
+      if (delay <= 0) {
+        enqueue(task);
+      } else {
+        task.setFuture(pool.submit(new Runnable() {
+          @Override public void run() {
+            enqueue(task);
+          }
+        }, delay, unit));
+      }
+      return task;
+    }
+
+    private void enqueue(@NonNull Task task) {
+      if (disposed) {
+        return;
+      }
+      queue.offer(task);
+      if (wip.getAndIncrement() == 0) {
+        pool.execute(this);
+      }
+    }
+
+    @Override public void run() {
+      int missed = 1;
+      for (;;) {
+        @Nullable Task task;
+        while ((task = queue.peek()) != null) {
+          if (disposed) {
+            queue.clear();
+            return;
+          }
+          if (!pool.isGeneration(generation)) {
+            // Let the old executor terminate, and carry on with the rest on the new one.
+            pool.execute(this);
+            return;
+          }
+          queue.poll();
+          task.run();
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) {
+          return;
+        }
+      }
+    }
+
+    @Override public void dispose() {
+      disposed = true;
+      queue.clear();
+    }
+
+    @Override public boolean isDisposed() {
+      return disposed;
+    }
+  }
+
+  /** A task which does nothing once disposed, reporting its errors to {@link RxJavaPlugins}. */
+  private static final class Task implements Runnable, Disposable {
+    @NonNull private final Runnable run;
+    @NonNull private final AtomicBoolean disposed = new AtomicBoolean();
+    @Nullable private volatile Future<?> future;
+
+    Task(@NonNull Runnable run) {
+      this.run = run;
+    }
+
+    void setFuture(@NonNull Future<?> future) {
+      this.future = future;
+      if (disposed.get()) {
+        future.cancel(false);
+      }
+    }
+
+    @Override public void run() {
+      if (disposed.get()) {
+        return;
+      }
+      try {
+        run.run();
+      } catch (Throwable e) {
+        Exceptions.throwIfFatal(e);
+        RxJavaPlugins.onError(e);
+      }
+    }
+
+    @Override public void dispose() {
+      if (disposed.compareAndSet(false, true)) {
+        @Nullable final Future<?> future = this.future;
+        if (future != null) {
+          future.cancel(false);
+        }
+      }
+    }
+
+    @Override public boolean isDisposed() {
+      return disposed.get();
+    }
+  }
+
+  private DatabaseSchedulers() {
+    throw new AssertionError("No instances.");
+  }
+}
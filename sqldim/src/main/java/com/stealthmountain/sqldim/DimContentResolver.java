@@ -15,10 +15,13 @@
  */
 package com.stealthmountain.sqldim;
 
+import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
 import androidx.annotation.CheckResult;
@@ -28,6 +31,7 @@ import com.stealthmountain.sqldim.SqlDim.Logger;
 import com.stealthmountain.sqldim.SqlDim.Query;
 import java.util.Arrays;
 
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableEmitter;
 import io.reactivex.rxjava3.core.ObservableOnSubscribe;
@@ -35,7 +39,6 @@ import io.reactivex.rxjava3.core.ObservableTransformer;
 import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.functions.Cancellable;
 
-import static com.stealthmountain.sqldim.QueryObservable.QUERY_OBSERVABLE;
 import static java.lang.System.nanoTime;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
@@ -99,9 +102,21 @@ public final class DimContentResolver {
       @Nullable final String sortOrder, final boolean notifyForDescendents) {
     @NonNull final Query query = new Query() {
       @Nullable @Override public Cursor run() {
+        return runQuery(null);
+      }
+
+      @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+      @Nullable @Override public Cursor run(@NonNull CancellationSignal cancellationSignal) {
+        return runQuery(cancellationSignal);
+      }
+
+      /** @param signal Cancels the query, or null if it can't be cancelled. Needs API 16. */
+      @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+      @Nullable private Cursor runQuery(@Nullable CancellationSignal signal) {
         final long startNanos = nanoTime();
-        @Nullable final Cursor cursor = contentResolver.query(uri, projection, selection,
-                                                              selectionArgs, sortOrder);
+        @Nullable final Cursor cursor = signal == null
+            ? contentResolver.query(uri, projection, selection, selectionArgs, sortOrder)
+            : contentResolver.query(uri, projection, selection, selectionArgs, sortOrder, signal);
 
         if (logging) {
           final long tookMillis = NANOSECONDS.toMillis(nanoTime() - startNanos);
@@ -135,10 +150,30 @@ public final class DimContentResolver {
         }
       }
     });
-    return queries //
+    return new QueryObservable(queries //
         .observeOn(scheduler) //
-        .compose(queryTransformer) // Apply the user's query transformer.
-        .to(QUERY_OBSERVABLE);
+        .compose(queryTransformer), // Apply the user's query transformer.
+        scheduler, queryTransformer == SqlDim.DEFAULT_TRANSFORMER);
+  }
+
+  /**
+   * Like {@link #createQuery(Uri, String[], String, String[], String, boolean)}, but as a
+   * {@link Flowable} which keeps at most one pending query per subscriber. Queries a subscriber
+   * hasn't requested yet are replaced by the latest one, so a slow subscriber re-runs the query
+   * once when it is ready instead of once for every change it missed.
+   * <p>
+   * Requested queries are delivered on the {@link Scheduler} supplied to
+   * {@link SqlDim#wrapContentProvider}, including a pending query delivered by a later request.
+   *
+   * @see ContentResolver#query(Uri, String[], String, String[], String)
+   * @see ContentResolver#registerContentObserver(Uri, boolean, ContentObserver)
+   */
+  @CheckResult @NonNull
+  public Flowable<Query> createQueryFlowable(@NonNull Uri uri, @Nullable String[] projection,
+      @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder,
+      boolean notifyForDescendents) {
+    return new LatestFlowable<>(createQuery(uri, projection, selection, selectionArgs, sortOrder,
+        notifyForDescendents), scheduler, LatestFlowable.latestQuery());
   }
 
   // Package-private to avoid synthetic accessor method for 'Query' instance in #createQuery
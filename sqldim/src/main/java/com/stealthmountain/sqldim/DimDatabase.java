@@ -21,9 +21,13 @@ import androidx.sqlite.db.SupportSQLiteOpenHelper;
 import androidx.sqlite.db.SupportSQLiteOpenHelper.Callback;
 import androidx.sqlite.db.SupportSQLiteQuery;
 import androidx.sqlite.db.SupportSQLiteStatement;
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteTransactionListener;
+import android.os.Build;
+import android.os.CancellationSignal;
 import androidx.annotation.CheckResult;
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
@@ -35,22 +39,26 @@ import com.stealthmountain.sqldim.SqlDim.Query;
 import java.io.Closeable;
 import java.lang.annotation.Retention;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableTransformer;
 import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.functions.Consumer;
 import io.reactivex.rxjava3.functions.Function;
-import io.reactivex.rxjava3.functions.Predicate;
-import io.reactivex.rxjava3.subjects.PublishSubject;
-import io.reactivex.rxjava3.subjects.Subject;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 
 import static android.database.sqlite.SQLiteDatabase.CONFLICT_ABORT;
 import static android.database.sqlite.SQLiteDatabase.CONFLICT_FAIL;
@@ -59,7 +67,6 @@ import static android.database.sqlite.SQLiteDatabase.CONFLICT_NONE;
 import static android.database.sqlite.SQLiteDatabase.CONFLICT_REPLACE;
 import static android.database.sqlite.SQLiteDatabase.CONFLICT_ROLLBACK;
 import static com.stealthmountain.sqldim.MarkedQueryObservable.markedQueryObserable;
-import static com.stealthmountain.sqldim.QueryObservable.QUERY_OBSERVABLE;
 import static java.lang.annotation.RetentionPolicy.SOURCE;
 import static java.util.Collections.singletonList;
 
@@ -75,7 +82,7 @@ public final class DimDatabase<M> implements Closeable {
 
   // Package-private to avoid synthetic accessor method for 'transaction' instance.
   @NonNull final ThreadLocal<@org.checkerframework.checker.nullness.qual.Nullable SqliteTransaction<M>> transactions = new ThreadLocal<>();
-  @NonNull private final Subject<Trigger<M>> triggers = PublishSubject.create();
+  @NonNull private final TriggerDispatcher<M> dispatcher;
 
   @NonNull private final Transaction<M> transaction = new Transaction<M>() {
     @Override public void markSuccessful() {
@@ -118,7 +125,12 @@ public final class DimDatabase<M> implements Closeable {
       if (transaction.commit) {
         // If the transaction didn't originated directly on a SupportSQLiteDatabase,
         // then we won't have a SqliteTransaction#marker.
-        sendTableTrigger(transaction.markers, transaction);
+        if (newTransaction == null) {
+          sendTransactionTrigger(transaction);
+        } else {
+          sendTableTrigger(transaction.markers, transaction, transaction.keys,
+              transaction.columns);
+        }
       }
     }
 
@@ -136,6 +148,24 @@ public final class DimDatabase<M> implements Closeable {
   };
 
   @NonNull private final Scheduler scheduler;
+  // The scheduler when this database created it, and shut down by close.
+  @Nullable private final DatabaseSchedulers.Pool readScheduler;
+  @NonNull private final DatabaseSchedulers.Pool writeScheduler =
+      new DatabaseSchedulers.Pool(1, "SqlDim writer");
+  @NonNull private final WriteQueue writeQueue;
+  private final boolean conflateQueries;
+  private final boolean shareQueries;
+  @Nullable private final QueryCache queryCache;
+  private final boolean inferQueryColumns;
+  @Nullable private final SchemaDependencies schemaDependencies;
+  // The schema version when the dependencies were last checked against it, or -1.
+  private volatile long schemaVersion = -1;
+  @Nullable private final ChangeCapture changeCapture;
+  @Nullable private final QueryWatchdog watchdog;
+  @Nullable private final StatementCache statementCache;
+  @NonNull private final TableAnalyzer tableAnalyzer = new TableAnalyzer();
+  @NonNull private final SharedQueries<Query> sharedQueries = new SharedQueries<>();
+  @NonNull private final SharedQueries<MarkedQuery<M>> sharedMarkedQueries = new SharedQueries<>();
 
   // Package-private to avoid synthetic accessor method for 'transaction' instance.
   volatile boolean logging;
@@ -145,11 +175,63 @@ public final class DimDatabase<M> implements Closeable {
               @NonNull Scheduler scheduler,
               @NonNull ObservableTransformer<Query, Query> queryTransformer,
               @NonNull ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>> markedQueryTransformer) {
+    this(helper, new SqlDim.Builder<M>()
+        .logger(logger)
+        .queryTransformer(queryTransformer)
+        .markedQueryTransformer(markedQueryTransformer)
+        .build(), scheduler, null);
+  }
+
+  /**
+   * @param options The configuration of the {@link SqlDim} wrapping {@code helper}.
+   * @param readScheduler {@code scheduler} if it was created for this database, which
+   * {@link #close()} then shuts down.
+   */
+  DimDatabase(@NonNull SupportSQLiteOpenHelper helper,
+              @NonNull SqlDim<M> options,
+              @NonNull Scheduler scheduler,
+              @Nullable DatabaseSchedulers.Pool readScheduler) {
     this.helper = helper;
-    this.logger = logger;
+    this.logger = options.logger;
     this.scheduler = scheduler;
-    this.queryTransformer = queryTransformer;
-    this.markedQueryTransformer = markedQueryTransformer;
+    this.readScheduler = readScheduler;
+    this.queryTransformer = options.queryTransformer;
+    this.markedQueryTransformer = options.markedQueryTransformer;
+    this.dispatcher = new TriggerDispatcher<>(options.triggerCoalescingWindowNanos, scheduler);
+    this.conflateQueries = options.conflateQueries;
+    this.shareQueries = options.shareQueries;
+    this.queryCache =
+        options.resultCacheBytes > 0 ? new QueryCache(options.resultCacheBytes) : null;
+    this.inferQueryColumns = options.inferQueryColumns;
+    this.schemaDependencies = options.cascadeTriggers ? new SchemaDependencies() : null;
+    this.changeCapture = options.captureChanges ? new ChangeCapture() : null;
+    this.watchdog = options.queryTimeoutNanos > 0 || !options.queryTimeoutNanosBySql.isEmpty()
+        ? new QueryWatchdog(options.queryTimeoutNanos, options.queryTimeoutNanosBySql,
+            options.queryTimeoutListener, Schedulers.computation())
+        : null;
+    this.statementCache = options.statementCacheSize > 0
+        ? new StatementCache(options.statementCacheSize)
+        : null;
+    this.writeQueue = new WriteQueue(this, options.groupCommitMaxWrites,
+        options.groupCommitWindowNanos);
+  }
+
+  /**
+   * The {@link Scheduler} of this database's writer, a single thread dedicated to it. Writes made
+   * on it with {@link Observable#subscribeOn} or {@link Scheduler#scheduleDirect} run one at a
+   * time, in order, and never take a thread from the queries.
+   * <p>
+   * Only the writes made on it are kept to one thread. The synchronous writes of this class,
+   * such as {@link #insert}, run on the thread calling them and are serialized with it by
+   * SQLite's locking alone, while the asynchronous ones, such as {@link #insertAsync}, run on it.
+   * <p>
+   * Its thread is started on the first write and stops after a minute without writes. It is shut
+   * down by {@link #close()}, once the writes already scheduled on it have run, and a new one is
+   * started if the database is used again.
+   */
+  @NonNull
+  public Scheduler getWriteScheduler() {
+    return writeScheduler;
   }
 
   /**
@@ -207,14 +289,110 @@ public final class DimDatabase<M> implements Closeable {
   }
 
   void sendTableTrigger(@NonNull Set<M> markers, @NonNull Set<String> tables) {
+    sendTableTrigger(markers, tables, Collections.<String, Set<Long>>emptyMap());
+  }
+
+  void sendTableTrigger(@NonNull Set<M> markers, @NonNull Set<String> tables,
+                        @NonNull Map<String, Set<Long>> keys) {
+    sendTableTrigger(markers, tables, keys, Collections.<String, Set<String>>emptyMap());
+  }
+
+  /**
+   * @param keys The keys of the changed rows of each table. Tables without keys changed as a
+   * whole.
+   * @param columns The lower-cased names of the changed columns of each table. Tables without
+   * columns changed in every column.
+   */
+  void sendTableTrigger(@NonNull Set<M> markers, @NonNull Set<String> tables,
+                        @NonNull Map<String, Set<Long>> keys,
+                        @NonNull Map<String, Set<String>> columns) {
     @Nullable final SqliteTransaction<M> transaction = transactions.get();
     if (transaction != null) {
-      transaction.addAll(tables);
+      Trigger.addChanges(transaction, transaction.keys, transaction.columns, tables, keys, columns);
       transaction.markers.addAll(markers);
     } else {
-      if (logging) log("TRIGGER %s", tables);
-      triggers.onNext(new Trigger<>(markers, tables));
+      sendWriteTrigger(markers, tables, keys, columns);
+    }
+  }
+
+  /**
+   * Sends the changes of a write outside a transaction along with the changes captured, which
+   * include the write's own rows and those of writes made directly on the database since the last
+   * notification.
+   */
+  private void sendWriteTrigger(@NonNull Set<M> markers, @NonNull Set<String> tables,
+                                @NonNull Map<String, Set<Long>> keys,
+                                @NonNull Map<String, Set<String>> columns) {
+    @Nullable final ChangeCapture changeCapture = this.changeCapture;
+    if (changeCapture == null) {
+      dispatchTableTrigger(markers, tables, keys, columns);
+      return;
+    }
+    @NonNull final Set<String> capturedTables = new LinkedHashSet<>();
+    @NonNull final Map<String, Set<Long>> capturedKeys = new HashMap<>();
+    if (!changeCapture.drain(getWritableDatabase(), capturedTables, capturedKeys)) {
+      dispatchTableTrigger(markers, tables, keys, columns);
+      return;
+    }
+    // Copies, since the write's own changes may be immutable.
+    @NonNull final Set<String> allTables = new LinkedHashSet<>();
+    @NonNull final Map<String, Set<Long>> allKeys = new HashMap<>();
+    @NonNull final Map<String, Set<String>> allColumns = new HashMap<>();
+    Trigger.addChanges(allTables, allKeys, allColumns, tables, keys, columns);
+    Trigger.addChanges(allTables, allKeys, allColumns, capturedTables, capturedKeys,
+        Collections.<String, Set<String>>emptyMap());
+    dispatchTableTrigger(markers, allTables, allKeys, allColumns);
+  }
+
+  /** The set of only {@code table}, which the dispatcher routes without allocating. */
+  @NonNull private Set<String> tablesOf(@NonNull String table) {
+    return dispatcher.tableIds().setOf(table);
+  }
+
+  /** Sends the changes of a committed outermost transaction along with the changes captured. */
+  private void sendTransactionTrigger(@NonNull SqliteTransaction<M> transaction) {
+    @Nullable final ChangeCapture changeCapture = this.changeCapture;
+    if (changeCapture == null) {
+      dispatchTableTrigger(transaction.markers, transaction, transaction.keys,
+          transaction.columns);
+      return;
+    }
+    @NonNull final Set<String> capturedTables = new LinkedHashSet<>();
+    @NonNull final Map<String, Set<Long>> capturedKeys = new HashMap<>();
+    if (changeCapture.drain(getWritableDatabase(), capturedTables, capturedKeys)) {
+      Trigger.addChanges(transaction, transaction.keys, transaction.columns, capturedTables,
+          capturedKeys, Collections.<String, Set<String>>emptyMap());
     }
+    dispatchTableTrigger(transaction.markers, transaction, transaction.keys, transaction.columns);
+  }
+
+  private void dispatchTableTrigger(@NonNull Set<M> markers, @NonNull Set<String> tables,
+                                    @NonNull Map<String, Set<Long>> keys,
+                                    @NonNull Map<String, Set<String>> columns) {
+    @Nullable final SchemaDependencies schemaDependencies = this.schemaDependencies;
+    if (schemaDependencies != null) {
+      @NonNull final SupportSQLiteDatabase db = getWritableDatabase();
+      forgetSchemaIfVersionChanged(db, schemaDependencies);
+      @NonNull final Set<String> dependents = schemaDependencies.dependentsOf(db, tables);
+      if (!dependents.isEmpty()) {
+        @NonNull final Set<String> cascaded = new LinkedHashSet<>(tables);
+        cascaded.addAll(dependents);
+        tables = cascaded;
+        keys = withoutTables(keys, dependents);
+        columns = withoutTables(columns, dependents);
+      }
+    }
+    if (logging) {
+      if (keys.isEmpty() && columns.isEmpty()) {
+        log("TRIGGER %s", tables);
+      } else {
+        log("TRIGGER %s\n  keys: %s\n  columns: %s", tables, keys, columns);
+      }
+    }
+    if (queryCache != null) {
+      queryCache.invalidate(tables);
+    }
+    dispatcher.post(new Trigger<>(markers, tables, keys, columns));
   }
 
   /**
@@ -315,8 +493,24 @@ public final class DimDatabase<M> implements Closeable {
    * Close the underlying {@link SupportSQLiteOpenHelper} and remove cached readable and writeable
    * databases. This does not prevent existing observables from retaining existing references as
    * well as attempting to create new ones for new subscriptions.
+   * <p>
+   * The {@linkplain #getWriteScheduler() writer thread} is shut down once the writes already
+   * scheduled on it have run. So are the reader threads of a database wrapped with
+   * {@link SqlDim#wrapDatabaseHelper(SupportSQLiteOpenHelper, int)}, once the queries already
+   * scheduled on them have run. New threads are started if the database is used again, as by a
+   * new subscription or a trigger to an existing one.
    */
   @Override public void close() {
+    if (statementCache != null) {
+      statementCache.evictAll();
+    }
+    if (schemaDependencies != null) {
+      schemaDependencies.invalidate();
+    }
+    writeScheduler.shutdown();
+    if (readScheduler != null) {
+      readScheduler.shutdown();
+    }
     helper.close();
   }
 
@@ -402,6 +596,67 @@ public final class DimDatabase<M> implements Closeable {
     return createMarkedQuery(new ToMarkedDatabaseQuery(tables, new SimpleSQLiteQuery(sql, args)));
   }
 
+  /**
+   * Like {@link #createQuery(String, String, Object...)}, but as a {@link Flowable} which keeps at
+   * most one pending query per subscriber. Queries a subscriber hasn't requested yet are replaced
+   * by the latest one, so a slow subscriber re-runs the query once when it is ready instead of
+   * once for every change it missed.
+   * <p>
+   * Requested queries are delivered on the {@link Scheduler} supplied to
+   * {@link SqlDim#wrapDatabaseHelper}, including a pending query delivered by a later request.
+   *
+   * @see SupportSQLiteDatabase#query(String, Object[])
+   */
+  @CheckResult @NonNull
+  public Flowable<Query> createQueryFlowable(@NonNull final String table,
+                                             @NonNull String sql, @NonNull Object... args) {
+    return new LatestFlowable<>(createQuery(table, sql, args), scheduler,
+        LatestFlowable.latestQuery());
+  }
+
+  /**
+   * Like {@link #createMarkedQuery(String, String, Object...)}, but as a {@link Flowable} which
+   * keeps at most one pending marked query per subscriber, as
+   * {@link #createQueryFlowable(String, String, Object...)} does. The pending query carries the
+   * markers of every query it replaced.
+   *
+   * @see SupportSQLiteDatabase#query(String, Object[])
+   */
+  @CheckResult @NonNull
+  public Flowable<MarkedQuery<M>> createMarkedQueryFlowable(@NonNull final String table,
+                                                            @NonNull String sql,
+                                                            @NonNull Object... args) {
+    return new LatestFlowable<>(createMarkedQuery(table, sql, args), scheduler,
+        LatestFlowable.<M>latestMarkedQuery());
+  }
+
+  /**
+   * See {@link #createQueryFlowable(String, String, Object...)} for usage. This overload allows for
+   * monitoring multiple tables for changes.
+   *
+   * @see SupportSQLiteDatabase#query(String, Object[])
+   */
+  @CheckResult @NonNull
+  public Flowable<Query> createQueryFlowable(@NonNull final Iterable<String> tables,
+                                             @NonNull String sql, @NonNull Object... args) {
+    return new LatestFlowable<>(createQuery(tables, sql, args), scheduler,
+        LatestFlowable.latestQuery());
+  }
+
+  /**
+   * See {@link #createMarkedQueryFlowable(String, String, Object...)} for usage. This overload
+   * allows for monitoring multiple tables for changes.
+   *
+   * @see SupportSQLiteDatabase#query(String, Object[])
+   */
+  @CheckResult @NonNull
+  public Flowable<MarkedQuery<M>> createMarkedQueryFlowable(@NonNull final Iterable<String> tables,
+                                                            @NonNull String sql,
+                                                            @NonNull Object... args) {
+    return new LatestFlowable<>(createMarkedQuery(tables, sql, args), scheduler,
+        LatestFlowable.<M>latestMarkedQuery());
+  }
+
   /**
    * Create an observable which will notify subscribers with a {@linkplain Query query} for
    * execution. Subscribers are responsible for <b>always</b> closing {@link Cursor} instance
@@ -484,50 +739,379 @@ public final class DimDatabase<M> implements Closeable {
     return createMarkedQuery(new ToMarkedDatabaseQuery(tables, query));
   }
 
+  /**
+   * See {@link #createQuery(String, SupportSQLiteQuery)} for usage. This overload binds a copy of
+   * the typed arguments in {@code args}, which may be cleared and reused once this returns.
+   *
+   * @see Bindings#toQuery(String)
+   */
+  @CheckResult @NonNull
+  public QueryObservable createQuery(@NonNull final String table, @NonNull String sql,
+                                     @NonNull Bindings args) {
+    return createQuery(table, args.toQuery(sql));
+  }
+
+  /**
+   * See {@link #createMarkedQuery(String, SupportSQLiteQuery)} for usage. This overload binds a
+   * copy of the typed arguments in {@code args}, which may be cleared and reused once this returns.
+   *
+   * @see Bindings#toQuery(String)
+   */
+  @CheckResult @NonNull
+  public MarkedQueryObservable<M> createMarkedQuery(@NonNull final String table,
+                                                    @NonNull String sql,
+                                                    @NonNull Bindings args) {
+    return createMarkedQuery(table, args.toQuery(sql));
+  }
+
+  /**
+   * See {@link #createQuery(String, SupportSQLiteQuery)} for usage. This overload monitors the
+   * tables named in the {@code FROM} and {@code JOIN} clauses of {@code query}, including those of
+   * its subqueries, rather than tables given explicitly. Names of common table expressions and
+   * table-valued functions are not monitored, nor are tables read only by views or SQL triggers.
+   *
+   * @throws IllegalArgumentException if {@code query} names no table.
+   * @see SupportSQLiteDatabase#query(SupportSQLiteQuery)
+   */
+  @CheckResult @NonNull
+  public QueryObservable createQuery(@NonNull SupportSQLiteQuery query) {
+    return createQuery(new DatabaseQuery(readTables(query), query));
+  }
+
+  /**
+   * See {@link #createMarkedQuery(String, SupportSQLiteQuery)} for usage. This overload monitors
+   * the tables read by {@code query}, as {@link #createQuery(SupportSQLiteQuery)} does.
+   *
+   * @throws IllegalArgumentException if {@code query} names no table.
+   * @see SupportSQLiteDatabase#query(SupportSQLiteQuery)
+   */
+  @CheckResult @NonNull
+  public MarkedQueryObservable<M> createMarkedQuery(@NonNull SupportSQLiteQuery query) {
+    return createMarkedQuery(new ToMarkedDatabaseQuery(readTables(query), query));
+  }
+
+  /**
+   * See {@link #createQuery(String, String, Object...)} for usage. This overload only re-runs the
+   * query for changes to the rows of {@code table} with one of the given {@code keys}, which are
+   * rowids, or for changes to the whole table.
+   * <p>
+   * {@link #insert} reports the rowid of the inserted row, and the overloads of {@link #update},
+   * {@link #delete} and {@link #triggerMarked} taking keys report the keys given to them. Any other
+   * change to {@code table} is a change to the whole table.
+   *
+   * @see SupportSQLiteDatabase#query(String, Object[])
+   */
+  @CheckResult @NonNull
+  public QueryObservable createQuery(@NonNull final String table, @NonNull Collection<Long> keys,
+                                     @NonNull String sql, @NonNull Object... args) {
+    return createQuery(new DatabaseQuery(singletonList(table), new HashSet<>(keys),
+        new SimpleSQLiteQuery(sql, args)));
+  }
+
+  /**
+   * See {@link #createQuery(String, Collection, String, Object...)} for usage.
+   *
+   * @see SupportSQLiteDatabase#query(String, Object[])
+   */
+  @CheckResult @NonNull
+  public MarkedQueryObservable<M> createMarkedQuery(@NonNull final String table,
+                                                    @NonNull Collection<Long> keys,
+                                                    @NonNull String sql, @NonNull Object... args) {
+    return createMarkedQuery(new ToMarkedDatabaseQuery(singletonList(table), new HashSet<>(keys),
+        new SimpleSQLiteQuery(sql, args)));
+  }
+
+  /**
+   * See {@link #createQuery(String, Collection, String, Object...)} for usage.
+   *
+   * @see SupportSQLiteDatabase#query(SupportSQLiteQuery)
+   */
+  @CheckResult @NonNull
+  public QueryObservable createQuery(@NonNull final String table, @NonNull Collection<Long> keys,
+                                     @NonNull SupportSQLiteQuery query) {
+    return createQuery(new DatabaseQuery(singletonList(table), new HashSet<>(keys), query));
+  }
+
+  /**
+   * See {@link #createQuery(String, Collection, String, Object...)} for usage.
+   *
+   * @see SupportSQLiteDatabase#query(SupportSQLiteQuery)
+   */
+  @CheckResult @NonNull
+  public MarkedQueryObservable<M> createMarkedQuery(@NonNull final String table,
+                                                    @NonNull Collection<Long> keys,
+                                                    @NonNull SupportSQLiteQuery query) {
+    return createMarkedQuery(new ToMarkedDatabaseQuery(singletonList(table), new HashSet<>(keys),
+        query));
+  }
+
+  /**
+   * See {@link #createQuery(String, String, Object...)} for usage. This overload does not re-run
+   * the query for an {@link #update} of {@code table} which only changes columns other than
+   * {@code columns}, which must name every column of {@code table} the query reads, including
+   * those it filters or sorts by.
+   *
+   * @see SqlDim.Builder#inferQueryColumns
+   * @see SupportSQLiteDatabase#query(String, Object[])
+   */
+  @CheckResult @NonNull
+  public QueryObservable createQuery(@NonNull final String table, @NonNull String[] columns,
+                                     @NonNull String sql, @NonNull Object... args) {
+    return createQuery(new DatabaseQuery(singletonList(table), null,
+        normalizedColumns(Arrays.asList(columns)), new SimpleSQLiteQuery(sql, args)));
+  }
+
+  /**
+   * See {@link #createQuery(String, String[], String, Object...)} for usage.
+   *
+   * @see SupportSQLiteDatabase#query(String, Object[])
+   */
+  @CheckResult @NonNull
+  public MarkedQueryObservable<M> createMarkedQuery(@NonNull final String table,
+                                                    @NonNull String[] columns,
+                                                    @NonNull String sql, @NonNull Object... args) {
+    return createMarkedQuery(new ToMarkedDatabaseQuery(singletonList(table), null,
+        normalizedColumns(Arrays.asList(columns)), new SimpleSQLiteQuery(sql, args)));
+  }
+
+  /**
+   * See {@link #createQuery(String, String[], String, Object...)} for usage.
+   *
+   * @see SupportSQLiteDatabase#query(SupportSQLiteQuery)
+   */
+  @CheckResult @NonNull
+  public QueryObservable createQuery(@NonNull final String table, @NonNull String[] columns,
+                                     @NonNull SupportSQLiteQuery query) {
+    return createQuery(new DatabaseQuery(singletonList(table), null,
+        normalizedColumns(Arrays.asList(columns)), query));
+  }
+
+  /**
+   * See {@link #createQuery(String, String[], String, Object...)} for usage.
+   *
+   * @see SupportSQLiteDatabase#query(SupportSQLiteQuery)
+   */
+  @CheckResult @NonNull
+  public MarkedQueryObservable<M> createMarkedQuery(@NonNull final String table,
+                                                    @NonNull String[] columns,
+                                                    @NonNull SupportSQLiteQuery query) {
+    return createMarkedQuery(new ToMarkedDatabaseQuery(singletonList(table), null,
+        normalizedColumns(Arrays.asList(columns)), query));
+  }
+
   @CheckResult @NonNull
-  private QueryObservable createQuery(@NonNull DatabaseQuery query) {
+  private QueryObservable createQuery(@NonNull final DatabaseQuery query) {
     @Nullable final SqliteTransaction transaction = transactions.get();
     if (transaction != null) {
       throw new IllegalStateException("Cannot create observable query in transaction. "
               + "Use query() for a query inside a transaction.");
     }
 
-    return triggers //
-            .filter(query) // DatabaseQuery filters triggers to on tables we care about.
-            .map(query) // DatabaseQuery maps to itself to save an allocation.
-            .startWith(Single.just(query)) //
-            .observeOn(scheduler) //
+    // Without a user transformer to apply after it, the subscription check is fused into the
+    // query observable itself.
+    final boolean fused = queryTransformer == SqlDim.DEFAULT_TRANSFORMER && !shareQueries;
+    @NonNull final Observable<Query> queries = shareQueries
+        ? sharedQueries.get(new QueryKey(query.query, query.tables, query.keys, query.columns),
+            new SharedQueries.Factory<Query>() {
+              @NonNull @Override public Observable<Query> create() {
+                return observeQuery(query, null).map(new Function<Query, Query>() {
+                  @NonNull @Override public Query apply(@NonNull Query query) {
+                    return SnapshotQuery.snapshotOf(query);
+                  }
+                });
+              }
+
+              @NonNull @Override public Query replayed(@NonNull Query query) {
+                return query;
+              }
+            })
+        : observeQuery(query, fused ? ensureNotInTransaction : null);
+    if (fused) {
+      return new QueryObservable(queries, scheduler, true);
+    }
+    return new QueryObservable(queries
             .compose(queryTransformer) // Apply the user's query transformer.
-            .doOnSubscribe(ensureNotInTransaction)
-            .to(QUERY_OBSERVABLE);
+            .doOnSubscribe(ensureNotInTransaction), scheduler, false);
+  }
+
+  /** @param subscribeCheck Run on subscription, failing it if it throws. */
+  @CheckResult @NonNull
+  private Observable<Query> observeQuery(@NonNull DatabaseQuery query,
+                                        @Nullable Consumer<Object> subscribeCheck) {
+    // Trigger filtering, the initial emission and the hand-off to the scheduler in one operator.
+    @NonNull final Set<String> distinctTables = distinctTables(query.tables);
+    return new FusedQueryObservable<M, Query>(dispatcher, distinctTables,
+        triggerFilter(distinctTables, query.keys, query.columns), query, query,
+        scheduler, conflateQueries, subscribeCheck);
   }
 
   @CheckResult @NonNull
-  private MarkedQueryObservable<M> createMarkedQuery(@NonNull ToMarkedDatabaseQuery toMarkedDatabaseQuery) {
+  private MarkedQueryObservable<M> createMarkedQuery(@NonNull final ToMarkedDatabaseQuery toMarkedDatabaseQuery) {
     @Nullable final SqliteTransaction transaction = transactions.get();
     if (transaction != null) {
       throw new IllegalStateException("Cannot create observable markedQuery in transaction. "
               + "Use markedQuery() for a markedQuery inside a transaction.");
     }
 
-    return triggers //
-            .filter(toMarkedDatabaseQuery) // DatabaseQuery filters triggers to on tables we care about.
-            .map(toMarkedDatabaseQuery) // DatabaseQuery maps to itself to save an allocation.
-            .startWith(Single.just(toMarkedDatabaseQuery.initialMarkedQuery())) //
-            .observeOn(scheduler) //
+    // As for createQuery, the subscription check is fused unless a transformer comes after it.
+    final boolean fused = markedQueryTransformer == SqlDim.<M>defaultMarkedTransformer()
+        && !shareQueries;
+    @NonNull final Observable<MarkedQuery<M>> markedQueries = shareQueries
+        ? sharedMarkedQueries.get(
+            new QueryKey(toMarkedDatabaseQuery.query, toMarkedDatabaseQuery.tables,
+                toMarkedDatabaseQuery.keys, toMarkedDatabaseQuery.columns),
+            new SharedQueries.Factory<MarkedQuery<M>>() {
+              @NonNull @Override public Observable<MarkedQuery<M>> create() {
+                return observeMarkedQuery(toMarkedDatabaseQuery, null)
+                    .map(new Function<MarkedQuery<M>, MarkedQuery<M>>() {
+                      @NonNull @Override public MarkedQuery<M> apply(@NonNull MarkedQuery<M> query) {
+                        return SnapshotMarkedQuery.snapshotOf(query);
+                      }
+                    });
+              }
+
+              // A late subscriber's first result is its initial one, not the result of a write.
+              @NonNull @Override public MarkedQuery<M> replayed(@NonNull MarkedQuery<M> query) {
+                return ((SnapshotMarkedQuery<M>) query).withoutMarkers();
+              }
+            })
+        : observeMarkedQuery(toMarkedDatabaseQuery, fused ? ensureNotInTransaction : null);
+    if (fused) {
+      return new MarkedQueryObservable<>(markedQueries);
+    }
+    return markedQueries
             .compose(markedQueryTransformer) // Apply the user's toMarkedDatabaseQuery transformer.
             .doOnSubscribe(ensureNotInTransaction)
             .to(markedQueryObserable());
   }
 
+  /** @param subscribeCheck Run on subscription, failing it if it throws. */
+  @CheckResult @NonNull
+  private Observable<MarkedQuery<M>> observeMarkedQuery(
+      @NonNull ToMarkedDatabaseQuery toMarkedDatabaseQuery,
+      @Nullable Consumer<Object> subscribeCheck) {
+    // Each trigger emits a query carrying its markers, merged into one when conflating.
+    @NonNull final Set<String> distinctTables = distinctTables(toMarkedDatabaseQuery.tables);
+    return new FusedQueryObservable<>(dispatcher, distinctTables,
+        triggerFilter(distinctTables, toMarkedDatabaseQuery.keys, toMarkedDatabaseQuery.columns),
+        toMarkedDatabaseQuery.initialMarkedQuery(), toMarkedDatabaseQuery, scheduler,
+        conflateQueries, subscribeCheck);
+  }
+
+  @NonNull private static Set<String> distinctTables(@NonNull Iterable<String> tables) {
+    // Duplicate tables would otherwise register the same listener twice.
+    @NonNull final Set<String> distinctTables = new LinkedHashSet<>();
+    for (String table : tables) {
+      distinctTables.add(table);
+    }
+    return distinctTables;
+  }
+
   /**
-   * Runs the provided SQL and returns a {@link Cursor} over the result set.
+   * Returns null if the query reads whole tables in every column, accepting every trigger.
+   *
+   * @param keys The keys of the rows of the only table in {@code distinctTables} which the query
+   * reads, or null if it reads whole tables.
+   * @param columns The lower-cased names of the columns which the query reads, or null if it may
+   * read every column.
+   */
+  @Nullable private TriggerFilter<M> triggerFilter(@NonNull Set<String> distinctTables,
+                                                   @Nullable Set<Long> keys,
+                                                   @Nullable Set<String> columns) {
+    return keys != null || columns != null
+        ? new TriggerFilter<M>(dispatcher.tableIds(), distinctTables, keys, columns)
+        : null;
+  }
+
+  // Package-private to avoid synthetic accessor method for 'DatabaseQuery' instances.
+  @Nullable
+  Set<String> inferColumns(@NonNull SupportSQLiteQuery query) {
+    return inferQueryColumns ? QueryColumns.read(query.getSql()) : null;
+  }
+
+  /** The key of the cached results of {@code query}, or null when results aren't cached. */
+  // Package-private to avoid synthetic accessor method for 'DatabaseQuery' instances.
+  @Nullable
+  QueryKey cacheKey(@NonNull SupportSQLiteQuery query, @NonNull Iterable<String> tables) {
+    return queryCache != null ? new QueryKey(query, tables) : null;
+  }
+
+  /**
+   * Runs the observable {@code query} on the readable database. When the result cache is enabled
+   * and this thread is not in a transaction, the result set is answered from or copied into the
+   * cache. A result set too large for the cache is read from the database's cursor instead.
+   *
+   * @param key The key of the query's cached results, from {@link #cacheKey}.
+   * @param signal Cancels the query, or null if it can't be cancelled. Needs API 16.
+   */
+  // Package-private to avoid synthetic accessor method for 'DatabaseQuery' instances.
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  @Nullable
+  Cursor runQuery(@NonNull SupportSQLiteQuery query, @Nullable QueryKey key,
+                  @Nullable CancellationSignal signal) {
+    @Nullable final QueryCache queryCache = this.queryCache;
+    if (queryCache == null || key == null || transactions.get() != null) {
+      return queryDatabase(query, signal);
+    }
+    @Nullable final CursorSnapshot cached = queryCache.get(key);
+    if (cached != null) {
+      return cached.newCursor();
+    }
+    final long version = queryCache.version();
+    @NonNull final Cursor cursor = queryDatabase(query, signal);
+    @Nullable final CursorSnapshot snapshot;
+    try {
+      snapshot = CursorSnapshot.copyOf(cursor, queryCache.maxSize());
+    } catch (RuntimeException e) {
+      cursor.close();
+      throw e;
+    }
+    if (snapshot == null) {
+      cursor.moveToPosition(-1);
+      return cursor;
+    }
+    cursor.close();
+    queryCache.put(key, snapshot, version);
+    return snapshot.newCursor();
+  }
+
+  /**
+   * Runs {@code query} on the readable database, within its timeout when they are enabled with
+   * {@link SqlDim.Builder#queryTimeout}.
+   */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  @NonNull
+  private Cursor queryDatabase(@NonNull SupportSQLiteQuery query,
+                               @Nullable CancellationSignal signal) {
+    @Nullable final QueryWatchdog watchdog = this.watchdog;
+    if (watchdog != null) {
+      return watchdog.query(getReadableDatabase(), query, signal);
+    }
+    return signal == null
+        ? getReadableDatabase().query(query)
+        : getReadableDatabase().query(query, signal);
+  }
+
+  /**
+   * The cache of query results, or null unless enabled with {@link SqlDim.Builder#resultCache}.
+   */
+  @Nullable
+  public QueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  /**
+   * Runs the provided SQL and returns a {@link Cursor} over the result set. Unlike observable
+   * queries, the result set is never answered from or copied into the {@linkplain #getQueryCache()
+   * result cache}.
    *
    * @see SupportSQLiteDatabase#query(String, Object[])
    */
   @CheckResult @NonNull @WorkerThread
   public Cursor query(@NonNull String sql, @NonNull Object... args) {
-    @NonNull final Cursor cursor = Objects.requireNonNull(getReadableDatabase().query(sql, args));
+    @NonNull final Cursor cursor = watchdog == null
+        ? getReadableDatabase().query(sql, args)
+        : queryDatabase(new SimpleSQLiteQuery(sql, args), null);
     if (logging) {
       log("QUERY\n  sql: %s\n  args: %s", indentSql(sql), Arrays.toString(args));
     }
@@ -537,12 +1121,13 @@ public final class DimDatabase<M> implements Closeable {
 
   /**
    * Runs the provided {@link SupportSQLiteQuery} and returns a {@link Cursor} over the result set.
+   * Like {@link #query(String, Object...)}, it bypasses the result cache.
    *
    * @see SupportSQLiteDatabase#query(SupportSQLiteQuery)
    */
   @CheckResult @NonNull @WorkerThread
   public Cursor query(@NonNull SupportSQLiteQuery query) {
-    @NonNull final Cursor cursor = Objects.requireNonNull(getReadableDatabase().query(query));
+    @NonNull final Cursor cursor = queryDatabase(query, null);
     if (logging) {
       log("QUERY\n  sql: %s", indentSql(query.getSql()));
     }
@@ -550,6 +1135,184 @@ public final class DimDatabase<M> implements Closeable {
     return cursor;
   }
 
+  /**
+   * Runs the provided SQL with the typed arguments in {@code args} and returns a {@link Cursor}
+   * over the result set. {@code args} may be cleared and reused once this returns.
+   *
+   * @see SupportSQLiteDatabase#query(SupportSQLiteQuery)
+   */
+  @CheckResult @NonNull @WorkerThread
+  public Cursor query(@NonNull String sql, @NonNull Bindings args) {
+    @NonNull final Cursor cursor = queryDatabase(args.asQuery(sql), null);
+    if (logging) log("QUERY\n  sql: %s\n  args: %s", indentSql(sql), args);
+
+    return cursor;
+  }
+
+  /**
+   * Runs the provided SQL and returns the value of the first column of its first row as a
+   * {@code long}. The compiled statement is kept in the {@linkplain #getStatementCache() statement
+   * cache}, if enabled, and the query is neither cached nor timed.
+   *
+   * @throws android.database.sqlite.SQLiteDoneException if the query returns no rows.
+   * @see SupportSQLiteStatement#simpleQueryForLong()
+   */
+  @CheckResult @WorkerThread
+  public long queryForLong(@NonNull String sql, @NonNull Object... args) {
+    if (logging) log("QUERY\n  sql: %s\n  args: %s", indentSql(sql), Arrays.toString(args));
+
+    @NonNull final SupportSQLiteDatabase db = getReadableDatabase();
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    try {
+      for (int i = 0; i < args.length; i++) {
+        BulkStatements.bind(statement, i + 1, args[i]);
+      }
+      return statement.simpleQueryForLong();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+  }
+
+  /**
+   * Like {@link #queryForLong}, returning the value of the first column of the first row as a
+   * {@link String}.
+   *
+   * @throws android.database.sqlite.SQLiteDoneException if the query returns no rows.
+   * @see SupportSQLiteStatement#simpleQueryForString()
+   */
+  @CheckResult @Nullable @WorkerThread
+  public String queryForString(@NonNull String sql, @NonNull Object... args) {
+    if (logging) log("QUERY\n  sql: %s\n  args: %s", indentSql(sql), Arrays.toString(args));
+
+    @NonNull final SupportSQLiteDatabase db = getReadableDatabase();
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    try {
+      for (int i = 0; i < args.length; i++) {
+        BulkStatements.bind(statement, i + 1, args[i]);
+      }
+      return statement.simpleQueryForString();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+  }
+
+  /**
+   * Like {@link #queryForLong(String, Object...)}, with the typed arguments in {@code args}.
+   *
+   * @throws android.database.sqlite.SQLiteDoneException if the query returns no rows.
+   */
+  @CheckResult @WorkerThread
+  public long queryForLong(@NonNull String sql, @NonNull Bindings args) {
+    if (logging) log("QUERY\n  sql: %s\n  args: %s", indentSql(sql), args);
+
+    @NonNull final SupportSQLiteDatabase db = getReadableDatabase();
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    try {
+      args.bindTo(statement);
+      return statement.simpleQueryForLong();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+  }
+
+  /**
+   * Like {@link #queryForString(String, Object...)}, with the typed arguments in {@code args}.
+   *
+   * @throws android.database.sqlite.SQLiteDoneException if the query returns no rows.
+   */
+  @CheckResult @Nullable @WorkerThread
+  public String queryForString(@NonNull String sql, @NonNull Bindings args) {
+    if (logging) log("QUERY\n  sql: %s\n  args: %s", indentSql(sql), args);
+
+    @NonNull final SupportSQLiteDatabase db = getReadableDatabase();
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    try {
+      args.bindTo(statement);
+      return statement.simpleQueryForString();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+  }
+
+  /**
+   * The cache of compiled statements, or null unless enabled with
+   * {@link SqlDim.Builder#statementCache}.
+   */
+  @Nullable
+  public StatementCache getStatementCache() {
+    return statementCache;
+  }
+
+  /** Returns {@code sql} compiled on {@code db}, from the statement cache when enabled. */
+  @NonNull
+  private SupportSQLiteStatement compileStatement(@NonNull SupportSQLiteDatabase db,
+                                                  @NonNull String sql) {
+    if (statementCache == null) {
+      return db.compileStatement(sql);
+    }
+    return statementCache.acquire(db, sql);
+  }
+
+  /** Hands a statement from {@link #compileStatement} back to the cache, or closes it. */
+  private void recycleStatement(@NonNull SupportSQLiteDatabase db, @NonNull String sql,
+                                @NonNull SupportSQLiteStatement statement) {
+    if (statementCache != null) {
+      statementCache.release(db, sql, statement);
+    } else {
+      BulkStatements.closeQuietly(statement);
+    }
+  }
+
+  /**
+   * Like {@link SupportSQLiteDatabase#insert}, with a cached statement. Returns -1 if the row was
+   * ignored on conflict, and throws on any other failure as {@link SupportSQLiteDatabase#insert}
+   * does.
+   */
+  private long insertCached(@NonNull SupportSQLiteDatabase db, @NonNull String table,
+                            @ConflictAlgorithm int conflictAlgorithm,
+                            @NonNull ContentValues values) {
+    @NonNull final String[] columns = BulkStatements.sortedColumns(values);
+    @NonNull final String sql = BulkStatements.insertSql(table, conflictAlgorithm, columns);
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    try {
+      BulkStatements.bind(statement, values, columns, 1);
+      return statement.executeInsert();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+  }
+
+  /** Like {@link SupportSQLiteDatabase#update}, with a cached statement. */
+  private int updateCached(@NonNull SupportSQLiteDatabase db, @NonNull String table,
+                           @ConflictAlgorithm int conflictAlgorithm,
+                           @NonNull ContentValues values, @Nullable String whereClause,
+                           @Nullable String[] whereArgs) {
+    @NonNull final String[] columns = BulkStatements.sortedColumns(values);
+    @NonNull final String sql =
+        BulkStatements.updateWhereSql(table, conflictAlgorithm, columns, whereClause);
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    try {
+      BulkStatements.bind(statement, values, columns, 1);
+      BulkStatements.bindStrings(statement, whereArgs, columns.length + 1);
+      return statement.executeUpdateDelete();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+  }
+
+  /** Like {@link SupportSQLiteDatabase#delete}, with a cached statement. */
+  private int deleteCached(@NonNull SupportSQLiteDatabase db, @NonNull String table,
+                           @Nullable String whereClause, @Nullable String[] whereArgs) {
+    @NonNull final String sql = BulkStatements.deleteWhereSql(table, whereClause);
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    try {
+      BulkStatements.bindStrings(statement, whereArgs, 1);
+      return statement.executeUpdateDelete();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+  }
+
   /**
    * Insert a row into the specified {@code table} and notify any subscribed queries.
    *
@@ -587,13 +1350,18 @@ public final class DimDatabase<M> implements Closeable {
               conflictString(conflictAlgorithm)
       );
     }
-    final long rowId = db.insert(table, conflictAlgorithm, values);
+    final long rowId = statementCache == null || values.size() == 0
+        ? db.insert(table, conflictAlgorithm, values)
+        : insertCached(db, table, conflictAlgorithm, values);
 
     if (logging) log("INSERT id: %s", rowId);
 
     if (rowId != -1) {
-      // Only send a table trigger if the insert was successful.
-      sendTableTrigger(markers, Collections.singleton(table));
+      // Only send a table trigger if the insert was successful. A replacing insert may also have
+      // deleted conflicting rows under other keys, so it changes the whole table.
+      sendTableTrigger(markers, tablesOf(table), conflictAlgorithm == CONFLICT_REPLACE
+          ? Collections.<String, Set<Long>>emptyMap()
+          : keyOf(table, rowId));
     }
     return rowId;
   }
@@ -611,25 +1379,7 @@ public final class DimDatabase<M> implements Closeable {
   @WorkerThread
   public int delete(@NonNull String table, @Nullable String whereClause,
                     @Nullable String... whereArgs) {
-    Set<M> markers = Collections.emptySet();
-    @NonNull final SupportSQLiteDatabase db = getWritableDatabase();
-
-    if (logging) {
-      log("DELETE\n  markers: %s\n  table: %s\n  whereClause: %s\n  whereArgs: %s",
-              markers,
-              table,
-              String.valueOf(whereClause),
-              Arrays.toString(whereArgs));
-    }
-    final int rows = db.delete(table, whereClause, whereArgs);
-
-    if (logging) log("DELETE affected %s %s", rows, rows != 1 ? "rows" : "row");
-
-    if (rows > 0) {
-      // Only send a table trigger if rows were affected.
-      sendTableTrigger(markers, Collections.singleton(table));
-    }
-    return rows;
+    return deleteMarked(Collections.<M>emptySet(), table, null, whereClause, whereArgs);
   }
 
   /**
@@ -643,7 +1393,45 @@ public final class DimDatabase<M> implements Closeable {
   @WorkerThread
   public int deleteMarked(@NonNull M marker, @NonNull String table, @Nullable String whereClause,
                           @Nullable String... whereArgs) {
-    Set<M> markers = Collections.singleton(marker);
+    return deleteMarked(Collections.singleton(marker), table, null, whereClause, whereArgs);
+  }
+
+  /**
+   * See {@link #delete(String, String, String...)} for usage. This overload only notifies queries
+   * on the whole of {@code table} and queries on one of {@code keys}, which must be the rowids of
+   * every row matched by {@code whereClause}.
+   *
+   * Includes no marker
+   *
+   * @see #createQuery(String, Collection, String, Object...)
+   */
+  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
+  // https://github.com/typetools/checker-framework/issues/2923
+  @WorkerThread
+  public int delete(@NonNull String table, @NonNull Collection<Long> keys,
+                    @Nullable String whereClause, @Nullable String... whereArgs) {
+    return deleteMarked(Collections.<M>emptySet(), table, keys, whereClause, whereArgs);
+  }
+
+  /**
+   * See {@link #deleteMarked(Object, String, String, String...)} for usage. This overload only
+   * notifies queries on the whole of {@code table} and queries on one of {@code keys}, which must
+   * be the rowids of every row matched by {@code whereClause}.
+   *
+   * @see #createQuery(String, Collection, String, Object...)
+   */
+  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
+  // https://github.com/typetools/checker-framework/issues/2923
+  @WorkerThread
+  public int deleteMarked(@NonNull M marker, @NonNull String table, @NonNull Collection<Long> keys,
+                          @Nullable String whereClause, @Nullable String... whereArgs) {
+    return deleteMarked(Collections.singleton(marker), table, keys, whereClause, whereArgs);
+  }
+
+  @WorkerThread
+  private int deleteMarked(@NonNull Set<M> markers, @NonNull String table,
+                           @Nullable Collection<Long> keys, @Nullable String whereClause,
+                           @Nullable String... whereArgs) {
     @NonNull final SupportSQLiteDatabase db = getWritableDatabase();
 
     if (logging) {
@@ -653,13 +1441,15 @@ public final class DimDatabase<M> implements Closeable {
               String.valueOf(whereClause),
               Arrays.toString(whereArgs));
     }
-    final int rows = db.delete(table, whereClause, whereArgs);
+    final int rows = statementCache == null
+        ? db.delete(table, whereClause, whereArgs)
+        : deleteCached(db, table, whereClause, whereArgs);
 
     if (logging) log("DELETE affected %s %s", rows, rows != 1 ? "rows" : "row");
 
     if (rows > 0) {
       // Only send a table trigger if rows were affected.
-      sendTableTrigger(markers, Collections.singleton(table));
+      sendTableTrigger(markers, tablesOf(table), keysOf(table, keys));
     }
     return rows;
   }
@@ -677,7 +1467,67 @@ public final class DimDatabase<M> implements Closeable {
   @WorkerThread
   public int update(@NonNull String table, @ConflictAlgorithm int conflictAlgorithm,
                     @NonNull ContentValues values, @Nullable String whereClause, @Nullable String... whereArgs) {
-    Set<M> markers = Collections.emptySet();
+    return updateMarked(Collections.<M>emptySet(), table, null, conflictAlgorithm, values,
+        whereClause, whereArgs);
+  }
+
+  /**
+   * Update rows in the specified {@code table} and notify any subscribed queries. This method
+   * will not trigger a notification if no rows were updated.
+   *
+   * @see SupportSQLiteDatabase#update(String, int, ContentValues, String, Object[])
+   */
+  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
+  // https://github.com/typetools/checker-framework/issues/2923
+  @WorkerThread
+  public int updateMarked(@NonNull M marker, @NonNull String table, @ConflictAlgorithm int conflictAlgorithm,
+                          @NonNull ContentValues values, @Nullable String whereClause, @Nullable String... whereArgs) {
+    return updateMarked(Collections.singleton(marker), table, null, conflictAlgorithm, values,
+        whereClause, whereArgs);
+  }
+
+  /**
+   * See {@link #update(String, int, ContentValues, String, String...)} for usage. This overload
+   * only notifies queries on the whole of {@code table} and queries on one of {@code keys}, which
+   * must be the rowids of every row matched by {@code whereClause}, before and after the update.
+   *
+   * Includes no marker
+   *
+   * @see #createQuery(String, Collection, String, Object...)
+   */
+  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
+  // https://github.com/typetools/checker-framework/issues/2923
+  @WorkerThread
+  public int update(@NonNull String table, @NonNull Collection<Long> keys,
+                    @ConflictAlgorithm int conflictAlgorithm, @NonNull ContentValues values,
+                    @Nullable String whereClause, @Nullable String... whereArgs) {
+    return updateMarked(Collections.<M>emptySet(), table, keys, conflictAlgorithm, values,
+        whereClause, whereArgs);
+  }
+
+  /**
+   * See {@link #updateMarked(Object, String, int, ContentValues, String, String...)} for usage.
+   * This overload only notifies queries on the whole of {@code table} and queries on one of
+   * {@code keys}, which must be the rowids of every row matched by {@code whereClause}, before and
+   * after the update.
+   *
+   * @see #createQuery(String, Collection, String, Object...)
+   */
+  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
+  // https://github.com/typetools/checker-framework/issues/2923
+  @WorkerThread
+  public int updateMarked(@NonNull M marker, @NonNull String table, @NonNull Collection<Long> keys,
+                          @ConflictAlgorithm int conflictAlgorithm, @NonNull ContentValues values,
+                          @Nullable String whereClause, @Nullable String... whereArgs) {
+    return updateMarked(Collections.singleton(marker), table, keys, conflictAlgorithm, values,
+        whereClause, whereArgs);
+  }
+
+  @WorkerThread
+  private int updateMarked(@NonNull Set<M> markers, @NonNull String table,
+                           @Nullable Collection<Long> keys,
+                           @ConflictAlgorithm int conflictAlgorithm, @NonNull ContentValues values,
+                           @Nullable String whereClause, @Nullable String... whereArgs) {
     @NonNull final SupportSQLiteDatabase db = getWritableDatabase();
 
     if (logging) {
@@ -690,69 +1540,403 @@ public final class DimDatabase<M> implements Closeable {
               conflictString(conflictAlgorithm)
       );
     }
-    final int rows = db.update(table, conflictAlgorithm, values, whereClause, whereArgs);
+    final int rows = statementCache == null || values.size() == 0
+        ? db.update(table, conflictAlgorithm, values, whereClause, whereArgs)
+        : updateCached(db, table, conflictAlgorithm, values, whereClause, whereArgs);
 
     if (logging) log("UPDATE affected %s %s", rows, rows != 1 ? "rows" : "row");
 
     if (rows > 0) {
-      // Only send a table trigger if rows were affected.
-      sendTableTrigger(markers, Collections.singleton(table));
+      // Only send a table trigger if rows were affected. A replacing update may also have deleted
+      // conflicting rows under other keys, so it changes the whole table.
+      if (conflictAlgorithm == CONFLICT_REPLACE) {
+        sendTableTrigger(markers, tablesOf(table));
+      } else {
+        sendTableTrigger(markers, tablesOf(table), keysOf(table, keys),
+            columnsOf(table, values));
+      }
     }
     return rows;
   }
 
   /**
-   * Update rows in the specified {@code table} and notify any subscribed queries. This method
-   * will not trigger a notification if no rows were updated.
+   * Insert {@code rows} into the specified {@code table} in one transaction and notify any
+   * subscribed queries once. The insert statement is compiled once and reused for every row with
+   * the same columns as the row before it.
+   * <p>
+   * {@code CONFLICT_ROLLBACK} is rejected, as a conflict would roll back the transaction the rows
+   * are inserted in, and any transaction enclosing it, from under their callers. With
+   * {@code CONFLICT_ABORT} a conflict fails the call and none of its rows are inserted.
    *
-   * @see SupportSQLiteDatabase#update(String, int, ContentValues, String, Object[])
+   * Includes no marker
+   *
+   * @return The number of rows inserted.
+   * @throws IllegalArgumentException if {@code conflictAlgorithm} is {@code CONFLICT_ROLLBACK}.
+   * @see #insert(String, int, ContentValues)
    */
-  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
-  // https://github.com/typetools/checker-framework/issues/2923
   @WorkerThread
-  public int updateMarked(@NonNull M marker, @NonNull String table, @ConflictAlgorithm int conflictAlgorithm,
-                          @NonNull ContentValues values, @Nullable String whereClause, @Nullable String... whereArgs) {
-    Set<M> markers = Collections.singleton(marker);
-    @NonNull final SupportSQLiteDatabase db = getWritableDatabase();
+  public int insertAll(@NonNull String table, @ConflictAlgorithm int conflictAlgorithm,
+                       @NonNull Iterable<ContentValues> rows) {
+    return insertAllMarked(Collections.<M>emptySet(), table, conflictAlgorithm, rows);
+  }
+
+  /**
+   * See {@link #insertAll(String, int, Iterable)} for usage. Queries are notified with
+   * {@code marker}.
+   */
+  @WorkerThread
+  public int insertAllMarked(@NonNull M marker, @NonNull String table,
+                             @ConflictAlgorithm int conflictAlgorithm,
+                             @NonNull Iterable<ContentValues> rows) {
+    return insertAllMarked(Collections.singleton(marker), table, conflictAlgorithm, rows);
+  }
 
+  @WorkerThread
+  private int insertAllMarked(@NonNull Set<M> markers, @NonNull String table,
+                              @ConflictAlgorithm int conflictAlgorithm,
+                              @NonNull Iterable<ContentValues> rows) {
+    if (conflictAlgorithm == CONFLICT_ROLLBACK) {
+      throw new IllegalArgumentException(
+          "CONFLICT_ROLLBACK would roll back the transaction of insertAll");
+    }
     if (logging) {
-      log("UPDATE\n  markers: %s\n  table: %s\n  values: %s\n  whereClause: %s\n  whereArgs: %s\n  conflictAlgorithm: %s",
-              markers,
-              table,
-              values,
-              String.valueOf(whereClause),
-              Arrays.toString(whereArgs),
-              conflictString(conflictAlgorithm)
+      log("INSERT ALL\n  markers: %s\n  table: %s\n  conflictAlgorithm: %s",
+          markers,
+          table,
+          conflictString(conflictAlgorithm)
       );
     }
-    final int rows = db.update(table, conflictAlgorithm, values, whereClause, whereArgs);
+    // A replacing insert may also have deleted conflicting rows under other keys, so it changes
+    // the whole table, and its keys aren't collected. Nor are they while no query filters on them.
+    final boolean replace = conflictAlgorithm == CONFLICT_REPLACE;
+    @Nullable final Set<Long> rowIds =
+        replace || !dispatcher.hasFilteredListeners() ? null : new HashSet<Long>();
+    // Counted apart from the keys, as replacing rows may insert the same key twice.
+    int inserted = 0;
+    @NonNull final Transaction<M> transaction = newTransaction();
+    try {
+      @NonNull final BulkStatements.Inserter inserter =
+          new BulkStatements.Inserter(getWritableDatabase(), table, conflictAlgorithm);
+      try {
+        for (ContentValues values : rows) {
+          final long rowId = inserter.insert(values);
+          if (rowId != -1) {
+            inserted++;
+            if (rowIds != null) {
+              rowIds.add(rowId);
+            }
+          }
+        }
+      } finally {
+        inserter.close();
+      }
+      if (inserted > 0) {
+        sendTableTrigger(markers, tablesOf(table),
+            rowIds == null ? Collections.<String, Set<Long>>emptyMap() : keysOf(table, rowIds));
+      }
+      transaction.markSuccessful();
+    } finally {
+      transaction.end();
+    }
 
-    if (logging) log("UPDATE affected %s %s", rows, rows != 1 ? "rows" : "row");
+    if (logging) log("INSERT ALL inserted %s %s", inserted, inserted != 1 ? "rows" : "row");
+    return inserted;
+  }
 
-    if (rows > 0) {
-      // Only send a table trigger if rows were affected.
-      sendTableTrigger(markers, Collections.singleton(table));
+  /**
+   * Update the row of the specified {@code table} whose {@code keyColumn} matches that of each of
+   * {@code rows}, or insert the row if there is none, in one transaction and notify any subscribed
+   * queries once. Every row must have a non-null value for {@code keyColumn}, which should be
+   * unique, or an {@link IllegalArgumentException} is thrown and nothing is written. The
+   * statements are compiled once and reused for every row with the same columns as the row
+   * before it.
+   * <p>
+   * Unlike an insert with {@code CONFLICT_REPLACE}, an existing row is updated in place rather
+   * than deleted and inserted again, so its other columns, its rowid and the rows referencing it
+   * are kept.
+   *
+   * Includes no marker
+   *
+   * @return The number of rows updated or inserted.
+   */
+  @WorkerThread
+  public int upsertAll(@NonNull String table, @NonNull String keyColumn,
+                       @NonNull Iterable<ContentValues> rows) {
+    return upsertAllMarked(Collections.<M>emptySet(), table, keyColumn, rows);
+  }
+
+  /**
+   * See {@link #upsertAll(String, String, Iterable)} for usage. Queries are notified with
+   * {@code marker}.
+   */
+  @WorkerThread
+  public int upsertAllMarked(@NonNull M marker, @NonNull String table, @NonNull String keyColumn,
+                             @NonNull Iterable<ContentValues> rows) {
+    return upsertAllMarked(Collections.singleton(marker), table, keyColumn, rows);
+  }
+
+  @WorkerThread
+  private int upsertAllMarked(@NonNull Set<M> markers, @NonNull String table,
+                              @NonNull String keyColumn, @NonNull Iterable<ContentValues> rows) {
+    if (logging) {
+      log("UPSERT ALL\n  markers: %s\n  table: %s\n  keyColumn: %s", markers, table, keyColumn);
     }
+    int written = 0;
+    @NonNull final Transaction<M> transaction = newTransaction();
+    try {
+      @NonNull final BulkStatements.Upserter upserter =
+          new BulkStatements.Upserter(getWritableDatabase(), table, keyColumn);
+      try {
+        for (ContentValues values : rows) {
+          upserter.upsert(values);
+          written++;
+        }
+      } finally {
+        upserter.close();
+      }
+      if (written > 0) {
+        sendTableTrigger(markers, tablesOf(table));
+      }
+      transaction.markSuccessful();
+    } finally {
+      transaction.end();
+    }
+
+    if (logging) log("UPSERT ALL wrote %s %s", written, written != 1 ? "rows" : "row");
+    return written;
+  }
+
+  /**
+   * Delete the rows of the specified {@code table} with one of the rowids {@code ids} in one
+   * transaction, and notify any subscribed queries on the whole of {@code table} or on one of
+   * {@code ids} once. The rowids are bound in chunks under SQLite's limit on bound variables,
+   * reusing one compiled statement for every full chunk. A null id throws a
+   * {@link NullPointerException} before anything is deleted.
+   *
+   * Includes no marker
+   *
+   * @return The number of rows deleted.
+   * @see #createQuery(String, Collection, String, Object...)
+   */
+  @WorkerThread
+  public int deleteByIds(@NonNull String table, @NonNull Collection<Long> ids) {
+    return deleteByIdsMarked(Collections.<M>emptySet(), table, ids);
+  }
+
+  /**
+   * See {@link #deleteByIds(String, Collection)} for usage. Queries are notified with
+   * {@code marker}.
+   */
+  @WorkerThread
+  public int deleteByIdsMarked(@NonNull M marker, @NonNull String table,
+                               @NonNull Collection<Long> ids) {
+    return deleteByIdsMarked(Collections.singleton(marker), table, ids);
+  }
+
+  @WorkerThread
+  private int deleteByIdsMarked(@NonNull Set<M> markers, @NonNull String table,
+                                @NonNull Collection<Long> ids) {
+    if (logging) {
+      log("DELETE BY IDS\n  markers: %s\n  table: %s\n  id count: %s", markers, table, ids.size());
+    }
+    final int rows;
+    @NonNull final Transaction<M> transaction = newTransaction();
+    try {
+      rows = BulkStatements.deleteByIds(getWritableDatabase(), table,
+          ids.toArray(new Long[0]));
+      if (rows > 0) {
+        sendTableTrigger(markers, tablesOf(table), keysOf(table, ids));
+      }
+      transaction.markSuccessful();
+    } finally {
+      transaction.end();
+    }
+
+    if (logging) log("DELETE BY IDS affected %s %s", rows, rows != 1 ? "rows" : "row");
     return rows;
   }
 
+  /**
+   * Like {@link #insert(String, int, ContentValues)}, queued on the writer and committed together
+   * with other asynchronous writes as configured by {@link SqlDim.Builder#groupCommit}. The write
+   * runs when subscribed to, and the row ID is emitted on the
+   * {@linkplain #getWriteScheduler() writer thread} once its group has committed.
+   * <p>
+   * {@code values} is copied on call.
+   */
+  @CheckResult @NonNull
+  public Single<Long> insertAsync(@NonNull String table, @ConflictAlgorithm int conflictAlgorithm,
+                                  @NonNull ContentValues values) {
+    return insertAsync(Collections.<M>emptySet(), table, conflictAlgorithm, values);
+  }
+
+  /**
+   * Like {@link #insertMarked(Object, String, int, ContentValues)}, queued on the writer. See
+   * {@link #insertAsync(String, int, ContentValues)} for usage.
+   */
+  @CheckResult @NonNull
+  public Single<Long> insertMarkedAsync(@NonNull M marker, @NonNull String table,
+                                        @ConflictAlgorithm int conflictAlgorithm,
+                                        @NonNull ContentValues values) {
+    return insertAsync(Collections.singleton(marker), table, conflictAlgorithm, values);
+  }
+
+  @NonNull
+  private Single<Long> insertAsync(@NonNull final Set<M> markers, @NonNull final String table,
+                                   @ConflictAlgorithm final int conflictAlgorithm,
+                                   @NonNull ContentValues values) {
+    @NonNull final ContentValues copy = new ContentValues(values);
+    return writeQueue.enqueue(conflictAlgorithm != CONFLICT_ROLLBACK, new Callable<Long>() {
+      @NonNull @Override public Long call() {
+        return insertMarked(markers, table, conflictAlgorithm, copy);
+      }
+    });
+  }
+
+  /**
+   * Like {@link #update(String, int, ContentValues, String, String...)}, queued on the writer.
+   * See {@link #insertAsync(String, int, ContentValues)} for usage.
+   */
+  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
+  // https://github.com/typetools/checker-framework/issues/2923
+  @CheckResult @NonNull
+  public Single<Integer> updateAsync(@NonNull String table,
+                                     @ConflictAlgorithm int conflictAlgorithm,
+                                     @NonNull ContentValues values, @Nullable String whereClause,
+                                     @Nullable String... whereArgs) {
+    return updateAsync(Collections.<M>emptySet(), table, conflictAlgorithm, values, whereClause,
+        whereArgs);
+  }
+
+  /**
+   * Like {@link #updateMarked(Object, String, int, ContentValues, String, String...)}, queued on
+   * the writer. See {@link #insertAsync(String, int, ContentValues)} for usage.
+   */
+  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
+  // https://github.com/typetools/checker-framework/issues/2923
+  @CheckResult @NonNull
+  public Single<Integer> updateMarkedAsync(@NonNull M marker, @NonNull String table,
+                                           @ConflictAlgorithm int conflictAlgorithm,
+                                           @NonNull ContentValues values,
+                                           @Nullable String whereClause,
+                                           @Nullable String... whereArgs) {
+    return updateAsync(Collections.singleton(marker), table, conflictAlgorithm, values,
+        whereClause, whereArgs);
+  }
+
+  @NonNull
+  private Single<Integer> updateAsync(@NonNull final Set<M> markers, @NonNull final String table,
+                                      @ConflictAlgorithm final int conflictAlgorithm,
+                                      @NonNull ContentValues values,
+                                      @Nullable final String whereClause,
+                                      @Nullable final String... whereArgs) {
+    @NonNull final ContentValues copy = new ContentValues(values);
+    return writeQueue.enqueue(conflictAlgorithm != CONFLICT_ROLLBACK, new Callable<Integer>() {
+      @NonNull @Override public Integer call() {
+        return updateMarked(markers, table, null, conflictAlgorithm, copy, whereClause,
+            whereArgs);
+      }
+    });
+  }
+
+  /**
+   * Like {@link #delete(String, String, String...)}, queued on the writer. See
+   * {@link #insertAsync(String, int, ContentValues)} for usage.
+   */
+  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
+  // https://github.com/typetools/checker-framework/issues/2923
+  @CheckResult @NonNull
+  public Single<Integer> deleteAsync(@NonNull String table, @Nullable String whereClause,
+                                     @Nullable String... whereArgs) {
+    return deleteAsync(Collections.<M>emptySet(), table, whereClause, whereArgs);
+  }
+
+  /**
+   * Like {@link #deleteMarked(Object, String, String, String...)}, queued on the writer. See
+   * {@link #insertAsync(String, int, ContentValues)} for usage.
+   */
+  // inlined because we can't declare: @Nullable String @Nullable ... whereArgs
+  // https://github.com/typetools/checker-framework/issues/2923
+  @CheckResult @NonNull
+  public Single<Integer> deleteMarkedAsync(@NonNull M marker, @NonNull String table,
+                                           @Nullable String whereClause,
+                                           @Nullable String... whereArgs) {
+    return deleteAsync(Collections.singleton(marker), table, whereClause, whereArgs);
+  }
+
+  @NonNull
+  private Single<Integer> deleteAsync(@NonNull final Set<M> markers, @NonNull final String table,
+                                      @Nullable final String whereClause,
+                                      @Nullable final String... whereArgs) {
+    return writeQueue.enqueue(true, new Callable<Integer>() {
+      @NonNull @Override public Integer call() {
+        return deleteMarked(markers, table, null, whereClause, whereArgs);
+      }
+    });
+  }
+
+  /**
+   * Like {@link #executeAndTrigger(String, String, Object...)}, queued on the writer. See
+   * {@link #insertAsync(String, int, ContentValues)} for usage. A statement which ends or rolls
+   * back a transaction must not be run this way.
+   */
+  @CheckResult @NonNull
+  public Completable executeAndTriggerAsync(@NonNull String table, @NonNull String sql,
+                                            @NonNull Object... args) {
+    return executeAndTriggerAsync(Collections.<M>emptySet(), table, sql, args);
+  }
+
+  /**
+   * Like {@link #executeAndTriggerMarked(Object, String, String, Object...)}, queued on the
+   * writer. See {@link #executeAndTriggerAsync(String, String, Object...)} for usage.
+   */
+  @CheckResult @NonNull
+  public Completable executeAndTriggerMarkedAsync(@NonNull M marker, @NonNull String table,
+                                                  @NonNull String sql, @NonNull Object... args) {
+    return executeAndTriggerAsync(Collections.singleton(marker), table, sql, args);
+  }
+
+  @NonNull
+  private Completable executeAndTriggerAsync(@NonNull final Set<M> markers,
+                                             @NonNull final String table,
+                                             @NonNull final String sql,
+                                             @NonNull final Object... args) {
+    return writeQueue.enqueue(true, new Callable<Boolean>() {
+      @NonNull @Override public Boolean call() {
+        executeAndTriggerMarked(markers, tablesOf(table), sql, args);
+        return true;
+      }
+    }).ignoreElement();
+  }
+
   /**
    * Execute {@code sql} provided it is NOT a {@code SELECT} or any other SQL statement that
    * returns data. No data can be returned (such as the number of affected rows). Instead, use
    * {@link #insert}, {@link #update}, et al, when possible.
    * <p>
-   * No notifications will be sent to queries if {@code sql} affects the data of a table.
+   * No notifications will be sent to queries if {@code sql} affects the data of a table, unless
+   * changes are captured as enabled by {@link SqlDim.Builder#captureChanges}. Every result in the
+   * {@linkplain #getQueryCache() result cache} is dropped.
    *
    * @see SupportSQLiteDatabase#execSQL(String)
    */
   @WorkerThread
   public void execute(@NonNull String sql) {
+    executeSql(sql);
+    triggerCapturedChanges();
+  }
+
+  private void executeSql(@NonNull String sql) {
     if (logging) log("EXECUTE\n  sql: %s", indentSql(sql));
 
     // SupportSQLiteDatabase#execSQL(String) isn't annotated, but sql gets passed
     // through to android.database.DatabaseUtils#getSqlStatementType(String), which
     // is also not annotated, but does require sql to be @NonNull.
     getWritableDatabase().execSQL(sql);
+    forgetSchemaIfChanged(sql);
+    if (queryCache != null) {
+      queryCache.evictAll();
+    }
   }
 
   /**
@@ -760,20 +1944,76 @@ public final class DimDatabase<M> implements Closeable {
    * returns data. No data can be returned (such as the number of affected rows). Instead, use
    * {@link #insert}, {@link #update}, et al, when possible.
    * <p>
-   * No notifications will be sent to queries if {@code sql} affects the data of a table.
+   * No notifications will be sent to queries if {@code sql} affects the data of a table, unless
+   * changes are captured as enabled by {@link SqlDim.Builder#captureChanges}. Every result in the
+   * {@linkplain #getQueryCache() result cache} is dropped.
    *
    * @see SupportSQLiteDatabase#execSQL(String, Object[])
    */
   @WorkerThread
   public void execute(@NonNull String sql, @NonNull Object... args) {
+    executeSql(sql, args);
+    triggerCapturedChanges();
+  }
+
+  private void executeSql(@NonNull String sql, @NonNull Object[] args) {
     if (logging) log("EXECUTE\n  sql: %s\n  args: %s", indentSql(sql), Arrays.toString(args));
 
-    // SupportSQLiteDatabase#execSQL(String) isn't annotated, but sql gets passed
-    // through to android.database.DatabaseUtils#getSqlStatementType(String), which
-    // is also not annotated, but does require sql to be @NonNull.
-    // android.database.sqlite.SQLiteDatabase#execSQL(String,Object[]) explicitly
-    // checks for a @NonNull args, but the method itself isn't annotated.
-    getWritableDatabase().execSQL(sql, args);
+    // SupportSQLiteDatabase#execSQL(String) isn't annotated, but sql gets passed
+    // through to android.database.DatabaseUtils#getSqlStatementType(String), which
+    // is also not annotated, but does require sql to be @NonNull.
+    // android.database.sqlite.SQLiteDatabase#execSQL(String,Object[]) explicitly
+    // checks for a @NonNull args, but the method itself isn't annotated.
+    if (statementCache != null
+        && DatabaseUtils.getSqlStatementType(sql) == DatabaseUtils.STATEMENT_UPDATE) {
+      @NonNull final SupportSQLiteDatabase db = getWritableDatabase();
+      @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+      try {
+        for (int i = 0; i < args.length; i++) {
+          BulkStatements.bind(statement, i + 1, args[i]);
+        }
+        statement.executeUpdateDelete();
+      } finally {
+        recycleStatement(db, sql, statement);
+      }
+    } else {
+      getWritableDatabase().execSQL(sql, args);
+      forgetSchemaIfChanged(sql);
+    }
+    if (queryCache != null) {
+      queryCache.evictAll();
+    }
+  }
+
+  /**
+   * Drops the schema dependencies if the schema's version changed since the last check, as after
+   * DDL run in the helper's migrations, through {@link #getWritableDatabase()} directly, or by
+   * others sharing the helper. Checked once per trigger dispatched, which is once per outermost
+   * transaction or write outside of one. Threads racing to see a new version both drop them.
+   * <p>
+   * Cached statements are not dropped: SQLite compiles a statement again when it finds the schema
+   * changed, and DDL run through this class already empties the cache.
+   */
+  private void forgetSchemaIfVersionChanged(@NonNull SupportSQLiteDatabase db,
+                                            @NonNull SchemaDependencies schemaDependencies) {
+    final long version = schemaDependencies.version(db);
+    if (version != schemaVersion) {
+      schemaVersion = version;
+      schemaDependencies.invalidate();
+    }
+  }
+
+  /** Drops what was compiled or read against the schema, if {@code sql} changes it. */
+  private void forgetSchemaIfChanged(@NonNull String sql) {
+    if (!StatementCache.changesSchema(sql)) {
+      return;
+    }
+    if (statementCache != null) {
+      statementCache.evictAll();
+    }
+    if (schemaDependencies != null) {
+      schemaDependencies.invalidate();
+    }
   }
 
   /**
@@ -789,7 +2029,7 @@ public final class DimDatabase<M> implements Closeable {
    */
   @WorkerThread
   public void executeAndTrigger(@NonNull String table, @NonNull String sql) {
-    executeAndTriggerMarked(Collections.emptySet(), Collections.singleton(table), sql);
+    executeAndTriggerMarked(Collections.emptySet(), tablesOf(table), sql);
   }
 
   /**
@@ -803,7 +2043,7 @@ public final class DimDatabase<M> implements Closeable {
    */
   @WorkerThread
   public void executeAndTriggerMarked(@NonNull M marker, @NonNull String table, @NonNull String sql) {
-    executeAndTriggerMarked(marker, Collections.singleton(table), sql);
+    executeAndTriggerMarked(marker, tablesOf(table), sql);
   }
 
   /**
@@ -825,7 +2065,7 @@ public final class DimDatabase<M> implements Closeable {
    */
   @WorkerThread
   public void executeAndTriggerMarked(@NonNull M marker, @NonNull Set<String> tables, @NonNull String sql) {
-    execute(sql);
+    executeSql(sql);
 
     sendTableTrigger(Collections.singleton(marker), tables);
   }
@@ -843,7 +2083,7 @@ public final class DimDatabase<M> implements Closeable {
    */
   @WorkerThread
   public void executeAndTrigger(@NonNull String table, @NonNull String sql, @NonNull Object... args) {
-    executeAndTriggerMarked(Collections.emptySet(), Collections.singleton(table), sql, args);
+    executeAndTriggerMarked(Collections.emptySet(), tablesOf(table), sql, args);
   }
 
   /**
@@ -858,7 +2098,7 @@ public final class DimDatabase<M> implements Closeable {
   @WorkerThread
   public void executeAndTriggerMarked(@NonNull M marker, @NonNull String table,
                                       @NonNull String sql, @NonNull Object... args) {
-    executeAndTriggerMarked(Collections.singleton(marker), Collections.singleton(table), sql, args);
+    executeAndTriggerMarked(Collections.singleton(marker), tablesOf(table), sql, args);
   }
 
   /**
@@ -881,7 +2121,7 @@ public final class DimDatabase<M> implements Closeable {
   @WorkerThread
   public void executeAndTriggerMarked(@NonNull M marker, @NonNull Set<String> tables,
                                       @NonNull String sql, @NonNull Object... args) {
-    execute(sql, args);
+    executeSql(sql, args);
 
     sendTableTrigger(Collections.singleton(marker), tables);
   }
@@ -889,11 +2129,144 @@ public final class DimDatabase<M> implements Closeable {
   @WorkerThread
   private void executeAndTriggerMarked(@NonNull Set<M> markers, @NonNull Set<String> tables,
                                        @NonNull String sql, @NonNull Object... args) {
-    execute(sql, args);
+    executeSql(sql, args);
+
+    sendTableTrigger(markers, tables);
+  }
+
+  /**
+   * Execute {@code sql} provided it is NOT a {@code SELECT} or any other SQL statement that
+   * returns data. No data can be returned (such as the number of affected rows). Instead, use
+   * {@link #insert}, {@link #update}, et al, when possible.
+   * <p>
+   * A notification to queries for the tables {@code sql} inserts into, updates or deletes from
+   * will be sent after the statement is executed. Tables written only by SQL triggers are not
+   * notified.
+   *
+   * Includes no marker
+   *
+   * @throws IllegalArgumentException if {@code sql} writes no table.
+   * @see SupportSQLiteDatabase#execSQL(String)
+   */
+  @WorkerThread
+  public void executeAndTrigger(@NonNull String sql) {
+    executeAndTriggerMarked(Collections.emptySet(), writtenTables(sql), sql);
+  }
+
+  /**
+   * See {@link #executeAndTrigger(String)} for usage. This overload includes {@code marker} in the
+   * notification.
+   *
+   * @throws IllegalArgumentException if {@code sql} writes no table.
+   * @see SupportSQLiteDatabase#execSQL(String)
+   */
+  @WorkerThread
+  public void executeAndTriggerMarked(@NonNull M marker, @NonNull String sql) {
+    executeAndTriggerMarked(Collections.singleton(marker), writtenTables(sql), sql);
+  }
+
+  /**
+   * See {@link #executeAndTrigger(String)} for usage. This overload binds the arguments of
+   * {@code query} to its statement.
+   *
+   * Includes no marker
+   *
+   * @throws IllegalArgumentException if {@code query} writes no table.
+   * @see SupportSQLiteStatement#execute()
+   */
+  @WorkerThread
+  public void executeAndTrigger(@NonNull SupportSQLiteQuery query) {
+    executeAndTriggerMarked(Collections.<M>emptySet(), query);
+  }
+
+  /**
+   * See {@link #executeAndTrigger(SupportSQLiteQuery)} for usage. This overload includes
+   * {@code marker} in the notification.
+   *
+   * @throws IllegalArgumentException if {@code query} writes no table.
+   * @see SupportSQLiteStatement#execute()
+   */
+  @WorkerThread
+  public void executeAndTriggerMarked(@NonNull M marker, @NonNull SupportSQLiteQuery query) {
+    executeAndTriggerMarked(Collections.singleton(marker), query);
+  }
+
+  @WorkerThread
+  private void executeAndTriggerMarked(@NonNull Set<M> markers,
+                                       @NonNull SupportSQLiteQuery query) {
+    @NonNull final String sql = query.getSql();
+    @NonNull final Set<String> tables = writtenTables(sql);
+    if (logging) log("EXECUTE\n  sql: %s\n  arg count: %s", indentSql(sql), query.getArgCount());
+
+    @NonNull final SupportSQLiteDatabase db = getWritableDatabase();
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    try {
+      query.bindTo(statement);
+      statement.execute();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+    forgetSchemaIfChanged(sql);
 
     sendTableTrigger(markers, tables);
   }
 
+  @NonNull private Set<String> readTables(@NonNull SupportSQLiteQuery query) {
+    @NonNull final Set<String> tables = tableAnalyzer.readTables(query.getSql());
+    if (tables.isEmpty()) {
+      throw new IllegalArgumentException("No tables read by: " + query.getSql());
+    }
+    return tables;
+  }
+
+  @NonNull private Set<String> writtenTables(@NonNull String sql) {
+    @NonNull final Set<String> tables = tableAnalyzer.writtenTables(sql);
+    if (tables.isEmpty()) {
+      throw new IllegalArgumentException("No tables written by: " + sql);
+    }
+    return tables;
+  }
+
+  /**
+   * Installs the temporary SQL triggers which capture the rows changed in every table of
+   * {@code db}, as enabled by {@link SqlDim.Builder#captureChanges}. Temporary triggers only last
+   * as long as the connection, so call this from {@link Callback#onOpen} of the wrapped
+   * {@link SupportSQLiteOpenHelper}, passing the database being opened. Otherwise the triggers
+   * are installed by the first notification of captured changes, and earlier writes go
+   * uncaptured.
+   * <p>
+   * Does nothing unless changes are captured, or if they are already captured on {@code db}.
+   */
+  @WorkerThread
+  public void installChangeCapture(@NonNull SupportSQLiteDatabase db) {
+    if (changeCapture != null) {
+      changeCapture.install(db);
+    }
+  }
+
+  /**
+   * Send a notification for the changes captured since the last notification, such as writes made
+   * directly through {@link #getWritableDatabase()} or by other users of the same
+   * {@link SupportSQLiteOpenHelper}. Changes captured in a transaction through this class are
+   * sent automatically when it is committed, and those of other writes along with the next write
+   * through this class, or with this call.
+   * <p>
+   * Does nothing unless changes are captured, as enabled by {@link SqlDim.Builder#captureChanges},
+   * or when called in a transaction, whose changes are sent when it is committed.
+   */
+  @WorkerThread
+  public void triggerCapturedChanges() {
+    if (changeCapture == null || transactions.get() != null) {
+      return;
+    }
+    @NonNull final Set<String> tables = new LinkedHashSet<>();
+    @NonNull final Map<String, Set<Long>> keys = new HashMap<>();
+    if (changeCapture.drain(getWritableDatabase(), tables, keys)) {
+      dispatchTableTrigger(Collections.<M>emptySet(), tables, keys,
+          Collections.<String, Set<String>>emptyMap());
+    }
+  }
+
   /**
    * Force a notification to queries for {@code table} with the given marker.
    *
@@ -902,7 +2275,7 @@ public final class DimDatabase<M> implements Closeable {
    */
   @WorkerThread
   public void triggerMarked(@NonNull M marker, @NonNull String table) {
-    triggerMarked(marker, Collections.singleton(table));
+    triggerMarked(marker, tablesOf(table));
   }
 
   /**
@@ -915,6 +2288,79 @@ public final class DimDatabase<M> implements Closeable {
     sendTableTrigger(Collections.singleton(marker), tables);
   }
 
+  /**
+   * See {@link #triggerMarked(Object, String)} for usage. This overload only notifies queries on
+   * the whole of {@code table} and queries on one of {@code keys}.
+   *
+   * @see #createQuery(String, Collection, String, Object...)
+   */
+  @WorkerThread
+  public void triggerMarked(@NonNull M marker, @NonNull String table,
+                            @NonNull Collection<Long> keys) {
+    sendTableTrigger(Collections.singleton(marker), tablesOf(table),
+        keysOf(table, keys));
+  }
+
+  /**
+   * The changed {@code keys} of {@code table}, or none while no query filters on them, as the
+   * trigger then changed the whole table.
+   */
+  @NonNull
+  private Map<String, Set<Long>> keysOf(@NonNull String table, @Nullable Collection<Long> keys) {
+    return keys == null || !dispatcher.hasFilteredListeners()
+        ? Collections.<String, Set<Long>>emptyMap()
+        : Collections.<String, Set<Long>>singletonMap(table, new HashSet<>(keys));
+  }
+
+  /** Like {@link #keysOf}, for the single changed {@code key}. */
+  @NonNull
+  private Map<String, Set<Long>> keyOf(@NonNull String table, long key) {
+    return dispatcher.hasFilteredListeners()
+        ? Collections.<String, Set<Long>>singletonMap(table, Collections.singleton(key))
+        : Collections.<String, Set<Long>>emptyMap();
+  }
+
+  /**
+   * The columns of {@code table} changed to {@code values}, or none while no query filters on
+   * them, as the trigger then changed every column.
+   */
+  @NonNull
+  private Map<String, Set<String>> columnsOf(@NonNull String table,
+                                             @NonNull ContentValues values) {
+    return dispatcher.hasFilteredListeners()
+        ? Collections.<String, Set<String>>singletonMap(table, normalizedColumns(values.keySet()))
+        : Collections.<String, Set<String>>emptyMap();
+  }
+
+  @NonNull
+  private static Set<String> normalizedColumns(@NonNull Iterable<String> columns) {
+    @NonNull final Set<String> normalized = new HashSet<>();
+    for (String column : columns) {
+      normalized.add(QueryColumns.normalize(column));
+    }
+    return normalized;
+  }
+
+  /** Drops the changes of {@code tables}, which then changed as a whole. */
+  @NonNull
+  private static <V> Map<String, V> withoutTables(@NonNull Map<String, V> changes,
+                                                  @NonNull Set<String> tables) {
+    if (changes.isEmpty()) {
+      return changes;
+    }
+    @NonNull final Set<String> normalized = new HashSet<>();
+    for (String table : tables) {
+      normalized.add(SchemaDependencies.normalize(table));
+    }
+    @NonNull final Map<String, V> remaining = new HashMap<>();
+    for (Map.Entry<String, V> entry : changes.entrySet()) {
+      if (!normalized.contains(SchemaDependencies.normalize(entry.getKey()))) {
+        remaining.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return remaining;
+  }
+
   /**
    * Execute {@code statement}, if the the number of rows affected by execution of this SQL
    * statement is of any importance to the caller - for example, UPDATE / DELETE SQL statements.
@@ -929,7 +2375,7 @@ public final class DimDatabase<M> implements Closeable {
   @WorkerThread
   public int executeUpdateDelete(@NonNull String table,
                                  @NonNull SupportSQLiteStatement statement) {
-    return executeUpdateDeleteMarked(Collections.emptySet(), Collections.singleton(table), statement);
+    return executeUpdateDeleteMarked(Collections.emptySet(), tablesOf(table), statement);
   }
 
   /**
@@ -944,7 +2390,7 @@ public final class DimDatabase<M> implements Closeable {
   @WorkerThread
   public int executeUpdateDeleteMarked(@NonNull M marker, @NonNull String table,
                                        @NonNull SupportSQLiteStatement statement) {
-    return executeUpdateDeleteMarked(Collections.singleton(marker), Collections.singleton(table), statement);
+    return executeUpdateDeleteMarked(Collections.singleton(marker), tablesOf(table), statement);
   }
 
   /**
@@ -985,6 +2431,58 @@ public final class DimDatabase<M> implements Closeable {
     return rows;
   }
 
+  /**
+   * Execute {@code sql} with the typed arguments in {@code args}, if the number of rows affected
+   * is of any importance to the caller - for example, UPDATE / DELETE SQL statements. The
+   * statement is compiled once and kept in the {@linkplain #getStatementCache() statement cache},
+   * if enabled, and {@code args} may be cleared and reused once this returns.
+   *
+   * Includes no marker
+   *
+   * @return the number of rows affected by this SQL statement execution.
+   * @throws android.database.SQLException If the SQL string is invalid
+   *
+   * @see SupportSQLiteStatement#executeUpdateDelete()
+   */
+  @WorkerThread
+  public int executeUpdateDelete(@NonNull String table, @NonNull String sql,
+                                 @NonNull Bindings args) {
+    return executeUpdateDeleteMarked(Collections.<M>emptySet(), table, sql, args);
+  }
+
+  /**
+   * See {@link #executeUpdateDelete(String, String, Bindings)} for usage. This overload includes
+   * {@code marker} in the notification.
+   *
+   * @see SupportSQLiteStatement#executeUpdateDelete()
+   */
+  @WorkerThread
+  public int executeUpdateDeleteMarked(@NonNull M marker, @NonNull String table,
+                                       @NonNull String sql, @NonNull Bindings args) {
+    return executeUpdateDeleteMarked(Collections.singleton(marker), table, sql, args);
+  }
+
+  @WorkerThread
+  private int executeUpdateDeleteMarked(@NonNull Set<M> markers, @NonNull String table,
+                                        @NonNull String sql, @NonNull Bindings args) {
+    if (logging) log("EXECUTE\n  sql: %s\n  args: %s", indentSql(sql), args);
+
+    @NonNull final SupportSQLiteDatabase db = getWritableDatabase();
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    final int rows;
+    try {
+      args.bindTo(statement);
+      rows = statement.executeUpdateDelete();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+    if (rows > 0) {
+      // Only send a table trigger if rows were affected.
+      sendTableTrigger(markers, tablesOf(table));
+    }
+    return rows;
+  }
+
   /**
    * Execute {@code statement} and return the ID of the row inserted due to this call.
    * The SQL statement should be an INSERT for this to be a useful call.
@@ -999,7 +2497,7 @@ public final class DimDatabase<M> implements Closeable {
    */
   @WorkerThread
   public long executeInsert(@NonNull String table, @NonNull SupportSQLiteStatement statement) {
-    return executeInsertMarked(Collections.emptySet(), Collections.singleton(table), statement);
+    return executeInsertMarked(Collections.emptySet(), tablesOf(table), statement);
   }
 
   /**
@@ -1015,7 +2513,7 @@ public final class DimDatabase<M> implements Closeable {
   @WorkerThread
   public long executeInsertMarked(@NonNull M marker, @NonNull String table,
                                   @NonNull SupportSQLiteStatement statement) {
-    return executeInsertMarked(Collections.singleton(marker), Collections.singleton(table), statement);
+    return executeInsertMarked(Collections.singleton(marker), tablesOf(table), statement);
   }
 
   /**
@@ -1056,6 +2554,57 @@ public final class DimDatabase<M> implements Closeable {
     return rowId;
   }
 
+  /**
+   * Execute the INSERT {@code sql} with the typed arguments in {@code args} and return the ID of
+   * the row inserted. The statement is compiled once and kept in the
+   * {@linkplain #getStatementCache() statement cache}, if enabled, and {@code args} may be
+   * cleared and reused once this returns.
+   *
+   * Includes no marker
+   *
+   * @return the row ID of the last row inserted, if this insert is successful. -1 otherwise.
+   * @throws android.database.SQLException If the SQL string is invalid
+   *
+   * @see SupportSQLiteStatement#executeInsert()
+   */
+  @WorkerThread
+  public long executeInsert(@NonNull String table, @NonNull String sql, @NonNull Bindings args) {
+    return executeInsertMarked(Collections.<M>emptySet(), table, sql, args);
+  }
+
+  /**
+   * See {@link #executeInsert(String, String, Bindings)} for usage. This overload includes
+   * {@code marker} in the notification.
+   *
+   * @see SupportSQLiteStatement#executeInsert()
+   */
+  @WorkerThread
+  public long executeInsertMarked(@NonNull M marker, @NonNull String table, @NonNull String sql,
+                                  @NonNull Bindings args) {
+    return executeInsertMarked(Collections.singleton(marker), table, sql, args);
+  }
+
+  @WorkerThread
+  private long executeInsertMarked(@NonNull Set<M> markers, @NonNull String table,
+                                   @NonNull String sql, @NonNull Bindings args) {
+    if (logging) log("EXECUTE\n  sql: %s\n  args: %s", indentSql(sql), args);
+
+    @NonNull final SupportSQLiteDatabase db = getWritableDatabase();
+    @NonNull final SupportSQLiteStatement statement = compileStatement(db, sql);
+    final long rowId;
+    try {
+      args.bindTo(statement);
+      rowId = statement.executeInsert();
+    } finally {
+      recycleStatement(db, sql, statement);
+    }
+    if (rowId != -1) {
+      // Only send a table trigger if the insert was successful.
+      sendTableTrigger(markers, tablesOf(table));
+    }
+    return rowId;
+  }
+
   /** An in-progress database transaction. */
   public interface Transaction<M> extends Closeable {
     /**
@@ -1175,13 +2724,112 @@ public final class DimDatabase<M> implements Closeable {
     }
   }
 
+  /** Accepts the triggers changing a row or column a query reads from one of its tables. */
+  static final class TriggerFilter<M> {
+    @NonNull private final String[] tableNames;
+    @NonNull private final int[] tableIds;
+    @Nullable private final Set<Long> keys;
+    @Nullable private final Set<String> columns;
+
+    TriggerFilter(@NonNull TableIds ids, @NonNull Set<String> tables, @Nullable Set<Long> keys,
+                  @Nullable Set<String> columns) {
+      this.tableNames = tables.toArray(new String[0]);
+      this.tableIds = new int[tableNames.length];
+      for (int i = 0; i < tableNames.length; i++) {
+        tableIds[i] = ids.idOf(tableNames[i]);
+      }
+      this.keys = keys;
+      this.columns = columns;
+    }
+
+    boolean accepts(@NonNull Trigger<M> trigger) {
+      @NonNull final long[] tableBits = Objects.requireNonNull(trigger.tableBits);
+      for (int i = 0; i < tableNames.length; i++) {
+        if (TableIds.contains(tableBits, tableIds[i])
+            && trigger.affects(tableNames[i], keys, columns)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
   static final class Trigger<M> {
     @NonNull final Set<M> markers;
     @NonNull final Set<String> tables;
+    // The keys of the changed rows of each table. Tables without keys changed as a whole.
+    @NonNull final Map<String, Set<Long>> keys;
+    // The lower-cased names of the changed columns of each table. Tables without columns changed
+    // in every column.
+    @NonNull final Map<String, Set<String>> columns;
+    // The bitset of 'tables', set by the dispatcher it is posted to from the ids it interned.
+    @Nullable long[] tableBits;
 
     Trigger(@NonNull Set<M> markers, @NonNull Set<String> tables) {
+      this(markers, tables, Collections.<String, Set<Long>>emptyMap());
+    }
+
+    Trigger(@NonNull Set<M> markers, @NonNull Set<String> tables,
+            @NonNull Map<String, Set<Long>> keys) {
+      this(markers, tables, keys, Collections.<String, Set<String>>emptyMap());
+    }
+
+    Trigger(@NonNull Set<M> markers, @NonNull Set<String> tables,
+            @NonNull Map<String, Set<Long>> keys, @NonNull Map<String, Set<String>> columns) {
       this.tables = tables;
       this.markers = markers;
+      this.keys = keys;
+      this.columns = columns;
+    }
+
+    /**
+     * True if this trigger changed one of the rows of {@code table} in {@code keys} in one of the
+     * {@code columns}. Null {@code keys} stand for every row and null {@code columns} for every
+     * column.
+     */
+    boolean affects(@NonNull String table, @Nullable Set<Long> keys,
+                    @Nullable Set<String> columns) {
+      return intersects(this.keys.get(table), keys) && intersects(this.columns.get(table), columns);
+    }
+
+    private static <T> boolean intersects(@Nullable Set<T> changed, @Nullable Set<T> read) {
+      return changed == null || read == null || !Collections.disjoint(changed, read);
+    }
+
+    /**
+     * Adds the changes to {@code addedTables}, with the keys in {@code addedKeys} and the columns
+     * in {@code addedColumns}, to the changes to {@code tables}, with the keys in {@code keys} and
+     * the columns in {@code columns}. A table changed as a whole or in every column by either
+     * stays so.
+     */
+    static void addChanges(@NonNull Set<String> tables, @NonNull Map<String, Set<Long>> keys,
+                           @NonNull Map<String, Set<String>> columns,
+                           @NonNull Set<String> addedTables,
+                           @NonNull Map<String, Set<Long>> addedKeys,
+                           @NonNull Map<String, Set<String>> addedColumns) {
+      for (String table : addedTables) {
+        final boolean added = tables.add(table);
+        addSubset(keys, added, table, addedKeys.get(table));
+        addSubset(columns, added, table, addedColumns.get(table));
+      }
+    }
+
+    private static <T> void addSubset(@NonNull Map<String, Set<T>> subsets, boolean newTable,
+                                      @NonNull String table, @Nullable Set<T> added) {
+      if (newTable) {
+        if (added != null) {
+          subsets.put(table, new HashSet<>(added));
+        }
+      } else {
+        @Nullable final Set<T> existing = subsets.get(table);
+        if (existing != null) {
+          if (added != null) {
+            existing.addAll(added);
+          } else {
+            subsets.remove(table);
+          }
+        }
+      }
     }
 
     @Override
@@ -1192,13 +2840,17 @@ public final class DimDatabase<M> implements Closeable {
       Trigger<?> trigger = (Trigger<?>) o;
 
       if (!markers.equals(trigger.markers)) return false;
-      return tables.equals(trigger.tables);
+      if (!tables.equals(trigger.tables)) return false;
+      if (!keys.equals(trigger.keys)) return false;
+      return columns.equals(trigger.columns);
     }
 
     @Override
     public int hashCode() {
       int result = markers.hashCode();
       result = 31 * result + tables.hashCode();
+      result = 31 * result + keys.hashCode();
+      result = 31 * result + columns.hashCode();
       return result;
     }
 
@@ -1207,6 +2859,8 @@ public final class DimDatabase<M> implements Closeable {
       return "Trigger[" +
               "markers=" + markers +
               ", tables=" + tables +
+              ", keys=" + keys +
+              ", columns=" + columns +
               ']';
     }
   }
@@ -1216,6 +2870,8 @@ public final class DimDatabase<M> implements Closeable {
     @Nullable final SqliteTransaction<M> parent;
     boolean commit;
     @NonNull final HashSet<M> markers = new HashSet<>();
+    @NonNull final HashMap<String, Set<Long>> keys = new HashMap<>();
+    @NonNull final HashMap<String, Set<String>> columns = new HashMap<>();
 
     SqliteTransaction(@Nullable SqliteTransaction<M> parent) {
       this.parent = parent;
@@ -1237,53 +2893,87 @@ public final class DimDatabase<M> implements Closeable {
     }
   }
 
-  final class ToMarkedDatabaseQuery
-          implements Function<Trigger<M>, MarkedQuery<M>>, Predicate<Trigger<M>> {
-    @NonNull private final Iterable<String> tables;
-    @NonNull private final SupportSQLiteQuery query;
+  final class ToMarkedDatabaseQuery implements FusedQueryObservable.Items<M, MarkedQuery<M>> {
+    @NonNull final Iterable<String> tables;
+    // The keys of the rows of the only table in 'tables' which the query reads, or null.
+    @Nullable final Set<Long> keys;
+    // The lower-cased names of the columns which the query reads, or null for every column.
+    @Nullable final Set<String> columns;
+    @NonNull final SupportSQLiteQuery query;
+    @Nullable private final QueryKey cacheKey;
+
+    ToMarkedDatabaseQuery(@NonNull Iterable<String> tables,
+                          @NonNull SupportSQLiteQuery query) {
+      this(tables, null, query);
+    }
 
     ToMarkedDatabaseQuery(@NonNull Iterable<String> tables,
+                          @Nullable Set<Long> keys,
+                          @NonNull SupportSQLiteQuery query) {
+      this(tables, keys, inferColumns(query), query);
+    }
+
+    ToMarkedDatabaseQuery(@NonNull Iterable<String> tables,
+                          @Nullable Set<Long> keys,
+                          @Nullable Set<String> columns,
                           @NonNull SupportSQLiteQuery query) {
       this.tables = tables;
+      this.keys = keys;
+      this.columns = columns;
       this.query = query;
+      this.cacheKey = cacheKey(query, tables);
     }
 
+    /** The query of a new subscriber, which carries no markers. */
     @NonNull MarkedQuery<M> initialMarkedQuery() {
-      return new MarkedDatabaseQuery(Collections.emptySet(), tables, query);
+      return new MarkedDatabaseQuery(Collections.emptySet(), tables, query, cacheKey);
     }
 
-    @NonNull @Override public MarkedQuery<M> apply(@NonNull Trigger<M> trigger) {
-      return new MarkedDatabaseQuery(trigger.markers, tables, query);
+    @NonNull @Override public MarkedQuery<M> of(@NonNull Trigger<M> trigger) {
+      return new MarkedDatabaseQuery(trigger.markers, tables, query, cacheKey);
     }
 
-    @Override public boolean test(@NonNull Trigger<M> trigger) {
-      for (String table : tables) {
-        if (trigger.tables.contains(table)) {
-          return true;
-        }
+    @NonNull @Override
+    public MarkedQuery<M> merge(@NonNull MarkedQuery<M> pending, @NonNull MarkedQuery<M> next) {
+      if (next.markers.isEmpty() || pending.markers.containsAll(next.markers)) {
+        return pending;
       }
-      return false;
+      @NonNull final Set<M> markers = new LinkedHashSet<>(pending.markers);
+      markers.addAll(next.markers);
+      return new MarkedDatabaseQuery(markers, tables, query, cacheKey);
     }
   }
 
   final class MarkedDatabaseQuery extends MarkedQuery<M> {
     @NonNull private final Iterable<String> tables;
     @NonNull private final SupportSQLiteQuery query;
+    @Nullable private final QueryKey cacheKey;
 
     MarkedDatabaseQuery(@NonNull Set<M> markers,
                         @NonNull Iterable<String> tables,
-                        @NonNull SupportSQLiteQuery query) {
+                        @NonNull SupportSQLiteQuery query,
+                        @Nullable QueryKey cacheKey) {
       super(markers);
       this.tables = tables;
       this.query = query;
+      this.cacheKey = cacheKey;
     }
 
     @Nullable @Override public Cursor run() {
+      return execute(null);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Nullable @Override public Cursor run(@NonNull CancellationSignal cancellationSignal) {
+      return execute(cancellationSignal);
+    }
+
+    @Nullable private Cursor execute(@Nullable CancellationSignal signal) {
       if (transactions.get() != null) {
         throw new IllegalStateException("Cannot execute observable query in a transaction.");
       }
 
-      @Nullable final Cursor cursor = getReadableDatabase().query(query);
+      @Nullable final Cursor cursor = runQuery(query, cacheKey, signal);
 
       if (logging) {
         log("QUERY\n  markers: %s\n  tables: %s\n  sql: %s",
@@ -1301,23 +2991,52 @@ public final class DimDatabase<M> implements Closeable {
     }
   }
 
-  final class DatabaseQuery extends Query
-      implements Function<Trigger<M>, Query>, Predicate<Trigger<M>> {
-    @NonNull private final Iterable<String> tables;
-    @NonNull private final SupportSQLiteQuery query;
+  final class DatabaseQuery extends Query {
+    @NonNull final Iterable<String> tables;
+    // The keys of the rows of the only table in 'tables' which the query reads, or null.
+    @Nullable final Set<Long> keys;
+    // The lower-cased names of the columns which the query reads, or null for every column.
+    @Nullable final Set<String> columns;
+    @NonNull final SupportSQLiteQuery query;
+    @Nullable private final QueryKey cacheKey;
+
+    DatabaseQuery(@NonNull Iterable<String> tables,
+                  @NonNull SupportSQLiteQuery query) {
+      this(tables, null, query);
+    }
+
+    DatabaseQuery(@NonNull Iterable<String> tables,
+                  @Nullable Set<Long> keys,
+                  @NonNull SupportSQLiteQuery query) {
+      this(tables, keys, inferColumns(query), query);
+    }
 
     DatabaseQuery(@NonNull Iterable<String> tables,
+                  @Nullable Set<Long> keys,
+                  @Nullable Set<String> columns,
                   @NonNull SupportSQLiteQuery query) {
       this.tables = tables;
+      this.keys = keys;
+      this.columns = columns;
       this.query = query;
+      this.cacheKey = cacheKey(query, tables);
     }
 
     @Nullable @Override public Cursor run() {
+      return execute(null);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Nullable @Override public Cursor run(@NonNull CancellationSignal cancellationSignal) {
+      return execute(cancellationSignal);
+    }
+
+    @Nullable private Cursor execute(@Nullable CancellationSignal signal) {
       if (transactions.get() != null) {
         throw new IllegalStateException("Cannot execute observable query in a transaction.");
       }
 
-      @Nullable final Cursor cursor = getReadableDatabase().query(query);
+      @Nullable final Cursor cursor = runQuery(query, cacheKey, signal);
 
       if (logging) {
         log("QUERY\n  tables: %s\n  sql: %s", tables, indentSql(query.getSql()));
@@ -1329,18 +3048,71 @@ public final class DimDatabase<M> implements Closeable {
     @NonNull @Override public String toString() {
       return query.getSql();
     }
+  }
 
-    @NonNull @Override public Query apply(@NonNull Trigger<M> ignored) {
-      return this;
+  /** A query whose result set was copied once and can be read by any number of subscribers. */
+  static final class SnapshotQuery extends Query {
+    @Nullable private final CursorSnapshot snapshot;
+    @NonNull private final String description;
+
+    SnapshotQuery(@Nullable CursorSnapshot snapshot, @NonNull String description) {
+      this.snapshot = snapshot;
+      this.description = description;
     }
 
-    @Override public boolean test(@NonNull Trigger<M> trigger) {
-      for (String table : tables) {
-        if (trigger.tables.contains(table)) {
-          return true;
-        }
-      }
-      return false;
+    @NonNull static Query snapshotOf(@NonNull Query query) {
+      return new SnapshotQuery(copyResults(query.run()), query.toString());
+    }
+
+    @Nullable @Override public Cursor run() {
+      return snapshot == null ? null : snapshot.newCursor();
+    }
+
+    @NonNull @Override public String toString() {
+      return description;
+    }
+  }
+
+  /** The marked equivalent of {@link SnapshotQuery}. */
+  static final class SnapshotMarkedQuery<M> extends MarkedQuery<M> {
+    @Nullable private final CursorSnapshot snapshot;
+    @NonNull private final String description;
+
+    SnapshotMarkedQuery(@NonNull Set<M> markers, @Nullable CursorSnapshot snapshot,
+                        @NonNull String description) {
+      super(markers);
+      this.snapshot = snapshot;
+      this.description = description;
+    }
+
+    @NonNull static <M> MarkedQuery<M> snapshotOf(@NonNull MarkedQuery<M> query) {
+      return new SnapshotMarkedQuery<>(query.markers, copyResults(query.run()), query.toString());
+    }
+
+    /** This query with an empty set of markers. */
+    @NonNull SnapshotMarkedQuery<M> withoutMarkers() {
+      return markers.isEmpty()
+          ? this
+          : new SnapshotMarkedQuery<>(Collections.<M>emptySet(), snapshot, description);
+    }
+
+    @Nullable @Override public Cursor run() {
+      return snapshot == null ? null : snapshot.newCursor();
+    }
+
+    @NonNull @Override public String toString() {
+      return description;
+    }
+  }
+
+  @Nullable static CursorSnapshot copyResults(@Nullable Cursor cursor) {
+    if (cursor == null) {
+      return null;
+    }
+    try {
+      return CursorSnapshot.copyOf(cursor);
+    } finally {
+      cursor.close();
     }
   }
 }
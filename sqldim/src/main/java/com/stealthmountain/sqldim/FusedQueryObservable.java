@@ -0,0 +1,258 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.DimDatabase.Trigger;
+import com.stealthmountain.sqldim.DimDatabase.TriggerFilter;
+import com.stealthmountain.sqldim.SqlDim.Query;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.functions.Consumer;
+
+/**
+ * An observable query in one operator: it checks the subscription, registers for the triggers of
+ * the query's tables, filters them, and emits on the scheduler, first on subscription and then once
+ * per accepted trigger. The same as triggers mapped to items, started with the initial item,
+ * observed on the scheduler and checked on subscription, without a subscriber, queue or
+ * disposable per stage.
+ * <p>
+ * Without {@link Items}, every item after the initial one is the same, as for a {@link Query}, so
+ * pending items are kept as a count rather than in a queue, and conflating keeps at most one. With
+ * {@link Items}, as for a {@link SqlDim.MarkedQuery} carrying the markers of its trigger, pending
+ * items are queued, and conflating merges them into one.
+ */
+final class FusedQueryObservable<M, T> extends Observable<T> {
+  /** Merges an item into the one pending delivery, so that at most one item is kept pending. */
+  interface Merger<T> {
+    @NonNull T merge(@NonNull T pending, @NonNull T next);
+  }
+
+  /** The items of a query which differ from trigger to trigger. */
+  interface Items<M, T> extends Merger<T> {
+    /** The item emitted for {@code trigger}. */
+    @NonNull T of(@NonNull Trigger<M> trigger);
+  }
+
+  @NonNull private final TriggerDispatcher<M> dispatcher;
+  @NonNull private final Set<String> tables;
+  @Nullable private final TriggerFilter<M> filter;
+  @NonNull private final T initial;
+  @NonNull private final T item;
+  @Nullable private final Items<M, T> items;
+  @NonNull private final Scheduler scheduler;
+  private final boolean conflate;
+  @Nullable private final Consumer<Object> subscribeCheck;
+
+  /**
+   * @param filter The filter of the triggers on {@code tables}, or null to accept them all.
+   * @param initial The item emitted on subscription.
+   * @param item The item emitted for each trigger.
+   * @param subscribeCheck Run on subscription, failing it if it throws.
+   */
+  FusedQueryObservable(@NonNull TriggerDispatcher<M> dispatcher, @NonNull Set<String> tables,
+                       @Nullable TriggerFilter<M> filter, @NonNull T initial, @NonNull T item,
+                       @NonNull Scheduler scheduler, boolean conflate,
+                       @Nullable Consumer<Object> subscribeCheck) {
+    this(dispatcher, tables, filter, initial, item, null, scheduler, conflate, subscribeCheck);
+  }
+
+  /**
+   * @param filter The filter of the triggers on {@code tables}, or null to accept them all.
+   * @param initial The item emitted on subscription.
+   * @param items The items emitted for triggers.
+   * @param subscribeCheck Run on subscription, failing it if it throws.
+   */
+  FusedQueryObservable(@NonNull TriggerDispatcher<M> dispatcher, @NonNull Set<String> tables,
+                       @Nullable TriggerFilter<M> filter, @NonNull T initial,
+                       @NonNull Items<M, T> items, @NonNull Scheduler scheduler,
+                       boolean conflate, @Nullable Consumer<Object> subscribeCheck) {
+    this(dispatcher, tables, filter, initial, initial, items, scheduler, conflate,
+        subscribeCheck);
+  }
+
+  private FusedQueryObservable(@NonNull TriggerDispatcher<M> dispatcher,
+                               @NonNull Set<String> tables, @Nullable TriggerFilter<M> filter,
+                               @NonNull T initial, @NonNull T item, @Nullable Items<M, T> items,
+                               @NonNull Scheduler scheduler, boolean conflate,
+                               @Nullable Consumer<Object> subscribeCheck) {
+    this.dispatcher = dispatcher;
+    this.tables = tables;
+    this.filter = filter;
+    this.initial = initial;
+    this.item = item;
+    this.items = items;
+    this.scheduler = scheduler;
+    this.conflate = conflate;
+    this.subscribeCheck = subscribeCheck;
+  }
+
+  @Override protected void subscribeActual(@NonNull Observer<? super T> observer) {
+    if (subscribeCheck != null) {
+      try {
+        subscribeCheck.accept(observer);
+      } catch (Throwable e) {
+        Exceptions.throwIfFatal(e);
+        observer.onSubscribe(Disposable.disposed());
+        observer.onError(e);
+        return;
+      }
+    }
+    @NonNull final QueryObserver<M, T> queryObserver =
+        new QueryObserver<>(observer, scheduler.createWorker(), filter, initial, item, items,
+            conflate);
+    observer.onSubscribe(queryObserver);
+    queryObserver.start(dispatcher, tables);
+  }
+
+  static final class QueryObserver<M, T>
+      implements TriggerDispatcher.Listener<M>, Disposable, Runnable {
+    @NonNull private final Observer<? super T> downstream;
+    @NonNull private final Scheduler.Worker worker;
+    @Nullable private final TriggerFilter<M> filter;
+    @NonNull private final T initial;
+    @NonNull private final T item;
+    @Nullable private final Items<M, T> items;
+    private final boolean conflate;
+    // Without items, the number of items still to be emitted, the first of which is the initial.
+    @NonNull private final AtomicInteger pending = new AtomicInteger();
+    // Without items, whether the initial item was emitted. Only accessed by 'run'.
+    private boolean initialEmitted;
+    // With items, the merged item still to be emitted when conflating.
+    @NonNull private final AtomicReference<T> latest = new AtomicReference<>();
+    // With items, the items still to be emitted in order when not conflating.
+    @Nullable private final Queue<T> queue;
+    @NonNull private final AtomicInteger wip = new AtomicInteger();
+    @Nullable private TriggerDispatcher<M> dispatcher;
+    @Nullable private Set<String> tables;
+    private volatile boolean disposed;
+
+    QueryObserver(@NonNull Observer<? super T> downstream, @NonNull Scheduler.Worker worker,
+                  @Nullable TriggerFilter<M> filter, @NonNull T initial, @NonNull T item,
+                  @Nullable Items<M, T> items, boolean conflate) {
+      this.downstream = downstream;
+      this.worker = worker;
+      this.filter = filter;
+      this.initial = initial;
+      this.item = item;
+      this.items = items;
+      this.conflate = conflate;
+      this.queue = items != null && !conflate ? new ConcurrentLinkedQueue<T>() : null;
+    }
+
+    void start(@NonNull TriggerDispatcher<M> dispatcher, @NonNull Set<String> tables) {
+      offer(initial);
+      synchronized (this) {
+        if (disposed) {
+          return;
+        }
+        this.dispatcher = dispatcher;
+        this.tables = tables;
+        dispatcher.register(tables, this, filter != null);
+      }
+      schedule();
+    }
+
+    @Override public void onTrigger(@NonNull Trigger<M> trigger) {
+      if (filter == null || filter.accepts(trigger)) {
+        offer(items != null ? items.of(trigger) : item);
+        schedule();
+      }
+    }
+
+    private void offer(@NonNull T offered) {
+      if (items == null) {
+        pending.incrementAndGet();
+      } else if (queue != null) {
+        queue.offer(offered);
+      } else {
+        for (;;) {
+          @Nullable final T current = latest.get();
+          @NonNull final T next = current == null ? offered : items.merge(current, offered);
+          if (latest.compareAndSet(current, next)) {
+            break;
+          }
+        }
+      }
+    }
+
+    private void schedule() {
+      if (wip.getAndIncrement() == 0) {
+        worker.schedule(this);
+      }
+    }
+
+    @Override public void run() {
+      int missed = 1;
+      for (;;) {
+        if (items == null) {
+          int count = pending.getAndSet(0);
+          if (conflate && count > 1) {
+            count = 1;
+          }
+          for (int i = 0; i < count; i++) {
+            if (disposed) {
+              return;
+            }
+            if (initialEmitted) {
+              downstream.onNext(item);
+            } else {
+              initialEmitted = true;
+              downstream.onNext(initial);
+            }
+          }
+        } else if (queue != null) {
+          for (;;) {
+            @Nullable final T next = queue.poll();
+            if (next == null) {
+              break;
+            }
+            if (disposed) {
+              return;
+            }
+            downstream.onNext(next);
+          }
+        } else {
+          @Nullable final T next = latest.getAndSet(null);
+          if (next != null) {
+            if (disposed) {
+              return;
+            }
+            downstream.onNext(next);
+          }
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) {
+          return;
+        }
+      }
+    }
+
+    @Override public void dispose() {
+      if (disposed) {
+        return;
+      }
+      synchronized (this) {
+        disposed = true;
+        if (dispatcher != null && tables != null) {
+          dispatcher.unregister(tables, this);
+        }
+      }
+      worker.dispose();
+    }
+
+    @Override public boolean isDisposed() {
+      return disposed;
+    }
+  }
+}
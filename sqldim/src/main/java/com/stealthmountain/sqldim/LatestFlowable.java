@@ -0,0 +1,232 @@
+package com.stealthmountain.sqldim;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.CancellationSignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.FusedQueryObservable.Merger;
+import com.stealthmountain.sqldim.SqlDim.MarkedQuery;
+import com.stealthmountain.sqldim.SqlDim.Query;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+
+/**
+ * A {@link Flowable} of the items of an observable query which keeps at most one pending item per
+ * subscriber. An item arriving before the subscriber requested it is {@linkplain Merger#merge
+ * merged} into the pending one, so a slow subscriber receives the latest query when it is ready
+ * rather than every query in between.
+ * <p>
+ * Items the subscriber has requested are passed on from the thread emitting them, which is the
+ * query scheduler. A pending item is delivered on a worker of the query scheduler when it is
+ * requested, so queries are never run on the requesting thread.
+ */
+final class LatestFlowable<T> extends Flowable<T> {
+  @NonNull private static final Merger<Query> LATEST_QUERY = new Merger<Query>() {
+    @NonNull @Override public Query merge(@NonNull Query pending, @NonNull Query next) {
+      return next;
+    }
+  };
+
+  /** Keeps the latest query, as re-running it covers every query before it. */
+  @NonNull static Merger<Query> latestQuery() {
+    return LATEST_QUERY;
+  }
+
+  /** Keeps the latest marked query, with the markers of every query before it. */
+  @NonNull static <M> Merger<MarkedQuery<M>> latestMarkedQuery() {
+    return new Merger<MarkedQuery<M>>() {
+      @NonNull @Override
+      public MarkedQuery<M> merge(@NonNull MarkedQuery<M> pending, @NonNull MarkedQuery<M> next) {
+        if (next.markers.containsAll(pending.markers)) {
+          return next;
+        }
+        @NonNull final Set<M> markers = new LinkedHashSet<>(pending.markers);
+        markers.addAll(next.markers);
+        return new MergedMarkedQuery<>(markers, next);
+      }
+    };
+  }
+
+  @NonNull private final Observable<T> source;
+  @NonNull private final Scheduler scheduler;
+  @NonNull private final Merger<T> merger;
+
+  LatestFlowable(@NonNull Observable<T> source, @NonNull Scheduler scheduler,
+                 @NonNull Merger<T> merger) {
+    this.source = source;
+    this.scheduler = scheduler;
+    this.merger = merger;
+  }
+
+  @Override protected void subscribeActual(@NonNull Subscriber<? super T> subscriber) {
+    source.subscribe(new LatestObserver<>(subscriber, scheduler.createWorker(), merger));
+  }
+
+  static final class LatestObserver<T> implements Observer<T>, Subscription, Runnable {
+    @NonNull private final Subscriber<? super T> downstream;
+    @NonNull private final Scheduler.Worker worker;
+    @NonNull private final Merger<T> merger;
+    @NonNull private final AtomicReference<T> pending = new AtomicReference<>();
+    @NonNull private final AtomicLong requested = new AtomicLong();
+    @NonNull private final AtomicInteger wip = new AtomicInteger();
+    // Set before the subscription reaches downstream, which may cancel it from any thread.
+    @Nullable private volatile Disposable upstream;
+    @Nullable private Throwable error;
+    private volatile boolean done;
+    private volatile boolean cancelled;
+
+    LatestObserver(@NonNull Subscriber<? super T> downstream, @NonNull Scheduler.Worker worker,
+                   @NonNull Merger<T> merger) {
+      this.downstream = downstream;
+      this.worker = worker;
+      this.merger = merger;
+    }
+
+    @Override public void onSubscribe(@NonNull Disposable d) {
+      upstream = d;
+      downstream.onSubscribe(this);
+    }
+
+    @Override public void onNext(@NonNull T t) {
+      for (;;) {
+        @Nullable final T current = pending.get();
+        @NonNull final T next = current == null ? t : merger.merge(current, t);
+        if (pending.compareAndSet(current, next)) {
+          break;
+        }
+      }
+      if (wip.getAndIncrement() == 0) {
+        run(); // Already on the query scheduler.
+      }
+    }
+
+    @Override public void onError(@NonNull Throwable e) {
+      error = e;
+      done = true;
+      if (wip.getAndIncrement() == 0) {
+        run();
+      }
+    }
+
+    @Override public void onComplete() {
+      done = true;
+      if (wip.getAndIncrement() == 0) {
+        run();
+      }
+    }
+
+    @Override public void request(long n) {
+      if (n <= 0) {
+        @Nullable final Disposable upstream = this.upstream;
+        if (upstream != null) {
+          upstream.dispose();
+        }
+        onError(new IllegalArgumentException("n > 0 required but it was " + n));
+        return;
+      }
+      for (;;) {
+        final long current = requested.get();
+        final long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        if (requested.compareAndSet(current, next)) {
+          break;
+        }
+      }
+      if (wip.getAndIncrement() == 0) {
+        worker.schedule(this);
+      }
+    }
+
+    @Override public void run() {
+      int missed = 1;
+      for (;;) {
+        if (cancelled) {
+          pending.set(null);
+          return;
+        }
+        final boolean done = this.done;
+        @Nullable final Throwable error = this.error;
+        if (done && error != null) {
+          pending.set(null);
+          cancelled = true;
+          downstream.onError(error);
+          worker.dispose();
+          return;
+        }
+        if (requested.get() != 0) {
+          @Nullable final T next = pending.getAndSet(null);
+          if (next != null) {
+            if (requested.get() != Long.MAX_VALUE) {
+              requested.decrementAndGet();
+            }
+            downstream.onNext(next);
+            continue;
+          }
+        }
+        if (done && pending.get() == null) {
+          cancelled = true;
+          downstream.onComplete();
+          worker.dispose();
+          return;
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0) {
+          return;
+        }
+      }
+    }
+
+    @Override public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        @Nullable final Disposable upstream = this.upstream;
+        if (upstream != null) {
+          upstream.dispose();
+        }
+        worker.dispose();
+        if (wip.getAndIncrement() == 0) {
+          pending.set(null);
+        }
+      }
+    }
+  }
+
+  /** A marked query run as another, with the markers of the queries merged into it. */
+  static final class MergedMarkedQuery<M> extends MarkedQuery<M> {
+    @NonNull private final MarkedQuery<M> query;
+
+    MergedMarkedQuery(@NonNull Set<M> markers, @NonNull MarkedQuery<M> query) {
+      super(markers);
+      this.query = query;
+    }
+
+    @Nullable @Override public Cursor run() {
+      return query.run();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Nullable @Override public Cursor run(@NonNull CancellationSignal cancellationSignal) {
+      return query.run(cancellationSignal);
+    }
+
+    @NonNull @Override public String toString() {
+      return query.toString();
+    }
+  }
+}
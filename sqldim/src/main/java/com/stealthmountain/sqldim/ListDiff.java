@@ -0,0 +1,288 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A list emitted by {@link QueryObservable#mapToListDiff} together with the changes which turn
+ * the previously emitted list into it. The first list is described as one insertion.
+ * <p>
+ * Rows are matched between the two lists by their id, and a matched row whose item is not
+ * {@linkplain Object#equals equal} to its previous item is reported as changed. The changes are
+ * meant to be applied in order, each position referring to the list as left by the change before
+ * it, which is how {@code RecyclerView.Adapter} expects its notifications:
+ * <pre>{@code
+ * diff.dispatchUpdatesTo(new ListDiff.Callback() {
+ *   @Override public void onInserted(int position, int count) {
+ *     adapter.notifyItemRangeInserted(position, count);
+ *   }
+ *   // ...
+ * });
+ * }</pre>
+ */
+public final class ListDiff<T> {
+  /** Receives the changes of a {@link ListDiff}, in order. */
+  public interface Callback {
+    void onInserted(int position, int count);
+
+    void onRemoved(int position, int count);
+
+    void onMoved(int fromPosition, int toPosition);
+
+    void onChanged(int position, int count);
+  }
+
+  private static final int INSERT = 0;
+  private static final int REMOVE = 1;
+  private static final int MOVE = 2;
+  private static final int CHANGE = 3;
+
+  /** The new list, which is unmodifiable as the next diff is calculated from it. */
+  @NonNull public final List<T> list;
+  // Triples of operation, position or from position, and count or to position.
+  @NonNull private final int[] operations;
+
+  private ListDiff(@NonNull List<T> list, @NonNull int[] operations) {
+    this.list = list;
+    this.operations = operations;
+  }
+
+  /** True when the new list has the same rows, in the same order, with equal items. */
+  public boolean isEmpty() {
+    return operations.length == 0;
+  }
+
+  /** Replays the changes, in order, to {@code callback}. */
+  public void dispatchUpdatesTo(@NonNull Callback callback) {
+    for (int i = 0; i < operations.length; i += 3) {
+      final int a = operations[i + 1];
+      final int b = operations[i + 2];
+      switch (operations[i]) {
+        case INSERT:
+          callback.onInserted(a, b);
+          break;
+        case REMOVE:
+          callback.onRemoved(a, b);
+          break;
+        case MOVE:
+          callback.onMoved(a, b);
+          break;
+        default:
+          callback.onChanged(a, b);
+          break;
+      }
+    }
+  }
+
+  @NonNull @Override public String toString() {
+    @NonNull final StringBuilder builder = new StringBuilder("ListDiff[size=").append(list.size());
+    dispatchUpdatesTo(new Callback() {
+      @Override public void onInserted(int position, int count) {
+        builder.append(", insert ").append(position).append('+').append(count);
+      }
+
+      @Override public void onRemoved(int position, int count) {
+        builder.append(", remove ").append(position).append('+').append(count);
+      }
+
+      @Override public void onMoved(int fromPosition, int toPosition) {
+        builder.append(", move ").append(fromPosition).append("->").append(toPosition);
+      }
+
+      @Override public void onChanged(int position, int count) {
+        builder.append(", change ").append(position).append('+').append(count);
+      }
+    });
+    return builder.append(']').toString();
+  }
+
+  /**
+   * Computes the changes from {@code oldList} to {@code newList}, whose rows have the ids at the
+   * same index of {@code oldIds} and {@code newIds}. Ids must be unique within each list.
+   * <p>
+   * Rows which are unchanged at the start and the end of both lists are skipped in linear time,
+   * so appending, removing or updating a run of rows costs time linear in the size of the lists.
+   * Rows moved within the remaining region are found with a longest increasing subsequence,
+   * keeping the number of moves minimal.
+   */
+  @NonNull static <T> ListDiff<T> calculate(@NonNull List<T> oldList, @NonNull List<?> oldIds,
+                                            @NonNull List<T> newList, @NonNull List<?> newIds) {
+    @NonNull final Operations operations = new Operations();
+    final int oldSize = oldIds.size();
+    final int newSize = newIds.size();
+
+    int start = 0;
+    while (start < oldSize && start < newSize && oldIds.get(start).equals(newIds.get(start))) {
+      start++;
+    }
+    int oldEnd = oldSize;
+    int newEnd = newSize;
+    while (oldEnd > start && newEnd > start
+        && oldIds.get(oldEnd - 1).equals(newIds.get(newEnd - 1))) {
+      oldEnd--;
+      newEnd--;
+    }
+
+    if (start == oldEnd) {
+      if (start < newEnd) {
+        operations.add(INSERT, start, newEnd - start);
+      }
+    } else if (start == newEnd) {
+      operations.add(REMOVE, start, oldEnd - start);
+    } else {
+      diffMiddle(operations, oldIds.subList(start, oldEnd), newIds.subList(start, newEnd), start);
+    }
+
+    // Every structural change is done, so report changed items at their final positions.
+    @Nullable Map<Object, Integer> oldIndexById = null;
+    for (int i = 0; i < newSize; i++) {
+      final int oldIndex;
+      if (i < start) {
+        oldIndex = i;
+      } else if (i >= newEnd) {
+        oldIndex = i - newEnd + oldEnd;
+      } else {
+        if (oldIndexById == null) {
+          oldIndexById = indexById(oldIds, start, oldEnd);
+        }
+        @Nullable final Integer index = oldIndexById.get(newIds.get(i));
+        if (index == null) {
+          continue;
+        }
+        oldIndex = index;
+      }
+      if (!oldList.get(oldIndex).equals(newList.get(i))) {
+        operations.add(CHANGE, i, 1);
+      }
+    }
+
+    return new ListDiff<>(Collections.unmodifiableList(newList), operations.toArray());
+  }
+
+  private static void diffMiddle(@NonNull Operations operations, @NonNull List<?> oldIds,
+                                 @NonNull List<?> newIds, int offset) {
+    @NonNull final Map<Object, Integer> newIndexById = indexById(newIds, 0, newIds.size());
+
+    // Removals first, leaving the kept rows in their old order.
+    @NonNull final List<Object> working = new ArrayList<>(oldIds.size());
+    for (Object id : oldIds) {
+      if (newIndexById.containsKey(id)) {
+        working.add(id);
+      } else {
+        operations.add(REMOVE, offset + working.size(), 1);
+      }
+    }
+
+    // Rows whose new indices form a longest increasing subsequence stay, every other kept row
+    // moves.
+    @NonNull final int[] newIndices = new int[working.size()];
+    for (int i = 0; i < newIndices.length; i++) {
+      newIndices[i] = newIndexById.get(working.get(i));
+    }
+    @NonNull final Set<Object> stay = new HashSet<>();
+    for (int index : longestIncreasingSubsequence(newIndices)) {
+      stay.add(newIds.get(index));
+    }
+    @NonNull final Set<Object> kept = new HashSet<>(working);
+
+    // Place every moved or inserted row directly after its predecessor in the new list. Once
+    // placed, nothing is ever put between a row and its predecessor again, and the rows which
+    // stay are already in order, so the final order is the new order.
+    for (int j = 0; j < newIds.size(); j++) {
+      @NonNull final Object id = newIds.get(j);
+      if (stay.contains(id)) {
+        continue;
+      }
+      if (kept.contains(id)) {
+        final int from = working.indexOf(id);
+        working.remove(from);
+        final int to = j == 0 ? 0 : working.indexOf(newIds.get(j - 1)) + 1;
+        working.add(to, id);
+        if (from != to) {
+          operations.add(MOVE, offset + from, offset + to);
+        }
+      } else {
+        final int to = j == 0 ? 0 : working.indexOf(newIds.get(j - 1)) + 1;
+        working.add(to, id);
+        operations.add(INSERT, offset + to, 1);
+      }
+    }
+  }
+
+  @NonNull private static Map<Object, Integer> indexById(@NonNull List<?> ids, int from, int to) {
+    @NonNull final Map<Object, Integer> indexById = new HashMap<>((to - from) * 4 / 3 + 1);
+    for (int i = from; i < to; i++) {
+      if (indexById.put(ids.get(i), i) != null) {
+        throw new IllegalArgumentException("Duplicate id: " + ids.get(i));
+      }
+    }
+    return indexById;
+  }
+
+  /** Returns the values of a longest strictly increasing subsequence of {@code values}. */
+  @NonNull static int[] longestIncreasingSubsequence(@NonNull int[] values) {
+    // tails[k] is the index of the smallest value ending an increasing subsequence of length k+1.
+    @NonNull final int[] tails = new int[values.length];
+    @NonNull final int[] previous = new int[values.length];
+    int length = 0;
+    for (int i = 0; i < values.length; i++) {
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (values[tails[mid]] < values[i]) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = i;
+      if (low == length) {
+        length++;
+      }
+    }
+    @NonNull final int[] result = new int[length];
+    for (int i = length - 1, k = length > 0 ? tails[length - 1] : -1; i >= 0; i--, k = previous[k]) {
+      result[i] = values[k];
+    }
+    return result;
+  }
+
+  /** A growable array of operations which merges adjacent ranges of the same kind. */
+  private static final class Operations {
+    @NonNull private int[] operations = new int[3 * 4];
+    private int size;
+
+    void add(int operation, int a, int b) {
+      if (size > 0 && operations[size - 3] == operation) {
+        final int lastPosition = operations[size - 2];
+        final int lastCount = operations[size - 1];
+        if ((operation == INSERT || operation == CHANGE) && a == lastPosition + lastCount
+            || operation == REMOVE && a == lastPosition) {
+          operations[size - 1] = lastCount + b;
+          return;
+        }
+      }
+      if (size == operations.length) {
+        operations = Arrays.copyOf(operations, size * 2);
+      }
+      operations[size++] = operation;
+      operations[size++] = a;
+      operations[size++] = b;
+    }
+
+    @NonNull int[] toArray() {
+      return Arrays.copyOf(operations, size);
+    }
+  }
+}
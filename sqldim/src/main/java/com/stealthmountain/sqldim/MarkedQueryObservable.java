@@ -42,6 +42,32 @@ public final class MarkedQueryObservable<M> extends Observable<MarkedQuery<M>> {
     upstream.subscribe(observer);
   }
 
+  /**
+   * Run each emitted {@link MarkedQuery} and only pass it on when its result set differs from the
+   * previous one, so mapping operators downstream don't map and emit identical results.
+   * <p>
+   * Each result set is read once, copying it into memory and computing a checksum of its values
+   * in the same pass. A result set which differs is passed on as a query over that copy, so it is
+   * not run again. The markers of a suppressed query are merged into those of the next query passed
+   * on.
+   *
+   * @see #skipUnchanged(UnchangedResultCounter)
+   */
+  @CheckResult @NonNull
+  public final MarkedQueryObservable<M> skipUnchanged() {
+    return new MarkedQueryObservable<>(lift(new MarkedQuerySkipUnchangedOperator<M>(null)));
+  }
+
+  /**
+   * Like {@link #skipUnchanged()}, counting checked and suppressed results in {@code counter}.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API contract.
+  @CheckResult @NonNull
+  public final MarkedQueryObservable<M> skipUnchanged(@NonNull UnchangedResultCounter counter) {
+    if (counter == null) throw new NullPointerException("counter == null");
+    return new MarkedQueryObservable<>(lift(new MarkedQuerySkipUnchangedOperator<M>(counter)));
+  }
+
   /**
    * Given a function mapping the current row of a {@link Cursor} and the marker to {@code T}, transform each
    * emitted {@link MarkedQuery} which returns a single row to {@code T}.
@@ -170,4 +196,87 @@ public final class MarkedQueryObservable<M> extends Observable<MarkedQuery<M>> {
           @NonNull BiFunction<Cursor, Set<M>, T> mapper, NewList<L, T> newList) {
     return lift(MarkedQuery.mapToSpecificList(mapper, newList));
   }
+
+  /**
+   * Given a function mapping the current row of a {@link Cursor} and the marker to {@code T}, transform each
+   * emitted {@link MarkedQuery} to a {@link ListDiff} holding the {@code List<T>} and its changes
+   * from the previously emitted list.
+   * <p>
+   * Rows are matched with the previous list by {@code id}. Computing the changes happens on the
+   * thread the query runs on, so the consumer only has to apply them.
+   * <p>
+   * This method is a convenience operator for:
+   * <pre>{@code
+   * lift(MarkedQuery.mapToListDiff(mapper, id))
+   * }</pre>
+   *
+   * @param mapper Maps the current {@link Cursor} row and the marker to {@code T}. May not return null.
+   * @param id Returns a stable id, unique within the result, for a {@code T}. May not return null.
+   */
+  @CheckResult @NonNull
+  public final <T, K> Observable<MarkedValue<M, ListDiff<T>>> mapToListDiff(
+          @NonNull BiFunction<Cursor, Set<M>, T> mapper, @NonNull Function<T, K> id) {
+    return lift(MarkedQuery.mapToListDiff(mapper, id));
+  }
+
+  /**
+   * Like {@link #mapToOne(BiFunction)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor, which doesn't see the markers.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<MarkedValue<M, T>> mapToOne(
+          @NonNull RowMapperFactory<T> mapperFactory) {
+    return lift(MarkedQuery.<M, T>mapToOne(mapperFactory));
+  }
+
+  /**
+   * Like {@link #mapToOneOrDefault(BiFunction, Object)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor, which doesn't see the markers.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<MarkedValue<M, T>> mapToOneOrDefault(
+          @NonNull RowMapperFactory<T> mapperFactory, @NonNull T defaultValue) {
+    return lift(MarkedQuery.<M, T>mapToOneOrDefault(mapperFactory, defaultValue));
+  }
+
+  /**
+   * Like {@link #mapToOptional(BiFunction)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor, which doesn't see the markers.
+   */
+  @RequiresApi(Build.VERSION_CODES.N)
+  @CheckResult @NonNull
+  public final <T> Observable<MarkedValue<M, Optional<T>>> mapToOptional(
+          @NonNull RowMapperFactory<T> mapperFactory) {
+    return lift(MarkedQuery.<M, T>mapToOptional(mapperFactory));
+  }
+
+  /**
+   * Like {@link #mapToList(BiFunction)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor, which doesn't see the markers.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<MarkedValue<M, List<T>>> mapToList(
+          @NonNull RowMapperFactory<T> mapperFactory) {
+    return lift(MarkedQuery.<M, T>mapToList(mapperFactory));
+  }
+
+  /**
+   * Like {@link #mapToSpecificList(BiFunction, NewList)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor, which doesn't see the markers.
+   */
+  @CheckResult @NonNull
+  public final <L extends List<T>, T> Observable<MarkedValue<M, L>> mapToSpecificList(
+          @NonNull RowMapperFactory<T> mapperFactory, @NonNull NewList<L, T> newList) {
+    return lift(MarkedQuery.<M, L, T>mapToSpecificList(mapperFactory, newList));
+  }
+
+  /**
+   * Like {@link #mapToListDiff(BiFunction, Function)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor, which doesn't see the markers.
+   */
+  @CheckResult @NonNull
+  public final <T, K> Observable<MarkedValue<M, ListDiff<T>>> mapToListDiff(
+          @NonNull RowMapperFactory<T> mapperFactory, @NonNull Function<T, K> id) {
+    return lift(MarkedQuery.<M, T, K>mapToListDiff(mapperFactory, id));
+  }
 }
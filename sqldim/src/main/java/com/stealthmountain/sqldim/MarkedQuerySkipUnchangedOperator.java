@@ -0,0 +1,114 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.DimDatabase.SnapshotMarkedQuery;
+import com.stealthmountain.sqldim.SqlDim.MarkedQuery;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import io.reactivex.rxjava3.core.ObservableOperator;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+
+final class MarkedQuerySkipUnchangedOperator<M> implements ObservableOperator<MarkedQuery<M>, MarkedQuery<M>> {
+  @Nullable private final UnchangedResultCounter counter;
+
+  MarkedQuerySkipUnchangedOperator(@Nullable UnchangedResultCounter counter) {
+    this.counter = counter;
+  }
+
+  @NonNull @Override
+  public Observer<? super MarkedQuery<M>> apply(@NonNull Observer<? super MarkedQuery<M>> observer) {
+    return new SkipUnchangedObserver<>(observer, counter);
+  }
+
+  static final class SkipUnchangedObserver<M> extends CancellableQueryObserver<MarkedQuery<M>> {
+    @NonNull private final Observer<? super MarkedQuery<M>> downstream;
+    @Nullable private final UnchangedResultCounter counter;
+    private boolean hasChecksum;
+    private long checksum;
+    // The markers of the queries suppressed since the last one passed on, if any.
+    @Nullable private Set<M> suppressedMarkers;
+
+    SkipUnchangedObserver(@NonNull Observer<? super MarkedQuery<M>> downstream,
+                          @Nullable UnchangedResultCounter counter) {
+      this.downstream = downstream;
+      this.counter = counter;
+    }
+
+    @Override protected void onStart() {
+      downstream.onSubscribe(this);
+    }
+
+    @Override public void onNext(@NonNull MarkedQuery<M> query) {
+      try {
+        @Nullable final Cursor cursor = run(query);
+        if (isDisposed()) {
+          if (cursor != null) {
+            cursor.close();
+          }
+          return;
+        }
+        @Nullable final CursorSnapshot snapshot;
+        if (cursor == null) {
+          hasChecksum = false;
+          snapshot = null;
+        } else {
+          try {
+            // Hand downstream the rows we read for the checksum instead of running the query again.
+            snapshot = CursorSnapshot.copyOf(cursor);
+          } finally {
+            cursor.close();
+          }
+          final boolean unchanged = hasChecksum && snapshot.checksum() == checksum;
+          if (counter != null) {
+            counter.onChecked(unchanged);
+          }
+          if (unchanged) {
+            if (!query.markers.isEmpty()) {
+              if (suppressedMarkers == null) {
+                suppressedMarkers = new LinkedHashSet<>();
+              }
+              suppressedMarkers.addAll(query.markers);
+            }
+            return;
+          }
+          hasChecksum = true;
+          checksum = snapshot.checksum();
+        }
+        @NonNull Set<M> markers = query.markers;
+        if (suppressedMarkers != null) {
+          suppressedMarkers.addAll(markers);
+          markers = suppressedMarkers;
+          suppressedMarkers = null;
+        }
+        downstream.onNext(new SnapshotMarkedQuery<>(markers, snapshot, query.toString()));
+      } catch (Throwable e) {
+        Exceptions.throwIfFatal(e);
+        if (!isCancellation(e)) {
+          onError(e);
+        }
+      }
+    }
+
+    @Override public void onComplete() {
+      if (!isDisposed()) {
+        downstream.onComplete();
+      }
+    }
+
+    @Override public void onError(@NonNull Throwable e) {
+      if (isDisposed()) {
+        RxJavaPlugins.onError(e);
+      } else {
+        downstream.onError(e);
+      }
+    }
+  }
+}
@@ -26,36 +26,38 @@ import java.util.Set;
 import io.reactivex.rxjava3.core.ObservableOperator;
 import io.reactivex.rxjava3.core.Observer;
 import io.reactivex.rxjava3.exceptions.Exceptions;
-import io.reactivex.rxjava3.functions.BiFunction;
-import io.reactivex.rxjava3.observers.DisposableObserver;
+import io.reactivex.rxjava3.functions.Function;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 
 import static com.stealthmountain.sqldim.SqlDim.MarkedQuery;
 import static com.stealthmountain.sqldim.SqlDim.MarkedQuery.MarkedValue;
 
 final class MarkedQueryToListOperator<M, L extends List<T>, T> implements ObservableOperator<MarkedValue<M, L>, MarkedQuery<M>> {
-  @NonNull private final BiFunction<Cursor, Set<M>, T> mapper;
+  @NonNull private final RowMapperFactory.Marked<M, T> mapperFactory;
   @NonNull private final NewList<L, T> newList;
 
-  MarkedQueryToListOperator(@NonNull BiFunction<Cursor, Set<M>, T> mapper, @NonNull NewList<L, T> newList) {
-    this.mapper = mapper;
+  MarkedQueryToListOperator(@NonNull RowMapperFactory.Marked<M, T> mapperFactory,
+                            @NonNull NewList<L, T> newList) {
+    this.mapperFactory = mapperFactory;
     this.newList = newList;
   }
 
   @NonNull @Override
   public Observer<? super MarkedQuery<M>> apply(@NonNull Observer<? super MarkedValue<M, L>> observer) {
-    return new MappingObserver<>(observer, mapper, newList);
+    return new MappingObserver<>(observer, mapperFactory, newList);
   }
 
-  static final class MappingObserver<M, L extends List<T>, T> extends DisposableObserver<MarkedQuery<M>> {
+  static final class MappingObserver<M, L extends List<T>, T>
+      extends CancellableQueryObserver<MarkedQuery<M>> {
     @NonNull private final Observer<? super MarkedValue<M, L>> downstream;
-    @NonNull private final BiFunction<Cursor, Set<M>, T> mapper;
+    @NonNull private final RowMapperFactory.Marked<M, T> mapperFactory;
     @NonNull private final NewList<L, T> newList;
 
     MappingObserver(@NonNull Observer<? super MarkedValue<M, L>> downstream,
-                    @NonNull BiFunction<Cursor, Set<M>, T> mapper, @NonNull NewList<L, T> newList) {
+                    @NonNull RowMapperFactory.Marked<M, T> mapperFactory,
+                    @NonNull NewList<L, T> newList) {
       this.downstream = downstream;
-      this.mapper = mapper;
+      this.mapperFactory = mapperFactory;
       this.newList = newList;
     }
 
@@ -66,15 +68,19 @@ final class MarkedQueryToListOperator<M, L extends List<T>, T> implements Observ
     @Override public void onNext(@NonNull MarkedQuery<M> markedQuery) {
       try {
         @Nullable T item;
-        @Nullable final Cursor cursor = markedQuery.run();
-        if (cursor == null || isDisposed()) {
+        @Nullable final Cursor cursor = run(markedQuery);
+        if (cursor == null) {
           return;
         }
         @NonNull final L items = newList.newList(cursor.getCount());
         @NonNull final Set<M> markers = markedQuery.markers;
         try {
+          @NonNull final Function<Cursor, T> mapper = mapperFactory.create(cursor, markers);
           while (cursor.moveToNext()) {
-            item = mapper.apply(cursor, markers);
+            if (isDisposed()) {
+              return; // Stop mapping the rows of an abandoned query.
+            }
+            item = mapper.apply(cursor);
             // even though the type system should make this impossible,
             // Java doesn't always check nullability annotations,
             // so leave this in just in case our clients don't follow the rules.
@@ -92,7 +98,9 @@ final class MarkedQueryToListOperator<M, L extends List<T>, T> implements Observ
         }
       } catch (Throwable e) {
         Exceptions.throwIfFatal(e);
-        onError(e);
+        if (!isCancellation(e)) {
+          onError(e);
+        }
       }
     }
 
@@ -25,37 +25,37 @@ import java.util.Set;
 import io.reactivex.rxjava3.core.ObservableOperator;
 import io.reactivex.rxjava3.core.Observer;
 import io.reactivex.rxjava3.exceptions.Exceptions;
-import io.reactivex.rxjava3.functions.BiFunction;
-import io.reactivex.rxjava3.observers.DisposableObserver;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 
 import static com.stealthmountain.sqldim.SqlDim.MarkedQuery;
 import static com.stealthmountain.sqldim.SqlDim.MarkedQuery.MarkedValue;
 
 final class MarkedQueryToOneOperator<M, T> implements ObservableOperator<MarkedValue<M, T>, MarkedQuery<M>> {
-  @NonNull private final BiFunction<Cursor, Set<M>, T> mapper;
+  @NonNull private final RowMapperFactory.Marked<M, T> mapperFactory;
   @Nullable private final T defaultValue;
 
   /** A null {@code defaultValue} means nothing will be emitted when empty. */
-  MarkedQueryToOneOperator(@NonNull BiFunction<Cursor, Set<M>, T> mapper, @Nullable T defaultValue) {
-    this.mapper = mapper;
+  MarkedQueryToOneOperator(@NonNull RowMapperFactory.Marked<M, T> mapperFactory,
+                           @Nullable T defaultValue) {
+    this.mapperFactory = mapperFactory;
     this.defaultValue = defaultValue;
   }
 
   @NonNull @Override
   public Observer<? super MarkedQuery<M>> apply(@NonNull Observer<? super MarkedValue<M, T>> observer) {
-    return new MappingObserver<>(observer, mapper, defaultValue);
+    return new MappingObserver<>(observer, mapperFactory, defaultValue);
   }
 
-  static final class MappingObserver<M, T> extends DisposableObserver<MarkedQuery<M>> {
+  static final class MappingObserver<M, T> extends CancellableQueryObserver<MarkedQuery<M>> {
     @NonNull private final Observer<? super MarkedValue<M, T>> downstream;
-    @NonNull private final BiFunction<Cursor, Set<M>, T> mapper;
+    @NonNull private final RowMapperFactory.Marked<M, T> mapperFactory;
     @Nullable private final T defaultValue;
 
-    MappingObserver(@NonNull Observer<? super MarkedValue<M, T>> downstream, @NonNull BiFunction<Cursor, Set<M>, T> mapper,
+    MappingObserver(@NonNull Observer<? super MarkedValue<M, T>> downstream,
+                    @NonNull RowMapperFactory.Marked<M, T> mapperFactory,
                     @Nullable T defaultValue) {
       this.downstream = downstream;
-      this.mapper = mapper;
+      this.mapperFactory = mapperFactory;
       this.defaultValue = defaultValue;
     }
 
@@ -67,11 +67,11 @@ final class MarkedQueryToOneOperator<M, T> implements ObservableOperator<MarkedV
       try {
         @Nullable final T item;
         @NonNull final Set<M> markers = markedQuery.markers;
-        @Nullable final Cursor cursor = markedQuery.run();
+        @Nullable final Cursor cursor = run(markedQuery);
         if (cursor != null) {
           try {
             if (cursor.moveToNext()) {
-              item = mapper.apply(cursor, markers);
+              item = mapperFactory.create(cursor, markers).apply(cursor);
               // even though the type system should make this impossible,
               // Java doesn't always check nullability annotations,
               // so leave this in just in case our clients don't follow the rules.
@@ -100,7 +100,9 @@ final class MarkedQueryToOneOperator<M, T> implements ObservableOperator<MarkedV
         }
       } catch (Throwable e) {
         Exceptions.throwIfFatal(e);
-        onError(e);
+        if (!isCancellation(e)) {
+          onError(e);
+        }
       }
     }
 
@@ -28,8 +28,6 @@ import java.util.Set;
 import io.reactivex.rxjava3.core.ObservableOperator;
 import io.reactivex.rxjava3.core.Observer;
 import io.reactivex.rxjava3.exceptions.Exceptions;
-import io.reactivex.rxjava3.functions.BiFunction;
-import io.reactivex.rxjava3.observers.DisposableObserver;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 
 import static com.stealthmountain.sqldim.SqlDim.MarkedQuery;
@@ -38,26 +36,26 @@ import static com.stealthmountain.sqldim.SqlDim.MarkedQuery.MarkedValue;
 @RequiresApi(Build.VERSION_CODES.N)
 final class MarkedQueryToOptionalOperator<M, T>
         implements ObservableOperator<MarkedValue<M, Optional<T>>, MarkedQuery<M>> {
-  @NonNull private final BiFunction<Cursor, Set<M>, T> mapper;
+  @NonNull private final RowMapperFactory.Marked<M, T> mapperFactory;
 
-  MarkedQueryToOptionalOperator(@NonNull BiFunction<Cursor, Set<M>, T> mapper) {
-    this.mapper = mapper;
+  MarkedQueryToOptionalOperator(@NonNull RowMapperFactory.Marked<M, T> mapperFactory) {
+    this.mapperFactory = mapperFactory;
   }
 
   @NonNull @Override
   public Observer<? super MarkedQuery<M>> apply(
           @NonNull Observer<? super MarkedValue<M, Optional<T>>> observer) {
-    return new MappingObserver<>(observer, mapper);
+    return new MappingObserver<>(observer, mapperFactory);
   }
 
-  static final class MappingObserver<M, T> extends DisposableObserver<MarkedQuery<M>> {
+  static final class MappingObserver<M, T> extends CancellableQueryObserver<MarkedQuery<M>> {
     @NonNull private final Observer<? super MarkedValue<M, Optional<T>>> downstream;
-    @NonNull private final BiFunction<Cursor, Set<M>, T> mapper;
+    @NonNull private final RowMapperFactory.Marked<M, T> mapperFactory;
 
     MappingObserver(@NonNull Observer<? super MarkedValue<M, Optional<T>>> downstream,
-                    @NonNull BiFunction<Cursor, Set<M>, T> mapper) {
+                    @NonNull RowMapperFactory.Marked<M, T> mapperFactory) {
       this.downstream = downstream;
-      this.mapper = mapper;
+      this.mapperFactory = mapperFactory;
     }
 
     @Override protected void onStart() {
@@ -68,11 +66,11 @@ final class MarkedQueryToOptionalOperator<M, T>
       try {
         @Nullable final T item;
         @NonNull final Set<M> markers = markedQuery.markers;
-        @Nullable final Cursor cursor = markedQuery.run();
+        @Nullable final Cursor cursor = run(markedQuery);
         if (cursor != null) {
           try {
             if (cursor.moveToNext()) {
-              item = mapper.apply(cursor, markers);
+              item = mapperFactory.create(cursor, markers).apply(cursor);
               // even though the type system should make this impossible,
               // Java doesn't always check nullability annotations,
               // so leave this in just in case our clients don't follow the rules.
@@ -107,7 +105,9 @@ final class MarkedQueryToOptionalOperator<M, T>
         }
       } catch (Throwable e) {
         Exceptions.throwIfFatal(e);
-        onError(e);
+        if (!isCancellation(e)) {
+          onError(e);
+        }
       }
     }
 
@@ -0,0 +1,215 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory cache of query results, enabled with {@link SqlDim.Builder#resultCache}. Results
+ * stay cached until a trigger on one of their tables or until they are evicted, least recently
+ * used first, to keep the estimated size of the cache within {@link #maxSize()} bytes. Every
+ * result is dropped by {@link DimDatabase#execute}, whose tables are unknown.
+ * <p>
+ * Only the results of observable queries are cached, including a new subscriber's first result.
+ * {@link DimDatabase#query} always reads the database. As for every observable query, a write
+ * made directly through {@link DimDatabase#getWritableDatabase()} must be followed by a trigger on
+ * its tables, or the cached results of those tables stay stale. A result larger than
+ * {@link #maxSize()} is never copied in full, and is read from the database instead.
+ * <p>
+ * Call {@link #trimToSize} when the system is low on memory, for example:
+ * <pre>{@code
+ * @Override public void onTrimMemory(int level) {
+ *   QueryCache cache = db.getQueryCache();
+ *   if (cache != null) {
+ *     cache.trimToSize(level >= TRIM_MEMORY_MODERATE ? 0 : cache.maxSize() / 2);
+ *   }
+ * }
+ * }</pre>
+ */
+public final class QueryCache {
+  private final long maxSize;
+  @NonNull private final LinkedHashMap<QueryKey, CursorSnapshot> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  // The value of 'version' at the last trigger on each table.
+  @NonNull private final Map<String, Long> tableVersions = new HashMap<>();
+  private long version;
+  private long size;
+  private int hitCount;
+  private int missCount;
+  private int putCount;
+  private int evictionCount;
+  private int invalidationCount;
+
+  QueryCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  @Nullable CursorSnapshot get(@NonNull QueryKey key) {
+    synchronized (this) {
+      @Nullable final CursorSnapshot snapshot = entries.get(key);
+      if (snapshot != null) {
+        hitCount++;
+      } else {
+        missCount++;
+      }
+      return snapshot;
+    }
+  }
+
+  /**
+   * Returns a version to pass to {@link #put}. Read it before running the query so that a trigger
+   * racing with the query keeps a stale result out of the cache.
+   */
+  long version() {
+    synchronized (this) {
+      return version;
+    }
+  }
+
+  void put(@NonNull QueryKey key, @NonNull CursorSnapshot snapshot, long version) {
+    synchronized (this) {
+      if (isStale(key, version)) {
+        return;
+      }
+      final long bytes = snapshot.estimatedBytes();
+      if (bytes > maxSize) {
+        return;
+      }
+      putCount++;
+      size += bytes;
+      @Nullable final CursorSnapshot previous = entries.put(key, snapshot);
+      if (previous != null) {
+        size -= previous.estimatedBytes();
+      }
+      trim(maxSize);
+    }
+  }
+
+  void invalidate(@NonNull Set<String> tables) {
+    synchronized (this) {
+      version++;
+      for (String table : tables) {
+        tableVersions.put(table, version);
+      }
+      for (Iterator<Map.Entry<QueryKey, CursorSnapshot>> i = entries.entrySet().iterator();
+          i.hasNext(); ) {
+        @NonNull final Map.Entry<QueryKey, CursorSnapshot> entry = i.next();
+        if (dependsOnAny(entry.getKey(), tables)) {
+          i.remove();
+          size -= entry.getValue().estimatedBytes();
+          invalidationCount++;
+        }
+      }
+    }
+  }
+
+  private boolean isStale(@NonNull QueryKey key, long version) {
+    if (key.tables.isEmpty()) {
+      return this.version != version;
+    }
+    for (String table : key.tables) {
+      @Nullable final Long tableVersion = tableVersions.get(table);
+      if (tableVersion != null && tableVersion > version) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean dependsOnAny(@NonNull QueryKey key, @NonNull Set<String> tables) {
+    if (key.tables.isEmpty()) {
+      return true;
+    }
+    for (String table : tables) {
+      if (key.tables.contains(table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void trim(long maxSize) {
+    for (Iterator<CursorSnapshot> i = entries.values().iterator(); size > maxSize && i.hasNext(); ) {
+      size -= i.next().estimatedBytes();
+      i.remove();
+      evictionCount++;
+    }
+  }
+
+  /**
+   * Evicts the least recently used results until the estimated size of the cache is at most
+   * {@code maxSize} bytes. Results cached afterwards are still bounded by {@link #maxSize()}.
+   */
+  public void trimToSize(long maxSize) {
+    synchronized (this) {
+      trim(maxSize);
+    }
+  }
+
+  /** Evicts every cached result. */
+  public void evictAll() {
+    trimToSize(-1);
+  }
+
+  /** The estimated size of the cached results, in bytes. */
+  public long size() {
+    synchronized (this) {
+      return size;
+    }
+  }
+
+  /** The maximum estimated size of the cached results, in bytes. */
+  public long maxSize() {
+    return maxSize;
+  }
+
+  /** The number of times a query was answered from the cache. */
+  public int hitCount() {
+    synchronized (this) {
+      return hitCount;
+    }
+  }
+
+  /** The number of times a query was not in the cache and had to be run. */
+  public int missCount() {
+    synchronized (this) {
+      return missCount;
+    }
+  }
+
+  /** The number of results added to the cache. */
+  public int putCount() {
+    synchronized (this) {
+      return putCount;
+    }
+  }
+
+  /** The number of results evicted to stay within a size. */
+  public int evictionCount() {
+    synchronized (this) {
+      return evictionCount;
+    }
+  }
+
+  /** The number of results dropped because of a trigger on one of their tables. */
+  public int invalidationCount() {
+    synchronized (this) {
+      return invalidationCount;
+    }
+  }
+
+  @NonNull @Override public String toString() {
+    synchronized (this) {
+      final int accesses = hitCount + missCount;
+      final int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+      return String.format(Locale.US, "QueryCache[size=%d,maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+          size, maxSize, hitCount, missCount, hitPercent);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.SqlTokens.Token;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Infers the columns a query may read from its SQL. Rather than parsing the statement, every
+ * identifier in it is taken to be a column, which over-approximates the columns actually read but
+ * never misses one which is named. Queries which read columns without naming them, through
+ * {@code *} or a {@code NATURAL} join, read every column.
+ */
+final class QueryColumns {
+  private QueryColumns() {
+    throw new AssertionError("No instances.");
+  }
+
+  /**
+   * Returns the lower-cased names of the columns {@code sql} may read, or null if it may read
+   * every column.
+   */
+  @Nullable static Set<String> read(@NonNull String sql) {
+    @NonNull final Set<String> columns = new HashSet<>();
+    for (Token token : SqlTokens.of(sql)) {
+      if (token.is('*') || token.isKeyword("natural")) {
+        return null;
+      }
+      if (token.identifier) {
+        columns.add(normalize(token.text));
+      }
+    }
+    return columns;
+  }
+
+  /** Lower-cases {@code column}, as SQLite compares column names case-insensitively. */
+  @NonNull static String normalize(@NonNull String column) {
+    return column.toLowerCase(Locale.US);
+  }
+}
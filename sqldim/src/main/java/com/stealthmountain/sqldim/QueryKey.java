@@ -0,0 +1,107 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteProgram;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The SQL, bind arguments and observed tables of a query. Two queries with equal keys return the
+ * same rows until a trigger on one of the tables.
+ */
+final class QueryKey implements SupportSQLiteProgram {
+  @NonNull private final String sql;
+  @NonNull private final Object[] args;
+  @NonNull final Set<String> tables;
+  @Nullable private final Set<Long> keys;
+  @Nullable private final Set<String> columns;
+  private final int hashCode;
+
+  QueryKey(@NonNull SupportSQLiteQuery query, @NonNull Iterable<String> tables) {
+    this(query, tables, null, null);
+  }
+
+  /**
+   * The keys of the rows and the columns which an observable query reads decide which triggers
+   * re-run it.
+   *
+   * @param keys The keys of the rows the query reads, or null if it reads whole tables.
+   * @param columns The columns the query reads, or null if it may read every column.
+   */
+  QueryKey(@NonNull SupportSQLiteQuery query, @NonNull Iterable<String> tables,
+           @Nullable Set<Long> keys, @Nullable Set<String> columns) {
+    this.sql = query.getSql().trim();
+    this.args = new Object[query.getArgCount()];
+    query.bindTo(this);
+    @NonNull final Set<String> tableSet = new HashSet<>();
+    for (String table : tables) {
+      tableSet.add(table);
+    }
+    this.tables = tableSet;
+    this.keys = keys;
+    this.columns = columns;
+    int hashCode = sql.hashCode();
+    hashCode = 31 * hashCode + Arrays.deepHashCode(args);
+    hashCode = 31 * hashCode + tableSet.hashCode();
+    hashCode = 31 * hashCode + (keys != null ? keys.hashCode() : 0);
+    hashCode = 31 * hashCode + (columns != null ? columns.hashCode() : 0);
+    this.hashCode = hashCode;
+  }
+
+  // Bind indices are 1-based.
+
+  @Override public void bindNull(int index) {
+    args[index - 1] = null;
+  }
+
+  @Override public void bindLong(int index, long value) {
+    args[index - 1] = value;
+  }
+
+  @Override public void bindDouble(int index, double value) {
+    args[index - 1] = value;
+  }
+
+  @Override public void bindString(int index, @NonNull String value) {
+    args[index - 1] = value;
+  }
+
+  @Override public void bindBlob(int index, @NonNull byte[] value) {
+    args[index - 1] = value;
+  }
+
+  @Override public void clearBindings() {
+    Arrays.fill(args, null);
+  }
+
+  @Override public void close() {
+  }
+
+  @Override public boolean equals(@Nullable Object o) {
+    if (this == o) return true;
+    if (!(o instanceof QueryKey)) return false;
+
+    QueryKey key = (QueryKey) o;
+
+    return hashCode == key.hashCode
+        && sql.equals(key.sql)
+        && Arrays.deepEquals(args, key.args)
+        && tables.equals(key.tables)
+        && (keys != null ? keys.equals(key.keys) : key.keys == null)
+        && (columns != null ? columns.equals(key.columns) : key.columns == null);
+  }
+
+  @Override public int hashCode() {
+    return hashCode;
+  }
+
+  @NonNull @Override public String toString() {
+    return "QueryKey[sql=" + sql + ", args=" + Arrays.deepToString(args) + ", tables=" + tables
+        + (keys != null ? ", keys=" + keys : "")
+        + (columns != null ? ", columns=" + columns : "") + ']';
+  }
+}
@@ -4,35 +4,69 @@ import android.database.Cursor;
 import android.os.Build;
 import androidx.annotation.CheckResult;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import com.stealthmountain.sqldim.SqlDim.Query;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import io.reactivex.rxjava3.core.Observable;
-import io.reactivex.rxjava3.core.ObservableConverter;
+import io.reactivex.rxjava3.core.ObservableOperator;
 import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.functions.Function;
 
 /** An {@link Observable} of {@link Query} which offers query-specific convenience operators. */
 public final class QueryObservable extends Observable<Query> {
-  @NonNull static final ObservableConverter<Query, QueryObservable> QUERY_OBSERVABLE =
-      new ObservableConverter<Query, QueryObservable>() {
-        @NonNull @Override public QueryObservable apply(@NonNull Observable<Query> queryObservable) {
-          return new QueryObservable(queryObservable);
-        }
-      };
-
   @NonNull private final Observable<Query> upstream;
+  // The scheduler of the database or resolver which created the queries, or null if unknown.
+  @Nullable private final Scheduler queryScheduler;
+  // Whether queries are already emitted on 'queryScheduler'.
+  private final boolean emitsOnQueryScheduler;
 
   public QueryObservable(@NonNull Observable<Query> upstream) {
+    this(upstream, null, false);
+  }
+
+  QueryObservable(@NonNull Observable<Query> upstream, @Nullable Scheduler queryScheduler,
+                  boolean emitsOnQueryScheduler) {
     this.upstream = upstream;
+    this.queryScheduler = queryScheduler;
+    this.emitsOnQueryScheduler = emitsOnQueryScheduler;
   }
 
   @Override protected void subscribeActual(@NonNull Observer<? super Query> observer) {
     upstream.subscribe(observer);
   }
 
+  /**
+   * Run each emitted {@link Query} and only pass it on when its result set differs from the
+   * previous one, so mapping operators downstream don't map and emit identical results.
+   * <p>
+   * Each result set is read once, copying it into memory and computing a checksum of its values
+   * in the same pass. A result set which differs is passed on as a query over that copy, so it is
+   * not run again.
+   *
+   * @see #skipUnchanged(UnchangedResultCounter)
+   */
+  @CheckResult @NonNull
+  public final QueryObservable skipUnchanged() {
+    return new QueryObservable(lift(new QuerySkipUnchangedOperator(null)), queryScheduler,
+        emitsOnQueryScheduler);
+  }
+
+  /**
+   * Like {@link #skipUnchanged()}, counting checked and suppressed results in {@code counter}.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API contract.
+  @CheckResult @NonNull
+  public final QueryObservable skipUnchanged(@NonNull UnchangedResultCounter counter) {
+    if (counter == null) throw new NullPointerException("counter == null");
+    return new QueryObservable(lift(new QuerySkipUnchangedOperator(counter)), queryScheduler,
+        emitsOnQueryScheduler);
+  }
+
   /**
    * Given a function mapping the current row of a {@link Cursor} to {@code T}, transform each
    * emitted {@link Query} which returns a single row to {@code T}.
@@ -161,4 +195,190 @@ public final class QueryObservable extends Observable<Query> {
           @NonNull Function<Cursor, T> mapper, @NonNull NewList<L, T> newList) {
     return lift(Query.mapToSpecificList(mapper, newList));
   }
+
+  /**
+   * Given a function mapping the current row of a {@link Cursor} to {@code T}, transform each
+   * emitted {@link Query} to a {@link ListDiff} holding the {@code List<T>} and its changes from
+   * the previously emitted list.
+   * <p>
+   * Rows are matched with the previous list by {@code id}. Computing the changes happens on the
+   * thread the query runs on, so the consumer only has to apply them.
+   * <p>
+   * This method is a convenience operator for:
+   * <pre>{@code
+   * lift(Query.mapToListDiff(mapper, id))
+   * }</pre>
+   *
+   * @param mapper Maps the current {@link Cursor} row to {@code T}. May not return null.
+   * @param id Returns a stable id, unique within the result, for a {@code T}. May not return null.
+   */
+  @CheckResult @NonNull
+  public final <T, K> Observable<ListDiff<T>> mapToListDiff(@NonNull Function<Cursor, T> mapper,
+      @NonNull Function<T, K> id) {
+    return lift(Query.mapToListDiff(mapper, id));
+  }
+
+  /**
+   * Like {@link #mapToOne(Function)}, mapping rows with a mapper created by {@code mapperFactory}
+   * for each cursor.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<T> mapToOne(@NonNull RowMapperFactory<T> mapperFactory) {
+    return lift(Query.mapToOne(mapperFactory));
+  }
+
+  /**
+   * Like {@link #mapToOneOrDefault(Function, Object)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<T> mapToOneOrDefault(@NonNull RowMapperFactory<T> mapperFactory,
+      @NonNull T defaultValue) {
+    return lift(Query.mapToOneOrDefault(mapperFactory, defaultValue));
+  }
+
+  /**
+   * Like {@link #mapToOptional(Function)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor.
+   */
+  @RequiresApi(Build.VERSION_CODES.N)
+  @CheckResult @NonNull
+  public final <T> Observable<Optional<T>> mapToOptional(
+      @NonNull RowMapperFactory<T> mapperFactory) {
+    return lift(Query.mapToOptional(mapperFactory));
+  }
+
+  /**
+   * Like {@link #mapToList(Function)}, mapping rows with a mapper created by {@code mapperFactory}
+   * for each cursor.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<List<T>> mapToList(@NonNull RowMapperFactory<T> mapperFactory) {
+    return lift(Query.mapToList(mapperFactory));
+  }
+
+  /**
+   * Like {@link #mapToSpecificList(Function, NewList)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor.
+   */
+  @CheckResult @NonNull
+  public final <L extends List<T>, T> Observable<L> mapToSpecificList(
+      @NonNull RowMapperFactory<T> mapperFactory, @NonNull NewList<L, T> newList) {
+    return lift(Query.mapToSpecificList(mapperFactory, newList));
+  }
+
+  /**
+   * Like {@link #mapToListDiff(Function, Function)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor.
+   */
+  @CheckResult @NonNull
+  public final <T, K> Observable<ListDiff<T>> mapToListDiff(
+      @NonNull RowMapperFactory<T> mapperFactory, @NonNull Function<T, K> id) {
+    return lift(Query.mapToListDiff(mapperFactory, id));
+  }
+
+  /**
+   * Like {@link #mapToOne(Function)}, but guarantees that each query is run and mapped in the same
+   * task on the scheduler of the {@link DimDatabase} or {@link DimContentResolver} which created
+   * this observable, and only delivers the mapped value to {@code resultScheduler}.
+   * <p>
+   * This replaces {@code observeOn(io).mapToOne(mapper).observeOn(main)} with a single hop from
+   * the query scheduler to {@code resultScheduler}. Queries are only moved onto the query
+   * scheduler first if a query transformer may have emitted them elsewhere.
+   *
+   * @param mapper Maps the current {@link Cursor} row to {@code T}. May not return null.
+   * @param resultScheduler Receives the mapped values, for example the main thread.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<T> mapToOne(@NonNull Function<Cursor, T> mapper,
+      @NonNull Scheduler resultScheduler) {
+    return mapOnQueryScheduler(Query.mapToOne(mapper), resultScheduler);
+  }
+
+  /**
+   * Like {@link #mapToOneOrDefault(Function, Object)}, but runs and maps each query on the query
+   * scheduler and only delivers the mapped value to {@code resultScheduler}, as
+   * {@link #mapToOne(Function, Scheduler)} does.
+   *
+   * @param mapper Maps the current {@link Cursor} row to {@code T}. May not return null.
+   * @param defaultValue Value returned if result set is empty
+   * @param resultScheduler Receives the mapped values, for example the main thread.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<T> mapToOneOrDefault(@NonNull Function<Cursor, T> mapper,
+      @NonNull T defaultValue, @NonNull Scheduler resultScheduler) {
+    return mapOnQueryScheduler(Query.mapToOneOrDefault(mapper, defaultValue), resultScheduler);
+  }
+
+  /**
+   * Like {@link #mapToList(Function)}, but runs and maps each query on the query scheduler and
+   * only delivers the finished list to {@code resultScheduler}, as
+   * {@link #mapToOne(Function, Scheduler)} does. The delivered lists are unmodifiable, so they can
+   * be shared between threads without copying.
+   *
+   * @param mapper Maps the current {@link Cursor} row to {@code T}. May not return null.
+   * @param resultScheduler Receives the mapped lists, for example the main thread.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<List<T>> mapToList(@NonNull Function<Cursor, T> mapper,
+      @NonNull Scheduler resultScheduler) {
+    return mapToListOnQueryScheduler(Query.mapToList(mapper), resultScheduler);
+  }
+
+  /**
+   * Like {@link #mapToOne(Function, Scheduler)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<T> mapToOne(@NonNull RowMapperFactory<T> mapperFactory,
+      @NonNull Scheduler resultScheduler) {
+    return mapOnQueryScheduler(Query.mapToOne(mapperFactory), resultScheduler);
+  }
+
+  /**
+   * Like {@link #mapToOneOrDefault(Function, Object, Scheduler)}, mapping rows with a mapper
+   * created by {@code mapperFactory} for each cursor.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<T> mapToOneOrDefault(@NonNull RowMapperFactory<T> mapperFactory,
+      @NonNull T defaultValue, @NonNull Scheduler resultScheduler) {
+    return mapOnQueryScheduler(Query.mapToOneOrDefault(mapperFactory, defaultValue),
+        resultScheduler);
+  }
+
+  /**
+   * Like {@link #mapToList(Function, Scheduler)}, mapping rows with a mapper created by
+   * {@code mapperFactory} for each cursor.
+   */
+  @CheckResult @NonNull
+  public final <T> Observable<List<T>> mapToList(@NonNull RowMapperFactory<T> mapperFactory,
+      @NonNull Scheduler resultScheduler) {
+    return mapToListOnQueryScheduler(Query.mapToList(mapperFactory), resultScheduler);
+  }
+
+  @SuppressWarnings("ConstantConditions") // Public API contract.
+  @NonNull private <R> Observable<R> mapOnQueryScheduler(
+      @NonNull ObservableOperator<R, Query> operator, @NonNull Scheduler resultScheduler) {
+    if (resultScheduler == null) throw new NullPointerException("resultScheduler == null");
+    return onQueryScheduler().lift(operator).observeOn(resultScheduler);
+  }
+
+  @SuppressWarnings("ConstantConditions") // Public API contract.
+  @NonNull private <T> Observable<List<T>> mapToListOnQueryScheduler(
+      @NonNull ObservableOperator<List<T>, Query> operator, @NonNull Scheduler resultScheduler) {
+    if (resultScheduler == null) throw new NullPointerException("resultScheduler == null");
+    return onQueryScheduler()
+        .lift(operator)
+        .map(new Function<List<T>, List<T>>() {
+          @NonNull @Override public List<T> apply(@NonNull List<T> list) {
+            return Collections.unmodifiableList(list);
+          }
+        })
+        .observeOn(resultScheduler);
+  }
+
+  /** The queries, moved onto the query scheduler unless they are known to be emitted on it. */
+  @NonNull private Observable<Query> onQueryScheduler() {
+    return queryScheduler == null || emitsOnQueryScheduler ? this : observeOn(queryScheduler);
+  }
 }
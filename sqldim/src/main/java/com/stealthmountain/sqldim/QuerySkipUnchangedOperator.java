@@ -0,0 +1,97 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.DimDatabase.SnapshotQuery;
+import com.stealthmountain.sqldim.SqlDim.Query;
+
+import io.reactivex.rxjava3.core.ObservableOperator;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+
+final class QuerySkipUnchangedOperator implements ObservableOperator<Query, Query> {
+  @Nullable private final UnchangedResultCounter counter;
+
+  QuerySkipUnchangedOperator(@Nullable UnchangedResultCounter counter) {
+    this.counter = counter;
+  }
+
+  @NonNull @Override
+  public Observer<? super Query> apply(@NonNull Observer<? super Query> observer) {
+    return new SkipUnchangedObserver(observer, counter);
+  }
+
+  static final class SkipUnchangedObserver extends CancellableQueryObserver<Query> {
+    @NonNull private final Observer<? super Query> downstream;
+    @Nullable private final UnchangedResultCounter counter;
+    private boolean hasChecksum;
+    private long checksum;
+
+    SkipUnchangedObserver(@NonNull Observer<? super Query> downstream,
+                          @Nullable UnchangedResultCounter counter) {
+      this.downstream = downstream;
+      this.counter = counter;
+    }
+
+    @Override protected void onStart() {
+      downstream.onSubscribe(this);
+    }
+
+    @Override public void onNext(@NonNull Query query) {
+      try {
+        @Nullable final Cursor cursor = run(query);
+        if (isDisposed()) {
+          if (cursor != null) {
+            cursor.close();
+          }
+          return;
+        }
+        @Nullable final CursorSnapshot snapshot;
+        if (cursor == null) {
+          hasChecksum = false;
+          snapshot = null;
+        } else {
+          try {
+            // Hand downstream the rows we read for the checksum instead of running the query again.
+            snapshot = CursorSnapshot.copyOf(cursor);
+          } finally {
+            cursor.close();
+          }
+          final boolean unchanged = hasChecksum && snapshot.checksum() == checksum;
+          if (counter != null) {
+            counter.onChecked(unchanged);
+          }
+          if (unchanged) {
+            return;
+          }
+          hasChecksum = true;
+          checksum = snapshot.checksum();
+        }
+        downstream.onNext(new SnapshotQuery(snapshot, query.toString()));
+      } catch (Throwable e) {
+        Exceptions.throwIfFatal(e);
+        if (!isCancellation(e)) {
+          onError(e);
+        }
+      }
+    }
+
+    @Override public void onComplete() {
+      if (!isDisposed()) {
+        downstream.onComplete();
+      }
+    }
+
+    @Override public void onError(@NonNull Throwable e) {
+      if (isDisposed()) {
+        RxJavaPlugins.onError(e);
+      } else {
+        downstream.onError(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Thrown by a query which ran for longer than its timeout, as set with
+ * {@link SqlDim.Builder#queryTimeout}.
+ */
+public final class QueryTimeoutException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public QueryTimeoutException(@NonNull String message) {
+    super(message);
+  }
+}
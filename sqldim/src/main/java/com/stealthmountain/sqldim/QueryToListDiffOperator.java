@@ -0,0 +1,113 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.SqlDim.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.rxjava3.core.ObservableOperator;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+
+final class QueryToListDiffOperator<T, K> implements ObservableOperator<ListDiff<T>, Query> {
+  @NonNull private final RowMapperFactory<T> mapperFactory;
+  @NonNull private final Function<T, K> id;
+
+  QueryToListDiffOperator(@NonNull RowMapperFactory<T> mapperFactory, @NonNull Function<T, K> id) {
+    this.mapperFactory = mapperFactory;
+    this.id = id;
+  }
+
+  @NonNull @Override
+  public Observer<? super Query> apply(@NonNull Observer<? super ListDiff<T>> observer) {
+    return new MappingObserver<>(observer, mapperFactory, id);
+  }
+
+  static final class MappingObserver<T, K> extends CancellableQueryObserver<Query> {
+    @NonNull private final Observer<? super ListDiff<T>> downstream;
+    @NonNull private final RowMapperFactory<T> mapperFactory;
+    @NonNull private final Function<T, K> id;
+    @NonNull private List<T> previousItems = Collections.emptyList();
+    @NonNull private List<K> previousIds = Collections.emptyList();
+
+    MappingObserver(@NonNull Observer<? super ListDiff<T>> downstream,
+                    @NonNull RowMapperFactory<T> mapperFactory, @NonNull Function<T, K> id) {
+      this.downstream = downstream;
+      this.mapperFactory = mapperFactory;
+      this.id = id;
+    }
+
+    @Override protected void onStart() {
+      downstream.onSubscribe(this);
+    }
+
+    @Override public void onNext(@NonNull Query query) {
+      try {
+        @Nullable final Cursor cursor = run(query);
+        if (cursor == null) {
+          return;
+        }
+        @NonNull final List<T> items = new ArrayList<>(cursor.getCount());
+        @NonNull final List<K> ids = new ArrayList<>(cursor.getCount());
+        try {
+          @NonNull final Function<Cursor, T> mapper = mapperFactory.create(cursor);
+          while (cursor.moveToNext()) {
+            if (isDisposed()) {
+              return; // Stop mapping the rows of an abandoned query.
+            }
+            @Nullable final T item = mapper.apply(cursor);
+            // even though the type system should make this impossible,
+            // Java doesn't always check nullability annotations,
+            // so leave this in just in case our clients don't follow the rules.
+            if (item == null) {
+              downstream.onError(new NullPointerException("QueryToListDiff mapper returned null"));
+              return;
+            }
+            @Nullable final K itemId = id.apply(item);
+            if (itemId == null) {
+              downstream.onError(new NullPointerException("QueryToListDiff id returned null"));
+              return;
+            }
+            items.add(item);
+            ids.add(itemId);
+          }
+        } finally {
+          cursor.close();
+        }
+        @NonNull final ListDiff<T> diff = ListDiff.calculate(previousItems, previousIds, items, ids);
+        previousItems = items;
+        previousIds = ids;
+        if (!isDisposed()) {
+          downstream.onNext(diff);
+        }
+      } catch (Throwable e) {
+        Exceptions.throwIfFatal(e);
+        if (!isCancellation(e)) {
+          onError(e);
+        }
+      }
+    }
+
+    @Override public void onComplete() {
+      if (!isDisposed()) {
+        downstream.onComplete();
+      }
+    }
+
+    @Override public void onError(@NonNull Throwable e) {
+      if (isDisposed()) {
+        RxJavaPlugins.onError(e);
+      } else {
+        downstream.onError(e);
+      }
+    }
+  }
+}
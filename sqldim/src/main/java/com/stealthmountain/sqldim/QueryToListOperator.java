@@ -28,33 +28,32 @@ import io.reactivex.rxjava3.core.ObservableOperator;
 import io.reactivex.rxjava3.core.Observer;
 import io.reactivex.rxjava3.exceptions.Exceptions;
 import io.reactivex.rxjava3.functions.Function;
-import io.reactivex.rxjava3.observers.DisposableObserver;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 
 final class QueryToListOperator<L extends List<T>, T> implements ObservableOperator<L, Query> {
 
-  @NonNull private final Function<Cursor, T> mapper;
+  @NonNull private final RowMapperFactory<T> mapperFactory;
   @NonNull private final NewList<L, T> newList;
 
-  QueryToListOperator(@NonNull Function<Cursor, T> mapper, @NonNull NewList<L, T> newList) {
-    this.mapper = mapper;
+  QueryToListOperator(@NonNull RowMapperFactory<T> mapperFactory, @NonNull NewList<L, T> newList) {
+    this.mapperFactory = mapperFactory;
     this.newList = newList;
   }
 
   @NonNull @Override
   public Observer<? super Query> apply(@NonNull Observer<? super L> observer) {
-    return new MappingObserver<>(observer, mapper, newList);
+    return new MappingObserver<>(observer, mapperFactory, newList);
   }
 
-  static final class MappingObserver<L extends List<T>, T> extends DisposableObserver<Query> {
+  static final class MappingObserver<L extends List<T>, T> extends CancellableQueryObserver<Query> {
     @NonNull private final Observer<? super L> downstream;
-    @NonNull private final Function<Cursor, T> mapper;
+    @NonNull private final RowMapperFactory<T> mapperFactory;
     @NonNull private final NewList<L, T> newList;
 
     MappingObserver(@NonNull Observer<? super L> downstream,
-                    @NonNull Function<Cursor, T> mapper, @NonNull NewList<L, T> newList) {
+                    @NonNull RowMapperFactory<T> mapperFactory, @NonNull NewList<L, T> newList) {
       this.downstream = downstream;
-      this.mapper = mapper;
+      this.mapperFactory = mapperFactory;
       this.newList = newList;
     }
 
@@ -65,13 +64,17 @@ final class QueryToListOperator<L extends List<T>, T> implements ObservableOpera
     @Override public void onNext(@NonNull Query query) {
       try {
         @Nullable T item;
-        @Nullable final Cursor cursor = query.run();
-        if (cursor == null || isDisposed()) {
+        @Nullable final Cursor cursor = run(query);
+        if (cursor == null) {
           return;
         }
         @NonNull final L items = newList.newList(cursor.getCount());
         try {
+          @NonNull final Function<Cursor, T> mapper = mapperFactory.create(cursor);
           while (cursor.moveToNext()) {
+            if (isDisposed()) {
+              return; // Stop mapping the rows of an abandoned query.
+            }
             item = mapper.apply(cursor);
             // even though the type system should make this impossible,
             // Java doesn't always check nullability annotations,
@@ -90,7 +93,9 @@ final class QueryToListOperator<L extends List<T>, T> implements ObservableOpera
         }
       } catch (Throwable e) {
         Exceptions.throwIfFatal(e);
-        onError(e);
+        if (!isCancellation(e)) {
+          onError(e);
+        }
       }
     }
 
@@ -24,33 +24,33 @@ import io.reactivex.rxjava3.core.ObservableOperator;
 import io.reactivex.rxjava3.core.Observer;
 import io.reactivex.rxjava3.exceptions.Exceptions;
 import io.reactivex.rxjava3.functions.Function;
-import io.reactivex.rxjava3.observers.DisposableObserver;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 
 final class QueryToOneOperator<T> implements ObservableOperator<T, SqlDim.Query> {
-  @NonNull private final Function<Cursor, T> mapper;
+  @NonNull private final RowMapperFactory<T> mapperFactory;
   @Nullable private final T defaultValue;
 
   /** A null {@code defaultValue} means nothing will be emitted when empty. */
-  QueryToOneOperator(@NonNull Function<Cursor, T> mapper, @Nullable T defaultValue) {
-    this.mapper = mapper;
+  QueryToOneOperator(@NonNull RowMapperFactory<T> mapperFactory, @Nullable T defaultValue) {
+    this.mapperFactory = mapperFactory;
     this.defaultValue = defaultValue;
   }
 
   @NonNull @Override
   public Observer<? super SqlDim.Query> apply(@NonNull Observer<? super T> observer) {
-    return new MappingObserver<>(observer, mapper, defaultValue);
+    return new MappingObserver<>(observer, mapperFactory, defaultValue);
   }
 
-  static final class MappingObserver<T> extends DisposableObserver<SqlDim.Query> {
+  static final class MappingObserver<T> extends CancellableQueryObserver<SqlDim.Query> {
     @NonNull private final Observer<? super T> downstream;
-    @NonNull private final Function<Cursor, T> mapper;
+    @NonNull private final RowMapperFactory<T> mapperFactory;
     @Nullable private final T defaultValue;
 
-    MappingObserver(@NonNull Observer<? super T> downstream, @NonNull Function<Cursor, T> mapper,
+    MappingObserver(@NonNull Observer<? super T> downstream,
+                    @NonNull RowMapperFactory<T> mapperFactory,
                     @Nullable T defaultValue) {
       this.downstream = downstream;
-      this.mapper = mapper;
+      this.mapperFactory = mapperFactory;
       this.defaultValue = defaultValue;
     }
 
@@ -61,11 +61,11 @@ final class QueryToOneOperator<T> implements ObservableOperator<T, SqlDim.Query>
     @Override public void onNext(@NonNull SqlDim.Query query) {
       try {
         @Nullable final T item;
-        @Nullable final Cursor cursor = query.run();
+        @Nullable final Cursor cursor = run(query);
         if (cursor != null) {
           try {
             if (cursor.moveToNext()) {
-              item = mapper.apply(cursor);
+              item = mapperFactory.create(cursor).apply(cursor);
               // even though the type system should make this impossible,
               // Java doesn't always check nullability annotations,
               // so leave this in just in case our clients don't follow the rules.
@@ -94,7 +94,9 @@ final class QueryToOneOperator<T> implements ObservableOperator<T, SqlDim.Query>
         }
       } catch (Throwable e) {
         Exceptions.throwIfFatal(e);
-        onError(e);
+        if (!isCancellation(e)) {
+          onError(e);
+        }
       }
     }
 
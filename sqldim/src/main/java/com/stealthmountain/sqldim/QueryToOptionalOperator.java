@@ -25,31 +25,31 @@ import io.reactivex.rxjava3.core.ObservableOperator;
 import io.reactivex.rxjava3.core.Observer;
 import io.reactivex.rxjava3.exceptions.Exceptions;
 import io.reactivex.rxjava3.functions.Function;
-import io.reactivex.rxjava3.observers.DisposableObserver;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 
 import java.util.Optional;
 
 @RequiresApi(Build.VERSION_CODES.N)
 final class QueryToOptionalOperator<T> implements ObservableOperator<Optional<T>, SqlDim.Query> {
-  @NonNull private final Function<Cursor, T> mapper;
+  @NonNull private final RowMapperFactory<T> mapperFactory;
 
-  QueryToOptionalOperator(@NonNull Function<Cursor, T> mapper) {
-    this.mapper = mapper;
+  QueryToOptionalOperator(@NonNull RowMapperFactory<T> mapperFactory) {
+    this.mapperFactory = mapperFactory;
   }
 
   @NonNull @Override
   public Observer<? super SqlDim.Query> apply(@NonNull Observer<? super Optional<T>> observer) {
-    return new MappingObserver<>(observer, mapper);
+    return new MappingObserver<>(observer, mapperFactory);
   }
 
-  static final class MappingObserver<T> extends DisposableObserver<SqlDim.Query> {
+  static final class MappingObserver<T> extends CancellableQueryObserver<SqlDim.Query> {
     @NonNull private final Observer<? super Optional<T>> downstream;
-    @NonNull private final Function<Cursor, T> mapper;
+    @NonNull private final RowMapperFactory<T> mapperFactory;
 
-    MappingObserver(@NonNull Observer<? super Optional<T>> downstream, @NonNull Function<Cursor, T> mapper) {
+    MappingObserver(@NonNull Observer<? super Optional<T>> downstream,
+                    @NonNull RowMapperFactory<T> mapperFactory) {
       this.downstream = downstream;
-      this.mapper = mapper;
+      this.mapperFactory = mapperFactory;
     }
 
     @Override protected void onStart() {
@@ -59,11 +59,11 @@ final class QueryToOptionalOperator<T> implements ObservableOperator<Optional<T>
     @Override public void onNext(@NonNull SqlDim.Query query) {
       try {
         @Nullable final T item;
-        @Nullable final Cursor cursor = query.run();
+        @Nullable final Cursor cursor = run(query);
         if (cursor != null) {
           try {
             if (cursor.moveToNext()) {
-              item = mapper.apply(cursor);
+              item = mapperFactory.create(cursor).apply(cursor);
               // even though the type system should make this impossible,
               // Java doesn't always check nullability annotations,
               // so leave this in just in case our clients don't follow the rules.
@@ -97,7 +97,9 @@ final class QueryToOptionalOperator<T> implements ObservableOperator<Optional<T>
         }
       } catch (Throwable e) {
         Exceptions.throwIfFatal(e);
-        onError(e);
+        if (!isCancellation(e)) {
+          onError(e);
+        }
       }
     }
 
@@ -0,0 +1,192 @@
+package com.stealthmountain.sqldim;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteProgram;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.stealthmountain.sqldim.SqlDim.QueryTimeoutListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Bounds how long a query may run, enabled with {@link SqlDim.Builder#queryTimeout}. A task on the
+ * watchdog scheduler cancels a query still running when its timeout elapses, and the query fails
+ * with a {@link QueryTimeoutException} after reporting it to the {@link QueryTimeoutListener}.
+ * <p>
+ * A query runs until the cursor has filled its first window, which is when SQLite steps the
+ * statement, and the timeout only bounds that. The later windows of a large result set are filled
+ * as the cursor moves past the first one, without a timeout. Queries are cancelled with a
+ * {@link CancellationSignal}, which needs API 16. On older versions a query which took too long
+ * fails once it finishes.
+ * <p>
+ * Expiring and finishing a query are decided by one {@code compareAndSet}, so a query whose
+ * timeout elapses as it finishes either fails with a {@link QueryTimeoutException}, or returns a
+ * cursor which the watchdog will not cancel while its later windows are filled.
+ */
+final class QueryWatchdog {
+  // The states of a query with a timeout: only one of expiring and finishing takes place.
+  private static final int RUNNING = 0;
+  private static final int EXPIRED = 1;
+  private static final int FINISHED = 2;
+
+  private final long timeoutNanos;
+  @NonNull private final Map<String, Long> timeoutNanosBySql;
+  @Nullable private final QueryTimeoutListener listener;
+  @NonNull private final Scheduler scheduler;
+
+  /**
+   * @param timeoutNanos The timeout of queries without one of their own, or 0 for none.
+   * @param timeoutNanosBySql The timeouts of the queries with SQL equal to a key, 0 for none.
+   */
+  QueryWatchdog(long timeoutNanos, @NonNull Map<String, Long> timeoutNanosBySql,
+                @Nullable QueryTimeoutListener listener, @NonNull Scheduler scheduler) {
+    this.timeoutNanos = timeoutNanos;
+    this.timeoutNanosBySql = timeoutNanosBySql;
+    this.listener = listener;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Runs {@code query} on {@code db} and fills the cursor's first window within its timeout.
+   *
+   * @param signal Cancels the query, or null if it can't be cancelled. Needs API 16.
+   */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  @NonNull Cursor query(@NonNull SupportSQLiteDatabase db, @NonNull SupportSQLiteQuery query,
+                        @Nullable CancellationSignal signal) {
+    @Nullable final Long timeoutNanosOfSql = timeoutNanosBySql.get(query.getSql());
+    final long timeoutNanos = timeoutNanosOfSql != null ? timeoutNanosOfSql : this.timeoutNanos;
+    if (timeoutNanos <= 0) {
+      return signal == null ? db.query(query) : db.query(query, signal);
+    }
+    final long startNanos = System.nanoTime();
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+      @NonNull final Cursor cursor = db.query(query);
+      cursor.getCount();
+      final long elapsedNanos = System.nanoTime() - startNanos;
+      if (elapsedNanos > timeoutNanos) {
+        cursor.close();
+        throw timedOut(query, elapsedNanos);
+      }
+      return cursor;
+    }
+
+    // SQLite takes over the listener of the signal it is given, so it gets a signal of its own
+    // which both the caller and the watchdog cancel.
+    @NonNull final CancellationSignal querySignal = new CancellationSignal();
+    if (signal != null) {
+      signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+        @Override public void onCancel() {
+          querySignal.cancel();
+        }
+      });
+    }
+    @NonNull final AtomicInteger state = new AtomicInteger(RUNNING);
+    @NonNull final Disposable watchdog = scheduler.scheduleDirect(new Runnable() {
+      @Override public void run() {
+        if (state.compareAndSet(RUNNING, EXPIRED)) {
+          querySignal.cancel();
+        }
+      }
+    }, timeoutNanos, NANOSECONDS);
+    @Nullable Cursor cursor = null;
+    try {
+      cursor = db.query(query, querySignal);
+      cursor.getCount();
+      if (state.compareAndSet(RUNNING, FINISHED)) {
+        return cursor;
+      }
+      // Expired as the first window was filled: the signal is cancelled, which would fail the
+      // later windows.
+      cursor.close();
+      throw timedOut(query, System.nanoTime() - startNanos);
+    } catch (OperationCanceledException e) {
+      if (cursor != null) {
+        cursor.close();
+      }
+      if (!state.compareAndSet(RUNNING, FINISHED)) {
+        throw timedOut(query, System.nanoTime() - startNanos);
+      }
+      throw e;
+    } finally {
+      watchdog.dispose();
+    }
+  }
+
+  @NonNull private QueryTimeoutException timedOut(@NonNull SupportSQLiteQuery query,
+                                                  long elapsedNanos) {
+    final long elapsedMillis = NANOSECONDS.toMillis(elapsedNanos);
+    if (listener != null) {
+      listener.onQueryTimeout(query.getSql(), argsOf(query), elapsedMillis);
+    }
+    return new QueryTimeoutException(
+        "Query timed out after " + elapsedMillis + "ms: " + query.getSql());
+  }
+
+  /** The arguments bound to {@code query}, in order. */
+  @NonNull static List<Object> argsOf(@NonNull SupportSQLiteQuery query) {
+    @NonNull final ArgsRecorder recorder = new ArgsRecorder(query.getArgCount());
+    query.bindTo(recorder);
+    return Collections.unmodifiableList(recorder.args);
+  }
+
+  static final class ArgsRecorder implements SupportSQLiteProgram {
+    @NonNull final List<Object> args;
+
+    ArgsRecorder(int count) {
+      args = new ArrayList<>(Collections.nCopies(count, null));
+    }
+
+    @Override public void bindNull(int index) {
+      set(index, null);
+    }
+
+    @Override public void bindLong(int index, long value) {
+      set(index, value);
+    }
+
+    @Override public void bindDouble(int index, double value) {
+      set(index, value);
+    }
+
+    @Override public void bindString(int index, @NonNull String value) {
+      set(index, value);
+    }
+
+    @Override public void bindBlob(int index, @NonNull byte[] value) {
+      set(index, value);
+    }
+
+    @Override public void clearBindings() {
+      Collections.fill(args, null);
+    }
+
+    @Override public void close() {
+    }
+
+    private void set(int index, @Nullable Object value) {
+      // Bind indices start at 1.
+      while (args.size() < index) {
+        args.add(null);
+      }
+      args.set(index - 1, value);
+    }
+  }
+}
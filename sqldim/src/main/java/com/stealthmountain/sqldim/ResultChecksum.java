@@ -0,0 +1,66 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A 64-bit FNV-1a checksum of the column types and values of every row of a result set, used to
+ * tell whether a query returned the same rows as its previous run. It is computed by
+ * {@link CursorSnapshot#copyOf} in the same pass as the copy, starting from {@link #start}, mixing
+ * in each value in row order and ending with {@link #finish}.
+ */
+final class ResultChecksum {
+  private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+
+  static long start(int columnCount) {
+    return mix(OFFSET_BASIS, columnCount);
+  }
+
+  /** Mixes in the type of a value, to be followed by the value itself unless it is null. */
+  static long mixType(long hash, int type) {
+    return mix(hash, type);
+  }
+
+  static long mixLong(long hash, long value) {
+    return mix(hash, value);
+  }
+
+  static long mixDouble(long hash, double value) {
+    return mix(hash, Double.doubleToLongBits(value));
+  }
+
+  static long mixBlob(long hash, @NonNull byte[] blob) {
+    hash = mix(hash, blob.length);
+    for (byte b : blob) {
+      hash = (hash ^ (b & 0xff)) * PRIME;
+    }
+    return hash;
+  }
+
+  static long mixString(long hash, @NonNull String string) {
+    final int length = string.length();
+    hash = mix(hash, length);
+    for (int i = 0; i < length; i++) {
+      final char c = string.charAt(i);
+      hash = (hash ^ (c & 0xff)) * PRIME;
+      hash = (hash ^ (c >>> 8)) * PRIME;
+    }
+    return hash;
+  }
+
+  static long finish(long hash, int rowCount) {
+    // Distinguishes results whose rows concatenate to the same values, like () and (null).
+    return mix(hash, rowCount);
+  }
+
+  private static long mix(long hash, long value) {
+    for (int shift = 0; shift < 64; shift += 8) {
+      hash = (hash ^ ((value >>> shift) & 0xff)) * PRIME;
+    }
+    return hash;
+  }
+
+  private ResultChecksum() {
+    throw new AssertionError("No instances.");
+  }
+}
@@ -0,0 +1,79 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+
+import java.util.Set;
+
+import io.reactivex.rxjava3.functions.BiFunction;
+import io.reactivex.rxjava3.functions.Function;
+
+/**
+ * Creates the mapper of the rows of a cursor, once per cursor, for the mapping operators such as
+ * {@link SqlDim.Query#mapToList(RowMapperFactory)}. Looking up the indices of the columns in
+ * {@link #create} leaves the mapper to read each row by index, instead of looking up every column
+ * by name on every row.
+ * <pre>{@code
+ * public static final RowMapperFactory<Item> MAPPER_FACTORY = new RowMapperFactory<Item>() {
+ *   public Function<Cursor, Item> create(Cursor cursor) {
+ *     final int id = cursor.getColumnIndexOrThrow("_id");
+ *     final int name = cursor.getColumnIndexOrThrow("name");
+ *     return new Function<Cursor, Item>() {
+ *       public Item apply(Cursor cursor) {
+ *         return new Item(cursor.getLong(id), cursor.getString(name));
+ *       }
+ *     };
+ *   }
+ * };
+ * }</pre>
+ * This is an abstract class rather than an interface so that a lambda passed to the overloads
+ * taking a {@link Function} mapper is never ambiguous.
+ */
+public abstract class RowMapperFactory<T> {
+  /**
+   * Returns the mapper of each row of {@code cursor}, called before any of its rows are mapped.
+   * The mapper may not return null.
+   */
+  @NonNull public abstract Function<Cursor, T> create(@NonNull Cursor cursor) throws Throwable;
+
+  /** A factory returning {@code mapper} for every cursor. */
+  @NonNull static <T> RowMapperFactory<T> of(@NonNull final Function<Cursor, T> mapper) {
+    return new RowMapperFactory<T>() {
+      @NonNull @Override public Function<Cursor, T> create(@NonNull Cursor cursor) {
+        return mapper;
+      }
+    };
+  }
+
+  /** Creates the mapper of the rows of a cursor of a marked query. */
+  abstract static class Marked<M, T> {
+    @NonNull abstract Function<Cursor, T> create(@NonNull Cursor cursor, @NonNull Set<M> markers)
+        throws Throwable;
+
+    /** Maps each row with {@code mapper} and the markers of its query. */
+    @NonNull static <M, T> Marked<M, T> of(@NonNull final BiFunction<Cursor, Set<M>, T> mapper) {
+      return new Marked<M, T>() {
+        @NonNull @Override
+        Function<Cursor, T> create(@NonNull Cursor cursor, @NonNull final Set<M> markers) {
+          return new Function<Cursor, T>() {
+            @Override public T apply(@NonNull Cursor cursor) throws Throwable {
+              return mapper.apply(cursor, markers);
+            }
+          };
+        }
+      };
+    }
+
+    /** Maps each row with a mapper from {@code factory}, which doesn't see the markers. */
+    @NonNull static <M, T> Marked<M, T> of(@NonNull final RowMapperFactory<T> factory) {
+      return new Marked<M, T>() {
+        @NonNull @Override
+        Function<Cursor, T> create(@NonNull Cursor cursor, @NonNull Set<M> markers)
+            throws Throwable {
+          return factory.create(cursor);
+        }
+      };
+    }
+  }
+}
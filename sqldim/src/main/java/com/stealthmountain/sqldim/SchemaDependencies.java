@@ -0,0 +1,220 @@
+package com.stealthmountain.sqldim;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import com.stealthmountain.sqldim.SqlTokens.Token;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The tables and views which change when a table changes, enabled with
+ * {@link SqlDim.Builder#cascadeTriggers}. A view depends on the tables and views it reads, a table
+ * with a foreign key which cascades, sets null or sets a default depends on the table it
+ * references, and the tables written by a SQL trigger depend on the table or view it fires on.
+ * <p>
+ * The dependencies are read from {@code sqlite_master} and {@code PRAGMA foreign_key_list} on
+ * first use, and kept until {@link #invalidate()} or until asked about another database, as when
+ * the helper has been closed and opened again. DimDatabase invalidates them when it runs DDL or
+ * sees a new {@link #version}.
+ */
+final class SchemaDependencies {
+  // The dependents of each lower-cased table or view name, named as in the schema.
+  @Nullable private Map<String, Set<String>> dependents;
+  // The database the dependents were read from.
+  @Nullable private SupportSQLiteDatabase readFrom;
+  // Incremented by invalidate, so that a read racing with it isn't kept.
+  private long generation;
+  // A compiled PRAGMA schema_version, taken by the thread running it so that no thread waits for
+  // it while holding the database, or null while taken.
+  @NonNull private final AtomicReference<VersionStatement> versionStatement =
+      new AtomicReference<>();
+
+  /**
+   * Returns the tables and views which depend, directly or not, on one of {@code tables}, which
+   * may include some of {@code tables} themselves.
+   */
+  @NonNull Set<String> dependentsOf(@NonNull SupportSQLiteDatabase db,
+                                    @NonNull Set<String> tables) {
+    @NonNull final Map<String, Set<String>> dependents = dependents(db);
+    if (dependents.isEmpty()) {
+      return Collections.emptySet();
+    }
+    @NonNull final Set<String> result = new LinkedHashSet<>();
+    @NonNull final Set<String> visited = new LinkedHashSet<>();
+    @NonNull final ArrayDeque<String> pending = new ArrayDeque<>();
+    for (String table : tables) {
+      pending.add(normalize(table));
+    }
+    while (!pending.isEmpty()) {
+      @NonNull final String table = pending.remove();
+      if (!visited.add(table)) {
+        continue;
+      }
+      @Nullable final Set<String> direct = dependents.get(table);
+      if (direct != null) {
+        for (String dependent : direct) {
+          result.add(dependent);
+          pending.add(normalize(dependent));
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Forgets the dependencies, to be read again on next use, after the schema has changed. */
+  synchronized void invalidate() {
+    generation++;
+    dependents = null;
+    readFrom = null;
+  }
+
+  @NonNull private Map<String, Set<String>> dependents(@NonNull SupportSQLiteDatabase db) {
+    final long generation;
+    synchronized (this) {
+      if (dependents != null && readFrom == db) {
+        return dependents;
+      }
+      generation = this.generation;
+    }
+    // The schema is read without holding the lock, as the database may be busy with a
+    // transaction on a thread waiting for it.
+    @NonNull final Map<String, Set<String>> dependents = read(db);
+    synchronized (this) {
+      if (generation == this.generation) {
+        this.dependents = dependents;
+        readFrom = db;
+      }
+    }
+    return dependents;
+  }
+
+  @NonNull static Map<String, Set<String>> read(@NonNull SupportSQLiteDatabase db) {
+    @NonNull final Map<String, Set<String>> dependents = new HashMap<>();
+    @NonNull final List<String> tables = new ArrayList<>();
+    @NonNull final Cursor cursor =
+        db.query("SELECT type, name, tbl_name, sql FROM sqlite_master WHERE sql NOT NULL");
+    try {
+      while (cursor.moveToNext()) {
+        @NonNull final String type = cursor.getString(0);
+        @NonNull final String name = cursor.getString(1);
+        @NonNull final List<Token> tokens = SqlTokens.of(cursor.getString(3));
+        if ("table".equals(type)) {
+          if (!(tokens.size() > 1 && tokens.get(1).isKeyword("virtual"))) {
+            tables.add(name);
+          }
+        } else if ("view".equals(type)) {
+          for (String table : TableAnalyzer.readTables(tokens)) {
+            addDependent(dependents, table, name);
+          }
+        } else if ("trigger".equals(type)) {
+          @NonNull final String table = cursor.getString(2);
+          for (String written : TableAnalyzer.writtenTables(body(tokens))) {
+            addDependent(dependents, table, written);
+          }
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+
+    for (String table : tables) {
+      @NonNull final Cursor foreignKeys =
+          db.query("PRAGMA foreign_key_list(\"" + table.replace("\"", "\"\"") + "\")");
+      try {
+        final int parentIndex = foreignKeys.getColumnIndexOrThrow("table");
+        final int onUpdateIndex = foreignKeys.getColumnIndexOrThrow("on_update");
+        final int onDeleteIndex = foreignKeys.getColumnIndexOrThrow("on_delete");
+        while (foreignKeys.moveToNext()) {
+          if (changesChild(foreignKeys.getString(onUpdateIndex))
+              || changesChild(foreignKeys.getString(onDeleteIndex))) {
+            addDependent(dependents, foreignKeys.getString(parentIndex), table);
+          }
+        }
+      } finally {
+        foreignKeys.close();
+      }
+    }
+    return dependents;
+  }
+
+  /**
+   * Returns {@code PRAGMA schema_version} of {@code db}, read with a statement compiled once per
+   * database rather than with a cursor per call. A thread finding the statement in use by another
+   * compiles one of its own.
+   */
+  long version(@NonNull SupportSQLiteDatabase db) {
+    @Nullable VersionStatement statement = versionStatement.getAndSet(null);
+    if (statement == null || statement.db != db) {
+      if (statement != null) {
+        BulkStatements.closeQuietly(statement.statement);
+      }
+      statement = new VersionStatement(db, db.compileStatement("PRAGMA schema_version"));
+    }
+    final long version;
+    try {
+      version = statement.statement.simpleQueryForLong();
+    } catch (RuntimeException e) {
+      BulkStatements.closeQuietly(statement.statement);
+      throw e;
+    }
+    if (!versionStatement.compareAndSet(null, statement)) {
+      BulkStatements.closeQuietly(statement.statement);
+    }
+    return version;
+  }
+
+  /** The statements between the {@code BEGIN} and {@code END} of a trigger. */
+  @NonNull private static List<Token> body(@NonNull List<Token> tokens) {
+    for (int i = 0; i < tokens.size(); i++) {
+      if (tokens.get(i).isKeyword("begin")) {
+        return tokens.subList(i + 1, tokens.size());
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  private static boolean changesChild(@Nullable String action) {
+    return "CASCADE".equalsIgnoreCase(action)
+        || "SET NULL".equalsIgnoreCase(action)
+        || "SET DEFAULT".equalsIgnoreCase(action);
+  }
+
+  private static void addDependent(@NonNull Map<String, Set<String>> dependents,
+                                   @NonNull String table, @NonNull String dependent) {
+    @NonNull final String key = normalize(table);
+    @Nullable Set<String> set = dependents.get(key);
+    if (set == null) {
+      set = new LinkedHashSet<>();
+      dependents.put(key, set);
+    }
+    set.add(dependent);
+  }
+
+  @NonNull static String normalize(@NonNull String table) {
+    return table.toLowerCase(Locale.US);
+  }
+
+  private static final class VersionStatement {
+    @NonNull final SupportSQLiteDatabase db;
+    @NonNull final SupportSQLiteStatement statement;
+
+    VersionStatement(@NonNull SupportSQLiteDatabase db, @NonNull SupportSQLiteStatement statement) {
+      this.db = db;
+      this.statement = statement;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.functions.Action;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.functions.Supplier;
+
+/**
+ * Hands out one reference-counted {@link Observable} per {@link QueryKey}, so identical observable
+ * queries share a single trigger subscription and a single execution per trigger.
+ * <p>
+ * The shared stream replays its latest item to late subscribers, as returned by
+ * {@link Factory#replayed}. Each item is tagged with its position in the stream, so an item is
+ * told apart as a replay by having been emitted before the subscription, rather than by being
+ * the first one the subscriber sees.
+ * <p>
+ * An entry counts its subscribers under the registry's lock, and is removed under that same lock
+ * when the count drops to zero, so a subscriber can never join an entry which is being removed.
+ * The next subscriber for the same key starts a new one.
+ */
+final class SharedQueries<T> {
+  interface Factory<T> {
+    @NonNull Observable<T> create();
+
+    /**
+     * Returns {@code item} as replayed to a late subscriber, which should not see what only
+     * concerned the subscribers at the time it was emitted, such as the markers of a write.
+     */
+    @NonNull T replayed(@NonNull T item);
+  }
+
+  @NonNull private final Map<QueryKey, Entry> entries = new HashMap<>();
+
+  @NonNull Observable<T> get(@NonNull final QueryKey key, @NonNull final Factory<T> factory) {
+    return Observable.defer(new Supplier<Observable<T>>() {
+      @NonNull @Override public Observable<T> get() {
+        @NonNull final Entry entry = acquire(key, factory);
+        return entry.subscribe().doFinally(entry);
+      }
+    });
+  }
+
+  @NonNull private Entry acquire(@NonNull QueryKey key, @NonNull Factory<T> factory) {
+    synchronized (this) {
+      @Nullable Entry entry = entries.get(key);
+      if (entry == null) {
+        entry = new Entry(key, factory);
+        entries.put(key, entry);
+      }
+      entry.subscribers++;
+      return entry;
+    }
+  }
+
+  int size() {
+    synchronized (this) {
+      return entries.size();
+    }
+  }
+
+  private final class Entry implements Action {
+    @NonNull private final QueryKey key;
+    @NonNull private final Factory<T> factory;
+    @NonNull private final Observable<Tagged<T>> shared;
+    // Guarded by SharedQueries.this.
+    int subscribers;
+    // The tag of the latest item, set before the replay buffer holds it. Only written by the
+    // shared stream, whose items are emitted one at a time.
+    volatile long lastTag;
+
+    Entry(@NonNull QueryKey key, @NonNull Factory<T> factory) {
+      this.key = key;
+      this.factory = factory;
+      this.shared = factory.create()
+          .map(new Function<T, Tagged<T>>() {
+            @NonNull @Override public Tagged<T> apply(@NonNull T item) {
+              final long tag = lastTag + 1;
+              lastTag = tag;
+              return new Tagged<>(item, tag);
+            }
+          })
+          .replay(1)
+          .refCount();
+    }
+
+    /**
+     * The shared stream, whose items emitted before subscribing are passed through
+     * {@link Factory#replayed}. An item emitted while subscribing may arrive first, or after the
+     * replay of an earlier one, and is passed on as it is.
+     */
+    @NonNull Observable<T> subscribe() {
+      final long subscribedAt = lastTag;
+      return shared.map(new Function<Tagged<T>, T>() {
+        @NonNull @Override public T apply(@NonNull Tagged<T> tagged) {
+          return tagged.tag <= subscribedAt ? factory.replayed(tagged.item) : tagged.item;
+        }
+      });
+    }
+
+    @Override public void run() {
+      synchronized (SharedQueries.this) {
+        // A newer entry may have taken this one's place after it terminated.
+        if (--subscribers == 0 && entries.get(key) == this) {
+          entries.remove(key);
+        }
+      }
+    }
+  }
+
+  private static final class Tagged<T> {
+    @NonNull final T item;
+    // The position of the item in the shared stream, from 1.
+    final long tag;
+
+    Tagged(@NonNull T item, long tag) {
+      this.item = item;
+      this.tag = tag;
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.stealthmountain.sqldim;
 import android.content.ContentResolver;
 import android.database.Cursor;
 import android.os.Build;
+import android.os.CancellationSignal;
 import android.util.Log;
 
 import androidx.annotation.CheckResult;
@@ -29,20 +30,23 @@ import androidx.sqlite.db.SupportSQLiteOpenHelper;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableEmitter;
 import io.reactivex.rxjava3.core.ObservableOnSubscribe;
 import io.reactivex.rxjava3.core.ObservableOperator;
-import io.reactivex.rxjava3.core.ObservableSource;
 import io.reactivex.rxjava3.core.ObservableTransformer;
 import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.functions.BiFunction;
 import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 
 /**
  * A lightweight wrapper around {@link SupportSQLiteOpenHelper} which allows for continuously
@@ -60,55 +64,356 @@ public final class SqlDim<M> {
           return queryObservable;
         }
       };
+  @NonNull private static final ObservableTransformer<MarkedQuery<Object>, MarkedQuery<Object>>
+      DEFAULT_MARKED_TRANSFORMER =
+      new ObservableTransformer<MarkedQuery<Object>, MarkedQuery<Object>>() {
+        @NonNull @Override public Observable<MarkedQuery<Object>> apply(
+            @NonNull Observable<MarkedQuery<Object>> markedQueryObservable) {
+          return markedQueryObservable;
+        }
+      };
+
+  /** The marked query transformer applying nothing, the same instance for every marker type. */
+  @SuppressWarnings("unchecked") // It passes every item through as is, whatever its markers.
+  @NonNull static <M> ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>>
+      defaultMarkedTransformer() {
+    return (ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>>)
+        (ObservableTransformer<?, ?>) DEFAULT_MARKED_TRANSFORMER;
+  }
 
   public static final class Builder<M> {
     @NonNull private Logger logger = DEFAULT_LOGGER;
     @NonNull private ObservableTransformer<Query, Query> queryTransformer = DEFAULT_TRANSFORMER;
     @NonNull private ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>> markedQueryTransformer =
-            new ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>>() {
-              @NonNull @Override
-              public ObservableSource<MarkedQuery<M>> apply(Observable<MarkedQuery<M>> markedQueryObservable) {
-                return markedQueryObservable;
-              }
-            };
+        defaultMarkedTransformer();
+    private long triggerCoalescingWindowNanos = TriggerDispatcher.NO_COALESCING;
+    private boolean conflateQueries;
+    private boolean shareQueries;
+    private long resultCacheBytes;
+    private boolean inferQueryColumns;
+    private boolean cascadeTriggers;
+    private boolean captureChanges;
+    private long queryTimeoutNanos;
+    @NonNull private final Map<String, Long> queryTimeoutNanosBySql = new LinkedHashMap<>();
+    @Nullable private QueryTimeoutListener queryTimeoutListener;
+    private int groupCommitMaxWrites = WriteQueue.DEFAULT_MAX_WRITES;
+    private long groupCommitWindowNanos;
+    private int statementCacheSize;
 
     @CheckResult @NonNull
-    public Builder logger(@NonNull Logger logger) {
+    public Builder<M> logger(@NonNull Logger logger) {
       if (logger == null) throw new NullPointerException("logger == null");
       this.logger = logger;
       return this;
     }
 
+    /**
+     * Apply {@code queryTransformer} to every observable query. The check that a query isn't
+     * subscribed to in a transaction then runs as an operator of its own after it, instead of
+     * within the operator observing the query.
+     */
     @CheckResult @NonNull
-    public Builder queryTransformer(@NonNull ObservableTransformer<Query, Query> queryTransformer) {
+    public Builder<M> queryTransformer(
+        @NonNull ObservableTransformer<Query, Query> queryTransformer) {
       if (queryTransformer == null) throw new NullPointerException("queryTransformer == null");
       this.queryTransformer = queryTransformer;
       return this;
     }
 
+    /**
+     * Apply {@code markedQueryTransformer} to every observable marked query. As for
+     * {@link #queryTransformer}, the transaction check then runs as an operator of its own.
+     */
     @CheckResult @NonNull
-    public Builder markedQueryTransformer(@NonNull ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>> markedQueryTransformer) {
-      if (markedQueryTransformer == null) throw new NullPointerException("markedQueryTransformer == null");
+    public Builder<M> markedQueryTransformer(
+        @NonNull ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>> markedQueryTransformer) {
+      if (markedQueryTransformer == null) {
+        throw new NullPointerException("markedQueryTransformer == null");
+      }
       this.markedQueryTransformer = markedQueryTransformer;
       return this;
     }
 
+    /**
+     * Merge the triggers of writes made outside of a transaction which arrive within
+     * {@code window} of each other into a single trigger for the union of their tables. Marked
+     * queries receive the union of the merged triggers' markers.
+     * <p>
+     * A {@code window} of 0 only merges triggers which queue up while earlier triggers are still
+     * being dispatched, such as those from concurrent writers. A positive {@code window} delays
+     * every trigger by up to {@code window} on the {@link Scheduler} supplied to
+     * {@link #wrapDatabaseHelper}.
+     */
+    @CheckResult @NonNull
+    public Builder<M> coalesceTriggers(long window, @NonNull TimeUnit unit) {
+      if (window < 0) throw new IllegalArgumentException("window < 0");
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.triggerCoalescingWindowNanos = unit.toNanos(window);
+      return this;
+    }
+
+    /**
+     * Conflate the queries emitted to each subscriber of an observable query. While a query is
+     * being delivered on the {@link Scheduler} supplied to {@link #wrapDatabaseHelper}, at most
+     * one more query waits behind it. Triggers arriving in the meantime fold into the waiting
+     * query instead of queueing another run, and marked queries receive the union of the folded
+     * triggers' markers.
+     * <p>
+     * This assumes the query is run on that {@link Scheduler}, as the mapping operators on
+     * {@link QueryObservable} and {@link MarkedQueryObservable} do.
+     */
+    @CheckResult @NonNull
+    public Builder<M> conflateQueries(boolean conflateQueries) {
+      this.conflateQueries = conflateQueries;
+      return this;
+    }
+
+    /**
+     * Share execution between observable queries with the same SQL, bind arguments and tables.
+     * Each trigger runs such a query once, on the {@link Scheduler} supplied to
+     * {@link #wrapDatabaseHelper}, and every subscriber reads the same in-memory copy of its
+     * result set. The shared query is torn down when its last subscriber disposes.
+     * <p>
+     * Copying the result set trades memory for fewer executions, so this suits small result sets
+     * observed from several places at once. Each subscription also goes through the operators
+     * copying and sharing the results, on top of the single operator observing an unshared query.
+     */
+    @CheckResult @NonNull
+    public Builder<M> shareQueries(boolean shareQueries) {
+      this.shareQueries = shareQueries;
+      return this;
+    }
+
+    /**
+     * Cache the results of observable queries in memory, up to an estimated {@code maxBytes}. A
+     * query whose tables have not been triggered since it last ran is answered from the cache
+     * instead of the database, including for a new subscriber. Writes made around this library
+     * must send a trigger, as they must for observable queries to see them. See
+     * {@link QueryCache} for eviction, statistics and trimming.
+     *
+     * @param maxBytes The maximum estimated size of the cached results, or 0 to disable caching.
+     */
+    @CheckResult @NonNull
+    public Builder<M> resultCache(long maxBytes) {
+      if (maxBytes < 0) throw new IllegalArgumentException("maxBytes < 0");
+      this.resultCacheBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * Infer the columns each observable query reads from its SQL, so that an update through
+     * {@link DimDatabase#update} only re-runs queries naming one of the updated columns. Queries
+     * selecting {@code *} or using a {@code NATURAL} join read every column.
+     * <p>
+     * Only enable this when updates change nothing but the columns in their {@code ContentValues}.
+     * A SQL trigger or generated column which changes other columns of the same table, or an
+     * update to the {@code INTEGER PRIMARY KEY} which reorders the results of a query not naming
+     * it, is not seen by queries which don't name an updated column.
+     */
+    @CheckResult @NonNull
+    public Builder<M> inferQueryColumns(boolean inferQueryColumns) {
+      this.inferQueryColumns = inferQueryColumns;
+      return this;
+    }
+
+    /**
+     * Extend every trigger to the tables and views which change along with its tables, according
+     * to the schema: views reading a triggered table or view, tables whose foreign keys cascade,
+     * set null or set a default when a triggered table changes, and tables written by SQL triggers
+     * on a triggered table or view. Queries then only need to name the tables and views they read.
+     * <p>
+     * The dependencies are read from {@code sqlite_master} on the first trigger, and read again
+     * after {@link DimDatabase#execute} runs a {@code CREATE}, {@code ALTER} or {@code DROP}, or
+     * after the database is closed and opened again. Schema changes made any other way, such as in
+     * migrations or through {@link DimDatabase#getWritableDatabase()} directly, are seen by the
+     * next trigger, each of which checks {@code PRAGMA schema_version} with a statement compiled
+     * once: once per transaction, or per write outside of one. Tables changed as a dependency are
+     * changed as a whole, in every column.
+     */
+    @CheckResult @NonNull
+    public Builder<M> cascadeTriggers(boolean cascadeTriggers) {
+      this.cascadeTriggers = cascadeTriggers;
+      return this;
+    }
+
+    /**
+     * Capture the rows changed by writes the library can't see, such as those through
+     * {@link DimDatabase#execute}, through {@link DimDatabase#getWritableDatabase()} directly, or
+     * by others sharing the {@link SupportSQLiteOpenHelper}. Temporary SQL triggers record the
+     * table and rowid of each changed row. They only last as long as the connection, and are
+     * installed by {@link DimDatabase#installChangeCapture}, meant to be called from the helper's
+     * open callback; otherwise rows changed before the first notification of captured changes are
+     * not captured.
+     * <p>
+     * Captured changes are sent to queries when a transaction begun with
+     * {@link DimDatabase#newTransaction()} commits, along with each write method of
+     * {@link DimDatabase} called outside such a transaction, after {@link DimDatabase#execute},
+     * and when {@link DimDatabase#triggerCapturedChanges()} is called. Writes made around this
+     * library, through {@link DimDatabase#getWritableDatabase()} or another library, aren't sent
+     * when they commit: what they captured waits for the next of those notifications, so call
+     * {@link DimDatabase#triggerCapturedChanges()} after them if no write through this library
+     * follows.
+     * <p>
+     * Recording each changed row costs a write to a temporary table, and each notification a read
+     * and a delete of it. Captured changes are to every column of their rows, so updates to a
+     * table no longer skip queries reading other columns of it. Tables created later are captured
+     * from the next notification on.
+     */
+    @CheckResult @NonNull
+    public Builder<M> captureChanges(boolean captureChanges) {
+      this.captureChanges = captureChanges;
+      return this;
+    }
+
+    /**
+     * Fail queries run for longer than {@code timeout} with a {@link QueryTimeoutException}, after
+     * reporting them to the {@linkplain #queryTimeoutListener listener}. On API 16 and up a
+     * watchdog on {@link Schedulers#computation()} cancels the query once its time is up, which
+     * frees its connection; on older versions the query fails once it finishes.
+     * <p>
+     * The timeout covers running a query until its cursor has filled its first window. Filling
+     * the later windows of a large result set, as the cursor moves past the first one, is not
+     * bounded. Queries whose SQL has a timeout of its own, set with
+     * {@link #queryTimeout(String, long, TimeUnit)}, use that one instead.
+     *
+     * @param timeout The maximum time a query may run, or 0 for no limit.
+     */
+    @CheckResult @NonNull
+    public Builder<M> queryTimeout(long timeout, @NonNull TimeUnit unit) {
+      if (timeout < 0) throw new IllegalArgumentException("timeout < 0");
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.queryTimeoutNanos = unit.toNanos(timeout);
+      return this;
+    }
+
+    /**
+     * Like {@link #queryTimeout(long, TimeUnit)}, for the queries whose SQL equals {@code sql}.
+     * This overrides the timeout of every other query, either way.
+     *
+     * @param timeout The maximum time the query may run, or 0 for no limit.
+     */
+    @CheckResult @NonNull
+    public Builder<M> queryTimeout(@NonNull String sql, long timeout, @NonNull TimeUnit unit) {
+      if (sql == null) throw new NullPointerException("sql == null");
+      if (timeout < 0) throw new IllegalArgumentException("timeout < 0");
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.queryTimeoutNanosBySql.put(sql, unit.toNanos(timeout));
+      return this;
+    }
+
+    /**
+     * Report queries which ran for longer than their {@linkplain #queryTimeout timeout} to
+     * {@code listener}, on the thread which ran the query, before they fail.
+     */
+    @CheckResult @NonNull
+    public Builder<M> queryTimeoutListener(@NonNull QueryTimeoutListener listener) {
+      if (listener == null) throw new NullPointerException("listener == null");
+      this.queryTimeoutListener = listener;
+      return this;
+    }
+
+    /**
+     * Commit the asynchronous writes made with {@link DimDatabase#insertAsync} and the like in
+     * groups of up to {@code maxWrites}, one transaction and one trigger per group, instead of one
+     * transaction per write. The first write queued while the writer is idle waits up to
+     * {@code window} for others to join its group, or less once the group is full. Writes queued
+     * while a group commits form the next groups without waiting.
+     * <p>
+     * Each write completes or fails on its own once its group has committed, as it would on its
+     * own. By default groups hold up to 64 writes, with no window.
+     *
+     * @param maxWrites The maximum number of writes committed together, or 1 to commit each write
+     * on its own.
+     */
+    @CheckResult @NonNull
+    public Builder<M> groupCommit(int maxWrites, long window, @NonNull TimeUnit unit) {
+      if (maxWrites < 1) throw new IllegalArgumentException("maxWrites < 1");
+      if (window < 0) throw new IllegalArgumentException("window < 0");
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.groupCommitMaxWrites = maxWrites;
+      this.groupCommitWindowNanos = unit.toNanos(window);
+      return this;
+    }
+
+    /**
+     * Keep up to {@code maxStatements} compiled statements for reuse by the writes of
+     * {@link DimDatabase} such as {@link DimDatabase#insert} and {@link DimDatabase#update}, and by
+     * {@link DimDatabase#queryForLong} and {@link DimDatabase#queryForString}. Repeating one of
+     * them then binds and executes the statement compiled the first time instead of compiling it
+     * again. The least recently used statement is closed once there are more. Disabled by default.
+     * <p>
+     * The cache is emptied after DDL run through {@link DimDatabase#execute}. SQLite compiles a
+     * cached statement again when it finds the schema changed by other DDL, so writes add no
+     * schema check of their own.
+     *
+     * @see DimDatabase#getStatementCache()
+     */
+    @CheckResult @NonNull
+    public Builder<M> statementCache(int maxStatements) {
+      if (maxStatements < 0) throw new IllegalArgumentException("maxStatements < 0");
+      this.statementCacheSize = maxStatements;
+      return this;
+    }
+
     @CheckResult @NonNull
     public SqlDim<M> build() {
-      return new SqlDim<>(logger, queryTransformer, markedQueryTransformer);
+      return new SqlDim<>(logger, queryTransformer, markedQueryTransformer,
+          triggerCoalescingWindowNanos, conflateQueries, shareQueries, resultCacheBytes,
+          inferQueryColumns, cascadeTriggers, captureChanges, queryTimeoutNanos,
+          Collections.unmodifiableMap(new LinkedHashMap<>(queryTimeoutNanosBySql)),
+          queryTimeoutListener, groupCommitMaxWrites, groupCommitWindowNanos, statementCacheSize);
     }
   }
 
   @NonNull final Logger logger;
   @NonNull final ObservableTransformer<Query, Query> queryTransformer;
   @NonNull final ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>> markedQueryTransformer;
+  final long triggerCoalescingWindowNanos;
+  final boolean conflateQueries;
+  final boolean shareQueries;
+  final long resultCacheBytes;
+  final boolean inferQueryColumns;
+  final boolean cascadeTriggers;
+  final boolean captureChanges;
+  final long queryTimeoutNanos;
+  @NonNull final Map<String, Long> queryTimeoutNanosBySql;
+  @Nullable final QueryTimeoutListener queryTimeoutListener;
+  final int groupCommitMaxWrites;
+  final long groupCommitWindowNanos;
+  final int statementCacheSize;
 
   SqlDim(@NonNull Logger logger,
          @NonNull ObservableTransformer<Query, Query> queryTransformer,
-         @NonNull ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>> markedQueryTransformer) {
+         @NonNull ObservableTransformer<MarkedQuery<M>, MarkedQuery<M>> markedQueryTransformer,
+         long triggerCoalescingWindowNanos,
+         boolean conflateQueries,
+         boolean shareQueries,
+         long resultCacheBytes,
+         boolean inferQueryColumns,
+         boolean cascadeTriggers,
+         boolean captureChanges,
+         long queryTimeoutNanos,
+         @NonNull Map<String, Long> queryTimeoutNanosBySql,
+         @Nullable QueryTimeoutListener queryTimeoutListener,
+         int groupCommitMaxWrites,
+         long groupCommitWindowNanos,
+         int statementCacheSize) {
     this.logger = logger;
     this.queryTransformer = queryTransformer;
     this.markedQueryTransformer = markedQueryTransformer;
+    this.triggerCoalescingWindowNanos = triggerCoalescingWindowNanos;
+    this.conflateQueries = conflateQueries;
+    this.shareQueries = shareQueries;
+    this.resultCacheBytes = resultCacheBytes;
+    this.inferQueryColumns = inferQueryColumns;
+    this.cascadeTriggers = cascadeTriggers;
+    this.captureChanges = captureChanges;
+    this.queryTimeoutNanos = queryTimeoutNanos;
+    this.queryTimeoutNanosBySql = queryTimeoutNanosBySql;
+    this.queryTimeoutListener = queryTimeoutListener;
+    this.groupCommitMaxWrites = groupCommitMaxWrites;
+    this.groupCommitWindowNanos = groupCommitWindowNanos;
+    this.statementCacheSize = statementCacheSize;
   }
 
   /**
@@ -126,13 +431,36 @@ public final class SqlDim<M> {
   @CheckResult @NonNull public DimDatabase<M> wrapDatabaseHelper(
       @NonNull SupportSQLiteOpenHelper helper,
       @NonNull Scheduler scheduler) {
-    return new DimDatabase<M>(
-            helper,
-            logger,
-            scheduler,
-            queryTransformer,
-            markedQueryTransformer
-    );
+    return new DimDatabase<M>(helper, this, scheduler, null);
+  }
+
+  /**
+   * Wrap a {@link SupportSQLiteOpenHelper} for observable queries read from a pool of connections.
+   * <p>
+   * Write-ahead logging is enabled on {@code helper}, so reads run in parallel with each other and
+   * with a write, each on a connection of its own. Items from
+   * {@link DimDatabase#createQuery(String, String, Object...)} are emitted on a pool of
+   * {@code readers} threads dedicated to the database, so the re-queries of different
+   * subscriptions spread across the connections while each subscription still receives its
+   * queries in order. Writes are serialized by SQLite, and can be kept off the readers on
+   * {@linkplain DimDatabase#getWriteScheduler() the writer thread}.
+   * <p>
+   * The framework caps the connections of a database, typically at 4. Readers beyond that wait
+   * for a connection.
+   * <p>
+   * The reader threads belong to the returned database and are shut down by
+   * {@link DimDatabase#close()}, and started again if it is used afterwards.
+   *
+   * @param readers The number of threads running observable queries.
+   * @see #wrapDatabaseHelper(SupportSQLiteOpenHelper, Scheduler)
+   */
+  @CheckResult @NonNull public DimDatabase<M> wrapDatabaseHelper(
+      @NonNull SupportSQLiteOpenHelper helper, int readers) {
+    if (readers < 1) throw new IllegalArgumentException("readers < 1");
+    helper.setWriteAheadLoggingEnabled(true);
+    @NonNull final DatabaseSchedulers.Pool readScheduler =
+        new DatabaseSchedulers.Pool(readers, "SqlDim reader");
+    return new DimDatabase<M>(helper, this, readScheduler, readScheduler);
   }
 
   /**
@@ -215,7 +543,7 @@ public final class SqlDim<M> {
      */
     @CheckResult @NonNull //
     public static <M, T> ObservableOperator<MarkedValue<M, T>, MarkedQuery<M>> mapToOne(@NonNull BiFunction<Cursor, Set<M>, T> mapper) {
-      return new MarkedQueryToOneOperator<>(mapper, null);
+      return new MarkedQueryToOneOperator<>(RowMapperFactory.Marked.of(mapper), null);
     }
 
     /**
@@ -236,7 +564,7 @@ public final class SqlDim<M> {
     public static <M, T> ObservableOperator<MarkedValue<M, T>, MarkedQuery<M>> mapToOneOrDefault(
             @NonNull BiFunction<Cursor, Set<M>, T> mapper, @NonNull T defaultValue) {
       if (defaultValue == null) throw new NullPointerException("defaultValue == null");
-      return new MarkedQueryToOneOperator<>(mapper, defaultValue);
+      return new MarkedQueryToOneOperator<>(RowMapperFactory.Marked.of(mapper), defaultValue);
     }
 
     /**
@@ -255,7 +583,7 @@ public final class SqlDim<M> {
     @CheckResult @NonNull //
     public static <M, T> ObservableOperator<MarkedValue<M, Optional<T>>, MarkedQuery<M>> mapToOptional(
             @NonNull BiFunction<Cursor, Set<M>, T> mapper) {
-      return new MarkedQueryToOptionalOperator<>(mapper);
+      return new MarkedQueryToOptionalOperator<>(RowMapperFactory.Marked.of(mapper));
     }
 
     /**
@@ -273,7 +601,7 @@ public final class SqlDim<M> {
     @CheckResult @NonNull
     public static <M, T> ObservableOperator<MarkedValue<M, List<T>>, MarkedQuery<M>> mapToList(
         @NonNull BiFunction<Cursor, Set<M>, T> mapper) {
-      return new MarkedQueryToListOperator<>(mapper, ArrayList::new);
+      return new MarkedQueryToListOperator<>(RowMapperFactory.Marked.of(mapper), ArrayList::new);
     }
 
     /**
@@ -292,7 +620,94 @@ public final class SqlDim<M> {
     @CheckResult @NonNull
     public static <M, L extends List<T>, T> ObservableOperator<MarkedValue<M, L>, MarkedQuery<M>> mapToSpecificList(
         @NonNull BiFunction<Cursor, Set<M>, T> mapper, @NonNull NewList<L, T> newList) {
-      return new MarkedQueryToListOperator<>(mapper, newList);
+      return new MarkedQueryToListOperator<>(RowMapperFactory.Marked.of(mapper), newList);
+    }
+
+    /**
+     * Creates an {@linkplain ObservableOperator operator} which transforms a query to a
+     * {@link ListDiff} of {@code T} using {@code mapper}. Use with {@link Observable#lift}.
+     * <p>
+     * Each result is compared with the previous one by the ids of its rows, on the thread the
+     * query runs on, and emitted with the changes from the previous list.
+     * <p>
+     * This operator ignores {@code null} cursors returned from {@link #run()}.
+     *
+     * @param mapper Maps the current {@link Cursor} row and markers {@code M} to {@code T}. May not return null.
+     * @param id Returns a stable id, unique within the result, for a {@code T}. May not return
+     * null.
+     */
+    @CheckResult @NonNull
+    public static <M, T, K> ObservableOperator<MarkedValue<M, ListDiff<T>>, MarkedQuery<M>> mapToListDiff(
+        @NonNull BiFunction<Cursor, Set<M>, T> mapper, @NonNull Function<T, K> id) {
+      return new MarkedQueryToListDiffOperator<>(RowMapperFactory.Marked.of(mapper), id);
+    }
+
+    /**
+     * Like {@link #mapToOne(BiFunction)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor, which doesn't see the markers.
+     */
+    @CheckResult @NonNull
+    public static <M, T> ObservableOperator<MarkedValue<M, T>, MarkedQuery<M>> mapToOne(
+        @NonNull RowMapperFactory<T> mapperFactory) {
+      return new MarkedQueryToOneOperator<>(RowMapperFactory.Marked.<M, T>of(mapperFactory), null);
+    }
+
+    /**
+     * Like {@link #mapToOneOrDefault(BiFunction, Object)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor, which doesn't see the markers.
+     */
+    @SuppressWarnings("ConstantConditions") // Public API contract.
+    @CheckResult @NonNull
+    public static <M, T> ObservableOperator<MarkedValue<M, T>, MarkedQuery<M>> mapToOneOrDefault(
+        @NonNull RowMapperFactory<T> mapperFactory, @NonNull T defaultValue) {
+      if (defaultValue == null) throw new NullPointerException("defaultValue == null");
+      return new MarkedQueryToOneOperator<>(RowMapperFactory.Marked.<M, T>of(mapperFactory),
+          defaultValue);
+    }
+
+    /**
+     * Like {@link #mapToOptional(BiFunction)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor, which doesn't see the markers.
+     */
+    @RequiresApi(Build.VERSION_CODES.N) //
+    @CheckResult @NonNull //
+    public static <M, T> ObservableOperator<MarkedValue<M, Optional<T>>, MarkedQuery<M>>
+        mapToOptional(@NonNull RowMapperFactory<T> mapperFactory) {
+      return new MarkedQueryToOptionalOperator<>(RowMapperFactory.Marked.<M, T>of(mapperFactory));
+    }
+
+    /**
+     * Like {@link #mapToList(BiFunction)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor, which doesn't see the markers.
+     */
+    @CheckResult @NonNull
+    public static <M, T> ObservableOperator<MarkedValue<M, List<T>>, MarkedQuery<M>> mapToList(
+        @NonNull RowMapperFactory<T> mapperFactory) {
+      return new MarkedQueryToListOperator<>(RowMapperFactory.Marked.<M, T>of(mapperFactory),
+          ArrayList::new);
+    }
+
+    /**
+     * Like {@link #mapToSpecificList(BiFunction, NewList)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor, which doesn't see the markers.
+     */
+    @CheckResult @NonNull
+    public static <M, L extends List<T>, T> ObservableOperator<MarkedValue<M, L>, MarkedQuery<M>>
+        mapToSpecificList(@NonNull RowMapperFactory<T> mapperFactory,
+                          @NonNull NewList<L, T> newList) {
+      return new MarkedQueryToListOperator<>(RowMapperFactory.Marked.<M, T>of(mapperFactory),
+          newList);
+    }
+
+    /**
+     * Like {@link #mapToListDiff(BiFunction, Function)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor, which doesn't see the markers.
+     */
+    @CheckResult @NonNull
+    public static <M, T, K> ObservableOperator<MarkedValue<M, ListDiff<T>>, MarkedQuery<M>>
+        mapToListDiff(@NonNull RowMapperFactory<T> mapperFactory, @NonNull Function<T, K> id) {
+      return new MarkedQueryToListDiffOperator<>(RowMapperFactory.Marked.<M, T>of(mapperFactory),
+          id);
     }
 
     /**
@@ -334,6 +749,20 @@ public final class SqlDim<M> {
     @Nullable
     public abstract Cursor run();
 
+    /**
+     * Like {@link #run()}, but the query can be cancelled with {@code cancellationSignal} while it
+     * runs, throwing {@link android.os.OperationCanceledException}. The mapping operators cancel
+     * the query they are running when they are disposed.
+     * <p>
+     * Queries which can't be cancelled ignore the signal. This is the default.
+     */
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    @CheckResult @WorkerThread
+    @Nullable
+    public Cursor run(@NonNull CancellationSignal cancellationSignal) {
+      return run();
+    }
+
     /**
      * Execute the query on the underlying database and return an Observable of each row mapped to
      * {@code T} by {@code mapper}.
@@ -376,6 +805,32 @@ public final class SqlDim<M> {
         }
       });
     }
+
+    /**
+     * Like {@link #asRows(NonNullBiFunction)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for the cursor, which doesn't see the markers.
+     */
+    @CheckResult @NonNull
+    public final <T> Observable<T> asRows(@NonNull final RowMapperFactory<T> mapperFactory) {
+      return Observable.create(new ObservableOnSubscribe<T>() {
+        @Override public void subscribe(@NonNull ObservableEmitter<T> e) throws Throwable {
+          @Nullable final Cursor cursor = run();
+          if (cursor != null) {
+            try {
+              @NonNull final Function<Cursor, T> mapper = mapperFactory.create(cursor);
+              while (cursor.moveToNext() && !e.isDisposed()) {
+                e.onNext(Objects.requireNonNull(mapper.apply(cursor)));
+              }
+            } finally {
+              cursor.close();
+            }
+          }
+          if (!e.isDisposed()) {
+            e.onComplete();
+          }
+        }
+      });
+    }
   }
 
   /** An executable query. */
@@ -394,7 +849,7 @@ public final class SqlDim<M> {
      */
     @CheckResult @NonNull //
     public static <T> ObservableOperator<T, Query> mapToOne(@NonNull Function<Cursor, T> mapper) {
-      return new QueryToOneOperator<>(mapper, null);
+      return new QueryToOneOperator<>(RowMapperFactory.of(mapper), null);
     }
 
     /**
@@ -415,7 +870,7 @@ public final class SqlDim<M> {
     public static <T> ObservableOperator<T, Query> mapToOneOrDefault(
         @NonNull Function<Cursor, T> mapper, @NonNull T defaultValue) {
       if (defaultValue == null) throw new NullPointerException("defaultValue == null");
-      return new QueryToOneOperator<>(mapper, defaultValue);
+      return new QueryToOneOperator<>(RowMapperFactory.of(mapper), defaultValue);
     }
 
     /**
@@ -434,7 +889,7 @@ public final class SqlDim<M> {
     @CheckResult @NonNull //
     public static <T> ObservableOperator<Optional<T>, Query> mapToOptional(
         @NonNull Function<Cursor, T> mapper) {
-      return new QueryToOptionalOperator<>(mapper);
+      return new QueryToOptionalOperator<>(RowMapperFactory.of(mapper));
     }
 
     /**
@@ -452,7 +907,7 @@ public final class SqlDim<M> {
     @CheckResult @NonNull
     public static <T> ObservableOperator<List<T>, Query> mapToList(
         @NonNull Function<Cursor, T> mapper) {
-      return new QueryToListOperator<>(mapper, ArrayList::new);
+      return new QueryToListOperator<>(RowMapperFactory.of(mapper), ArrayList::new);
     }
 
     /**
@@ -471,7 +926,89 @@ public final class SqlDim<M> {
     @CheckResult @NonNull
     public static <L extends List<T>, T> ObservableOperator<L, Query> mapToSpecificList(
         @NonNull Function<Cursor, T> mapper, @NonNull NewList<L, T> newList) {
-      return new QueryToListOperator<>(mapper, newList);
+      return new QueryToListOperator<>(RowMapperFactory.of(mapper), newList);
+    }
+
+    /**
+     * Creates an {@linkplain ObservableOperator operator} which transforms a query to a
+     * {@link ListDiff} of {@code T} using {@code mapper}. Use with {@link Observable#lift}.
+     * <p>
+     * Each result is compared with the previous one by the ids of its rows, on the thread the
+     * query runs on, and emitted with the changes from the previous list.
+     * <p>
+     * This operator ignores {@code null} cursors returned from {@link #run()}.
+     *
+     * @param mapper Maps the current {@link Cursor} row to {@code T}. May not return null.
+     * @param id Returns a stable id, unique within the result, for a {@code T}. May not return
+     * null.
+     */
+    @CheckResult @NonNull
+    public static <T, K> ObservableOperator<ListDiff<T>, Query> mapToListDiff(
+        @NonNull Function<Cursor, T> mapper, @NonNull Function<T, K> id) {
+      return new QueryToListDiffOperator<>(RowMapperFactory.of(mapper), id);
+    }
+
+    /**
+     * Like {@link #mapToOne(Function)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor.
+     */
+    @CheckResult @NonNull
+    public static <T> ObservableOperator<T, Query> mapToOne(
+        @NonNull RowMapperFactory<T> mapperFactory) {
+      return new QueryToOneOperator<>(mapperFactory, null);
+    }
+
+    /**
+     * Like {@link #mapToOneOrDefault(Function, Object)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor.
+     */
+    @SuppressWarnings("ConstantConditions") // Public API contract.
+    @CheckResult @NonNull
+    public static <T> ObservableOperator<T, Query> mapToOneOrDefault(
+        @NonNull RowMapperFactory<T> mapperFactory, @NonNull T defaultValue) {
+      if (defaultValue == null) throw new NullPointerException("defaultValue == null");
+      return new QueryToOneOperator<>(mapperFactory, defaultValue);
+    }
+
+    /**
+     * Like {@link #mapToOptional(Function)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor.
+     */
+    @RequiresApi(Build.VERSION_CODES.N) //
+    @CheckResult @NonNull //
+    public static <T> ObservableOperator<Optional<T>, Query> mapToOptional(
+        @NonNull RowMapperFactory<T> mapperFactory) {
+      return new QueryToOptionalOperator<>(mapperFactory);
+    }
+
+    /**
+     * Like {@link #mapToList(Function)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor.
+     */
+    @CheckResult @NonNull
+    public static <T> ObservableOperator<List<T>, Query> mapToList(
+        @NonNull RowMapperFactory<T> mapperFactory) {
+      return new QueryToListOperator<>(mapperFactory, ArrayList::new);
+    }
+
+    /**
+     * Like {@link #mapToSpecificList(Function, NewList)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor.
+     */
+    @CheckResult @NonNull
+    public static <L extends List<T>, T> ObservableOperator<L, Query> mapToSpecificList(
+        @NonNull RowMapperFactory<T> mapperFactory, @NonNull NewList<L, T> newList) {
+      return new QueryToListOperator<>(mapperFactory, newList);
+    }
+
+    /**
+     * Like {@link #mapToListDiff(Function, Function)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for each cursor.
+     */
+    @CheckResult @NonNull
+    public static <T, K> ObservableOperator<ListDiff<T>, Query> mapToListDiff(
+        @NonNull RowMapperFactory<T> mapperFactory, @NonNull Function<T, K> id) {
+      return new QueryToListDiffOperator<>(mapperFactory, id);
     }
 
     /**
@@ -505,6 +1042,20 @@ public final class SqlDim<M> {
     @Nullable
     public abstract Cursor run();
 
+    /**
+     * Like {@link #run()}, but the query can be cancelled with {@code cancellationSignal} while it
+     * runs, throwing {@link android.os.OperationCanceledException}. The mapping operators cancel
+     * the query they are running when they are disposed.
+     * <p>
+     * Queries which can't be cancelled ignore the signal. This is the default.
+     */
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    @CheckResult @WorkerThread
+    @Nullable
+    public Cursor run(@NonNull CancellationSignal cancellationSignal) {
+      return run();
+    }
+
     /**
      * Execute the query on the underlying database and return an Observable of each row mapped to
      * {@code T} by {@code mapper}.
@@ -547,10 +1098,46 @@ public final class SqlDim<M> {
         }
       });
     }
+
+    /**
+     * Like {@link #asRows(NonNullFunction)}, mapping rows with a mapper created by
+     * {@code mapperFactory} for the cursor.
+     */
+    @CheckResult @NonNull
+    public final <T> Observable<T> asRows(@NonNull final RowMapperFactory<T> mapperFactory) {
+      return Observable.create(new ObservableOnSubscribe<T>() {
+        @Override public void subscribe(@NonNull ObservableEmitter<T> e) throws Throwable {
+          @Nullable final Cursor cursor = run();
+          if (cursor != null) {
+            try {
+              @NonNull final Function<Cursor, T> mapper = mapperFactory.create(cursor);
+              while (cursor.moveToNext() && !e.isDisposed()) {
+                e.onNext(Objects.requireNonNull(mapper.apply(cursor)));
+              }
+            } finally {
+              cursor.close();
+            }
+          }
+          if (!e.isDisposed()) {
+            e.onComplete();
+          }
+        }
+      });
+    }
   }
 
   /** A simple indirection for logging debug messages. */
   public interface Logger {
     void log(@NonNull String message);
   }
+
+  /** Receives the queries which ran for longer than their timeout. */
+  public interface QueryTimeoutListener {
+    /**
+     * @param sql The SQL of the query.
+     * @param args The arguments bound to the query, in order.
+     * @param elapsedMillis How long the query ran before it was cancelled or finished.
+     */
+    void onQueryTimeout(@NonNull String sql, @NonNull List<Object> args, long elapsedMillis);
+  }
 }
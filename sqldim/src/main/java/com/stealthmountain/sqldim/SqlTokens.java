@@ -0,0 +1,114 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits SQL into identifiers and punctuation, dropping whitespace, comments, string literals and
+ * numbers. This is enough to find the names a statement mentions without parsing its grammar.
+ */
+final class SqlTokens {
+  private SqlTokens() {
+    throw new AssertionError("No instances.");
+  }
+
+  static final class Token {
+    /** The name of an identifier, without its quotes, or a single punctuation character. */
+    @NonNull final String text;
+    final boolean identifier;
+    final boolean quoted;
+
+    Token(@NonNull String text, boolean identifier, boolean quoted) {
+      this.text = text;
+      this.identifier = identifier;
+      this.quoted = quoted;
+    }
+
+    /** True for an unquoted identifier matching {@code keyword}, which must be lower case. */
+    boolean isKeyword(@NonNull String keyword) {
+      return identifier && !quoted && text.equalsIgnoreCase(keyword);
+    }
+
+    boolean is(char punctuation) {
+      return !identifier && text.charAt(0) == punctuation;
+    }
+
+    @NonNull @Override public String toString() {
+      return text;
+    }
+  }
+
+  @NonNull static List<Token> of(@NonNull String sql) {
+    @NonNull final List<Token> tokens = new ArrayList<>();
+    final int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      final char c = sql.charAt(i);
+      if (c == '\'') {
+        i = skipQuoted(sql, i, c);
+      } else if (c == '"' || c == '`') {
+        final int end = skipQuoted(sql, i, c);
+        @NonNull final String quote = String.valueOf(c);
+        tokens.add(new Token(
+            sql.substring(i + 1, Math.max(i + 1, end - 1)).replace(quote + quote, quote),
+            true, true));
+        i = end;
+      } else if (c == '[') {
+        final int close = sql.indexOf(']', i + 1);
+        final int end = close < 0 ? length : close + 1;
+        tokens.add(new Token(sql.substring(i + 1, Math.max(i + 1, end - 1)), true, true));
+        i = end;
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        final int newline = sql.indexOf('\n', i);
+        i = newline < 0 ? length : newline + 1;
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        final int close = sql.indexOf("*/", i + 2);
+        i = close < 0 ? length : close + 2;
+      } else if (isIdentifierStart(c)) {
+        final int start = i;
+        do {
+          i++;
+        } while (i < length && isIdentifierPart(sql.charAt(i)));
+        tokens.add(new Token(sql.substring(start, i), true, false));
+      } else if (c >= '0' && c <= '9') {
+        // Numbers, including hexadecimal, fractional and exponent forms.
+        do {
+          i++;
+        } while (i < length && (isIdentifierPart(sql.charAt(i)) || sql.charAt(i) == '.'));
+      } else if (Character.isWhitespace(c)) {
+        i++;
+      } else {
+        tokens.add(new Token(String.valueOf(c), false, false));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  /** Returns the index after the quote closing the one at {@code start}, which may be doubled. */
+  private static int skipQuoted(@NonNull String sql, int start, char quote) {
+    final int length = sql.length();
+    int i = start + 1;
+    while (i < length) {
+      if (sql.charAt(i) == quote) {
+        if (i + 1 < length && sql.charAt(i + 1) == quote) {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return length;
+  }
+
+  private static boolean isIdentifierStart(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c > 0x7f;
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return isIdentifierStart(c) || c >= '0' && c <= '9' || c == '$';
+  }
+}
@@ -0,0 +1,179 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A cache of compiled statements keyed by their SQL, enabled with
+ * {@link SqlDim.Builder#statementCache}. The writes of {@link DimDatabase} and its scalar reads
+ * such as {@link DimDatabase#queryForLong} bind and execute a cached statement instead of having
+ * SQLite parse the statement again. At most {@link #maxSize()} statements are kept, evicting the
+ * least recently used first.
+ * <p>
+ * Statements belong to the database they were compiled on, so the cache is emptied when the
+ * helper opens another one, when {@link DimDatabase} executes a statement changing the schema,
+ * and when the database is closed. A statement whose tables were changed by other DDL, as run
+ * directly on the database, is compiled again by SQLite when it next runs.
+ */
+public final class StatementCache {
+  private final int maxSize;
+  // Statements not in use, least recently used first. A statement is removed while in use, so
+  // that its bindings are its user's alone.
+  @NonNull private final LinkedHashMap<String, SupportSQLiteStatement> statements =
+      new LinkedHashMap<>(16, 0.75f, true);
+  @Nullable private SupportSQLiteDatabase db;
+  private int hitCount;
+  private int missCount;
+  private int evictionCount;
+
+  StatementCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns a statement for {@code sql} compiled on {@code db}, for the caller's sole use until it
+   * is handed back with {@link #release}.
+   */
+  @NonNull SupportSQLiteStatement acquire(@NonNull SupportSQLiteDatabase db, @NonNull String sql) {
+    @Nullable List<SupportSQLiteStatement> stale = null;
+    synchronized (this) {
+      if (db != this.db) {
+        stale = removeAll();
+        this.db = db;
+      }
+      @Nullable final SupportSQLiteStatement statement = statements.remove(sql);
+      if (statement != null) {
+        hitCount++;
+        return statement;
+      }
+      missCount++;
+    }
+    close(stale);
+    return db.compileStatement(sql);
+  }
+
+  /** Hands back a statement from {@link #acquire} for others to use. */
+  void release(@NonNull SupportSQLiteDatabase db, @NonNull String sql,
+               @NonNull SupportSQLiteStatement statement) {
+    statement.clearBindings();
+    @NonNull final List<SupportSQLiteStatement> evicted = new ArrayList<>();
+    synchronized (this) {
+      if (db != this.db || statements.containsKey(sql)) {
+        evicted.add(statement);
+      } else {
+        statements.put(sql, statement);
+        @NonNull final Iterator<SupportSQLiteStatement> i = statements.values().iterator();
+        while (statements.size() > maxSize && i.hasNext()) {
+          evicted.add(i.next());
+          i.remove();
+          evictionCount++;
+        }
+      }
+    }
+    close(evicted);
+  }
+
+  /**
+   * Closes and evicts every cached statement. The statements in use are closed once released,
+   * rather than cached again.
+   */
+  public void evictAll() {
+    @NonNull final List<SupportSQLiteStatement> statements;
+    synchronized (this) {
+      statements = removeAll();
+      db = null;
+    }
+    close(statements);
+  }
+
+  @NonNull private List<SupportSQLiteStatement> removeAll() {
+    @NonNull final List<SupportSQLiteStatement> removed = new ArrayList<>(statements.values());
+    statements.clear();
+    return removed;
+  }
+
+  private static void close(@Nullable List<SupportSQLiteStatement> statements) {
+    if (statements != null) {
+      for (SupportSQLiteStatement statement : statements) {
+        BulkStatements.closeQuietly(statement);
+      }
+    }
+  }
+
+  /**
+   * Whether {@code sql} changes the schema, which leaves compiled statements with stale
+   * metadata. Only looks at the first keyword.
+   */
+  static boolean changesSchema(@NonNull String sql) {
+    final int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      final char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (sql.startsWith("--", i)) {
+        final int end = sql.indexOf('\n', i);
+        i = end < 0 ? length : end + 1;
+      } else if (sql.startsWith("/*", i)) {
+        final int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else {
+        break;
+      }
+    }
+    return sql.regionMatches(true, i, "CREATE", 0, 6)
+        || sql.regionMatches(true, i, "ALTER", 0, 5)
+        || sql.regionMatches(true, i, "DROP", 0, 4);
+  }
+
+  /** The number of statements not in use. */
+  public int size() {
+    synchronized (this) {
+      return statements.size();
+    }
+  }
+
+  /** The maximum number of statements kept. */
+  public int maxSize() {
+    return maxSize;
+  }
+
+  /** The number of times a statement was taken from the cache. */
+  public int hitCount() {
+    synchronized (this) {
+      return hitCount;
+    }
+  }
+
+  /** The number of times a statement was not in the cache and had to be compiled. */
+  public int missCount() {
+    synchronized (this) {
+      return missCount;
+    }
+  }
+
+  /** The number of statements closed to stay within {@link #maxSize()}. */
+  public int evictionCount() {
+    synchronized (this) {
+      return evictionCount;
+    }
+  }
+
+  @NonNull @Override public String toString() {
+    synchronized (this) {
+      final int accesses = hitCount + missCount;
+      final int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+      return String.format(Locale.US,
+          "StatementCache[size=%d,maxSize=%d,hits=%d,misses=%d,hitRate=%d%%,evictions=%d]",
+          statements.size(), maxSize, hitCount, missCount, hitPercent, evictionCount);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.SqlTokens.Token;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the tables a statement reads, from its {@code FROM} and {@code JOIN} clauses at any depth,
+ * and the tables it writes, from the targets of its {@code INSERT}, {@code REPLACE},
+ * {@code UPDATE} and {@code DELETE} clauses. Names of common table expressions and table-valued
+ * functions are not tables. Results are cached per SQL string, so each statement is only
+ * analyzed once.
+ */
+final class TableAnalyzer {
+  private static final int MAX_CACHED_STATEMENTS = 256;
+  // Words which end a table reference rather than alias it.
+  @NonNull private static final Set<String> NOT_ALIASES = new HashSet<>(Arrays.asList(
+      "as", "cross", "do", "except", "from", "full", "group", "having", "indexed", "inner",
+      "intersect", "join", "left", "limit", "natural", "not", "offset", "on", "order", "outer",
+      "returning", "right", "select", "set", "union", "using", "values", "where", "window"));
+
+  @NonNull private final Map<String, Set<String>> readTables = newCache();
+  @NonNull private final Map<String, Set<String>> writtenTables = newCache();
+
+  /** The tables {@code sql} reads, in the order they are first named. */
+  @NonNull Set<String> readTables(@NonNull String sql) {
+    synchronized (readTables) {
+      @Nullable Set<String> tables = readTables.get(sql);
+      if (tables == null) {
+        tables = Collections.unmodifiableSet(readTables(SqlTokens.of(sql)));
+        readTables.put(sql, tables);
+      }
+      return tables;
+    }
+  }
+
+  /** The tables {@code sql} inserts into, updates or deletes from. */
+  @NonNull Set<String> writtenTables(@NonNull String sql) {
+    synchronized (writtenTables) {
+      @Nullable Set<String> tables = writtenTables.get(sql);
+      if (tables == null) {
+        tables = Collections.unmodifiableSet(writtenTables(SqlTokens.of(sql)));
+        writtenTables.put(sql, tables);
+      }
+      return tables;
+    }
+  }
+
+  @NonNull static Set<String> readTables(@NonNull List<Token> tokens) {
+    @NonNull final Set<String> tables = new LinkedHashSet<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      @NonNull final Token token = tokens.get(i);
+      if (token.isKeyword("from")) {
+        addTableList(tokens, i + 1, true, tables);
+      } else if (token.isKeyword("join")) {
+        addTableList(tokens, i + 1, false, tables);
+      }
+    }
+    @NonNull final Set<String> commonTables = commonTableNames(tokens);
+    if (!commonTables.isEmpty()) {
+      for (Iterator<String> i = tables.iterator(); i.hasNext(); ) {
+        if (commonTables.contains(i.next().toLowerCase(Locale.US))) {
+          i.remove();
+        }
+      }
+    }
+    return tables;
+  }
+
+  @NonNull static Set<String> writtenTables(@NonNull List<Token> tokens) {
+    @NonNull final Set<String> tables = new LinkedHashSet<>();
+    int depth = 0;
+    for (int i = 0; i < tokens.size(); i++) {
+      @NonNull final Token token = tokens.get(i);
+      if (token.is('(')) {
+        depth++;
+      } else if (token.is(')')) {
+        depth--;
+      } else if (depth == 0) {
+        int table = -1;
+        if (token.isKeyword("insert") || token.isKeyword("replace")) {
+          int j = i + 1;
+          if (isKeyword(tokens, j, "or")) {
+            j += 2;
+          }
+          if (isKeyword(tokens, j, "into")) {
+            table = j + 1;
+          }
+        } else if (token.isKeyword("update")) {
+          // An upsert's "DO UPDATE SET" writes the table of its insert.
+          int j = i + 1;
+          if (isKeyword(tokens, j, "or")) {
+            j += 2;
+          }
+          if (!isKeyword(tokens, j, "set")) {
+            table = j;
+          }
+        } else if (token.isKeyword("delete") && isKeyword(tokens, i + 1, "from")) {
+          table = i + 2;
+        }
+        if (table >= 0) {
+          @Nullable final String name = qualifiedName(tokens, table);
+          if (name != null) {
+            tables.add(name);
+          }
+        }
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * Adds the tables named in the list of table references starting at {@code start}. Tables in
+   * subqueries are found by {@link #readTables(List)} reaching their own {@code FROM}.
+   */
+  private static void addTableList(@NonNull List<Token> tokens, int start, boolean list,
+                                   @NonNull Set<String> tables) {
+    final int size = tokens.size();
+    int i = start;
+    while (i < size) {
+      @NonNull final Token token = tokens.get(i);
+      if (token.is('(')) {
+        if (!isKeyword(tokens, i + 1, "select") && !isKeyword(tokens, i + 1, "with")
+            && !isKeyword(tokens, i + 1, "values")) {
+          // A parenthesized join, whose first table no FROM or JOIN precedes.
+          addTableList(tokens, i + 1, true, tables);
+        }
+        i = skipParentheses(tokens, i);
+      } else if (token.identifier) {
+        if (i + 2 < size && tokens.get(i + 1).is('.') && tokens.get(i + 2).identifier) {
+          i += 2;
+        }
+        if (i + 1 < size && tokens.get(i + 1).is('(')) {
+          // A table-valued function.
+          i = skipParentheses(tokens, i + 1);
+        } else {
+          tables.add(tokens.get(i).text);
+          i++;
+        }
+      } else {
+        return;
+      }
+
+      if (isKeyword(tokens, i, "as")) {
+        i += 2;
+      } else if (i < size && isAlias(tokens.get(i))) {
+        i++;
+      }
+      if (isKeyword(tokens, i, "indexed")) {
+        i += 3;
+      } else if (isKeyword(tokens, i, "not") && isKeyword(tokens, i + 1, "indexed")) {
+        i += 2;
+      }
+      if (!list || i >= size || !tokens.get(i).is(',')) {
+        return;
+      }
+      i++;
+    }
+  }
+
+  /** The lower-cased names of the common table expressions defined by {@code WITH} clauses. */
+  @NonNull private static Set<String> commonTableNames(@NonNull List<Token> tokens) {
+    @NonNull final Set<String> names = new HashSet<>();
+    final int size = tokens.size();
+    for (int i = 0; i < size; i++) {
+      if (!tokens.get(i).isKeyword("with")) {
+        continue;
+      }
+      int j = i + 1;
+      if (isKeyword(tokens, j, "recursive")) {
+        j++;
+      }
+      while (j < size && tokens.get(j).identifier) {
+        names.add(tokens.get(j).text.toLowerCase(Locale.US));
+        j++;
+        if (j < size && tokens.get(j).is('(')) {
+          j = skipParentheses(tokens, j);
+        }
+        if (!isKeyword(tokens, j, "as")) {
+          break;
+        }
+        j++;
+        if (isKeyword(tokens, j, "not")) {
+          j++;
+        }
+        if (isKeyword(tokens, j, "materialized")) {
+          j++;
+        }
+        if (j < size && tokens.get(j).is('(')) {
+          j = skipParentheses(tokens, j);
+        }
+        if (j >= size || !tokens.get(j).is(',')) {
+          break;
+        }
+        j++;
+      }
+    }
+    return names;
+  }
+
+  /** The table named at {@code index}, with any schema dropped, or null if there is none. */
+  @Nullable private static String qualifiedName(@NonNull List<Token> tokens, int index) {
+    if (index >= tokens.size() || !tokens.get(index).identifier) {
+      return null;
+    }
+    if (index + 2 < tokens.size() && tokens.get(index + 1).is('.')
+        && tokens.get(index + 2).identifier) {
+      return tokens.get(index + 2).text;
+    }
+    return tokens.get(index).text;
+  }
+
+  /** Returns the index after the parenthesis closing the one at {@code open}. */
+  private static int skipParentheses(@NonNull List<Token> tokens, int open) {
+    int depth = 0;
+    for (int i = open; i < tokens.size(); i++) {
+      if (tokens.get(i).is('(')) {
+        depth++;
+      } else if (tokens.get(i).is(')') && --depth == 0) {
+        return i + 1;
+      }
+    }
+    return tokens.size();
+  }
+
+  private static boolean isAlias(@NonNull Token token) {
+    return token.identifier
+        && (token.quoted || !NOT_ALIASES.contains(token.text.toLowerCase(Locale.US)));
+  }
+
+  private static boolean isKeyword(@NonNull List<Token> tokens, int index,
+                                   @NonNull String keyword) {
+    return index < tokens.size() && tokens.get(index).isKeyword(keyword);
+  }
+
+  @NonNull private static Map<String, Set<String>> newCache() {
+    return new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+        return size() > MAX_CACHED_STATEMENTS;
+      }
+    };
+  }
+}
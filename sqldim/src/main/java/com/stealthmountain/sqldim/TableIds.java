@@ -0,0 +1,133 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns table names into small integer ids, so sets of tables can be carried as bitsets in
+ * which bit {@code id % 64} of word {@code id / 64} is set for each table. Ids are never reused,
+ * and the bitset of a single table is cached, so interning a known table allocates nothing.
+ * <p>
+ * Writes to a single table name it with the set from {@link #setOf}, which carries its bitset,
+ * so that routing their triggers allocates nothing either.
+ */
+final class TableIds {
+  @NonNull private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+  // The set of each single table, indexed by its id. Copy-on-write.
+  @NonNull private volatile SingleTable[] singleTables = new SingleTable[0];
+
+  int idOf(@NonNull String table) {
+    @Nullable final Integer id = ids.get(table);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      @Nullable final Integer existing = ids.get(table);
+      if (existing != null) {
+        return existing;
+      }
+      final int added = ids.size();
+      @NonNull final SingleTable[] singleTables = Arrays.copyOf(this.singleTables, added + 1);
+      singleTables[added] = new SingleTable(table, added);
+      this.singleTables = singleTables;
+      ids.put(table, added);
+      return added;
+    }
+  }
+
+  /** The immutable set of only {@code table}, shared by every caller. */
+  @NonNull Set<String> setOf(@NonNull String table) {
+    final int id = idOf(table);
+    return singleTables[id];
+  }
+
+  /** The bitset of {@code table}, which must not be modified. */
+  @NonNull long[] bitsOf(@NonNull String table) {
+    final int id = idOf(table);
+    return singleTables[id].bits;
+  }
+
+  /** The bitset of {@code tables}, which must not be modified. */
+  @NonNull long[] bitsOf(@NonNull Collection<String> tables) {
+    if (tables instanceof SingleTable) {
+      return ((SingleTable) tables).bits;
+    }
+    if (tables.size() == 1) {
+      return bitsOf(tables.iterator().next());
+    }
+    @NonNull long[] bits = new long[0];
+    for (String table : tables) {
+      final int id = idOf(table);
+      if (id / 64 >= bits.length) {
+        bits = Arrays.copyOf(bits, id / 64 + 1);
+      }
+      bits[id / 64] |= 1L << id;
+    }
+    return bits;
+  }
+
+  static boolean contains(@NonNull long[] bits, int id) {
+    return id / 64 < bits.length && (bits[id / 64] & 1L << id) != 0;
+  }
+
+  /** The lowest id in both {@code a} and {@code b}, or -1 if they are disjoint. */
+  static int firstCommon(@NonNull long[] a, @NonNull long[] b) {
+    final int length = Math.min(a.length, b.length);
+    for (int i = 0; i < length; i++) {
+      final long common = a[i] & b[i];
+      if (common != 0) {
+        return i * 64 + Long.numberOfTrailingZeros(common);
+      }
+    }
+    return -1;
+  }
+
+  /** The lowest id in {@code bits} which is at least {@code from}, or -1 if there is none. */
+  static int nextId(@NonNull long[] bits, int from) {
+    int i = from / 64;
+    if (i >= bits.length) {
+      return -1;
+    }
+    long word = bits[i] & -1L << from;
+    for (;;) {
+      if (word != 0) {
+        return i * 64 + Long.numberOfTrailingZeros(word);
+      }
+      if (++i == bits.length) {
+        return -1;
+      }
+      word = bits[i];
+    }
+  }
+
+  private static final class SingleTable extends AbstractSet<String> {
+    @NonNull private final String table;
+    @NonNull final long[] bits;
+
+    SingleTable(@NonNull String table, int id) {
+      this.table = table;
+      this.bits = new long[id / 64 + 1];
+      bits[id / 64] = 1L << id;
+    }
+
+    @Override public boolean contains(@Nullable Object o) {
+      return table.equals(o);
+    }
+
+    @NonNull @Override public Iterator<String> iterator() {
+      return Collections.singleton(table).iterator();
+    }
+
+    @Override public int size() {
+      return 1;
+    }
+  }
+}
@@ -0,0 +1,296 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.DimDatabase.Trigger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Routes each {@link Trigger} only to the listeners registered on one of its tables, so the cost
+ * of a write is proportional to the number of queries watching the written tables rather than
+ * the number of live queries.
+ * <p>
+ * Tables are interned into {@link TableIds}, and the index is an array of listeners per table id.
+ * Each trigger carries the bitset of its tables and each listener the bitset of the tables it was
+ * registered on, so routing a trigger neither hashes table names nor allocates. A trigger of a
+ * single table named with {@link TableIds#setOf} finds its bitset already computed, and any other
+ * trigger computes it once when posted. The index is
+ * copy-on-write: registering and unregistering take a lock and replace the array, while
+ * {@link #dispatch} only reads the current array.
+ * <p>
+ * Writers on any thread {@link #post} triggers into a lock-free queue. Whichever writer finds the
+ * dispatcher idle drains the queue, including triggers posted by other writers in the meantime,
+ * so listeners are never called concurrently and see each writer's triggers in the order they
+ * were posted. A writer finding the dispatcher idle and nothing to coalesce with dispatches its
+ * trigger without queueing it. A listener's error goes to {@link RxJavaPlugins#onError} rather
+ * than to whichever writer happened to be draining, and the other listeners are still called.
+ * <p>
+ * When coalescing, every trigger queued at the time of a drain is merged into one trigger
+ * carrying the union of their tables, changed keys and columns, and markers. With a positive
+ * window, the first trigger after
+ * the dispatcher goes idle schedules that drain {@code window} later instead of draining
+ * immediately, so a burst of writes inside the window is dispatched once.
+ */
+final class TriggerDispatcher<M> {
+  interface Listener<M> {
+    void onTrigger(@NonNull Trigger<M> trigger);
+  }
+
+  /** A coalescing window which disables coalescing. */
+  static final long NO_COALESCING = -1;
+
+  @NonNull private final ConcurrentLinkedQueue<Trigger<M>> queue = new ConcurrentLinkedQueue<>();
+  @NonNull private final AtomicInteger wip = new AtomicInteger();
+  @NonNull private final AtomicBoolean drainScheduled = new AtomicBoolean();
+  @NonNull private final Runnable scheduledDrain = new Runnable() {
+    @Override public void run() {
+      // Clear the flag before draining so a trigger posted after the drain's last poll schedules
+      // another drain rather than waiting for the next burst.
+      drainScheduled.set(false);
+      drain();
+    }
+  };
+  private final long coalescingWindowNanos;
+  @NonNull private final Scheduler scheduler;
+  @NonNull private final TableIds tableIds = new TableIds();
+  // The registrations on each table, indexed by table id.
+  @NonNull private volatile Registration<M>[][] registrationsById = newArrays(0);
+  // The number of listeners filtering triggers by their keys or columns, changed under the lock.
+  private volatile int filteredListeners;
+
+  TriggerDispatcher() {
+    this(NO_COALESCING, Schedulers.trampoline());
+  }
+
+  /**
+   * @param coalescingWindowNanos {@link #NO_COALESCING}, 0 to coalesce triggers which queue up
+   * while the dispatcher is busy, or how long to collect triggers before dispatching them.
+   * @param scheduler Where windowed drains are scheduled.
+   */
+  TriggerDispatcher(long coalescingWindowNanos, @NonNull Scheduler scheduler) {
+    this.coalescingWindowNanos = coalescingWindowNanos;
+    this.scheduler = scheduler;
+  }
+
+  void register(@NonNull Set<String> tables, @NonNull Listener<M> listener) {
+    register(tables, listener, false);
+  }
+
+  /**
+   * @param filtered Whether {@code listener} filters triggers by their changed keys or columns,
+   * which writers only need to collect while such a listener is registered.
+   */
+  void register(@NonNull Set<String> tables, @NonNull Listener<M> listener, boolean filtered) {
+    @NonNull final Registration<M> registration =
+        new Registration<>(listener, tableIds.bitsOf(tables), filtered);
+    synchronized (this) {
+      if (filtered) {
+        filteredListeners++;
+      }
+      @NonNull Registration<M>[][] copy = registrationsById;
+      for (int id = TableIds.nextId(registration.tableBits, 0); id >= 0;
+           id = TableIds.nextId(registration.tableBits, id + 1)) {
+        if (id >= copy.length) {
+          copy = Arrays.copyOf(copy, id + 1);
+        } else if (copy == registrationsById) {
+          copy = copy.clone();
+        }
+        @Nullable final Registration<M>[] registrations = copy[id];
+        if (registrations == null) {
+          @NonNull final Registration<M>[] added = newArray(1);
+          added[0] = registration;
+          copy[id] = added;
+        } else {
+          @NonNull final Registration<M>[] added = newArray(registrations.length + 1);
+          System.arraycopy(registrations, 0, added, 0, registrations.length);
+          added[registrations.length] = registration;
+          copy[id] = added;
+        }
+      }
+      registrationsById = copy;
+    }
+  }
+
+  void unregister(@NonNull Set<String> tables, @NonNull Listener<M> listener) {
+    @NonNull final long[] tableBits = tableIds.bitsOf(tables);
+    synchronized (this) {
+      boolean filtered = false;
+      @NonNull final Registration<M>[][] copy = registrationsById.clone();
+      for (int id = TableIds.nextId(tableBits, 0); id >= 0 && id < copy.length;
+           id = TableIds.nextId(tableBits, id + 1)) {
+        @Nullable final Registration<M>[] registrations = copy[id];
+        if (registrations == null) {
+          continue;
+        }
+        int index = -1;
+        for (int i = 0; i < registrations.length; i++) {
+          if (registrations[i].listener == listener) {
+            index = i;
+            break;
+          }
+        }
+        if (index < 0) {
+          continue;
+        }
+        filtered = registrations[index].filtered;
+        if (registrations.length == 1) {
+          copy[id] = null;
+        } else {
+          @NonNull final Registration<M>[] removed = newArray(registrations.length - 1);
+          System.arraycopy(registrations, 0, removed, 0, index);
+          System.arraycopy(registrations, index + 1, removed, index,
+              registrations.length - index - 1);
+          copy[id] = removed;
+        }
+      }
+      registrationsById = copy;
+      if (filtered) {
+        filteredListeners--;
+      }
+    }
+  }
+
+  /**
+   * Whether a listener filtering triggers by their changed keys or columns is registered. A
+   * trigger without them changed its tables as a whole, so writers may leave them out otherwise.
+   */
+  boolean hasFilteredListeners() {
+    return filteredListeners > 0;
+  }
+
+  /** The ids of the tables of this dispatcher's listeners and triggers. */
+  @NonNull TableIds tableIds() {
+    return tableIds;
+  }
+
+  void post(@NonNull Trigger<M> trigger) {
+    if (trigger.tableBits == null) {
+      trigger.tableBits = tableIds.bitsOf(trigger.tables);
+    }
+    if (coalescingWindowNanos > 0) {
+      queue.offer(trigger);
+      if (drainScheduled.compareAndSet(false, true)) {
+        scheduler.scheduleDirect(scheduledDrain, coalescingWindowNanos, NANOSECONDS);
+      }
+    } else if (queue.isEmpty() && wip.compareAndSet(0, 1)) {
+      // Idle, with no trigger to keep order with or coalesce with: skip the queue.
+      dispatch(trigger);
+      drainLoop();
+    } else {
+      queue.offer(trigger);
+      drain();
+    }
+  }
+
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      // Another thread is dispatching and will pick up our trigger.
+      return;
+    }
+    drainLoop();
+  }
+
+  /** Drains the queue while this thread is the one dispatching. */
+  private void drainLoop() {
+    int missed = 1;
+    for (;;) {
+      @Nullable Trigger<M> trigger;
+      while ((trigger = poll()) != null) {
+        dispatch(trigger);
+      }
+      missed = wip.addAndGet(-missed);
+      if (missed == 0) {
+        break;
+      }
+    }
+  }
+
+  @Nullable private Trigger<M> poll() {
+    @Nullable final Trigger<M> first = queue.poll();
+    if (first == null || coalescingWindowNanos == NO_COALESCING) {
+      return first;
+    }
+    @Nullable Trigger<M> next = queue.poll();
+    if (next == null) {
+      return first;
+    }
+    @NonNull final Set<M> markers = new LinkedHashSet<>(first.markers);
+    @NonNull final Set<String> tables = new LinkedHashSet<>();
+    @NonNull final Map<String, Set<Long>> keys = new HashMap<>();
+    @NonNull final Map<String, Set<String>> columns = new HashMap<>();
+    Trigger.addChanges(tables, keys, columns, first.tables, first.keys, first.columns);
+    do {
+      markers.addAll(next.markers);
+      Trigger.addChanges(tables, keys, columns, next.tables, next.keys, next.columns);
+    } while ((next = queue.poll()) != null);
+    @NonNull final Trigger<M> coalesced = new Trigger<>(markers, tables, keys, columns);
+    coalesced.tableBits = tableIds.bitsOf(tables);
+    return coalesced;
+  }
+
+  private void dispatch(@NonNull Trigger<M> trigger) {
+    @NonNull final Registration<M>[][] registrationsById = this.registrationsById;
+    @NonNull final long[] tableBits = Objects.requireNonNull(trigger.tableBits);
+    for (int id = TableIds.nextId(tableBits, 0); id >= 0 && id < registrationsById.length;
+         id = TableIds.nextId(tableBits, id + 1)) {
+      @Nullable final Registration<M>[] registrations = registrationsById[id];
+      if (registrations == null) {
+        continue;
+      }
+      for (Registration<M> registration : registrations) {
+        // A listener watching more than one of the triggered tables must still only be woken
+        // once, so it is woken for the first of them.
+        if (TableIds.firstCommon(registration.tableBits, tableBits) == id) {
+          try {
+            registration.listener.onTrigger(trigger);
+          } catch (Throwable e) {
+            // The writer draining didn't cause the error, and can't do anything about it.
+            Exceptions.throwIfFatal(e);
+            RxJavaPlugins.onError(e);
+          }
+        }
+      }
+    }
+  }
+
+  private static final class Registration<M> {
+    @NonNull final Listener<M> listener;
+    @NonNull final long[] tableBits;
+    final boolean filtered;
+
+    Registration(@NonNull Listener<M> listener, @NonNull long[] tableBits, boolean filtered) {
+      this.listener = listener;
+      this.tableBits = tableBits;
+      this.filtered = filtered;
+    }
+  }
+
+  @NonNull private static <M> Registration<M>[] newArray(int length) {
+    @SuppressWarnings("unchecked") // Generic array creation.
+    @NonNull final Registration<M>[] array = (Registration<M>[]) new Registration[length];
+    return array;
+  }
+
+  @NonNull private static <M> Registration<M>[][] newArrays(int length) {
+    @SuppressWarnings("unchecked") // Generic array creation.
+    @NonNull final Registration<M>[][] arrays = (Registration<M>[][]) new Registration[length][];
+    return arrays;
+  }
+}
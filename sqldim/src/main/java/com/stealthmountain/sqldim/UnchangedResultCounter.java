@@ -0,0 +1,38 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the results checked by {@link QueryObservable#skipUnchanged(UnchangedResultCounter)} and
+ * {@link MarkedQueryObservable#skipUnchanged(UnchangedResultCounter)}, and how many of them were
+ * suppressed for being identical to the previous result. Share one counter between several
+ * observables to measure them together.
+ */
+public final class UnchangedResultCounter {
+  @NonNull private final AtomicLong checked = new AtomicLong();
+  @NonNull private final AtomicLong suppressed = new AtomicLong();
+
+  /** The number of results which were read and checksummed. */
+  public long checkedCount() {
+    return checked.get();
+  }
+
+  /** The number of results which were not emitted because they had not changed. */
+  public long suppressedCount() {
+    return suppressed.get();
+  }
+
+  void onChecked(boolean suppressed) {
+    checked.incrementAndGet();
+    if (suppressed) {
+      this.suppressed.incrementAndGet();
+    }
+  }
+
+  @NonNull @Override public String toString() {
+    return "UnchangedResultCounter[checked=" + checked.get()
+        + ", suppressed=" + suppressed.get() + ']';
+  }
+}
@@ -0,0 +1,161 @@
+package com.stealthmountain.sqldim;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.stealthmountain.sqldim.DimDatabase.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleEmitter;
+import io.reactivex.rxjava3.core.SingleOnSubscribe;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Queues the asynchronous writes of a {@link DimDatabase} and commits them in groups on its writer
+ * thread, as configured with {@link SqlDim.Builder#groupCommit}. The writes of a group run in one
+ * transaction, so they share one commit and send one trigger with the changes of all of them.
+ * <p>
+ * The first write queued while the writer is idle waits up to the window for others to join its
+ * group, and a group commits early once it is full. Writes queued while a group commits form the
+ * next groups without waiting. A write which fails fails alone, as it would have outside of a
+ * transaction, and each write completes once its group has committed.
+ */
+final class WriteQueue implements Runnable {
+  /** The default maximum number of writes committed together. */
+  static final int DEFAULT_MAX_WRITES = 64;
+
+  @NonNull private final DimDatabase<?> db;
+  private final int maxWrites;
+  private final long windowNanos;
+  @NonNull private final Queue<PendingWrite<?>> queue = new ConcurrentLinkedQueue<>();
+  @NonNull private final AtomicInteger size = new AtomicInteger();
+  @NonNull private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  WriteQueue(@NonNull DimDatabase<?> db, int maxWrites, long windowNanos) {
+    this.db = db;
+    this.maxWrites = maxWrites;
+    this.windowNanos = windowNanos;
+  }
+
+  /**
+   * Returns a {@link Single} which queues {@code write} when subscribed to, and emits its result
+   * once it has been committed.
+   *
+   * @param groupable Whether the write can run in a transaction with others. A write which must
+   * not, such as one which rolls back its transaction on conflict, runs on its own in turn.
+   */
+  @NonNull <T> Single<T> enqueue(final boolean groupable, @NonNull final Callable<T> write) {
+    return Single.create(new SingleOnSubscribe<T>() {
+      @Override public void subscribe(@NonNull SingleEmitter<T> emitter) {
+        offer(new PendingWrite<>(emitter, groupable, write));
+      }
+    });
+  }
+
+  private void offer(@NonNull PendingWrite<?> write) {
+    queue.offer(write);
+    @NonNull final Scheduler scheduler = db.getWriteScheduler();
+    if (size.incrementAndGet() == maxWrites) {
+      scheduler.scheduleDirect(this); // A full group needn't wait for the window.
+    } else if (scheduled.compareAndSet(false, true)) {
+      scheduler.scheduleDirect(this, windowNanos, NANOSECONDS);
+    }
+  }
+
+  /** Commits every queued write. Only runs on the single thread of the write scheduler. */
+  @Override public void run() {
+    scheduled.set(false);
+    @NonNull final List<PendingWrite<?>> group = new ArrayList<>();
+    for (;;) {
+      @Nullable final PendingWrite<?> write = queue.poll();
+      if (write == null) {
+        commit(group);
+        return;
+      }
+      size.decrementAndGet();
+      if (!write.groupable) {
+        commit(group);
+        group.clear();
+        write.run();
+        write.deliver(null);
+        continue;
+      }
+      group.add(write);
+      if (group.size() == maxWrites) {
+        commit(group);
+        group.clear();
+      }
+    }
+  }
+
+  private void commit(@NonNull List<PendingWrite<?>> group) {
+    if (group.isEmpty()) {
+      return;
+    }
+    @Nullable Throwable groupError = null;
+    try {
+      @NonNull final Transaction<?> transaction = db.newTransaction();
+      try {
+        for (PendingWrite<?> write : group) {
+          write.run();
+        }
+        transaction.markSuccessful();
+      } finally {
+        transaction.end();
+      }
+    } catch (RuntimeException e) {
+      groupError = e; // Nothing in the group was committed.
+    }
+    for (PendingWrite<?> write : group) {
+      write.deliver(groupError);
+    }
+  }
+
+  static final class PendingWrite<T> {
+    @NonNull private final SingleEmitter<T> emitter;
+    final boolean groupable;
+    @NonNull private final Callable<T> write;
+    @Nullable private T result;
+    @Nullable private Throwable error;
+
+    PendingWrite(@NonNull SingleEmitter<T> emitter, boolean groupable,
+                 @NonNull Callable<T> write) {
+      this.emitter = emitter;
+      this.groupable = groupable;
+      this.write = write;
+    }
+
+    /** Runs the write, unless its subscriber has gone. */
+    void run() {
+      if (emitter.isDisposed()) {
+        return;
+      }
+      try {
+        result = write.call();
+      } catch (Exception e) {
+        error = e;
+      }
+    }
+
+    /** @param groupError The error which stopped the group committing, or null. */
+    void deliver(@Nullable Throwable groupError) {
+      @Nullable final Throwable error = this.error != null ? this.error : groupError;
+      @Nullable final T result = this.result;
+      if (error != null) {
+        emitter.tryOnError(error);
+      } else if (result != null) {
+        emitter.onSuccess(result);
+      }
+    }
+  }
+}